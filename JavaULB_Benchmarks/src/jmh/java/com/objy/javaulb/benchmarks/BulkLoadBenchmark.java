@@ -0,0 +1,69 @@
+package com.objy.javaulb.benchmarks;
+
+import com.objy.javaulb.utils.RandomStreams;
+import com.objy.javaulb.utils.addresses.AddressStore;
+import com.objy.javaulb.utils.graph.DegreeDistribution;
+import com.objy.javaulb.utils.graph.GraphBulkLoader;
+import com.objy.javaulb.utils.graph.GraphGenerator;
+import com.objy.javaulb.utils.graph.InMemoryGraphSink;
+import com.objy.javaulb.utils.graph.LoadReport;
+import com.objy.javaulb.utils.names.NameFactory;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to bulk-load a 100,000-address graph into an in-memory sink, by
+ * worker count and by the simulated cost of one commit. Divide the vertex
+ * and edge counts logged by GraphBulkLoader by the score for the rates.
+ *
+ * @author Daniel
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BulkLoadBenchmark {
+
+    @Param({"1", "4", "8"})
+    public int workers;
+
+    @Param({"0", "500"})
+    public int commitMicros;
+
+    private GraphGenerator generator;
+
+
+    @Setup
+    public void setup() throws Exception {
+
+        AddressStore.Builder builder = new AddressStore.Builder();
+        for (int i = 0; i < 10_000; i++) {
+            builder.add(Integer.toString(1 + i % 9999), "Street " + (i % 5000),
+                    "City " + (i % 2000), "S" + (i % 50), Integer.toString(10000 + i % 40000),
+                    30.0 + (i % 1000) / 100.0, -120.0 + (i % 3000) / 100.0);
+        }
+        generator = new GraphGenerator(new NameFactory(), builder.build(), 100_000,
+                DegreeDistribution.uniform(0, 4), new RandomStreams(42));
+    }
+
+
+    @Benchmark
+    public LoadReport load() throws Exception {
+        GraphBulkLoader loader = new GraphBulkLoader(workers, GraphBulkLoader.DEFAULT_ADDRESSES_PER_BATCH,
+                InMemoryGraphSink.runner());
+        return loader.load(generator, new InMemoryGraphSink(TimeUnit.MICROSECONDS.toNanos(commitMicros)));
+    }
+
+}
@@ -0,0 +1,110 @@
+package com.objy.javaulb.benchmarks;
+
+import com.objy.javaulb.utils.GendataSnapshot;
+import com.objy.javaulb.utils.names.NameDictionary;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Start-up cost of reading a gendata name file: the original
+ * BufferedReader/split loader, the memory-mapped text parser, and the
+ * pre-compiled binary snapshot.
+ *
+ * SingleShotTime with no warm-up measures a cold load, which is what each lab
+ * run pays; the AverageTime results show the steady state.
+ *
+ * @author Daniel
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.SingleShotTime, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 10)
+@Fork(5)
+public class GendataLoadBenchmark {
+
+    @Param({"dist.all.last.txt", "dist.female.first.txt"})
+    public String fileName;
+
+    private File file;
+
+    // A private copy of the file with an up-to-date snapshot beside it.
+    private File snapshotSource;
+
+
+    @Setup
+    public void setup() throws IOException {
+        file = new File(System.getProperty("DataDir"), fileName);
+
+        Path dir = Files.createTempDirectory("gendata");
+        snapshotSource = dir.resolve(fileName).toFile();
+        Files.copy(file.toPath(), snapshotSource.toPath(), StandardCopyOption.COPY_ATTRIBUTES);
+        NameDictionary.readText(snapshotSource, false).writeSnapshot(snapshotSource);
+        snapshotSource.deleteOnExit();
+        GendataSnapshot.snapshotFileFor(snapshotSource).deleteOnExit();
+        dir.toFile().deleteOnExit();
+    }
+
+
+    /**
+     * The loader NameFactory used before the mapped reader: one String per
+     * line, a String[] per split and a boxed list of names.
+     */
+    @Benchmark
+    public Object bufferedReaderSplit() throws IOException {
+
+        ArrayList<String> names = new ArrayList<>();
+        double[] cumulative = new double[1024];
+        int count = 0;
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.trim().split("\\s+");
+                names.add(parts[0]);
+                if (count == cumulative.length) {
+                    cumulative = java.util.Arrays.copyOf(cumulative, count * 2);
+                }
+                cumulative[count++] = Double.parseDouble(parts[2]);
+            }
+        }
+        return names;
+    }
+
+
+    @Benchmark
+    public Object mappedDictionary() throws IOException {
+        return NameDictionary.readText(file, false);
+    }
+
+
+    @Benchmark
+    public Object mappedDictionaryDirect() throws IOException {
+        return NameDictionary.readText(file, true);
+    }
+
+
+    @Benchmark
+    public Object snapshot() throws IOException {
+        return NameDictionary.read(snapshotSource, false);
+    }
+
+}
@@ -0,0 +1,85 @@
+package com.objy.javaulb.benchmarks;
+
+import com.objy.javaulb.utils.RandomStreams;
+import com.objy.javaulb.utils.addresses.Address;
+import com.objy.javaulb.utils.addresses.AddressFactory;
+import com.objy.javaulb.utils.addresses.AddressStore;
+import com.objy.javaulb.utils.addresses.MutableAddress;
+import com.objy.javaulb.utils.names.Name;
+import com.objy.javaulb.utils.names.NameFactory;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput, latency percentiles and allocation per generated record: the
+ * object-returning createName() and getAddress() against the reusable-holder
+ * fillName() and fillAddress(). The gc profiler (configured in build.gradle)
+ * reports gc.alloc.rate.norm; the fill variants should be close to 0 B/op
+ * once warmed up.
+ *
+ * @author Daniel
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class GeneratorAllocationBenchmark {
+
+    private NameFactory nameFactory;
+    private AddressFactory addressFactory;
+
+    private final Name name = new Name();
+    private final MutableAddress address = new MutableAddress();
+
+
+    @Setup
+    public void setup() throws Exception {
+
+        nameFactory = new NameFactory();
+
+        // A synthetic store, so the benchmark does not need an address file.
+        AddressStore.Builder builder = new AddressStore.Builder();
+        for (int i = 0; i < 100_000; i++) {
+            builder.add(Integer.toString(1 + i % 9999), "Street " + (i % 5000),
+                    "City " + (i % 2000), "S" + (i % 50), Integer.toString(10000 + i % 40000),
+                    30.0 + (i % 1000) / 100.0, -120.0 + (i % 3000) / 100.0);
+        }
+        addressFactory = new AddressFactory(builder.build(), new RandomStreams(42));
+    }
+
+
+    @Benchmark
+    public Name createName() {
+        return nameFactory.createName();
+    }
+
+
+    @Benchmark
+    public Name fillName() {
+        return nameFactory.fillName(name);
+    }
+
+
+    @Benchmark
+    public Address getAddress() {
+        return addressFactory.getAddress();
+    }
+
+
+    @Benchmark
+    public MutableAddress fillAddress() {
+        return addressFactory.fillAddress(address);
+    }
+
+}
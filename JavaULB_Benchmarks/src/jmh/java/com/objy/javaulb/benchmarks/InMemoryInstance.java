@@ -0,0 +1,42 @@
+package com.objy.javaulb.benchmarks;
+
+/**
+ * A stand-in for a com.objy.data.Instance whose attributes are all scalar
+ * values already rendered as Strings. A real Instance can only be created
+ * inside a transaction on a federation, so the formatter benchmarks drive
+ * InstanceFormatter's per-line code with these instead.
+ *
+ * @author Daniel
+ */
+public class InMemoryInstance {
+
+    public final String oid;
+    public final String className;
+    public final String[] attributeNames;
+    public final String[] values;
+
+
+    public InMemoryInstance(String oid, String className, String[] attributeNames, String[] values) {
+        this.oid = oid;
+        this.className = className;
+        this.attributeNames = attributeNames;
+        this.values = values;
+    }
+
+
+    /**
+     * Builds an instance with <code>width</code> string attributes, named and
+     * valued like a Person or Address row.
+     */
+    public static InMemoryInstance ofWidth(int width) {
+
+        String[] names = new String[width];
+        String[] values = new String[width];
+        for (int i = 0; i < width; i++) {
+            names[i] = "Attribute" + i;
+            values[i] = (i % 3 == 0) ? "3-7-" + (100 + i) + ":" + i : "Value of attribute " + i;
+        }
+        return new InMemoryInstance("3-3-1-" + width, "Wide" + width, names, values);
+    }
+
+}
@@ -0,0 +1,111 @@
+package com.objy.javaulb.benchmarks;
+
+import com.objy.javaulb.utils.InstanceFormatter;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of formatting one Instance with InstanceFormatter: the header plus one
+ * line per attribute, for classes of increasing width.
+ * <p>
+ * <code>stringFormat</code> is the formatter as it was, a String.format per
+ * line; compare it with <code>formatLayout</code>, the precomputed layout
+ * appending into a reused StringBuilder.
+ *
+ * @author Daniel
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class InstanceFormatterBenchmark {
+
+    @Param({"3", "8", "32", "64"})
+    public int width;
+
+    private InMemoryInstance instance;
+
+    private InstanceFormatter.Layout layout;
+
+    private final StringBuilder reused = new StringBuilder(4096);
+
+
+    @Setup
+    public void setup() {
+        instance = InMemoryInstance.ofWidth(width);
+        layout = InstanceFormatter.Layout.of(instance.className, instance.attributeNames);
+    }
+
+
+    /**
+     * Mirrors InstanceFormatter.format(Instance) for scalar attributes.
+     */
+    private static String format(InMemoryInstance ix, StringBuilder sb) {
+
+        InstanceFormatter.appendHeader(sb, ix.oid, ix.className);
+        for (int i = 0; i < ix.attributeNames.length; i++) {
+            InstanceFormatter.appendAttribute(sb, ix.attributeNames[i], ix.values[i]);
+        }
+        return sb.toString();
+    }
+
+
+    @Benchmark
+    public String format() {
+        return format(instance, new StringBuilder());
+    }
+
+
+    @Benchmark
+    public int formatReusedBuilder() {
+        reused.setLength(0);
+        InstanceFormatter.appendHeader(reused, instance.oid, instance.className);
+        for (int i = 0; i < instance.attributeNames.length; i++) {
+            InstanceFormatter.appendAttribute(reused, instance.attributeNames[i], instance.values[i]);
+        }
+        return reused.length();
+    }
+
+
+    @Benchmark
+    public int formatLayout() {
+        reused.setLength(0);
+        layout.appendHeader(reused, instance.oid);
+        for (int i = 0; i < layout.size(); i++) {
+            layout.appendAttribute(reused, i, instance.values[i]);
+        }
+        return reused.length();
+    }
+
+
+    /**
+     * The String.format lines InstanceFormatter used to build; the baseline.
+     * It appends into the same reused builder as formatLayout, so that the
+     * two differ only in how the lines are made.
+     */
+    @Benchmark
+    public int stringFormat() {
+
+        reused.setLength(0);
+        reused.append(String.format("        %-15s:    %-15s\n", "OID", instance.oid));
+        reused.append(String.format("        %-15s:    %-15s\n", "Classname", instance.className));
+        reused.append("        - - - - - - - - - - - - - - - - - - - - - - - - - - -\n");
+        for (int i = 0; i < instance.attributeNames.length; i++) {
+            reused.append(String.format("        %-15s:    %-15s    \n", instance.attributeNames[i], instance.values[i]));
+        }
+        return reused.length();
+    }
+
+}
@@ -0,0 +1,118 @@
+package com.objy.javaulb.benchmarks;
+
+import com.objy.javaulb.utils.graph.AdjacencyIndex;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of removing one entry from a vertex's Knows list, and of checking
+ * membership, for vertices of increasing degree: the scan Lab03g used to do
+ * against the lookup in an {@link AdjacencyIndex}.
+ * <p>
+ * The list is a long[] of ObjectIds standing in for the com.objy.data.List.
+ * The scan removes as List.remove(i) does, shifting the later entries; the
+ * indexed removal moves the last entry into the gap, as ReferenceListIndex
+ * does. Each removal appends the entry again, so the degree stays the same.
+ *
+ * @author Daniel
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class KnowsRemovalBenchmark {
+
+    @Param({"10", "10000", "1000000"})
+    public int degree;
+
+    private long[] scanList;
+    private long[] indexedList;
+    private AdjacencyIndex index;
+
+    private final SplittableRandom random = new SplittableRandom(42);
+
+
+    @Setup
+    public void setup() {
+
+        scanList = new long[degree];
+        index = new AdjacencyIndex(degree);
+        for (int i = 0; i < degree; i++) {
+            // Distinct, and spread like the OIDs of Persons in a few containers.
+            scanList[i] = ((long) (i % 7) << 32) | (i * 31L + 1);
+            index.add(scanList[i]);
+        }
+        indexedList = scanList.clone();
+    }
+
+
+    @Benchmark
+    public long removeByScan() {
+
+        long oid = scanList[random.nextInt(degree)];
+
+        int position = -1;
+        for (int i = 0; i < degree; i++) {
+            if (scanList[i] == oid) {
+                position = i;
+                break;
+            }
+        }
+        System.arraycopy(scanList, position + 1, scanList, position, degree - position - 1);
+        scanList[degree - 1] = oid;
+        return oid;
+    }
+
+
+    @Benchmark
+    public long removeIndexed() {
+
+        long oid = indexedList[random.nextInt(degree)];
+
+        int position = index.positionOf(oid);
+        int last = degree - 1;
+        long lastOid = indexedList[last];
+        indexedList[position] = lastOid;
+        index.remove(oid, position, lastOid);
+
+        indexedList[last] = oid;
+        index.add(oid);
+        return oid;
+    }
+
+
+    @Benchmark
+    public boolean containsByScan() {
+
+        // Half the probes are members.
+        long oid = random.nextBoolean() ? scanList[random.nextInt(degree)] : -1L - random.nextInt(degree);
+        for (int i = 0; i < degree; i++) {
+            if (scanList[i] == oid) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    @Benchmark
+    public boolean containsIndexed() {
+
+        long oid = random.nextBoolean() ? indexedList[random.nextInt(degree)] : -1L - random.nextInt(degree);
+        return index.contains(oid);
+    }
+
+}
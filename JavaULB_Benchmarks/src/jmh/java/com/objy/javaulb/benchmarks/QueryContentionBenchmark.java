@@ -0,0 +1,101 @@
+package com.objy.javaulb.benchmarks;
+
+import com.objy.db.TransactionMode;
+import com.objy.javaulb.utils.TransactionRunner;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A model of a loader and a query loop running at the same time, by the
+ * transaction mode of the queries. There is no federation: one
+ * ReentrantReadWriteLock stands for the container both of them use.
+ * READ_UPDATE transactions hold it exclusively, and READ_ONLY transactions
+ * share it. The "loader" and "query" scores are transactions per second of
+ * each side.
+ * <p>
+ * The scores follow from that assumption, so they do not measure the
+ * federation's lock manager and are no evidence that READ_ONLY queries
+ * are faster against a real federation. What the model does exercise is
+ * the TransactionRunner path and the scheduling of the two groups of
+ * threads.
+ *
+ * @author Daniel
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryContentionBenchmark {
+
+    @Param({"READ_ONLY", "READ_UPDATE"})
+    public String queryMode;
+
+    // The time each transaction holds its lock.
+    @Param({"200"})
+    public int loadMicros;
+
+    @Param({"50"})
+    public int queryMicros;
+
+    private final ReentrantReadWriteLock container = new ReentrantReadWriteLock();
+
+    private TransactionRunner runner;
+    private TransactionMode mode;
+
+
+    @Setup
+    public void setup() {
+        mode = TransactionMode.valueOf(queryMode);
+        runner = new TransactionRunner(0, 0, 0, 0, this::openScope, ex -> false);
+    }
+
+
+    private TransactionRunner.Scope openScope(TransactionMode m) {
+
+        Lock lock = m == TransactionMode.READ_UPDATE
+                ? container.writeLock() : container.readLock();
+        lock.lock();
+        return new TransactionRunner.Scope() {
+            public void complete() {
+            }
+
+            public void close() {
+                lock.unlock();
+            }
+        };
+    }
+
+
+    @Benchmark
+    @Group("contention")
+    @GroupThreads(1)
+    public void loader() throws Exception {
+        runner.run(TransactionMode.READ_UPDATE, () -> LockSupport.parkNanos(loadMicros * 1000L));
+    }
+
+
+    @Benchmark
+    @Group("contention")
+    @GroupThreads(4)
+    public void query() throws Exception {
+        runner.run(mode, () -> LockSupport.parkNanos(queryMicros * 1000L));
+    }
+
+}
@@ -0,0 +1,133 @@
+package com.objy.javaulb.benchmarks;
+
+import com.objy.javaulb.utils.graph.FrontierTraversal;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of walking Person -&gt; Address -&gt; Person paths <code>depth</code>
+ * levels out from one Person: a one-thread breadth first search with a
+ * HashMap of boxed OIDs, against a {@link FrontierTraversal} on a pool of
+ * <code>threads</code>.
+ * <p>
+ * The graph is in memory: each Person lives at two Addresses out of a
+ * tenth as many, and vertex i's neighbours are in a long[][], so the
+ * benchmark measures the traversal, not the federation.
+ *
+ * @author Daniel
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class TraversalBenchmark {
+
+    private static final int PERSONS = 1_000_000;
+    private static final int ADDRESSES = PERSONS / 10;
+
+    @Param({"2", "4"})
+    public int depth;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    // The neighbours of vertex i: Persons are 1..PERSONS, Addresses follow.
+    private long[][] adjacency;
+
+    private ForkJoinPool pool;
+    private FrontierTraversal traversal;
+    private FrontierTraversal.Neighbours neighbours;
+
+
+    @Setup
+    public void setup() {
+
+        SplittableRandom random = new SplittableRandom(42);
+        int[] degree = new int[PERSONS + ADDRESSES + 1];
+        long[][] livesAt = new long[PERSONS + 1][];
+        for (int p = 1; p <= PERSONS; p++) {
+            livesAt[p] = new long[] {
+                PERSONS + 1 + random.nextInt(ADDRESSES),
+                PERSONS + 1 + random.nextInt(ADDRESSES)
+            };
+            degree[(int) livesAt[p][0]]++;
+            degree[(int) livesAt[p][1]]++;
+        }
+
+        adjacency = new long[PERSONS + ADDRESSES + 1][];
+        for (int a = PERSONS + 1; a < adjacency.length; a++) {
+            adjacency[a] = new long[degree[a]];
+            degree[a] = 0;
+        }
+        for (int p = 1; p <= PERSONS; p++) {
+            adjacency[p] = livesAt[p];
+            for (long a : livesAt[p]) {
+                adjacency[(int) a][degree[(int) a]++] = p;
+            }
+        }
+
+        pool = new ForkJoinPool(threads);
+        traversal = new FrontierTraversal(pool, FrontierTraversal.DEFAULT_CHUNK_SIZE);
+        neighbours = (frontier, from, to, out) -> {
+            for (int i = from; i < to; i++) {
+                for (long v : adjacency[(int) frontier[i]]) {
+                    out.add(v);
+                }
+            }
+        };
+    }
+
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+
+    @Benchmark
+    public int boxedBreadthFirst() {
+
+        HashMap<Long, Integer> visited = new HashMap<>();
+        ArrayDeque<Long> queue = new ArrayDeque<>();
+        visited.put(1L, 0);
+        queue.add(1L);
+
+        while (!queue.isEmpty()) {
+            Long u = queue.poll();
+            int d = visited.get(u);
+            if (d == depth) {
+                continue;
+            }
+            for (long v : adjacency[u.intValue()]) {
+                if (visited.putIfAbsent(v, d + 1) == null) {
+                    queue.add(v);
+                }
+            }
+        }
+        return visited.size();
+    }
+
+
+    @Benchmark
+    public int frontierTraversal() throws Exception {
+        return traversal.traverse(1, depth, neighbours, null).getVisited();
+    }
+
+}
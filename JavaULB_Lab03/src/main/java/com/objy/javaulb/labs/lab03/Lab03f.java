@@ -3,15 +3,15 @@ package com.objy.javaulb.labs.lab03;
 import com.objy.data.schemaProvider.SchemaProvider;
 import com.objy.data.Instance;
 import com.objy.data.LogicalType;
-import com.objy.data.Reference;
 import com.objy.data.Variable;
 import com.objy.data.dataSpecificationBuilder.ListSpecificationBuilder;
 import com.objy.data.dataSpecificationBuilder.ReferenceSpecificationBuilder;
 import com.objy.db.Connection;
-import com.objy.db.LockConflictException;
 import com.objy.db.ObjectId;
 import com.objy.db.TransactionMode;
-import com.objy.db.TransactionScope;
+import com.objy.javaulb.utils.Oid;
+import com.objy.javaulb.utils.TransactionRunner;
+import com.objy.javaulb.utils.graph.EdgeBulkLoader;
 import java.io.File;
 import java.util.GregorianCalendar;
 import java.util.Properties;
@@ -35,6 +35,9 @@ public class Lab03f {
     // The connection to the ThingSpan federation.
     private Connection connection;
 
+    // Runs each transaction, retrying it on lock conflicts.
+    private final TransactionRunner transactionRunner = new TransactionRunner();
+
 
 
 
@@ -54,12 +57,17 @@ public class Lab03f {
 
 
 
-            String pOID1 = createPersonInstance("Seth", "B", "Franklin");
-            String pOID2 = createPersonInstance("Tracy", "A", "Michaels");
-            String pOID3 = createPersonInstance("Diane", "M", "Thoman");
+            long pOID1 = createPersonInstance("Seth", "B", "Franklin");
+            long pOID2 = createPersonInstance("Tracy", "A", "Michaels");
+            long pOID3 = createPersonInstance("Diane", "M", "Thoman");
 
-            establishKnows(pOID1, pOID2);
-            establishKnows(pOID1, pOID3);
+            // Collect the Knows edges, and create them together: each Person
+            // is looked up once, and all of its edges are appended in one
+            // transaction.
+            EdgeBulkLoader knowsLoader = new EdgeBulkLoader("Person", "Knows", transactionRunner);
+            knowsLoader.add(pOID1, pOID2);
+            knowsLoader.add(pOID1, pOID3);
+            knowsLoader.load();
 
 
 
@@ -75,120 +83,45 @@ public class Lab03f {
     }
 
 
-    private void establishKnows(String fromOID, String toOID) {
-
-        int transLCERetryCount = 0;
-	boolean transactionSuccessful = false;
-	while (!transactionSuccessful) {
-            // Create a new TransactionScope that is READ_UPDATE.
-            try (TransactionScope tx = new TransactionScope(TransactionMode.READ_UPDATE)) {
-
-                // Lookup the Person associated with fromOID.
-                Instance iPersonFrom = Instance.lookup(ObjectId.fromString(fromOID));
-
-                // Lookup the Person associated with toOID.
-                Instance iPersonTo = Instance.lookup(ObjectId.fromString(toOID));
-
-
-                // Get the Knows list from iPersonFrom.
-                Variable vKnows = iPersonFrom.getAttributeValue("Knows");
-                com.objy.data.List knowsList = vKnows.listValue();
-
-                // vKnownEntry represents the Person that is "Known"
-                Reference refPersonTo = new Reference(iPersonTo);
-                Variable vPersonTo = new Variable(refPersonTo);
-
-                // Add the the vPersonTo entry to the knowsList.
-                knowsList.add(vPersonTo);
-
-
-
-                // The complete writes the data out to the database.
-                tx.complete();
-
-                tx.close();
-
-                logger.info("Person class created in schema.");
-
-                transactionSuccessful = true;
-
-	    } catch(LockConflictException lce) {
-		logger.info("LockConflictException. Attempting retry...  retryCount = " + ++transLCERetryCount);
-		try {
-		    Thread.sleep(10*transLCERetryCount);
-		} catch(InterruptedException ie) { }
-
-	    } catch (Exception ex) {
-		ex.printStackTrace();
-                break;
-	    }
-	}
-    }
-
-
-    private String createPersonInstance(String firstName,
+    private long createPersonInstance(String firstName,
                                     String middleInitial,
-                                    String lastName) {
+                                    String lastName) throws Exception {
 
-        String personOID = null;
+        long personOID = transactionRunner.call(TransactionMode.READ_UPDATE, () -> {
 
-        int transLCERetryCount = 0;
-	boolean transactionSuccessful = false;
-	while (!transactionSuccessful) {
-            // Create a new TransactionScope that is READ_UPDATE.
-            try (TransactionScope tx = new TransactionScope(TransactionMode.READ_UPDATE)) {
+            // Ensure that our view of the schema is up to date.
+            SchemaProvider.getDefaultPersistentProvider().refresh(true);
 
-                // Ensure that our view of the schema is up to date.
-                SchemaProvider.getDefaultPersistentProvider().refresh(true);
-
-                // Lookup the Person class from the schema in the ThingSpan federation.
-                com.objy.data.Class cPerson = com.objy.data.Class.lookupClass("Person");
-
-                // Using the cPerson Class object, create a Person Instance.
-                Instance iPerson = Instance.createPersistent(cPerson);
-
-                // Get and retain the OID of the Instance object we just created.
-                personOID = iPerson.getIdentifier().toString();
+            // Lookup the Person class from the schema in the ThingSpan federation.
+            com.objy.data.Class cPerson = com.objy.data.Class.lookupClass("Person");
 
-                logger.info("iPerson OID: " + iPerson.getIdentifier().toString());
+            // Using the cPerson Class object, create a Person Instance.
+            Instance iPerson = Instance.createPersistent(cPerson);
 
-                // We access the value of each attribute in the Instance using
-                // a variable that we 'associate' with each attribute.
+            // Get and retain the OID of the Instance object we just created,
+            // as a 64-bit Oid rather than a String to be parsed again.
+            long oid = Oid.of(iPerson.getIdentifier());
 
+            logger.info("iPerson OID: " + iPerson.getIdentifier().toString());
 
-                // Set the FirstName.
-                Variable vFirstName = iPerson.getAttributeValue("FirstName");
-                vFirstName.set(firstName);
+            // We access the value of each attribute in the Instance using
+            // a variable that we 'associate' with each attribute.
 
-                // Set the MiddleInitial.
-                Variable vMiddleInitial = iPerson.getAttributeValue("MiddleInitial");
-                vMiddleInitial.set(middleInitial);
 
-                // Set the LastName.
-                Variable vLastName = iPerson.getAttributeValue("LastName");
-                vLastName.set(lastName);
+            // Set the FirstName.
+            Variable vFirstName = iPerson.getAttributeValue("FirstName");
+            vFirstName.set(firstName);
 
+            // Set the MiddleInitial.
+            Variable vMiddleInitial = iPerson.getAttributeValue("MiddleInitial");
+            vMiddleInitial.set(middleInitial);
 
-                // The complete writes the data out to the database.
-                tx.complete();
+            // Set the LastName.
+            Variable vLastName = iPerson.getAttributeValue("LastName");
+            vLastName.set(lastName);
 
-                tx.close();
-
-                logger.info("Person class created in schema.");
-
-                transactionSuccessful = true;
-
-	    } catch(LockConflictException lce) {
-		logger.info("LockConflictException. Attempting retry...  retryCount = " + ++transLCERetryCount);
-		try {
-		    Thread.sleep(10*transLCERetryCount);
-		} catch(InterruptedException ie) { }
-
-	    } catch (Exception ex) {
-		ex.printStackTrace();
-                break;
-	    }
-	}
+            return oid;
+        });
 
         return personOID;
 
@@ -199,11 +132,8 @@ public class Lab03f {
 
     private void createSchemaPerson() {
 
-        int transLCERetryCount = 0;
-	boolean transactionSuccessful = false;
-	while (!transactionSuccessful) {
-            // Create a new TransactionScope that is READ_UPDATE.
-            try (TransactionScope tx = new TransactionScope(TransactionMode.READ_UPDATE)) {
+        try {
+            transactionRunner.run(TransactionMode.READ_UPDATE, () -> {
 
                 // Ensure that our view of the schema is up to date.
                 SchemaProvider.getDefaultPersistentProvider().refresh(true);
@@ -242,29 +172,15 @@ public class Lab03f {
 
                 // Represent the new class into the federated database.
                 SchemaProvider.getDefaultPersistentProvider().represent(cPerson);
-                
+
                 // Process the schema changes.
                 SchemaProvider.getDefaultPersistentProvider().activateEdits();
+            });
 
-                // Complete and close the transaction
-                tx.complete();
-                tx.close();
-
-                logger.info("Person class created in schema.");
-
-                transactionSuccessful = true;
-
-	    } catch(LockConflictException lce) {
-		logger.info("LockConflictException. Attempting retry...  retryCount = " + ++transLCERetryCount);
-		try {
-		    Thread.sleep(10*transLCERetryCount);
-		} catch(InterruptedException ie) { }
-
-	    } catch (Exception ex) {
-		ex.printStackTrace();
-                break;
-	    }
-	}
+            logger.info("Person class created in schema.");
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
     }
 
 
@@ -3,15 +3,15 @@ package com.objy.javaulb.labs.lab03;
 import com.objy.data.schemaProvider.SchemaProvider;
 import com.objy.data.Instance;
 import com.objy.data.LogicalType;
-import com.objy.data.Reference;
 import com.objy.data.Variable;
 import com.objy.data.dataSpecificationBuilder.ListSpecificationBuilder;
 import com.objy.data.dataSpecificationBuilder.ReferenceSpecificationBuilder;
 import com.objy.db.Connection;
-import com.objy.db.LockConflictException;
 import com.objy.db.ObjectId;
 import com.objy.db.TransactionMode;
-import com.objy.db.TransactionScope;
+import com.objy.javaulb.utils.Oid;
+import com.objy.javaulb.utils.TransactionRunner;
+import com.objy.javaulb.utils.graph.ReferenceListIndex;
 import java.io.File;
 import java.util.GregorianCalendar;
 import java.util.Properties;
@@ -35,6 +35,13 @@ public class Lab03g {
     // The connection to the ThingSpan federation.
     private Connection connection;
 
+    // Finds the entries of each Person's Knows list by OID, instead of by
+    // scanning the list.
+    private final ReferenceListIndex knowsIndex = new ReferenceListIndex("Person", "Knows");
+
+    // Runs each transaction, retrying it on lock conflicts.
+    private final TransactionRunner transactionRunner = new TransactionRunner();
+
 
 
 
@@ -54,9 +61,9 @@ public class Lab03g {
 
 
 
-            String pOID1 = createPersonInstance("Seth", "B", "Franklin");
-            String pOID2 = createPersonInstance("Tracy", "A", "Michaels");
-            String pOID3 = createPersonInstance("Diane", "M", "Thoman");
+            long pOID1 = createPersonInstance("Seth", "B", "Franklin");
+            long pOID2 = createPersonInstance("Tracy", "A", "Michaels");
+            long pOID3 = createPersonInstance("Diane", "M", "Thoman");
 
             establishKnows(pOID1, pOID2);
             establishKnows(pOID1, pOID3);
@@ -79,196 +86,98 @@ public class Lab03g {
     }
     
     
-    private void removeKnows(String fromOID, String toOID) {
+    private void removeKnows(long fromOID, long toOID) {
         
-        logger.info("removeKnows(" + fromOID + ", " + toOID + ")");
+        logger.info("removeKnows(" + Oid.toString(fromOID) + ", " + Oid.toString(toOID) + ")");
 
-        int transLCERetryCount = 0;
-	boolean transactionSuccessful = false;
-	while (!transactionSuccessful) {
-            // Create a new TransactionScope that is READ_UPDATE.
-            try (TransactionScope tx = new TransactionScope(TransactionMode.READ_UPDATE)) {
+        try {
+            transactionRunner.run(TransactionMode.READ_UPDATE, () -> {
 
                 // Lookup the Person associated with fromOID.
-                Instance iPersonFrom = Instance.lookup(ObjectId.fromString(fromOID));
+                Instance iPersonFrom = Instance.lookup(new ObjectId(fromOID));
 
                 // Lookup the Person associated with toOID.
-                Instance iPersonTo = Instance.lookup(ObjectId.fromString(toOID));
-
-
-                // Get the Knows list from iPersonFrom.
-                Variable vKnows = iPersonFrom.getAttributeValue("Knows");
-                com.objy.data.List knowsList = vKnows.listValue();
-                
-                
-                // vKnownEntry represents the Person that is "Known"
-                Reference rPersonTo = new Reference(iPersonTo);
-                
-                Variable vKnowsEntry;
-                boolean found = false;
-                for (int i = 0; i < knowsList.size(); i++) {
-                    vKnowsEntry = knowsList.get(i);
-                    Reference rPersonToCheck = vKnowsEntry.referenceValue();
-                    
-                    logger.info("Evaluating " + rPersonToCheck.getIdentifier().toString());
-                                      
-                    // Check to see if the referenced objects are the same by OID.
-                    if (rPersonToCheck.getIdentifier().toString().equals(rPersonTo.getIdentifier().toString())) {
-                        logger.info("Removing " + rPersonToCheck.getIdentifier().toString() + " from " + fromOID);
-                        knowsList.remove(i);
-                        found = true;
-                        break;
-                    }
-                    
-                    vKnowsEntry.clear();
-                }
-                
-                if (!found) {
-                    logger.info("The 'Knows' list in object " + fromOID + " did reference " + toOID + ". No action taken.");             
-                }
-                
-
-
+                Instance iPersonTo = Instance.lookup(new ObjectId(toOID));
 
-                // The complete writes the data out to the database.
-                tx.complete();
 
-                tx.close();
-
-                logger.info("Person class created in schema.");
-
-                transactionSuccessful = true;
-
-	    } catch(LockConflictException lce) {
-		logger.info("LockConflictException. Attempting retry...  retryCount = " + ++transLCERetryCount);
-		try {
-		    Thread.sleep(10*transLCERetryCount);
-		} catch(InterruptedException ie) { }
-
-	    } catch (Exception ex) {
-		ex.printStackTrace();
-                break;
-	    }
-	}
+                // Remove iPersonTo from the Knows list of iPersonFrom. The
+                // index finds its entry without scanning the list.
+                boolean found = knowsIndex.remove(iPersonFrom, iPersonTo);
+                if (found) {
+                    logger.info("Removed " + Oid.toString(toOID) + " from " + Oid.toString(fromOID));
+                } else {
+                    logger.info("The 'Knows' list in object " + Oid.toString(fromOID) + " did not reference " + Oid.toString(toOID) + ". No action taken.");             
+                }
+            });
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
     }
 
 
 
 
-    private void establishKnows(String fromOID, String toOID) {
-
-        int transLCERetryCount = 0;
-	boolean transactionSuccessful = false;
-	while (!transactionSuccessful) {
-            // Create a new TransactionScope that is READ_UPDATE.
-            try (TransactionScope tx = new TransactionScope(TransactionMode.READ_UPDATE)) {
-
-            // Lookup the Person associated with fromOID.
-            Instance iPersonFrom = Instance.lookup(ObjectId.fromString(fromOID));
-
-            // Lookup the Person associated with toOID.
-            Instance iPersonTo = Instance.lookup(ObjectId.fromString(toOID));
-
-
-            // Get the Knows list from iPersonFrom.
-            Variable vKnows = iPersonFrom.getAttributeValue("Knows");
-            com.objy.data.List knowsList = vKnows.listValue();
-
-            // vKnownEntry represents the Person that is "Known"
-            Reference refPersonTo = new Reference(iPersonTo);
-            Variable vPersonTo = new Variable(refPersonTo);
-
-            // Add the the vPersonTo entry to the knowsList.
-            knowsList.add(vPersonTo);
-
-
-
-                // The complete writes the data out to the database.
-                tx.complete();
+    private void establishKnows(long fromOID, long toOID) {
 
-                tx.close();
+        try {
+            transactionRunner.run(TransactionMode.READ_UPDATE, () -> {
 
-                logger.info("Person class created in schema.");
+                // Lookup the Person associated with fromOID.
+                Instance iPersonFrom = Instance.lookup(new ObjectId(fromOID));
 
-                transactionSuccessful = true;
+                // Lookup the Person associated with toOID.
+                Instance iPersonTo = Instance.lookup(new ObjectId(toOID));
 
-	    } catch(LockConflictException lce) {
-		logger.info("LockConflictException. Attempting retry...  retryCount = " + ++transLCERetryCount);
-		try {
-		    Thread.sleep(10*transLCERetryCount);
-		} catch(InterruptedException ie) { }
 
-	    } catch (Exception ex) {
-		ex.printStackTrace();
-                break;
-	    }
-	}
+                // Add iPersonTo to the Knows list of iPersonFrom, through the
+                // index so that it stays up to date.
+                knowsIndex.add(iPersonFrom, iPersonTo);
+            });
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
     }
 
 
-    private String createPersonInstance(String firstName,
+    private long createPersonInstance(String firstName,
                                     String middleInitial,
-                                    String lastName) {
-
-        String personOID = null;
-
-        int transLCERetryCount = 0;
-	boolean transactionSuccessful = false;
-	while (!transactionSuccessful) {
-            // Create a new TransactionScope that is READ_UPDATE.
-            try (TransactionScope tx = new TransactionScope(TransactionMode.READ_UPDATE)) {
-
-                // Ensure that our view of the schema is up to date.
-                SchemaProvider.getDefaultPersistentProvider().refresh(true);
-
-                // Lookup the Person class from the schema in the ThingSpan federation.
-                com.objy.data.Class cPerson = com.objy.data.Class.lookupClass("Person");
-
-                // Using the cPerson Class object, create a Person Instance.
-                Instance iPerson = Instance.createPersistent(cPerson);
+                                    String lastName) throws Exception {
 
-                // Get and retain the OID of the Instance object we just created.
-                personOID = iPerson.getIdentifier().toString();
+        long personOID = transactionRunner.call(TransactionMode.READ_UPDATE, () -> {
 
-                logger.info("iPerson OID: " + iPerson.getIdentifier().toString());
+            // Ensure that our view of the schema is up to date.
+            SchemaProvider.getDefaultPersistentProvider().refresh(true);
 
-                // We access the value of each attribute in the Instance using
-                // a variable that we 'associate' with each attribute.
+            // Lookup the Person class from the schema in the ThingSpan federation.
+            com.objy.data.Class cPerson = com.objy.data.Class.lookupClass("Person");
 
+            // Using the cPerson Class object, create a Person Instance.
+            Instance iPerson = Instance.createPersistent(cPerson);
 
-                // Set the FirstName.
-                Variable vFirstName = iPerson.getAttributeValue("FirstName");
-                vFirstName.set(firstName);
+            // Get and retain the OID of the Instance object we just created,
+            // as a 64-bit Oid rather than a String to be parsed again.
+            long oid = Oid.of(iPerson.getIdentifier());
 
-                // Set the MiddleInitial.
-                Variable vMiddleInitial = iPerson.getAttributeValue("MiddleInitial");
-                vMiddleInitial.set(middleInitial);
+            logger.info("iPerson OID: " + iPerson.getIdentifier().toString());
 
-                // Set the LastName.
-                Variable vLastName = iPerson.getAttributeValue("LastName");
-                vLastName.set(lastName);
+            // We access the value of each attribute in the Instance using
+            // a variable that we 'associate' with each attribute.
 
 
-                // The complete writes the data out to the database.
-                tx.complete();
+            // Set the FirstName.
+            Variable vFirstName = iPerson.getAttributeValue("FirstName");
+            vFirstName.set(firstName);
 
-                tx.close();
+            // Set the MiddleInitial.
+            Variable vMiddleInitial = iPerson.getAttributeValue("MiddleInitial");
+            vMiddleInitial.set(middleInitial);
 
-                logger.info("Person class created in schema.");
+            // Set the LastName.
+            Variable vLastName = iPerson.getAttributeValue("LastName");
+            vLastName.set(lastName);
 
-                transactionSuccessful = true;
-
-	    } catch(LockConflictException lce) {
-		logger.info("LockConflictException. Attempting retry...  retryCount = " + ++transLCERetryCount);
-		try {
-		    Thread.sleep(10*transLCERetryCount);
-		} catch(InterruptedException ie) { }
-
-	    } catch (Exception ex) {
-		ex.printStackTrace();
-                break;
-	    }
-	}
+            return oid;
+        });
 
         return personOID;
 
@@ -279,11 +188,8 @@ public class Lab03g {
 
     private void createSchemaPerson() {
 
-        int transLCERetryCount = 0;
-	boolean transactionSuccessful = false;
-	while (!transactionSuccessful) {
-            // Create a new TransactionScope that is READ_UPDATE.
-            try (TransactionScope tx = new TransactionScope(TransactionMode.READ_UPDATE)) {
+        try {
+            transactionRunner.run(TransactionMode.READ_UPDATE, () -> {
 
                 // Ensure that our view of the schema is up to date.
                 SchemaProvider.getDefaultPersistentProvider().refresh(true);
@@ -322,29 +228,15 @@ public class Lab03g {
 
                 // Represent the new class into the federated database.
                 SchemaProvider.getDefaultPersistentProvider().represent(cPerson);
-                
+
                 // Process the schema changes.
                 SchemaProvider.getDefaultPersistentProvider().activateEdits();
+            });
 
-                // Complete and close the transaction
-                tx.complete();
-                tx.close();
-
-                logger.info("Person class created in schema.");
-
-                transactionSuccessful = true;
-
-	    } catch(LockConflictException lce) {
-		logger.info("LockConflictException. Attempting retry...  retryCount = " + ++transLCERetryCount);
-		try {
-		    Thread.sleep(10*transLCERetryCount);
-		} catch(InterruptedException ie) { }
-
-	    } catch (Exception ex) {
-		ex.printStackTrace();
-                break;
-	    }
-	}
+            logger.info("Person class created in schema.");
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
     }
 
 
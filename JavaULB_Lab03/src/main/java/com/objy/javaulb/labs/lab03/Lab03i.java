@@ -9,6 +9,9 @@ import com.objy.db.Connection;
 import com.objy.db.LockConflictException;
 import com.objy.db.TransactionMode;
 import com.objy.db.TransactionScope;
+import com.objy.javaulb.utils.BatchedIngest;
+import com.objy.javaulb.utils.SchemaCache;
+import com.objy.javaulb.utils.TransactionRunner;
 import com.objy.javaulb.utils.names.Name;
 import com.objy.javaulb.utils.names.NameFactory;
 import java.io.File;
@@ -34,6 +37,9 @@ public class Lab03i {
     private Connection connection;
     private NameFactory nameFactory;
 
+    // Runs each transaction, retrying it on lock conflicts.
+    private final TransactionRunner transactionRunner = new TransactionRunner();
+
 
 
 
@@ -252,36 +258,9 @@ public class Lab03i {
         try {
             nameFactory = new NameFactory();
 
-            int transLCERetryCount = 0;
-            boolean transactionSuccessful = false;
-            while (!transactionSuccessful) {
-                // Create a new TransactionScope that is READ_UPDATE.
-                try (TransactionScope tx = new TransactionScope(TransactionMode.READ_UPDATE)) {
-
-                    createSomePersons(100, nameFactory);
-                    createSomeEmployees(100, nameFactory);
-
-
-                    // The complete writes the data out to the database.
-                    tx.complete();
-
-                    tx.close();
-
-                    logger.info("Person class created in schema.");
-
-                    transactionSuccessful = true;
-
-                } catch(LockConflictException lce) {
-                    logger.info("LockConflictException. Attempting retry...  retryCount = " + ++transLCERetryCount);
-                    try {
-                        Thread.sleep(10*transLCERetryCount);
-                    } catch(InterruptedException ie) { }
-
-                } catch (Exception ex) {
-                    ex.printStackTrace();
-                    break;
-                }
-            }
+            // Each of these commits its objects in batches.
+            createSomePersons(100, nameFactory);
+            createSomeEmployees(100, nameFactory);
 
         } catch (Exception ex) {
             logger.error("Error: ", ex);
@@ -293,76 +272,72 @@ public class Lab03i {
 
     private void createSomePersons(int personCount, NameFactory nameFactory) throws Exception {
 
-        // Ensure that our view of the schema is up to date.
-        SchemaProvider.getDefaultPersistentProvider().refresh(true);
-
-        // Lookup the Person class from the schema in the ThingSpan federation.
-        com.objy.data.Class cPerson = com.objy.data.Class.lookupClass("Person");
-
-        Name name;
-
-        for (int i = 0; i < personCount; i++) {
-            
-            name = nameFactory.createName();
+        new BatchedIngest(transactionRunner).ingest(personCount, () -> {
 
-            // Using the cPerson Class object, create a Person Instance.
-            Instance iPerson = Instance.createPersistent(cPerson);
+            // Ensure that our view of the schema is up to date, once per
+            // batch rather than once per object.
+            SchemaCache.getDefault().refresh();
 
-            logger.info("iPerson OID: " + iPerson.getIdentifier().toString());
+            // Lookup the Person class from the schema in the ThingSpan federation.
+            com.objy.data.Class cPerson = SchemaCache.getDefault().lookupClass("Person");
 
-            // We access the value of each attribute in the Instance using
-            // a variable that we 'associate' with each attribute.
-            Variable vFirstName = iPerson.getAttributeValue("FirstName");
-            vFirstName.set(name.first);
+            return i -> {
+                Name name = nameFactory.createName();
 
-            Variable vMiddleInitial = iPerson.getAttributeValue("MiddleInitial");
-            vMiddleInitial.set(name.middle.substring(0,1));
+                // Using the cPerson Class object, create a Person Instance.
+                Instance iPerson = Instance.createPersistent(cPerson);
 
-            Variable vLastName = iPerson.getAttributeValue("LastName");
-            vLastName.set(name.last);
-        }
+                logger.info("iPerson OID: " + iPerson.getIdentifier().toString());
 
+                // We access the value of each attribute in the Instance using
+                // a variable that we 'associate' with each attribute.
+                Variable vFirstName = iPerson.getAttributeValue("FirstName");
+                vFirstName.set(name.first);
 
+                Variable vMiddleInitial = iPerson.getAttributeValue("MiddleInitial");
+                vMiddleInitial.set(name.middle.substring(0,1));
 
-        
+                Variable vLastName = iPerson.getAttributeValue("LastName");
+                vLastName.set(name.last);
+            };
+        });
     }
 
-    private void createSomeEmployees(int employeeCount, NameFactory nameFactory) {
-
-        // Ensure that our view of the schema is up to date.
-        SchemaProvider.getDefaultPersistentProvider().refresh(true);
+    private void createSomeEmployees(int employeeCount, NameFactory nameFactory) throws Exception {
 
+        new BatchedIngest(transactionRunner).ingest(employeeCount, () -> {
 
-        // Lookup the Person class from the schema in the ThingSpan federation.
-        com.objy.data.Class cEmployee = com.objy.data.Class.lookupClass("Employee");
+            // Ensure that our view of the schema is up to date.
+            SchemaCache.getDefault().refresh();
 
-        Name name;
-        int employeeId = 1000;
+            // Lookup the Person class from the schema in the ThingSpan federation.
+            com.objy.data.Class cEmployee = SchemaCache.getDefault().lookupClass("Employee");
 
-        for (int i = 0; i < employeeCount; i++) {
+            return i -> {
+                Name name = nameFactory.createName();
 
-            name = nameFactory.createName();
+                // Using the cPerson Class object, create a Person Instance.
+                Instance iEmployee = Instance.createPersistent(cEmployee);
 
-            // Using the cPerson Class object, create a Person Instance.
-            Instance iEmployee = Instance.createPersistent(cEmployee);
+                logger.info("iEmployee OID: " + iEmployee.getIdentifier().toString());
 
-            logger.info("iEmployee OID: " + iEmployee.getIdentifier().toString());
+                // We access the value of each attribute in the Instance using
+                // a variable that we 'associate' with each attribute.
+                Variable vFirstName = iEmployee.getAttributeValue("FirstName");
+                vFirstName.set(name.first);
 
-            // We access the value of each attribute in the Instance using
-            // a variable that we 'associate' with each attribute.
-            Variable vFirstName = iEmployee.getAttributeValue("FirstName");
-            vFirstName.set(name.first);
+                Variable vMiddleInitial = iEmployee.getAttributeValue("MiddleInitial");
+                vMiddleInitial.set(name.middle.substring(0,1));
 
-            Variable vMiddleInitial = iEmployee.getAttributeValue("MiddleInitial");
-            vMiddleInitial.set(name.middle.substring(0,1));
+                Variable vLastName = iEmployee.getAttributeValue("LastName");
+                vLastName.set(name.last);
 
-            Variable vLastName = iEmployee.getAttributeValue("LastName");
-            vLastName.set(name.last);
-
-            Variable vEmployeeId = iEmployee.getAttributeValue("EmployeeID");
-            vEmployeeId.set("" + ++employeeId);
-                
-	}
+                // Derived from the index, so that a retried batch gives the
+                // same IDs.
+                Variable vEmployeeId = iEmployee.getAttributeValue("EmployeeID");
+                vEmployeeId.set("" + (1001 + i));
+            };
+        });
     }
 
 
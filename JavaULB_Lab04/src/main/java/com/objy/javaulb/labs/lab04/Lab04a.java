@@ -9,6 +9,9 @@ import com.objy.db.LockConflictException;
 import com.objy.db.ObjectId;
 import com.objy.db.TransactionMode;
 import com.objy.db.TransactionScope;
+import com.objy.javaulb.utils.Oid;
+import com.objy.javaulb.utils.SchemaCache;
+import com.objy.javaulb.utils.TransactionRunner;
 import java.io.File;
 import java.util.Properties;
 import org.slf4j.Logger;
@@ -34,6 +37,9 @@ public class Lab04a {
     // The connection to the ThingSpan federation.
     private Connection connection;
 
+    // Runs each transaction, retrying it on lock conflicts.
+    private final TransactionRunner transactionRunner = new TransactionRunner();
+
     public Lab04a() {
 
         logger.info("Running " + this.getClass().getSimpleName());
@@ -45,7 +51,7 @@ public class Lab04a {
 
             createPersonSchema();
 
-            String oid = createPersonInstance("John", "Q", "Doe");
+            long oid = createPersonInstance("John", "Q", "Doe");
 
             lookupPersonByOID(oid);
 
@@ -107,7 +113,7 @@ public class Lab04a {
             try (TransactionScope tx = new TransactionScope(TransactionMode.READ_UPDATE)) {
 
                 // Ensure that our view of the schema is up to date.
-                SchemaProvider.getDefaultPersistentProvider().refresh(true);
+                SchemaCache.getDefault().refresh();
 
                 // Use ClassBuilder to create the schema definition.
                 com.objy.data.ClassBuilder cBuilder = new com.objy.data.ClassBuilder("Person");
@@ -122,7 +128,7 @@ public class Lab04a {
                 SchemaProvider.getDefaultPersistentProvider().represent(cPerson);
                 
                 // Process the schema changes.
-                SchemaProvider.getDefaultPersistentProvider().activateEdits();
+                SchemaCache.getDefault().activateEdits();
 
                 // Complete and close the transaction
                 tx.complete();
@@ -145,109 +151,71 @@ public class Lab04a {
         }
     }
 
-    private String createPersonInstance(String firstName, String middleInitial, String lastName) {
-
-        String oid = null;
-
-        int transLCERetryCount = 0;
-        boolean transactionSuccessful = false;
-        while (!transactionSuccessful) {
-            // Create a new TransactionScope that is READ_UPDATE.
-            try (TransactionScope tx = new TransactionScope(TransactionMode.READ_UPDATE)) {
-
-                // Ensure that our view of the schema is up to date.
-                SchemaProvider.getDefaultPersistentProvider().refresh(true);
+    private long createPersonInstance(String firstName, String middleInitial, String lastName) throws Exception {
 
-                // Lookup the Person class from the schema in the ThingSpan federation.
-                com.objy.data.Class cPerson = com.objy.data.Class.lookupClass("Person");
+        long oid = transactionRunner.call(TransactionMode.READ_UPDATE, () -> {
 
-                // Using the cPerson Class object, create a Person Instance.
-                Instance iPerson = Instance.createPersistent(cPerson);
+            // Ensure that our view of the schema is up to date.
+            SchemaCache.getDefault().refresh();
 
-                oid = iPerson.getIdentifier().toString();
+            // Lookup the Person class from the schema in the ThingSpan federation.
+            com.objy.data.Class cPerson = SchemaCache.getDefault().lookupClass("Person");
 
-                logger.info("iPerson OID: " + iPerson.getIdentifier().toString());
-
-                // We access the value of each attribute in the Instance using
-                // a variable that we 'associate' with each attribute.
-                Variable vFirstName = iPerson.getAttributeValue("FirstName");
-                vFirstName.set(firstName);
+            // Using the cPerson Class object, create a Person Instance.
+            Instance iPerson = Instance.createPersistent(cPerson);
 
-                Variable vMiddleInitial = iPerson.getAttributeValue("MiddleInitial");
-                vMiddleInitial.set(middleInitial);
+            // Keep the OID as a 64-bit Oid rather than a String to be parsed
+            // again.
+            long personOID = Oid.of(iPerson.getIdentifier());
 
-                Variable vLastName = iPerson.getAttributeValue("LastName");
-                vLastName.set(lastName);
+            logger.info("iPerson OID: " + iPerson.getIdentifier().toString());
 
-                // The complete writes the data out to the database.
-                tx.complete();
+            // We access the value of each attribute in the Instance using
+            // a variable that we 'associate' with each attribute.
+            Variable vFirstName = iPerson.getAttributeValue("FirstName");
+            vFirstName.set(firstName);
 
-                tx.close();
+            Variable vMiddleInitial = iPerson.getAttributeValue("MiddleInitial");
+            vMiddleInitial.set(middleInitial);
 
-                logger.info("Person object created in federation.");
+            Variable vLastName = iPerson.getAttributeValue("LastName");
+            vLastName.set(lastName);
 
-                transactionSuccessful = true;
+            return personOID;
+        });
 
-            } catch (LockConflictException lce) {
-                logger.info("LockConflictException. Attempting retry...  retryCount = " + ++transLCERetryCount);
-                try {
-                    Thread.sleep(10 * transLCERetryCount);
-                } catch (InterruptedException ie) {
-                }
-
-            } catch (Exception ex) {
-                ex.printStackTrace();
-                break;
-            }
-        }
+        logger.info("Person object created in federation.");
 
         return oid;
     }
 
-    private void lookupPersonByOID(String oid) {
+    private void lookupPersonByOID(long oid) {
 
-        int transLCERetryCount = 0;
-        boolean transactionSuccessful = false;
-        while (!transactionSuccessful) {
-            // Create a new TransactionScope that is READ_UPDATE.
-            try (TransactionScope tx = new TransactionScope(TransactionMode.READ_UPDATE)) {
+        try {
+            // A lookup takes no update locks.
+            transactionRunner.runQuery(() -> {
 
                 // Ensure that our view of the schema is up to date.
-                SchemaProvider.getDefaultPersistentProvider().refresh(true);
+                SchemaCache.getDefault().refresh();
 
                 // Using the cPerson Class object, create a Person Instance.
-                Instance iPerson = Instance.lookup(ObjectId.fromString(oid));
+                Instance iPerson = Instance.lookup(new ObjectId(oid));
 
                 logger.info("iPerson OID: " + iPerson.getIdentifier().toString());
 
                 // We access the value of each attribute in the Instance using
                 // a variable that we 'associate' with each attribute.
                 Variable vFirstName = iPerson.getAttributeValue("FirstName");
-                logger.info(oid + " Person.FirstName:     " + vFirstName.stringValue());
+                logger.info(Oid.toString(oid) + " Person.FirstName:     " + vFirstName.stringValue());
 
                 Variable vMiddleInitial = iPerson.getAttributeValue("MiddleInitial");
-                logger.info(oid + " Person.MiddleInitial: " + vMiddleInitial.stringValue());
+                logger.info(Oid.toString(oid) + " Person.MiddleInitial: " + vMiddleInitial.stringValue());
 
                 Variable vLastName = iPerson.getAttributeValue("LastName");
-                logger.info(oid + " Person.LastName:      " + vLastName.stringValue());
-
-                // The complete writes the data out to the database.
-                tx.complete();
-                tx.close();
-
-                transactionSuccessful = true;
-
-            } catch (LockConflictException lce) {
-                logger.info("LockConflictException. Attempting retry...  retryCount = " + ++transLCERetryCount);
-                try {
-                    Thread.sleep(10 * transLCERetryCount);
-                } catch (InterruptedException ie) {
-                }
-
-            } catch (Exception ex) {
-                ex.printStackTrace();
-                break;
-            }
+                logger.info(Oid.toString(oid) + " Person.LastName:      " + vLastName.stringValue());
+            });
+        } catch (Exception ex) {
+            ex.printStackTrace();
         }
     }
 
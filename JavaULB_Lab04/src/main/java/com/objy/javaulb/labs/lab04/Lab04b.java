@@ -6,13 +6,18 @@ import com.objy.data.Instance;
 import com.objy.data.LogicalType;
 import com.objy.data.Variable;
 import com.objy.db.Connection;
-import com.objy.db.LockConflictException;
 import com.objy.db.ObjectId;
 import com.objy.db.TransactionMode;
-import com.objy.db.TransactionScope;
+import com.objy.javaulb.utils.BatchedIngest;
+import com.objy.javaulb.utils.Oid;
+import com.objy.javaulb.utils.QueryCursor;
+import com.objy.javaulb.utils.SchemaCache;
+import com.objy.javaulb.utils.StatementCache;
+import com.objy.javaulb.utils.TextSink;
 import com.objy.statement.Statement;
 import com.objy.javaulb.utils.names.Name;
 import com.objy.javaulb.utils.names.NameFactory;
+import com.objy.javaulb.utils.TransactionRunner;
 import java.io.File;
 import java.util.Properties;
 import org.slf4j.Logger;
@@ -41,6 +46,12 @@ public class Lab04b {
 
     private NameFactory nameFactory;
 
+    // Runs each transaction, retrying it on lock conflicts.
+    private final TransactionRunner transactionRunner = new TransactionRunner();
+
+    // Buffers the query output, instead of a System.out.println per line.
+    private final TextSink out = TextSink.stdout();
+
     public Lab04b() {
 
         logger.info("Running " + this.getClass().getSimpleName());
@@ -121,14 +132,11 @@ public class Lab04b {
 
     private void createPersonSchema() {
 
-        int transLCERetryCount = 0;
-        boolean transactionSuccessful = false;
-        while (!transactionSuccessful) {
-            // Create a new TransactionScope that is READ_UPDATE.
-            try (TransactionScope tx = new TransactionScope(TransactionMode.READ_UPDATE)) {
+        try {
+            transactionRunner.run(TransactionMode.READ_UPDATE, () -> {
 
                 // Ensure that our view of the schema is up to date.
-                SchemaProvider.getDefaultPersistentProvider().refresh(true);
+                SchemaCache.getDefault().refresh();
 
                 // Use ClassBuilder to create the schema definition.
                 com.objy.data.ClassBuilder cBuilder = new com.objy.data.ClassBuilder("Person");
@@ -143,49 +151,35 @@ public class Lab04b {
                 SchemaProvider.getDefaultPersistentProvider().represent(cPerson);
                 
                 // Process the schema changes.
-                SchemaProvider.getDefaultPersistentProvider().activateEdits();
-
-                // Complete and close the transaction
-                tx.complete();
-                tx.close();
-
-                logger.info("Person class created in schema.");
-
-                transactionSuccessful = true;
-
-            } catch (LockConflictException lce) {
-                logger.info("LockConflictException. Attempting retry...  retryCount = " + ++transLCERetryCount);
-                try {
-                    Thread.sleep(10 * transLCERetryCount);
-                } catch (InterruptedException ie) {
-                }
+                SchemaCache.getDefault().activateEdits();
+            });
 
-            } catch (Exception ex) {
-                ex.printStackTrace();
-            }
+            logger.info("Person class created in schema.");
+        } catch (Exception ex) {
+            ex.printStackTrace();
         }
     }
 
-    private String createPeople(int count) {
+    // Returns the OID of the last Person created; 0 if none was.
+    private long createPeople(int count) {
 
-        String oid = null;
+        // Set inside the batches, as a 64-bit Oid rather than a String.
+        long[] oid = new long[1];
 
-        int transLCERetryCount = 0;
-        boolean transactionSuccessful = false;
-        while (!transactionSuccessful) {
-            // Create a new TransactionScope that is READ_UPDATE.
-            try (TransactionScope tx = new TransactionScope(TransactionMode.READ_UPDATE)) {
+        try {
+            // Commit every batch of objects, rather than all of them at once.
+            BatchedIngest.Report report = new BatchedIngest(transactionRunner).ingest(count, () -> {
 
-                // Ensure that our view of the schema is up to date.
-                SchemaProvider.getDefaultPersistentProvider().refresh(true);
+                // Ensure that our view of the schema is up to date, once per
+                // batch rather than once per object.
+                SchemaCache.getDefault().refresh();
 
                 // Lookup the Person class from the schema in the ThingSpan federation.
-                com.objy.data.Class cPerson = com.objy.data.Class.lookupClass("Person");
-
+                com.objy.data.Class cPerson = SchemaCache.getDefault().lookupClass("Person");
 
-                for (int i = 0; i < 1000; i++) {
+                return i -> {
                     Name name = nameFactory.createName();
-                    
+                
                     //logger.info("Name: " + name.first + " " + name.middle + " " + name.last);
 
                     // Using the cPerson Class object, create a Person Instance.
@@ -204,34 +198,17 @@ public class Lab04b {
                     Variable vLastName = iPerson.getAttributeValue("LastName");
                     vLastName.set(name.last);
 
-                    if ((i%100) == 0) {
-                        logger.info("Persons created: " + i);
-                    }
-                }
-
-                // The complete writes the data out to the database.
-                tx.complete();
-
-                tx.close();
+                    oid[0] = Oid.of(iPerson.getIdentifier());
+                };
+            });
 
-                //logger.info("Person class created in federation.");
-
-                transactionSuccessful = true;
-
-            } catch (LockConflictException lce) {
-                logger.info("LockConflictException. Attempting retry...  retryCount = " + ++transLCERetryCount);
-                try {
-                    Thread.sleep(10 * transLCERetryCount);
-                } catch (InterruptedException ie) {
-                }
+            logger.info("Persons created: " + report.getObjects());
 
-            } catch (Exception ex) {
-                ex.printStackTrace();
-                break;
-            }
+        } catch (Exception ex) {
+            ex.printStackTrace();
         }
 
-        return oid;
+        return oid[0];
     }
 
 
@@ -245,75 +222,58 @@ public class Lab04b {
 
         String oid = null;
 
-        int transLCERetryCount = 0;
-        boolean transactionSuccessful = false;
-        while (!transactionSuccessful) {
-            // Create a new TransactionScope that is READ_UPDATE.
-            try (TransactionScope tx = new TransactionScope(TransactionMode.READ_UPDATE)) {
+        // Hold each attempt's output, so that a retry drops what the
+        // failed attempt printed.
+        out.mark();
+        try {
+            transactionRunner.runQuery(() -> {
+
+                if (!out.reset()) {
+                    print("... (retrying; the results above were already written and are repeated below)");
+                }
 
                 // Ensure that our view of the schema is up to date.
-                SchemaProvider.getDefaultPersistentProvider().refresh(true);
+                SchemaCache.getDefault().refresh();
                
                 
-                Statement statement = new Statement("DO", doQuery);
+                Statement statement = StatementCache.getDefault().prepare(doQuery);
 
-                Variable vStatementExecute = statement.execute();
+                // Stream the results a row at a time, up to the QueryLimit.
+                long resultCount;
+                try (QueryCursor cursor = new QueryCursor(statement, QueryCursor.defaultLimit())) {
 
+                    resultCount = cursor.forEach((vResult, index) -> {
 
-                java.util.Iterator<Variable> it = vStatementExecute.sequenceValue().iterator();
-                if (!it.hasNext()) {
-                    logger.info("There were no results on query:\n\n" + doQuery);
-                }
-                
+                        Instance ix = vResult.instanceValue();
 
-                int resultCount = 0;
-                while (it.hasNext()) {
+                        if (index == 0) {
+                            displayHeader(ix);
+                        }
 
-                    Variable vResult = it.next();
+                        displayInstance(ix);
+                        return true;
+                    });
 
-                    Instance ix = vResult.instanceValue();
-
-//                    displayPersonInstance(iPerson);
-                    if (resultCount++ == 0) {
-                        displayHeader(ix);
+                    if (resultCount == 0) {
+                        logger.info("There were no results on query:\n\n" + doQuery);
+                    }
+                    if (cursor.isTruncated()) {
+                        print("... (limited to " + resultCount + " results)");
                     }
-
-                    displayInstance(ix);
-
-                    resultCount++;
                 }
-                
+
                 print("");
                 print("--------------------------------------------------------");
                 print("Result Count: " + resultCount);
-                
-                
-
-                // The complete writes the data out to the database.
-                tx.complete();
-
-                tx.close();
-
-                //logger.info("Person class created in federation.");
-
-                transactionSuccessful = true;
-
-            } catch (LockConflictException lce) {
-                logger.info("LockConflictException. Attempting retry...  retryCount = " + ++transLCERetryCount);
-                try {
-                    Thread.sleep(10 * transLCERetryCount);
-                } catch (InterruptedException ie) {
-                }
-
-            } catch (Exception ex) {
-                ex.printStackTrace();
-                break;
-            }
+            });
+        } catch (Exception ex) {
+            ex.printStackTrace();
         }
 
         print("========================================================");
         print("");
         print("");
+        out.flush();
     }
 
     
@@ -341,7 +301,8 @@ public class Lab04b {
 
         com.objy.data.Class cx = ix.getClass(true);
 
-        StringBuilder sb = new StringBuilder();
+        // Append the row straight to the output buffer.
+        StringBuilder sb = out.line();
 
         for (int i = 0; i < cx.getNumberOfAttributes(); i++) {
             Attribute at = cx.getAttribute(i);
@@ -361,7 +322,7 @@ public class Lab04b {
             }
         }
 
-        print(sb.toString());
+        out.endLine();
     }
 
 
@@ -401,58 +362,39 @@ public class Lab04b {
     
     private void print(String s) {
         
-        System.out.println(s);
+        out.println(s);
         
 //        logger.info(s);
     }
 
 
 
-    private void lookupPersonByOID(String oid) {
+    private void lookupPersonByOID(long oid) {
 
-        int transLCERetryCount = 0;
-        boolean transactionSuccessful = false;
-        while (!transactionSuccessful) {
-            // Create a new TransactionScope that is READ_UPDATE.
-            try (TransactionScope tx = new TransactionScope(TransactionMode.READ_UPDATE)) {
+        try {
+            transactionRunner.runQuery(() -> {
 
                 // Ensure that our view of the schema is up to date.
-                SchemaProvider.getDefaultPersistentProvider().refresh(true);
+                SchemaCache.getDefault().refresh();
 
                 // Using the cPerson Class object, create a Person Instance.
-                Instance iPerson = Instance.lookup(ObjectId.fromString(oid));
+                Instance iPerson = Instance.lookup(new ObjectId(oid));
 
                 logger.info("iPerson OID: " + iPerson.getIdentifier().toString());
 
                 // We access the value of each attribute in the Instance using
                 // a variable that we 'associate' with each attribute.
                 Variable vFirstName = iPerson.getAttributeValue("FirstName");
-                logger.info(oid + " Person.FirstName:     " + vFirstName.stringValue());
+                logger.info(Oid.toString(oid) + " Person.FirstName:     " + vFirstName.stringValue());
 
                 Variable vMiddleInitial = iPerson.getAttributeValue("MiddleInitial");
-                logger.info(oid + " Person.MiddleInitial: " + vMiddleInitial.stringValue());
+                logger.info(Oid.toString(oid) + " Person.MiddleInitial: " + vMiddleInitial.stringValue());
 
                 Variable vLastName = iPerson.getAttributeValue("LastName");
-                logger.info(oid + " Person.LastName:      " + vLastName.stringValue());
-
-                // The complete writes the data out to the database.
-                tx.complete();
-
-                tx.close();
-
-                transactionSuccessful = true;
-
-            } catch (LockConflictException lce) {
-                logger.info("LockConflictException. Attempting retry...  retryCount = " + ++transLCERetryCount);
-                try {
-                    Thread.sleep(10 * transLCERetryCount);
-                } catch (InterruptedException ie) {
-                }
-
-            } catch (Exception ex) {
-                ex.printStackTrace();
-                break;
-            }
+                logger.info(Oid.toString(oid) + " Person.LastName:      " + vLastName.stringValue());
+            });
+        } catch (Exception ex) {
+            ex.printStackTrace();
         }
     }
 
@@ -6,9 +6,13 @@ import com.objy.data.Instance;
 import com.objy.data.LogicalType;
 import com.objy.data.Variable;
 import com.objy.db.Connection;
-import com.objy.db.LockConflictException;
 import com.objy.db.TransactionMode;
-import com.objy.db.TransactionScope;
+import com.objy.javaulb.utils.BatchedIngest;
+import com.objy.javaulb.utils.QueryCursor;
+import com.objy.javaulb.utils.SchemaCache;
+import com.objy.javaulb.utils.StatementCache;
+import com.objy.javaulb.utils.TextSink;
+import com.objy.javaulb.utils.TransactionRunner;
 import com.objy.javaulb.utils.names.Name;
 import com.objy.javaulb.utils.names.NameFactory;
 import com.objy.statement.Statement;
@@ -40,6 +44,12 @@ public class Lab04c {
 
     private NameFactory nameFactory;
 
+    // Runs each transaction, retrying it on lock conflicts.
+    private final TransactionRunner transactionRunner = new TransactionRunner();
+
+    // Buffers the query output, instead of a System.out.println per line.
+    private final TextSink out = TextSink.stdout();
+
     public Lab04c() {
 
         logger.info("Running " + this.getClass().getSimpleName());
@@ -130,14 +140,11 @@ public class Lab04c {
 
     private void createPersonSchema() {
 
-        int transLCERetryCount = 0;
-        boolean transactionSuccessful = false;
-        while (!transactionSuccessful) {
-            // Create a new TransactionScope that is READ_UPDATE.
-            try (TransactionScope tx = new TransactionScope(TransactionMode.READ_UPDATE)) {
+        try {
+            transactionRunner.run(TransactionMode.READ_UPDATE, () -> {
 
                 // Ensure that our view of the schema is up to date.
-                SchemaProvider.getDefaultPersistentProvider().refresh(true);
+                SchemaCache.getDefault().refresh();
 
                 // Use ClassBuilder to create the schema definition.
                 com.objy.data.ClassBuilder cBuilder = new com.objy.data.ClassBuilder("Person");
@@ -152,26 +159,12 @@ public class Lab04c {
                 SchemaProvider.getDefaultPersistentProvider().represent(cPerson);
                 
                 // Process the schema changes.
-                SchemaProvider.getDefaultPersistentProvider().activateEdits();
-
-                // Complete and close the transaction
-                tx.complete();
-                tx.close();
-
-                logger.info("Person class created in schema.");
-
-                transactionSuccessful = true;
+                SchemaCache.getDefault().activateEdits();
+            });
 
-            } catch (LockConflictException lce) {
-                logger.info("LockConflictException. Attempting retry...  retryCount = " + ++transLCERetryCount);
-                try {
-                    Thread.sleep(10 * transLCERetryCount);
-                } catch (InterruptedException ie) {
-                }
-
-            } catch (Exception ex) {
-                ex.printStackTrace();
-            }
+            logger.info("Person class created in schema.");
+        } catch (Exception ex) {
+            ex.printStackTrace();
         }
     }
 
@@ -179,20 +172,18 @@ public class Lab04c {
 
         String oid = null;
 
-        int transLCERetryCount = 0;
-        boolean transactionSuccessful = false;
-        while (!transactionSuccessful) {
-            // Create a new TransactionScope that is READ_UPDATE.
-            try (TransactionScope tx = new TransactionScope(TransactionMode.READ_UPDATE)) {
+        try {
+            // Commit every batch of objects, rather than all of them at once.
+            BatchedIngest.Report report = new BatchedIngest(transactionRunner).ingest(count, () -> {
 
-                // Ensure that our view of the schema is up to date.
-                SchemaProvider.getDefaultPersistentProvider().refresh(true);
+                // Ensure that our view of the schema is up to date, once per
+                // batch rather than once per object.
+                SchemaCache.getDefault().refresh();
 
                 // Lookup the Person class from the schema in the ThingSpan federation.
-                com.objy.data.Class cPerson = com.objy.data.Class.lookupClass("Person");
-
+                com.objy.data.Class cPerson = SchemaCache.getDefault().lookupClass("Person");
 
-                for (int i = 0; i < 1000; i++) {
+                return i -> {
                     Name name = nameFactory.createName();
 
                     //logger.info("Name: " + name.first + " " + name.middle + " " + name.last);
@@ -212,32 +203,13 @@ public class Lab04c {
 
                     Variable vLastName = iPerson.getAttributeValue("LastName");
                     vLastName.set(name.last);
+                };
+            });
 
-                    if ((i%100) == 0) {
-                        logger.info("Persons created: " + i);
-                    }
-                }
-
-                // The complete writes the data out to the database.
-                tx.complete();
-
-                tx.close();
+            logger.info("Persons created: " + report.getObjects());
 
-                //logger.info("Person class created in federation.");
-
-                transactionSuccessful = true;
-
-            } catch (LockConflictException lce) {
-                logger.info("LockConflictException. Attempting retry...  retryCount = " + ++transLCERetryCount);
-                try {
-                    Thread.sleep(10 * transLCERetryCount);
-                } catch (InterruptedException ie) {
-                }
-
-            } catch (Exception ex) {
-                ex.printStackTrace();
-                break;
-            }
+        } catch (Exception ex) {
+            ex.printStackTrace();
         }
 
         return oid;
@@ -254,75 +226,57 @@ public class Lab04c {
 
         String oid = null;
 
-        int transLCERetryCount = 0;
-        boolean transactionSuccessful = false;
-        while (!transactionSuccessful) {
-            // Create a new TransactionScope that is READ_UPDATE.
-            try (TransactionScope tx = new TransactionScope(TransactionMode.READ_UPDATE)) {
-
-                // Ensure that our view of the schema is up to date.
-                SchemaProvider.getDefaultPersistentProvider().refresh(true);
-
-                Variable vStatementExecute;
+        // Hold each attempt's output, so that a retry drops what the
+        // failed attempt printed.
+        out.mark();
+        try {
+            transactionRunner.runQuery(() -> {
 
-                Statement statement = new Statement("DO", doQuery);
+                if (!out.reset()) {
+                    print("... (retrying; the results above were already written and are repeated below)");
+                }
 
-                vStatementExecute = statement.execute();
+                // Ensure that our view of the schema is up to date.
+                SchemaCache.getDefault().refresh();
 
+                Statement statement = StatementCache.getDefault().prepare(doQuery);
 
-                java.util.Iterator<Variable> it = vStatementExecute.sequenceValue().iterator();
-                if (!it.hasNext()) {
-                    logger.info("There were no results on query:\n\n" + doQuery);
-                }
+                // Stream the results a row at a time, up to the QueryLimit.
+                long resultCount;
+                try (QueryCursor cursor = new QueryCursor(statement, QueryCursor.defaultLimit())) {
 
-                boolean headerPrinted = false;
+                    resultCount = cursor.forEach((vResult, index) -> {
 
-                int resultCount = 0;
-                while (it.hasNext()) {
+                        Instance ix = vResult.instanceValue();
 
-                    Variable vResult = it.next();
+                        if (index == 0) {
+                            displayHeader(ix);
+                        }
 
-                    Instance ix = vResult.instanceValue();
+                        displayInstance(ix);
+                        return true;
+                    });
 
-                    if (!headerPrinted) {
-                        headerPrinted = true;
-                        displayHeader(ix);
+                    if (resultCount == 0) {
+                        logger.info("There were no results on query:\n\n" + doQuery);
+                    }
+                    if (cursor.isTruncated()) {
+                        print("... (limited to " + resultCount + " results)");
                     }
-
-                    displayInstance(ix);
-
-                    resultCount++;
                 }
 
                 print("");
                 print("--------------------------------------------------------");
                 print("Result Count: " + resultCount);
-
-                // The complete writes the data out to the database.
-                tx.complete();
-
-                tx.close();
-
-                //logger.info("Person class created in federation.");
-
-                transactionSuccessful = true;
-
-            } catch (LockConflictException lce) {
-                logger.info("LockConflictException. Attempting retry...  retryCount = " + ++transLCERetryCount);
-                try {
-                    Thread.sleep(10 * transLCERetryCount);
-                } catch (InterruptedException ie) {
-                }
-
-            } catch (Exception ex) {
-                ex.printStackTrace();
-                break;
-            }
+            });
+        } catch (Exception ex) {
+            ex.printStackTrace();
         }
 
         print("========================================================");
         print("");
         print("");
+        out.flush();
     }
 
 
@@ -330,7 +284,8 @@ public class Lab04c {
 
         com.objy.data.Class cx = ix.getClass(true);
 
-        StringBuilder sb = new StringBuilder();
+        // Append the row straight to the output buffer.
+        StringBuilder sb = out.line();
 
         for (int i = 0; i < cx.getNumberOfAttributes(); i++) {
             Attribute at = cx.getAttribute(i);
@@ -350,7 +305,7 @@ public class Lab04c {
             }
         }
 
-        print(sb.toString());
+        out.endLine();
     }
 
 
@@ -391,7 +346,7 @@ public class Lab04c {
     
     private void print(String s) {
         
-        System.out.println(s);
+        out.println(s);
         
 //        logger.info(s);
     }
@@ -12,6 +12,13 @@ import com.objy.db.Connection;
 import com.objy.db.LockConflictException;
 import com.objy.db.TransactionMode;
 import com.objy.db.TransactionScope;
+import com.objy.javaulb.utils.AttributeAccessor;
+import com.objy.javaulb.utils.BatchedIngest;
+import com.objy.javaulb.utils.QueryCursor;
+import com.objy.javaulb.utils.SchemaCache;
+import com.objy.javaulb.utils.StatementCache;
+import com.objy.javaulb.utils.TextSink;
+import com.objy.javaulb.utils.TransactionRunner;
 import com.objy.javaulb.utils.addresses.Address;
 import com.objy.javaulb.utils.addresses.AddressFactory;
 import com.objy.javaulb.utils.names.Name;
@@ -46,6 +53,26 @@ public class Lab04d {
     private NameFactory nameFactory;
     private AddressFactory addressFactory;
 
+    // Runs each transaction, retrying it on lock conflicts.
+    private final TransactionRunner transactionRunner = new TransactionRunner();
+
+    // Buffers the query output, instead of a System.out.println per line.
+    private final TextSink out = TextSink.stdout();
+
+    // The attributes written for every Person and Address created; each is
+    // resolved once instead of by name on every Instance.
+    private final AttributeAccessor aFirstName = AttributeAccessor.of("Person", "FirstName");
+    private final AttributeAccessor aMiddleName = AttributeAccessor.of("Person", "MiddleName");
+    private final AttributeAccessor aLastName = AttributeAccessor.of("Person", "LastName");
+
+    private final AttributeAccessor aStreet1 = AttributeAccessor.of("Address", "Street1");
+    private final AttributeAccessor aCity = AttributeAccessor.of("Address", "City");
+    private final AttributeAccessor aState = AttributeAccessor.of("Address", "State");
+    private final AttributeAccessor aZIP = AttributeAccessor.of("Address", "ZIP");
+    private final AttributeAccessor aLatitude = AttributeAccessor.of("Address", "Latitude");
+    private final AttributeAccessor aLongitude = AttributeAccessor.of("Address", "Longitude");
+    private final AttributeAccessor aLivesHere = AttributeAccessor.of("Address", "LivesHere");
+
     public Lab04d() {
 
         logger.info("Running " + this.getClass().getSimpleName());
@@ -162,7 +189,7 @@ public class Lab04d {
             try (TransactionScope tx = new TransactionScope(TransactionMode.READ_UPDATE)) {
 
                 // Ensure that our view of the schema is up to date.
-                SchemaProvider.getDefaultPersistentProvider().refresh(true);
+                SchemaCache.getDefault().refresh();
 
                 // Use ClassBuilder to create the schema definition.
                 com.objy.data.ClassBuilder cBuilder = new com.objy.data.ClassBuilder("Person");
@@ -219,7 +246,7 @@ public class Lab04d {
                 SchemaProvider.getDefaultPersistentProvider().represent(cAddress);
                 
                 // Process the schema changes.
-                SchemaProvider.getDefaultPersistentProvider().activateEdits();
+                SchemaCache.getDefault().activateEdits();
 
                 
                 // Complete and close the transaction
@@ -251,22 +278,20 @@ public class Lab04d {
 
         String oid = null;
 
-        int transLCERetryCount = 0;
-        boolean transactionSuccessful = false;
-        while (!transactionSuccessful) {
-            // Create a new TransactionScope that is READ_UPDATE.
-            try (TransactionScope tx = new TransactionScope(TransactionMode.READ_UPDATE)) {
+        try {
+            // Commit every batch of objects, rather than all of them at once.
+            BatchedIngest.Report report = new BatchedIngest(transactionRunner).ingest(count, () -> {
 
-                // Ensure that our view of the schema is up to date.
-                SchemaProvider.getDefaultPersistentProvider().refresh(true);
+                // Ensure that our view of the schema is up to date, once per
+                // batch rather than once per object.
+                SchemaCache.getDefault().refresh();
 
                 // Lookup the Person class from the schema in the ThingSpan federation.
-                com.objy.data.Class cPerson = com.objy.data.Class.lookupClass("Person");
+                com.objy.data.Class cPerson = SchemaCache.getDefault().lookupClass("Person");
                 
-                com.objy.data.Class cAddress = com.objy.data.Class.lookupClass("Address");
-
+                com.objy.data.Class cAddress = SchemaCache.getDefault().lookupClass("Address");
 
-                for (int i = 0; i < 1000; i++) {
+                return i -> {
                     Name name = nameFactory.createName();
 
                     //logger.info("Name: " + name.first + " " + name.middle + " " + name.last);
@@ -276,73 +301,37 @@ public class Lab04d {
 
                     //logger.info("iPerson OID: " + iPerson.getIdentifier().toString());
 
-                    // We access the value of each attribute in the Instance using
-                    // a variable that we 'associate' with each attribute.
-                    Variable vFirstName = iPerson.getAttributeValue("FirstName");
-                    vFirstName.set(name.first);
-
-                    Variable vMiddleInitial = iPerson.getAttributeValue("MiddleName");
-                    vMiddleInitial.set(name.middle);
-
-                    Variable vLastName = iPerson.getAttributeValue("LastName");
-                    vLastName.set(name.last);
-                    
-                    
+                    // We access the value of each attribute in the Instance
+                    // through accessors that resolved the attribute once.
+                    aFirstName.set(iPerson, name.first);
+                    aMiddleName.set(iPerson, name.middle);
+                    aLastName.set(iPerson, name.last);
+                
+                
                     Address address = addressFactory.getAddress();
                     Instance iAddress = Instance.createPersistent(cAddress);
-                    
-                    Variable vStreet1 = iAddress.getAttributeValue("Street1");
-                    vStreet1.set(address.number + " " + address.street);
-                    
-                    Variable vCity = iAddress.getAttributeValue("City");
-                    vCity.set(address.city);
-                    
-                    Variable vState = iAddress.getAttributeValue("State");
-                    vState.set(address.state);
-                    
-                    Variable vZIP = iAddress.getAttributeValue("ZIP");
-                    vZIP.set(address.zip);
-                    
-                    Variable vLat = iAddress.getAttributeValue("Latitude");
-                    vLat.set(address.latitude);
-                    
-                    Variable vLon = iAddress.getAttributeValue("Longitude");
-                    vLon.set(address.longitude);
-                    
+                
+                    aStreet1.set(iAddress, address.number + " " + address.street);
+                    aCity.set(iAddress, address.city);
+                    aState.set(iAddress, address.state);
+                    aZIP.set(iAddress, address.zip);
+                    aLatitude.set(iAddress, address.latitude);
+                    aLongitude.set(iAddress, address.longitude);
+                
                     // Remember, we only have to set one end of the relationship.
                     // The other end it set automatically based on the schema 
                     // definition.
-                    Variable vLivesHere = iAddress.getAttributeValue("LivesHere");
+                    Variable vLivesHere = aLivesHere.get(iAddress);
                     com.objy.data.List livesHere = vLivesHere.listValue();
                     Variable vRef = new Variable(new Reference(iPerson));
                     livesHere.add(vRef);
-                    
+                };
+            });
 
-                    if ((i%100) == 0) {
-                        logger.info("Persons created: " + i);
-                    }
-                }
-
-                // The complete writes the data out to the database.
-                tx.complete();
-
-                tx.close();
-
-                //logger.info("Person class created in federation.");
-
-                transactionSuccessful = true;
-
-            } catch (LockConflictException lce) {
-                logger.info("LockConflictException. Attempting retry...  retryCount = " + ++transLCERetryCount);
-                try {
-                    Thread.sleep(10 * transLCERetryCount);
-                } catch (InterruptedException ie) {
-                }
+            logger.info("Persons created: " + report.getObjects());
 
-            } catch (Exception ex) {
-                ex.printStackTrace();
-                break;
-            }
+        } catch (Exception ex) {
+            ex.printStackTrace();
         }
 
         return oid;
@@ -359,75 +348,57 @@ public class Lab04d {
 
         String oid = null;
 
-        int transLCERetryCount = 0;
-        boolean transactionSuccessful = false;
-        while (!transactionSuccessful) {
-            // Create a new TransactionScope that is READ_UPDATE.
-            try (TransactionScope tx = new TransactionScope(TransactionMode.READ_UPDATE)) {
-
-                // Ensure that our view of the schema is up to date.
-                SchemaProvider.getDefaultPersistentProvider().refresh(true);
-
-                Variable vStatementExecute;
+        // Hold each attempt's output, so that a retry drops what the
+        // failed attempt printed.
+        out.mark();
+        try {
+            transactionRunner.runQuery(() -> {
 
-                Statement statement = new Statement("DO", doQuery);
+                if (!out.reset()) {
+                    print("... (retrying; the results above were already written and are repeated below)");
+                }
 
-                vStatementExecute = statement.execute();
+                // Ensure that our view of the schema is up to date.
+                SchemaCache.getDefault().refresh();
 
+                Statement statement = StatementCache.getDefault().prepare(doQuery);
 
-                java.util.Iterator<Variable> it = vStatementExecute.sequenceValue().iterator();
-                if (!it.hasNext()) {
-                    logger.info("There were no results on query:\n\n" + doQuery);
-                }
+                // Stream the results a row at a time, up to the QueryLimit.
+                long resultCount;
+                try (QueryCursor cursor = new QueryCursor(statement, QueryCursor.defaultLimit())) {
 
-                boolean headerPrinted = false;
+                    resultCount = cursor.forEach((vResult, index) -> {
 
-                int resultCount = 0;
-                while (it.hasNext()) {
+                        Instance ix = vResult.instanceValue();
 
-                    Variable vResult = it.next();
+                        if (index == 0) {
+                            displayHeader(ix);
+                        }
 
-                    Instance ix = vResult.instanceValue();
+                        displayInstance(ix);
+                        return true;
+                    });
 
-                    if (!headerPrinted) {
-                        headerPrinted = true;
-                        displayHeader(ix);
+                    if (resultCount == 0) {
+                        logger.info("There were no results on query:\n\n" + doQuery);
+                    }
+                    if (cursor.isTruncated()) {
+                        print("... (limited to " + resultCount + " results)");
                     }
-
-                    displayInstance(ix);
-
-                    resultCount++;
                 }
 
                 print("");
                 print("--------------------------------------------------------");
                 print("Result Count: " + resultCount);
-
-                // The complete writes the data out to the database.
-                tx.complete();
-
-                tx.close();
-
-                //logger.info("Person class created in federation.");
-
-                transactionSuccessful = true;
-
-            } catch (LockConflictException lce) {
-                logger.info("LockConflictException. Attempting retry...  retryCount = " + ++transLCERetryCount);
-                try {
-                    Thread.sleep(10 * transLCERetryCount);
-                } catch (InterruptedException ie) {
-                }
-
-            } catch (Exception ex) {
-                ex.printStackTrace();
-                break;
-            }
+            });
+        } catch (Exception ex) {
+            ex.printStackTrace();
         }
 
         print("========================================================");
         print("");
         print("");
+        out.flush();
     }
 
 
@@ -435,7 +406,8 @@ public class Lab04d {
 
         com.objy.data.Class cx = ix.getClass(true);
 
-        StringBuilder sb = new StringBuilder();
+        // Append the row straight to the output buffer.
+        StringBuilder sb = out.line();
 
         for (int i = 0; i < cx.getNumberOfAttributes(); i++) {
             Attribute at = cx.getAttribute(i);
@@ -455,7 +427,7 @@ public class Lab04d {
             }
         }
 
-        print(sb.toString());
+        out.endLine();
     }
 
 
@@ -496,7 +468,7 @@ public class Lab04d {
     
     private void print(String s) {
         
-        System.out.println(s);
+        out.println(s);
         
 //        logger.info(s);
     }
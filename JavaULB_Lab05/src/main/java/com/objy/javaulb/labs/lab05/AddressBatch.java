@@ -0,0 +1,114 @@
+package com.objy.javaulb.labs.lab05;
+
+import com.objy.javaulb.utils.addresses.MutableAddress;
+import com.objy.javaulb.utils.names.Name;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A batch of Addresses and the Persons living at them, on its way through
+ * an IngestPipeline. The generate stage fills in the drawn addresses and
+ * names, {@link #build()} turns them into the Strings to write, and the
+ * commit stage creates the Instances.
+ * <p>
+ * A batch is reused once committed: {@link #reset(long)} keeps its
+ * MutableAddress and Name holders, which the next batch refills.
+ *
+ * @author Daniel
+ */
+class AddressBatch {
+
+    // The index of the first address of the batch in the whole load.
+    long firstIndex;
+
+    // The holders; only the first size() addresses and the first
+    // nameCount names belong to the batch.
+    final ArrayList<MutableAddress> addresses = new ArrayList<>();
+    final ArrayList<Name> names = new ArrayList<>();
+
+    // The occupants of each address, in address order.
+    int[] occupants;
+
+    // Filled in by build(): number and street, as one String per address.
+    String[] streets;
+
+    private int addressCount;
+    private int nameCount;
+
+    private final StringBuilder sb = new StringBuilder(64);
+
+
+    AddressBatch(int capacity) {
+        this.occupants = new int[capacity];
+        this.streets = new String[capacity];
+    }
+
+
+    /**
+     * Empties the batch for reuse, keeping its holders.
+     *
+     * @return This batch.
+     */
+    AddressBatch reset(long firstIndex) {
+        this.firstIndex = firstIndex;
+        addressCount = 0;
+        nameCount = 0;
+        return this;
+    }
+
+
+    /**
+     * Adds an address. Its occupants are the next <code>count</code> names
+     * added.
+     *
+     * @return The holder to fill the address into.
+     */
+    MutableAddress nextAddress(int count) {
+
+        if (addressCount == occupants.length) {
+            occupants = Arrays.copyOf(occupants, 2 * occupants.length + 1);
+            streets = Arrays.copyOf(streets, occupants.length);
+        }
+        if (addressCount == addresses.size()) {
+            addresses.add(new MutableAddress());
+        }
+        occupants[addressCount] = count;
+        return addresses.get(addressCount++);
+    }
+
+
+    /**
+     * Adds a name.
+     *
+     * @return The holder to fill the name into.
+     */
+    Name nextName() {
+
+        if (nameCount == names.size()) {
+            names.add(new Name());
+        }
+        return names.get(nameCount++);
+    }
+
+
+    int size() {
+        return addressCount;
+    }
+
+
+    /**
+     * @return This batch, with the attribute values that have to be
+     * composed worked out.
+     */
+    AddressBatch build() {
+
+        for (int i = 0; i < addressCount; i++) {
+            MutableAddress address = addresses.get(i);
+            sb.setLength(0);
+            sb.append(address.number).append(' ').append(address.street);
+            streets[i] = sb.toString();
+        }
+        return this;
+    }
+
+}
@@ -6,16 +6,21 @@
 package com.objy.javaulb.labs.lab05;
 
 import com.objy.data.Instance;
-import com.objy.data.Reference;
-import com.objy.data.Variable;
-import com.objy.data.schemaProvider.SchemaProvider;
-import com.objy.db.LockConflictException;
-import com.objy.db.TransactionMode;
-import com.objy.db.TransactionScope;
-import com.objy.javaulb.utils.addresses.Address;
+import com.objy.javaulb.utils.AttributeAccessor;
+import com.objy.javaulb.utils.LabUtils;
+import com.objy.javaulb.utils.SchemaCache;
+import com.objy.javaulb.utils.TransactionRunner;
 import com.objy.javaulb.utils.addresses.AddressFactory;
+import com.objy.javaulb.utils.addresses.MutableAddress;
+import com.objy.javaulb.utils.graph.DegreeDistribution;
+import com.objy.javaulb.utils.graph.GraphBulkLoader;
+import com.objy.javaulb.utils.graph.GraphGenerator;
+import com.objy.javaulb.utils.graph.LoadReport;
 import com.objy.javaulb.utils.names.Name;
 import com.objy.javaulb.utils.names.NameFactory;
+import com.objy.javaulb.utils.pipeline.IngestPipeline;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -26,14 +31,41 @@ import org.slf4j.LoggerFactory;
 public class DataFactory {
     private static Logger logger = LoggerFactory.getLogger(DataFactory.class);
     
+    // A known Person vertex to aid in query demonstration.
+    static final Name JOHN_DOE = new Name("Male", "John", "Alfred", "Doe");
+    
     private com.objy.data.Class cPerson;
     private com.objy.data.Class cAddress;
     private com.objy.data.Class cLivesAtEdge;
+
+    // Resolved once, instead of by name for each attribute of each Instance.
+    static final AttributeAccessor aFirstName = AttributeAccessor.of("Person", "FirstName");
+    static final AttributeAccessor aMiddleName = AttributeAccessor.of("Person", "MiddleName");
+    static final AttributeAccessor aLastName = AttributeAccessor.of("Person", "LastName");
+
+    static final AttributeAccessor aStreet = AttributeAccessor.of("Address", "Street");
+    static final AttributeAccessor aCity = AttributeAccessor.of("Address", "City");
+    static final AttributeAccessor aState = AttributeAccessor.of("Address", "State");
+    static final AttributeAccessor aZIP = AttributeAccessor.of("Address", "ZIP");
+    static final AttributeAccessor aLatitude = AttributeAccessor.of("Address", "Latitude");
+    static final AttributeAccessor aLongitude = AttributeAccessor.of("Address", "Longitude");
+
+    static final AttributeAccessor aLivesAt = AttributeAccessor.of("Person", "LivesAt");
+    static final AttributeAccessor aLivesHere = AttributeAccessor.of("Address", "LivesHere");
+
+    static final AttributeAccessor aToPerson = AttributeAccessor.of("LivesAtEdge", "ToPerson");
+    static final AttributeAccessor aToAddress = AttributeAccessor.of("LivesAtEdge", "ToAddress");
     
     
     private NameFactory nameFactory;
     private AddressFactory addressFactory;
     
+    // Addresses per transaction of createData().
+    private static final int ADDRESSES_PER_BATCH = 100;
+
+    // Runs each transaction, retrying it on lock conflicts.
+    private final TransactionRunner transactionRunner = new TransactionRunner();
+    
     
     
     public DataFactory() {
@@ -48,112 +80,148 @@ public class DataFactory {
 
         String oid = null;
 
-        int transLCERetryCount = 0;
-        boolean transactionSuccessful = false;
-        while (!transactionSuccessful) {
-            // Create a new TransactionScope that is READ_UPDATE.
-            try (TransactionScope tx = new TransactionScope(TransactionMode.READ_UPDATE)) {
-
-                // Ensure that our view of the schema is up to date.
-                SchemaProvider.getDefaultPersistentProvider().refresh(true);
+        // Generate and build the next batches on their own threads while
+        // the current one commits.
+        long[] nextIndex = new long[1];
+        IngestPipeline<AddressBatch, AddressBatch> pipeline = new IngestPipeline<>(transactionRunner);
+        // Committed batches come back to be refilled, with their holders,
+        // rather than allocating new ones for each record.
+        ConcurrentLinkedQueue<AddressBatch> freeBatches = new ConcurrentLinkedQueue<>();
+        pipeline.run(() -> generateBatch(nextIndex, count, freeBatches), AddressBatch::build,
+                this::writeBatch, freeBatches::offer);
 
-                // Lookup the various classes from the schema in the ThingSpan federation.
-                cPerson = com.objy.data.Class.lookupClass("Person");
-                cAddress = com.objy.data.Class.lookupClass("Address");
-                cLivesAtEdge = com.objy.data.Class.lookupClass("LivesAtEdge");
+        return oid;
+    }
 
 
-                // Create some addresses with people living at them.
-                for (int i = 0; i < count; i++) {
+    /**
+     * The generate stage: draws the next ADDRESSES_PER_BATCH addresses and
+     * their occupants.
+     *
+     * @return The batch, a committed one refilled when there is one, or
+     * null once <code>count</code> addresses were drawn.
+     */
+    private AddressBatch generateBatch(long[] nextIndex, int count, Queue<AddressBatch> freeBatches) {
 
-                    Address address = addressFactory.getAddress();
-                    Instance iAddress = creatAddressInstance(address);
-                    
-                    logger.info("-----------------------------------------------");
-                    logger.info("Address: " + " :: " + iAddress.getIdentifier().toString());
+        long from = nextIndex[0];
+        if (from >= count) {
+            return null;
+        }
+        long to = Math.min(count, from + ADDRESSES_PER_BATCH);
+        nextIndex[0] = to;
 
-                    int pCount = (i == 0)? 4 : (int)(Math.random() * 5);
+        AddressBatch batch = freeBatches.poll();
+        if (batch == null) {
+            batch = new AddressBatch(ADDRESSES_PER_BATCH);
+        }
+        batch.reset(from);
+        for (long i = from; i < to; i++) {
+
+            int pCount = (i == 0)? 4 : (int)(Math.random() * 5);
+            addressFactory.fillAddress(batch.nextAddress(pCount));
+
+            for (int p = 0; p < pCount; p++) {
+                if (i == 0 && p == 0) {
+                    // Create a known Person vertex to aid in query demonstration.
+                    batch.nextName().copyFrom(JOHN_DOE);
+                } else {
+                    nameFactory.fillName(batch.nextName());
+                }
+            }
+        }
+        return batch;
+    }
 
-                    Name name;
-                    Instance iPerson;
 
-                    for (int p = 0; p < pCount; p++) {
+    /**
+     * The commit stage: creates the Instances of a built batch, in the
+     * transaction the pipeline opened.
+     */
+    private void writeBatch(AddressBatch batch) {
 
-                        if (i == 0 && p == 0) {
-                            // Create a known Person vertex to aid in query demonstration.
-                            name = new Name("Male", "John", "Alfred", "Doe");
-                        } else {
-                            name = nameFactory.createName();
-                        }
+        // Ensure that our view of the schema is up to date.
+        SchemaCache.getDefault().refresh();
 
-                        iPerson = createPersonInstance(name);
-                        
-                        logger.info("Person: " + name.last + ", " + name.first + " :: " + iPerson.getIdentifier().toString());
+        // Lookup the various classes from the schema in the ThingSpan federation.
+        cPerson = SchemaCache.getDefault().lookupClass("Person");
+        cAddress = SchemaCache.getDefault().lookupClass("Address");
+        cLivesAtEdge = SchemaCache.getDefault().lookupClass("LivesAtEdge");
 
-                        // We only have to set one end of the relationship.
-                        // The other end is set automatically based on the schema
-                        // definition.
-                        Instance iLivesEdge = Instance.createPersistent(cLivesAtEdge);
-                        
-                        Variable vLEPerson = iLivesEdge.getAttributeValue("ToPerson");
-                        vLEPerson.set(new Reference(iPerson));
+        int n = 0;
+        for (int a = 0; a < batch.size(); a++) {
 
-                        Variable vLEAddress = iLivesEdge.getAttributeValue("ToAddress");
-                        vLEAddress.set(new Reference(iAddress));
-                    }
+            Instance iAddress = creatAddressInstance(batch.addresses.get(a), batch.streets[a]);
 
-                    if ((i%100) == 0) {
-                        logger.info("Address created: " + i);
-                    }
-                }
+            logger.info("-----------------------------------------------");
+            logger.info("Address: " + " :: " + iAddress.getIdentifier().toString());
 
-                // The complete writes the data out to the database.
-                tx.complete();
+            for (int p = 0; p < batch.occupants[a]; p++) {
 
-                tx.close();
+                Name name = batch.names.get(n++);
+                Instance iPerson = createPersonInstance(name);
 
-                //logger.info("Person class created in federation.");
+                logger.info("Person: " + name.last + ", " + name.first + " :: " + iPerson.getIdentifier().toString());
 
-                transactionSuccessful = true;
+                // We only have to set one end of the relationship.
+                // The other end is set automatically based on the schema
+                // definition.
+                Instance iLivesEdge = Instance.createPersistent(cLivesAtEdge);
 
-            } catch (LockConflictException lce) {
-                logger.info("LockConflictException. Attempting retry...  retryCount = " + ++transLCERetryCount);
-                try {
-                    Thread.sleep(10 * transLCERetryCount);
-                } catch (InterruptedException ie) {
-                }
+                aToPerson.setReference(iLivesEdge, iPerson);
+                aToAddress.setReference(iLivesEdge, iAddress);
+            }
 
-            } catch (Exception ex) {
-                ex.printStackTrace();
-                break;
+            long i = batch.firstIndex + a;
+            if ((i%100) == 0) {
+                logger.info("Address created: " + i);
             }
         }
+    }
 
-        return oid;
+    
+    /**
+     * Bulk-load mode: generates <code>count</code> addresses, each with 0 to
+     * 4 occupants as in createData(), and writes them from one thread per
+     * session of the ConnectionManager, one transaction per
+     * <code>addressesPerBatch</code> addresses. A lock conflict replays only
+     * the batch it hit. The graph is reproducible when 'data.random.seed' is
+     * set in AppConfig. John Doe is the first occupant of address 0, when
+     * that address has any.
+     * 
+     * @param count             The number of addresses.
+     * @param addressesPerBatch The number of addresses per transaction.
+     * @return The counts and the vertices/sec and edges/sec of the load.
+     * @throws Exception If a batch could not be written.
+     */
+    public LoadReport bulkLoad(long count, int addressesPerBatch) throws Exception {
+        
+        nameFactory = new NameFactory();
+        addressFactory = new AddressFactory();
+        
+        GraphGenerator generator = new GraphGenerator(nameFactory, addressFactory.getAddressStore(),
+                count, DegreeDistribution.uniform(0, 4), nameFactory.getRandomStreams());
+        
+        GraphBulkLoader loader = new GraphBulkLoader(LabUtils.getConnectionManager(), addressesPerBatch);
+        
+        LoadReport report = loader.load(generator, new FederationGraphSink(addressFactory.getAddressStore()));
+        
+        logger.info(String.format("Bulk load: %.0f vertices/sec, %.0f edges/sec",
+                report.getVerticesPerSecond(), report.getEdgesPerSecond()));
+        
+        return report;
     }
 
     
-    private Instance creatAddressInstance(Address address) {
+    private Instance creatAddressInstance(MutableAddress address, String street) {
 
         Instance iAddress = Instance.createPersistent(cAddress);
 
-        Variable vStreet1 = iAddress.getAttributeValue("Street");
-        vStreet1.set(address.number + " " + address.street);
-
-        Variable vCity = iAddress.getAttributeValue("City");
-        vCity.set(address.city);
-
-        Variable vState = iAddress.getAttributeValue("State");
-        vState.set(address.state);
-
-        Variable vZIP = iAddress.getAttributeValue("ZIP");
-        vZIP.set(address.zip);
-
-        Variable vLat = iAddress.getAttributeValue("Latitude");
-        vLat.set(address.latitude);
-
-        Variable vLon = iAddress.getAttributeValue("Longitude");
-        vLon.set(address.longitude);
+        aStreet.set(iAddress, street);
+        aCity.set(iAddress, address.city);
+        aState.set(iAddress, address.state);
+        aZIP.set(iAddress, address.zip);
+        aLatitude.set(iAddress, address.latitude);
+        aLongitude.set(iAddress, address.longitude);
 
         return iAddress;
     }
@@ -166,16 +234,11 @@ public class DataFactory {
 
         //logger.info("iPerson OID: " + iPerson.getIdentifier().toString());
 
-        // We access the value of each attribute in the Instance using
-        // a variable that we 'associate' with each attribute.
-        Variable vFirstName = iPerson.getAttributeValue("FirstName");
-        vFirstName.set(name.first);
-
-        Variable vMiddleInitial = iPerson.getAttributeValue("MiddleName");
-        vMiddleInitial.set(name.middle);
-
-        Variable vLastName = iPerson.getAttributeValue("LastName");
-        vLastName.set(name.last);
+        // We access the value of each attribute in the Instance through
+        // accessors that resolved the attribute once.
+        aFirstName.set(iPerson, name.first);
+        aMiddleName.set(iPerson, name.middle);
+        aLastName.set(iPerson, name.last);
 
         return iPerson;
     }
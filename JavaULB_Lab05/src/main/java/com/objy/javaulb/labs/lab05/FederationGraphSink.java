@@ -0,0 +1,89 @@
+package com.objy.javaulb.labs.lab05;
+
+import com.objy.data.Instance;
+import com.objy.data.Reference;
+import com.objy.javaulb.utils.SchemaCache;
+import com.objy.javaulb.utils.addresses.AddressStore;
+import com.objy.javaulb.utils.addresses.AddressView;
+import com.objy.javaulb.utils.graph.GraphRecord;
+import com.objy.javaulb.utils.graph.GraphSink;
+import com.objy.javaulb.utils.names.Name;
+import java.util.List;
+
+/**
+ * Writes generated batches into the schema05b classes of the federation,
+ * inside the READ_UPDATE transaction that GraphBulkLoader opens for each
+ * batch.
+ *
+ * @author Daniel
+ */
+public class FederationGraphSink implements GraphSink {
+
+    private final AddressStore addressStore;
+
+
+    /**
+     * @param addressStore  The store the generator draws addresses from.
+     */
+    public FederationGraphSink(AddressStore addressStore) {
+        this.addressStore = addressStore;
+    }
+
+
+    @Override
+    public void write(List<GraphRecord> batch) throws Exception {
+
+        AddressView view = addressStore.view();
+        StringBuilder street = new StringBuilder();
+
+        // Ensure that our view of the schema is up to date.
+        SchemaCache.getDefault().refresh();
+
+        com.objy.data.Class cPerson = SchemaCache.getDefault().lookupClass("Person");
+        com.objy.data.Class cAddress = SchemaCache.getDefault().lookupClass("Address");
+        com.objy.data.Class cLivesAtEdge = SchemaCache.getDefault().lookupClass("LivesAtEdge");
+
+        // The batch always gives an Address before its Persons, and a
+        // Person right before its edge.
+        Instance iAddress = null;
+        Instance iPerson = null;
+
+        for (GraphRecord record : batch) {
+            switch (record.getKind()) {
+                case ADDRESS:
+                    record.moveView(view);
+                    street.setLength(0);
+                    view.appendNumber(street).append(' ');
+                    view.appendStreet(street);
+
+                    iAddress = Instance.createPersistent(cAddress);
+                    DataFactory.aStreet.set(iAddress, street.toString());
+                    DataFactory.aCity.set(iAddress, view.getCity());
+                    DataFactory.aState.set(iAddress, view.getState());
+                    DataFactory.aZIP.set(iAddress, view.getZip());
+                    DataFactory.aLatitude.set(iAddress, view.getLatitude());
+                    DataFactory.aLongitude.set(iAddress, view.getLongitude());
+                    break;
+
+                case PERSON:
+                    Name name = (record.getPersonId() == 0) ? DataFactory.JOHN_DOE : record.getName();
+
+                    iPerson = Instance.createPersistent(cPerson);
+                    DataFactory.aFirstName.set(iPerson, name.first);
+                    DataFactory.aMiddleName.set(iPerson, name.middle);
+                    DataFactory.aLastName.set(iPerson, name.last);
+                    break;
+
+                case LIVES_AT:
+                    // Setting one end is enough; the inverse is
+                    // maintained from the schema.
+                    Instance iLivesEdge = Instance.createPersistent(cLivesAtEdge);
+
+                    DataFactory.aToPerson.setReference(iLivesEdge, iPerson);
+                    DataFactory.aToAddress.setReference(iLivesEdge, iAddress);
+                    break;
+            }
+        }
+    }
+
+}
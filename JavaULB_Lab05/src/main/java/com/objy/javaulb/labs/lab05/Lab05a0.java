@@ -11,19 +11,23 @@ import com.objy.data.Walk;
 import com.objy.data.dataSpecificationBuilder.ListSpecificationBuilder;
 import com.objy.data.dataSpecificationBuilder.ReferenceSpecificationBuilder;
 import com.objy.db.Connection;
-import com.objy.db.LockConflictException;
 import com.objy.db.SessionLogging;
 import com.objy.db.TransactionMode;
-import com.objy.db.TransactionScope;
-import com.objy.javaulb.utils.addresses.Address;
+import com.objy.javaulb.utils.SchemaCache;
+import com.objy.javaulb.utils.StatementCache;
+import com.objy.javaulb.utils.TransactionRunner;
 import com.objy.javaulb.utils.addresses.AddressFactory;
+import com.objy.javaulb.utils.addresses.MutableAddress;
 import com.objy.javaulb.utils.names.Name;
 import com.objy.javaulb.utils.names.NameFactory;
+import com.objy.javaulb.utils.pipeline.IngestPipeline;
 import com.objy.statement.Statement;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,6 +53,12 @@ public class Lab05a0 {
     private NameFactory nameFactory;
     private AddressFactory addressFactory;
 
+    // Runs each transaction, retrying it on lock conflicts.
+    private final TransactionRunner transactionRunner = new TransactionRunner();
+
+    // Persons per transaction of createData().
+    private static final int PERSONS_PER_BATCH = 100;
+
     private ArrayList<String> lastnameList = new ArrayList<>();
 
 
@@ -81,16 +91,24 @@ public class Lab05a0 {
             int index = (int)(Math.random() * lastnameList.size());
             String lastNamePrefix = lastnameList.get(index).substring(0,2);
 
-            String doQuery1 = "MATCH p = (:Person {LastName =~ '^" + lastNamePrefix + ".*'}) "
+            // $1 is bound to the prefix, quoted so that it matches only
+            // itself in the regular expression. The Statement is cached
+            // under the bound text, so it is reused whenever the same
+            // prefix is queried again.
+            Object prefix = StatementCache.regexLiteral(lastNamePrefix);
+
+            String doQuery1 = "MATCH p = (:Person {LastName =~ '^$1.*'}) "
                     + "-->(:Address) RETURN *";
 
-            matchQuery(doQuery1);
+            matchQuery(doQuery1, prefix);
             
             
-            String doQuery2 = "MATCH p = (:Person {LastName =~ '^" + lastNamePrefix + ".*'}) "
+            String doQuery2 = "MATCH p = (:Person {LastName =~ '^$1.*'}) "
                     + "-->(:Address)-->(:Person) RETURN *";
 
-            matchQuery(doQuery2);
+            matchQuery(doQuery2, prefix);
+
+            logger.info(StatementCache.getDefault().toString());
 
 
 
@@ -175,135 +193,105 @@ public class Lab05a0 {
 
     }
 
-    private void createSchema() {
+    private void createSchema() throws Exception {
 
         logger.info("createSchema() - Begin...");
 
-        int transLCERetryCount = 0;
-        boolean transactionSuccessful = false;
-        while (!transactionSuccessful) {
-            // Create a new TransactionScope that is READ_UPDATE.
-            try (TransactionScope tx = new TransactionScope(TransactionMode.READ_UPDATE)) {
-
-                // Ensure that our view of the schema is up to date.
-                SchemaProvider.getDefaultPersistentProvider().refresh(true);
-
-                com.objy.data.ClassBuilder cBuilder;
-
-
-                //--------------------------------------------------------------
-                logger.info("Creating Person...");
-
-                // Use ClassBuilder to create the schema definition.
-                cBuilder = new com.objy.data.ClassBuilder("Person");
-                cBuilder.addAttribute(LogicalType.STRING, "FirstName");
-                cBuilder.addAttribute(LogicalType.STRING, "LastName");
-                cBuilder.addAttribute(LogicalType.STRING, "MiddleName");
-
-                //
-                cBuilder.addAttribute("LivesAt",
-                            new ListSpecificationBuilder()
-                                .setCollectionName("SegmentedArray")
-                                .setElementSpecification(
-                                    new ReferenceSpecificationBuilder()
-                                            .setEdgeClass("LivesEdge")
-                                            .setEdgeAttribute("ToAddress")
-                                            .build())
-                                .build());
-
-                // Actually build the the schema representation.
-                com.objy.data.Class cPerson = cBuilder.build();
+        transactionRunner.run(TransactionMode.READ_UPDATE, () -> {
 
-                // Represent the new class into the federated database.
-                SchemaProvider.getDefaultPersistentProvider().represent(cPerson);
+            // Ensure that our view of the schema is up to date.
+            SchemaCache.getDefault().refresh();
 
+            com.objy.data.ClassBuilder cBuilder;
 
 
-                //--------------------------------------------------------------
-                logger.info("Creating Address...");
+            //--------------------------------------------------------------
+            logger.info("Creating Person...");
 
-                // Use ClassBuilder to create the schema definition.
-                cBuilder = new com.objy.data.ClassBuilder("Address");
-                cBuilder.addAttribute(LogicalType.STRING, "Street1");
-                cBuilder.addAttribute(LogicalType.STRING, "Street2");
-                cBuilder.addAttribute(LogicalType.STRING, "City");
-                cBuilder.addAttribute(LogicalType.STRING, "State");
-                cBuilder.addAttribute(LogicalType.STRING, "ZIP");
+            // Use ClassBuilder to create the schema definition.
+            cBuilder = new com.objy.data.ClassBuilder("Person");
+            cBuilder.addAttribute(LogicalType.STRING, "FirstName");
+            cBuilder.addAttribute(LogicalType.STRING, "LastName");
+            cBuilder.addAttribute(LogicalType.STRING, "MiddleName");
 
-                //
-                cBuilder.addAttribute("LivesHere",
-                            new ListSpecificationBuilder()
-                                .setCollectionName("SegmentedArray")
-                                .setElementSpecification(
-                                    new ReferenceSpecificationBuilder()
-                                            .setEdgeClass("LivesEdge")
-                                            .setEdgeAttribute("ToPerson")
-                                            .build())
-                                .build());
+            //
+            cBuilder.addAttribute("LivesAt",
+                        new ListSpecificationBuilder()
+                            .setCollectionName("SegmentedArray")
+                            .setElementSpecification(
+                                new ReferenceSpecificationBuilder()
+                                        .setEdgeClass("LivesEdge")
+                                        .setEdgeAttribute("ToAddress")
+                                        .build())
+                            .build());
 
-                // Actually build the the schema representation.
-                com.objy.data.Class cAddress = cBuilder.build();
+            // Actually build the the schema representation.
+            com.objy.data.Class cPerson = cBuilder.build();
 
-                // Represent the new class into the federated database.
-                SchemaProvider.getDefaultPersistentProvider().represent(cAddress);
+            // Represent the new class into the federated database.
+            SchemaProvider.getDefaultPersistentProvider().represent(cPerson);
 
 
+            //--------------------------------------------------------------
+            logger.info("Creating Address...");
 
-                //--------------------------------------------------------------
-                logger.info("Creating LivesAt...");
+            // Use ClassBuilder to create the schema definition.
+            cBuilder = new com.objy.data.ClassBuilder("Address");
+            cBuilder.addAttribute(LogicalType.STRING, "Street1");
+            cBuilder.addAttribute(LogicalType.STRING, "Street2");
+            cBuilder.addAttribute(LogicalType.STRING, "City");
+            cBuilder.addAttribute(LogicalType.STRING, "State");
+            cBuilder.addAttribute(LogicalType.STRING, "ZIP");
 
-                // Use ClassBuilder to create the schema definition.
-                cBuilder = new com.objy.data.ClassBuilder("LivesEdge");
-                cBuilder.addAttribute(LogicalType.DATE, "From");
-                cBuilder.addAttribute(LogicalType.DATE, "To");
+            //
+            cBuilder.addAttribute("LivesHere",
+                        new ListSpecificationBuilder()
+                            .setCollectionName("SegmentedArray")
+                            .setElementSpecification(
+                                new ReferenceSpecificationBuilder()
+                                        .setEdgeClass("LivesEdge")
+                                        .setEdgeAttribute("ToPerson")
+                                        .build())
+                            .build());
 
-                // Create the "LivesHere" end of the bidirectional to-many reference.
-                cBuilder.addAttribute("ToAddress",
-                            new ReferenceSpecificationBuilder()
-                                        .setReferencedClass("Address")
-                                        .setInverseAttribute("LivesHere")
-                                        .build());
-                
-                // Create the "LivesHere" end of the bidirectional to-many reference.
-                cBuilder.addAttribute("ToPerson",
-                            new ReferenceSpecificationBuilder()
-                                        .setReferencedClass("Person")
-                                        .setInverseAttribute("LivesAt")
-                                        .build());
+            // Actually build the the schema representation.
+            com.objy.data.Class cAddress = cBuilder.build();
 
-                // Actually build the the schema representation.
-                com.objy.data.Class cLivesAtEdge = cBuilder.build();
+            // Represent the new class into the federated database.
+            SchemaProvider.getDefaultPersistentProvider().represent(cAddress);
 
-                // Represent the new class into the federated database.
-                SchemaProvider.getDefaultPersistentProvider().represent(cLivesAtEdge);
 
+            //--------------------------------------------------------------
+            logger.info("Creating LivesAt...");
 
-                SchemaProvider.getDefaultPersistentProvider().activateEdits();
-
-                logger.info("Calling tx.complete()...");
+            // Use ClassBuilder to create the schema definition.
+            cBuilder = new com.objy.data.ClassBuilder("LivesEdge");
+            cBuilder.addAttribute(LogicalType.DATE, "From");
+            cBuilder.addAttribute(LogicalType.DATE, "To");
 
+            // Create the "LivesHere" end of the bidirectional to-many reference.
+            cBuilder.addAttribute("ToAddress",
+                        new ReferenceSpecificationBuilder()
+                                    .setReferencedClass("Address")
+                                    .setInverseAttribute("LivesHere")
+                                    .build());
+            
+            // Create the "LivesHere" end of the bidirectional to-many reference.
+            cBuilder.addAttribute("ToPerson",
+                        new ReferenceSpecificationBuilder()
+                                    .setReferencedClass("Person")
+                                    .setInverseAttribute("LivesAt")
+                                    .build());
 
-                // Complete and close the transaction
-                tx.complete();
-                tx.close();
+            // Actually build the the schema representation.
+            com.objy.data.Class cLivesAtEdge = cBuilder.build();
 
-                logger.info("Back from tx.close()");
+            // Represent the new class into the federated database.
+            SchemaProvider.getDefaultPersistentProvider().represent(cLivesAtEdge);
 
-                transactionSuccessful = true;
 
-            } catch (LockConflictException lce) {
-                logger.info("LockConflictException. Attempting retry...  retryCount = " + ++transLCERetryCount);
-                try {
-                    Thread.sleep(10 * transLCERetryCount);
-                } catch (InterruptedException ie) {
-                }
-
-            } catch (Exception ex) {
-                logger.error("Error: ", ex);
-                ex.printStackTrace();
-                throw ex;
-            }
-        }
+            SchemaCache.getDefault().activateEdits();
+        });
 
         logger.info("createSchema() - Begin...");
     }
@@ -316,142 +304,152 @@ public class Lab05a0 {
 
         String oid = null;
 
-        int transLCERetryCount = 0;
-        boolean transactionSuccessful = false;
-        while (!transactionSuccessful) {
-            // Create a new TransactionScope that is READ_UPDATE.
-            try (TransactionScope tx = new TransactionScope(TransactionMode.READ_UPDATE)) {
+        try {
+            // Generate and build the next batches on their own threads
+            // while the current one commits.
+            long[] nextIndex = new long[1];
+            IngestPipeline<AddressBatch, AddressBatch> pipeline = new IngestPipeline<>(transactionRunner);
+            // Committed batches come back to be refilled.
+            ConcurrentLinkedQueue<AddressBatch> freeBatches = new ConcurrentLinkedQueue<>();
+            pipeline.run(() -> generateBatch(nextIndex, count, freeBatches), AddressBatch::build,
+                    this::writeBatch, freeBatches::offer);
 
-                // Ensure that our view of the schema is up to date.
-                SchemaProvider.getDefaultPersistentProvider().refresh(true);
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+
+        return oid;
+    }
 
-                // Lookup the Person class from the schema in the ThingSpan federation.
-                com.objy.data.Class cPerson = com.objy.data.Class.lookupClass("Person");
 
-                com.objy.data.Class cAddress = com.objy.data.Class.lookupClass("Address");
-                com.objy.data.Class cLivesEdge = com.objy.data.Class.lookupClass("LivesEdge");
+    // The generate stage: one Person and one Address for each index.
+    private AddressBatch generateBatch(long[] nextIndex, int count, Queue<AddressBatch> freeBatches) {
 
+        long from = nextIndex[0];
+        if (from >= count) {
+            return null;
+        }
+        long to = Math.min(count, from + PERSONS_PER_BATCH);
+        nextIndex[0] = to;
 
-                for (int i = 0; i < count; i++) {
-                    Name name = nameFactory.createName();
+        AddressBatch batch = freeBatches.poll();
+        if (batch == null) {
+            batch = new AddressBatch(PERSONS_PER_BATCH);
+        }
+        batch.reset(from);
+        for (long i = from; i < to; i++) {
+            Name name = nameFactory.fillName(batch.nextName());
 
-                    lastnameList.add(name.getLastName());
+            lastnameList.add(name.getLastName());
 
-                    //logger.info("Name: " + name.first + " " + name.middle + " " + name.last);
+            addressFactory.fillAddress(batch.nextAddress(1));
+        }
+        return batch;
+    }
 
-                    // Using the cPerson Class object, create a Person Instance.
-                    Instance iPerson = Instance.createPersistent(cPerson);
 
-                    //logger.info("iPerson OID: " + iPerson.getIdentifier().toString());
+    // The commit stage, in the transaction the pipeline opened.
+    private void writeBatch(AddressBatch batch) {
 
-                    // We access the value of each attribute in the Instance using
-                    // a variable that we 'associate' with each attribute.
-                    Variable vFirstName = iPerson.getAttributeValue("FirstName");
-                    vFirstName.set(name.first);
+        // Ensure that our view of the schema is up to date.
+        SchemaCache.getDefault().refresh();
 
-                    Variable vMiddleInitial = iPerson.getAttributeValue("MiddleName");
-                    vMiddleInitial.set(name.middle);
+        // Lookup the Person class from the schema in the ThingSpan federation.
+        com.objy.data.Class cPerson = SchemaCache.getDefault().lookupClass("Person");
 
-                    Variable vLastName = iPerson.getAttributeValue("LastName");
-                    vLastName.set(name.last);
+        com.objy.data.Class cAddress = SchemaCache.getDefault().lookupClass("Address");
+        com.objy.data.Class cLivesEdge = SchemaCache.getDefault().lookupClass("LivesEdge");
 
 
-                    Address address = addressFactory.getAddress();
-                    Instance iAddress = Instance.createPersistent(cAddress);
+        for (int b = 0; b < batch.size(); b++) {
+            Name name = batch.names.get(b);
 
-                    Variable vStreet1 = iAddress.getAttributeValue("Street1");
-                    vStreet1.set(address.number + " " + address.street);
+            //logger.info("Name: " + name.first + " " + name.middle + " " + name.last);
 
-                    Variable vCity = iAddress.getAttributeValue("City");
-                    vCity.set(address.city);
+            // Using the cPerson Class object, create a Person Instance.
+            Instance iPerson = Instance.createPersistent(cPerson);
 
-                    Variable vState = iAddress.getAttributeValue("State");
-                    vState.set(address.state);
+            //logger.info("iPerson OID: " + iPerson.getIdentifier().toString());
 
-                    Variable vZIP = iAddress.getAttributeValue("ZIP");
-                    vZIP.set(address.zip);
+            // We access the value of each attribute in the Instance using
+            // a variable that we 'associate' with each attribute.
+            Variable vFirstName = iPerson.getAttributeValue("FirstName");
+            vFirstName.set(name.first);
 
-                    Variable vLat = iAddress.getAttributeValue("Latitude");
-                    vLat.set(address.latitude);
+            Variable vMiddleInitial = iPerson.getAttributeValue("MiddleName");
+            vMiddleInitial.set(name.middle);
 
-                    Variable vLon = iAddress.getAttributeValue("Longitude");
-                    vLon.set(address.longitude);
+            Variable vLastName = iPerson.getAttributeValue("LastName");
+            vLastName.set(name.last);
 
-                    // Remember, we only have to set one end of the relationship.
-                    // The other end it set automatically based on the schema
-                    // definition.
-                    Variable vLivesHere = iAddress.getAttributeValue("LivesHere");
-                    com.objy.data.List livesHereList = vLivesHere.listValue();
 
-                    Instance iLivesEdge = Instance.createPersistent(cLivesEdge);
-                    Variable vLEPerson = iLivesEdge.getAttributeValue("ToPerson");
-                    vLEPerson.set(new Reference(iPerson));
+            MutableAddress address = batch.addresses.get(b);
+            Instance iAddress = Instance.createPersistent(cAddress);
 
-                    Variable vLEAddress = iLivesEdge.getAttributeValue("ToAddress");
-                    vLEAddress.set(new Reference(iAddress));
+            Variable vStreet1 = iAddress.getAttributeValue("Street1");
+            vStreet1.set(batch.streets[b]);
 
+            Variable vCity = iAddress.getAttributeValue("City");
+            vCity.set(address.city);
 
+            Variable vState = iAddress.getAttributeValue("State");
+            vState.set(address.state);
 
-                    if ((i%100) == 0) {
-                        logger.info("Persons created: " + i);
-                    }
-                }
+            Variable vZIP = iAddress.getAttributeValue("ZIP");
+            vZIP.set(address.zip);
 
-                // The complete writes the data out to the database.
-                tx.complete();
+            Variable vLat = iAddress.getAttributeValue("Latitude");
+            vLat.set(address.latitude);
 
-                tx.close();
+            Variable vLon = iAddress.getAttributeValue("Longitude");
+            vLon.set(address.longitude);
 
-                //logger.info("Person class created in federation.");
+            // Remember, we only have to set one end of the relationship.
+            // The other end it set automatically based on the schema
+            // definition.
+            Instance iLivesEdge = Instance.createPersistent(cLivesEdge);
+            Variable vLEPerson = iLivesEdge.getAttributeValue("ToPerson");
+            vLEPerson.set(new Reference(iPerson));
 
-                transactionSuccessful = true;
+            Variable vLEAddress = iLivesEdge.getAttributeValue("ToAddress");
+            vLEAddress.set(new Reference(iAddress));
 
-            } catch (LockConflictException lce) {
-                logger.info("LockConflictException. Attempting retry...  retryCount = " + ++transLCERetryCount);
-                try {
-                    Thread.sleep(10 * transLCERetryCount);
-                } catch (InterruptedException ie) {
-                }
 
-            } catch (Exception ex) {
-                ex.printStackTrace();
-                break;
+            long i = batch.firstIndex + b;
+            if ((i%100) == 0) {
+                logger.info("Persons created: " + i);
             }
         }
-
-        return oid;
     }
 
 
-    private void matchQuery(String doQuery) {
+    private void matchQuery(String doQuery, Object... params) {
 
         print("");
         print("");
         print("========================================================");
-        print("QUERY: " + doQuery);
+        String boundQuery = StatementCache.getDefault().bind(doQuery, params);
+        print("QUERY: " + boundQuery);
         print("--------------------------------------------------------");
 
         String oid = null;
 
-        int transLCERetryCount = 0;
-        boolean transactionSuccessful = false;
-        while (!transactionSuccessful) {
-            // Create a new TransactionScope that is READ_UPDATE.
-            try (TransactionScope tx = new TransactionScope(TransactionMode.READ_UPDATE)) {
+        try {
+            transactionRunner.runQuery(() -> {
 
                 // Ensure that our view of the schema is up to date.
-                SchemaProvider.getDefaultPersistentProvider().refresh(true);
+                SchemaCache.getDefault().refresh();
 
                 Variable vStatementExecute;
 
-                Statement statement = new Statement("DO", doQuery);
+                Statement statement = StatementCache.getDefault().prepare(doQuery, params);
 
                 vStatementExecute = statement.execute();
 
 
                 java.util.Iterator<Variable> it = vStatementExecute.sequenceValue().iterator();
                 if (!it.hasNext()) {
-                    logger.info("There were no results on query:\n\n" + doQuery);
+                    logger.info("There were no results on query:\n\n" + boundQuery);
                 }
 
                 boolean headerPrinted = false;
@@ -473,27 +471,9 @@ public class Lab05a0 {
                 print("");
                 print("--------------------------------------------------------");
                 print("Result Count: " + resultCount);
-
-                // The complete writes the data out to the database.
-                tx.complete();
-
-                tx.close();
-
-                //logger.info("Person class created in federation.");
-
-                transactionSuccessful = true;
-
-            } catch (LockConflictException lce) {
-                logger.info("LockConflictException. Attempting retry...  retryCount = " + ++transLCERetryCount);
-                try {
-                    Thread.sleep(10 * transLCERetryCount);
-                } catch (InterruptedException ie) {
-                }
-
-            } catch (Exception ex) {
-                ex.printStackTrace();
-                break;
-            }
+            });
+        } catch (Exception ex) {
+            ex.printStackTrace();
         }
 
         print("========================================================");
@@ -2,19 +2,27 @@ package com.objy.javaulb.labs.lab05;
 
 import com.objy.data.Attribute;
 import com.objy.data.DataSpecification;
-import com.objy.data.schemaProvider.SchemaProvider;
 import com.objy.data.Instance;
 import com.objy.data.ListFacet;
 import com.objy.data.LogicalType;
 import com.objy.data.Variable;
 import com.objy.db.Connection;
-import com.objy.db.LockConflictException;
 import com.objy.db.SessionLogging;
 import com.objy.db.TransactionMode;
-import com.objy.db.TransactionScope;
+import com.objy.javaulb.utils.ConnectionManager;
 import com.objy.javaulb.utils.LabUtils;
+import com.objy.javaulb.utils.Oid;
+import com.objy.javaulb.utils.QueryCursor;
+import com.objy.javaulb.utils.SchemaCache;
+import com.objy.javaulb.utils.StatementCache;
+import com.objy.javaulb.utils.TextSink;
+import com.objy.javaulb.utils.TransactionRunner;
+import com.objy.javaulb.utils.graph.FrontierTraversal;
+import com.objy.javaulb.utils.graph.GraphBulkLoader;
 import com.objy.statement.Statement;
 import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,7 +43,11 @@ public class Lab05b {
     // The connection to the ThingSpan federation.
     private Connection connection;
 
+    // Runs each transaction, retrying it on lock conflicts.
+    private final TransactionRunner transactionRunner = new TransactionRunner();
 
+    // Buffers the query output, instead of a System.out.println per line.
+    private final TextSink out = TextSink.stdout();
 
 
 
@@ -43,7 +55,9 @@ public class Lab05b {
 
 
 
-    public Lab05b() {
+
+
+    public Lab05b(String[] args) {
 
         logger.info("Running " + this.getClass().getSimpleName());
 
@@ -55,9 +69,28 @@ public class Lab05b {
                 SessionLogging.setLoggingOptions(SessionLogging.LogAll, sessionLogDir);
             }
 
-            LabUtils.openConnection(bootFile);            
+            boolean bulk = args.length > 0 && args[0].equalsIgnoreCase("bulk");
+
+            // In bulk mode the loader runs one worker per session, so the
+            // workers argument sizes the pool.
+            int sessions = (bulk && args.length > 2) ? Integer.parseInt(args[2])
+                                                     : ConnectionManager.DEFAULT_SESSIONS;
+            LabUtils.openConnection(bootFile, sessions);
                       
             DataFactory df = new DataFactory();            
+            
+            if (bulk) {
+                // gradle run05b -Pargs=bulk,<addresses>,<workers>,<addressesPerBatch>
+                long count = (args.length > 1) ? Long.parseLong(args[1]) : 100_000L;
+                int batch = (args.length > 3) ? Integer.parseInt(args[3])
+                                               : GraphBulkLoader.DEFAULT_ADDRESSES_PER_BATCH;
+                
+                logger.info("Bulk load: " + df.bulkLoad(count, batch));
+                
+                LabUtils.closeConnection();
+                return;
+            }
+            
             df.createData(20);            
             
 
@@ -71,6 +104,9 @@ public class Lab05b {
                                 + "&& LastName == 'Doe'}) "
                                 + "-->(:Address)-->(:Person) return path;";
             query(doQuery3);
+
+            // The same Person -> Address -> Person paths, walked directly.
+            housemates(DataFactory.JOHN_DOE.getFirstName(), DataFactory.JOHN_DOE.getLastName());
             
             LabUtils.closeConnection();
 
@@ -93,68 +129,116 @@ public class Lab05b {
         print("QUERY: " + doQuery);
         print("--------------------------------------------------------");
 
-        int transLCERetryCount = 0;
-        boolean transactionSuccessful = false;
-        while (!transactionSuccessful) {
-            // Create a new TransactionScope that is READ_UPDATE.
-            try (TransactionScope tx = new TransactionScope(TransactionMode.READ_UPDATE)) {
+        // Hold each attempt's output, so that a retry drops what the
+        // failed attempt printed.
+        out.mark();
+        try {
+            transactionRunner.runQuery(() -> {
+
+                if (!out.reset()) {
+                    print("... (retrying; the results above were already written and are repeated below)");
+                }
 
                 // Ensure that our view of the schema is up to date.
-                SchemaProvider.getDefaultPersistentProvider().refresh(true);
+                SchemaCache.getDefault().refresh();
 
-                boolean headerPrinted = false;
-               
-                Statement statement = new Statement("DO", doQuery);
-                Variable vStatementExecute = statement.execute();
+                Statement statement = StatementCache.getDefault().prepare(doQuery);
 
-                java.util.Iterator<Variable> it = vStatementExecute.sequenceValue().iterator();
-                if (!it.hasNext()) {
-                    logger.info("There were no results on query:\n\n" + doQuery);
-                }
+                // Stream the results a row at a time, up to the QueryLimit.
+                long resultCount;
+                try (QueryCursor cursor = new QueryCursor(statement, QueryCursor.defaultLimit())) {
 
-                int resultCount = 0;
-                while (it.hasNext()) {
-                    Variable vResult = it.next();
-                    Instance ix = vResult.instanceValue();
+                    resultCount = cursor.forEach((vResult, index) -> {
+                        Instance ix = vResult.instanceValue();
 
-                    if (!headerPrinted) {
-                        headerPrinted = true;
-                        displayHeader(ix);
-                    }
-                    displayInstance(ix);
+                        if (index == 0) {
+                            displayHeader(ix);
+                        }
+                        displayInstance(ix);
+                        return true;
+                    });
 
-                    resultCount++;
+                    if (resultCount == 0) {
+                        logger.info("There were no results on query:\n\n" + doQuery);
+                    }
+                    if (cursor.isTruncated()) {
+                        print("... (limited to " + resultCount + " results)");
+                    }
                 }
 
                 print("");
                 print("--------------------------------------------------------");
                 print("Result Count: " + resultCount);
+            });
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+
+        print("========================================================");
+        print("");
+        print("");
+        out.flush();
+    }
 
-                // The complete writes the data out to the database.
-                tx.complete();
 
-                tx.close();
+    /**
+     * Finds the people who live at the addresses of the named Person by
+     * walking LivesAt and LivesHere from it, two levels, with a
+     * FrontierTraversal instead of a MATCH query.
+     */
+    private void housemates(String firstName, String lastName) {
 
-                //logger.info("Person class created in federation.");
+        print("");
+        print("========================================================");
+        print("TRAVERSAL: " + firstName + " " + lastName + " --> (:Address) --> (:Person)");
+        print("--------------------------------------------------------");
 
-                transactionSuccessful = true;
+        // The names are bound into the cached template, quotes escaped,
+        // rather than concatenated into the query.
+        String doQuery = "FROM Person WHERE FirstName == '$1' && LastName == '$2' return *";
 
-            } catch (LockConflictException lce) {
-                logger.info("LockConflictException. Attempting retry...  retryCount = " + ++transLCERetryCount);
-                try {
-                    Thread.sleep(10 * transLCERetryCount);
-                } catch (InterruptedException ie) {
+        ForkJoinPool pool = new ForkJoinPool(LabUtils.getConnectionManager().getSize());
+        try {
+            Long start = transactionRunner.callQuery(() -> {
+                Statement statement = StatementCache.getDefault().prepare(doQuery, firstName, lastName);
+                try (QueryCursor cursor = new QueryCursor(statement, 1)) {
+                    Variable row = cursor.next();
+                    return (row == null) ? null : row.instanceValue().getIdentifier().asLong();
                 }
+            });
 
-            } catch (Exception ex) {
-                ex.printStackTrace();
-                break;
+            if (start == null) {
+                logger.info("There were no results on query:\n\n"
+                        + StatementCache.getDefault().bind(doQuery, firstName, lastName));
+                return;
             }
-        }
 
-        print("========================================================");
-        print("");
-        print("");
+            FrontierTraversal traversal = new FrontierTraversal(pool, FrontierTraversal.DEFAULT_CHUNK_SIZE);
+            FrontierTraversal.Result result = traversal.traverse(start, 2, new LivesAtNeighbours(), null);
+
+            print("Person: " + Oid.toString(start));
+            print("Addresses: " + result.getLevel(1).length);
+            for (long oid : result.getLevel(2)) {
+                print("    Person: " + Oid.toString(oid));
+            }
+            print("--------------------------------------------------------");
+            print(result.toString());
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        } finally {
+            // Let the pool's threads finish, and give back their sessions,
+            // before the connection is closed.
+            pool.shutdown();
+            try {
+                if (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+                    logger.warn("Traversal pool still running after 1 minute.");
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            print("========================================================");
+            out.flush();
+        }
     }
 
 
@@ -255,9 +339,9 @@ public class Lab05b {
         boolean showFromObject = true; // Only show the from object the first time.
 
 
-        System.out.println("=================================================");
+        print("=================================================");
 
-        System.out.println("WALK:");
+        print("WALK:");
 
         for (Variable v : walk.edges()) {
             com.objy.data.Edge edge = v.edgeValue();
@@ -267,23 +351,23 @@ public class Lab05b {
 
                 Instance iFrom = edge.from();
 
-                System.out.println("-------------------------------------------------");
-                System.out.println("Node:");
+                print("-------------------------------------------------");
+                print("Node:");
 
                 displayInstance(iFrom);
-                System.out.println();
+                print("");
             }
 
-            System.out.println("Edge:");
+            print("Edge:");
             Instance iEdgeData = edge.edgeData();
             displayInstance(iEdgeData);
-            System.out.println();           
+            print("");           
 
 
-            System.out.println("Node:");
+            print("Node:");
             Instance iTo = edge.to();
             displayInstance(iTo);
-            System.out.println();
+            print("");
 
         }
 
@@ -328,7 +412,7 @@ public class Lab05b {
     
     private void print(String s) {
         
-        System.out.println(s);
+        out.println(s);
         
 //        logger.info(s);
     }
@@ -340,6 +424,6 @@ public class Lab05b {
 
 
     public static void main(String[] args) {
-        new Lab05b();
+        new Lab05b(args);
     }
 }
@@ -0,0 +1,85 @@
+package com.objy.javaulb.labs.lab05;
+
+import com.objy.data.Instance;
+import com.objy.data.Variable;
+import com.objy.db.ObjectId;
+import com.objy.javaulb.utils.AttributeAccessor;
+import com.objy.javaulb.utils.ConnectionManager;
+import com.objy.javaulb.utils.LabUtils;
+import com.objy.javaulb.utils.LongList;
+import com.objy.javaulb.utils.graph.FrontierTraversal;
+
+/**
+ * Expands Person and Address vertices for a {@link FrontierTraversal}: a
+ * Person leads to the Addresses it LivesAt, an Address to the Persons that
+ * LivesHere, so depth 2 from a Person holds the people living at the same
+ * addresses:
+ * <pre>
+ *   new FrontierTraversal().traverse(johnDoe, 2, new LivesAtNeighbours(), null);
+ * </pre>
+ * The references are read from the vertices directly, with no query. Each
+ * chunk runs in a read-only transaction of its own, in a session of the
+ * ConnectionManager, on the thread the traversal gives it.
+ *
+ * @author Daniel
+ */
+class LivesAtNeighbours implements FrontierTraversal.Neighbours {
+
+    private final ConnectionManager connectionManager;
+
+
+    LivesAtNeighbours() {
+        this(LabUtils.getConnectionManager());
+    }
+
+
+    LivesAtNeighbours(ConnectionManager connectionManager) {
+        this.connectionManager = connectionManager;
+    }
+
+
+    @Override
+    public void expand(long[] frontier, int from, int to, LongList out) throws Exception {
+
+        int mark = out.size();
+
+        try (ConnectionManager.Session session = connectionManager.acquire()) {
+            session.runQuery(() -> {
+                // A retry starts the chunk over.
+                out.truncate(mark);
+
+                for (int i = from; i < to; i++) {
+                    Instance ix = Instance.lookup(new ObjectId(frontier[i]));
+                    if (ix == null) {
+                        continue;
+                    }
+                    String className = ix.getClass(true).getName();
+                    if (className.equals("Person")) {
+                        follow(ix, DataFactory.aLivesAt, "Address", DataFactory.aToAddress, out);
+                    } else if (className.equals("Address")) {
+                        follow(ix, DataFactory.aLivesHere, "Person", DataFactory.aToPerson, out);
+                    }
+                }
+            });
+        }
+    }
+
+
+    // Adds the targetClass vertices the list of ix refers to. An entry
+    // refers to the vertex, or to the LivesAtEdge that leads to it.
+    private static void follow(Instance ix, AttributeAccessor list, String targetClass,
+            AttributeAccessor edgeTo, LongList out) {
+
+        com.objy.data.List references = list.get(ix).listValue();
+        long size = references.size();
+        for (long i = 0; i < size; i++) {
+            Variable v = references.get(i);
+            Instance target = v.referenceValue().getReferencedObject();
+            if (!target.getClass(true).getName().equals(targetClass)) {
+                target = edgeTo.get(target).referenceValue().getReferencedObject();
+            }
+            out.add(target.getIdentifier().asLong());
+        }
+    }
+
+}
@@ -12,6 +12,7 @@ import com.objy.data.schemaProvider.SchemaProvider;
 import com.objy.db.LockConflictException;
 import com.objy.db.TransactionMode;
 import com.objy.db.TransactionScope;
+import com.objy.javaulb.utils.SchemaCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,7 +40,7 @@ public class SchemaFactory {
             try (TransactionScope tx = new TransactionScope(TransactionMode.READ_UPDATE)) {
 
                 // Ensure that our view of the schema is up to date.
-                SchemaProvider.getDefaultPersistentProvider().refresh(true);
+                SchemaCache.getDefault().refresh();
 
                 com.objy.data.ClassBuilder cBuilder;
 
@@ -135,7 +136,7 @@ public class SchemaFactory {
                 SchemaProvider.getDefaultPersistentProvider().represent(cLivesEdge);
 
 
-                SchemaProvider.getDefaultPersistentProvider().activateEdits();
+                SchemaCache.getDefault().activateEdits();
 
                 logger.info("Calling tx.complete()...");
 
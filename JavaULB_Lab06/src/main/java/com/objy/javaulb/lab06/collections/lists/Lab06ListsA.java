@@ -14,6 +14,7 @@ import com.objy.db.SessionLogging;
 import com.objy.db.TransactionMode;
 import com.objy.db.TransactionScope;
 import com.objy.statement.Statement;
+import com.objy.javaulb.utils.TransactionRunner;
 import java.io.File;
 import java.util.Iterator;
 import java.util.Properties;
@@ -263,8 +264,8 @@ public class Lab06ListsA {
         int transLCERetryCount = 0;
         boolean transactionSuccessful = false;
         while (!transactionSuccessful) {
-            // Create a new TransactionScope that is READ_UPDATE.
-            try (TransactionScope tx = new TransactionScope(TransactionMode.READ_UPDATE)) {
+            // Create a new read-only TransactionScope; queries take no update locks.
+            try (TransactionScope tx = new TransactionScope(TransactionRunner.queryMode())) {
 
                 // Ensure that our view of the schema is up to date.
                 SchemaProvider.getDefaultPersistentProvider().refresh(true);
@@ -373,8 +374,8 @@ public class Lab06ListsA {
         int transLCERetryCount = 0;
         boolean transactionSuccessful = false;
         while (!transactionSuccessful) {
-            // Create a new TransactionScope that is READ_UPDATE.
-            try (TransactionScope tx = new TransactionScope(TransactionMode.READ_UPDATE)) {
+            // Create a new read-only TransactionScope; queries take no update locks.
+            try (TransactionScope tx = new TransactionScope(TransactionRunner.queryMode())) {
 
                 // Ensure that our view of the schema is up to date.
                 SchemaProvider.getDefaultPersistentProvider().refresh(true);
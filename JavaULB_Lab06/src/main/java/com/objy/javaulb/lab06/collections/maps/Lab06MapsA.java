@@ -8,11 +8,10 @@ import com.objy.data.LogicalType;
 import com.objy.data.Variable;
 import com.objy.data.Walk;
 import com.objy.db.Connection;
-import com.objy.db.LockConflictException;
 import com.objy.db.ObjectivityException;
 import com.objy.db.SessionLogging;
 import com.objy.db.TransactionMode;
-import com.objy.db.TransactionScope;
+import com.objy.javaulb.utils.TransactionRunner;
 import com.objy.statement.Statement;
 import java.io.File;
 import java.util.ArrayList;
@@ -39,6 +38,9 @@ public class Lab06MapsA {
     // The connection to the ThingSpan federation.
     private Connection connection;
 
+    // Runs each transaction, retrying it on lock conflicts.
+    private final TransactionRunner transactionRunner = new TransactionRunner();
+
 
     public Lab06MapsA() {
 
@@ -112,72 +114,44 @@ public class Lab06MapsA {
 
     }
 
-    private void createSchema() {
+    private void createSchema() throws Exception {
 
         logger.info("createSchema() - Begin...");
 
-        int transLCERetryCount = 0;
-        boolean transactionSuccessful = false;
-        while (!transactionSuccessful) {
-            // Create a new TransactionScope that is READ_UPDATE.
-            try (TransactionScope tx = new TransactionScope(TransactionMode.READ_UPDATE)) {
-
-                // Ensure that our view of the schema is up to date.
-                SchemaProvider.getDefaultPersistentProvider().refresh(true);
-
-                Statement statement;
-
-                try {
-
-                    String doQuery
-                            = "UPDATE SCHEMA {\n"
-                            + "    CREATE CLASS KVPair {\n"
-                            + "         Key : String,\n"
-                            + "         Value : String\n"
-                            + "     }\n"
-                            + "    CREATE CLASS MyType {\n"
-                            + "         MyName : String,\n"
-                            + "         MyMap  : Map {\n"
-                            + "                     CollectionTypeName :NameToReferenceMap,\n"
-                            + "                     Key :String { Encoding: BYTE },\n"
-                            + "                     Element : Reference { Referenced: KVPair }\n"
-                            + "                 }\n"
-                            + "     }\n"
-                            + "}";
-
-                    logger.info("doQuery: <" + doQuery + ">");
-                    statement = new Statement("DO", doQuery);
-
-                    statement.execute();
-
-                } catch (ObjectivityException oe) {
-                    oe.printStackTrace();
-                }
+        transactionRunner.run(TransactionMode.READ_UPDATE, () -> {
 
-                logger.info("Calling tx.complete()...");
+            // Ensure that our view of the schema is up to date.
+            SchemaProvider.getDefaultPersistentProvider().refresh(true);
 
+            Statement statement;
 
-                // Complete and close the transaction
-                tx.complete();
-                tx.close();
-
-                logger.info("Back from tx.close()");
-
-                transactionSuccessful = true;
-
-            } catch (LockConflictException lce) {
-                logger.info("LockConflictException. Attempting retry...  retryCount = " + ++transLCERetryCount);
-                try {
-                    Thread.sleep(10 * transLCERetryCount);
-                } catch (InterruptedException ie) {
-                }
+            try {
 
-            } catch (Exception ex) {
-                logger.error("Error: ", ex);
-                ex.printStackTrace();
-                throw ex;
+                String doQuery
+                        = "UPDATE SCHEMA {\n"
+                        + "    CREATE CLASS KVPair {\n"
+                        + "         Key : String,\n"
+                        + "         Value : String\n"
+                        + "     }\n"
+                        + "    CREATE CLASS MyType {\n"
+                        + "         MyName : String,\n"
+                        + "         MyMap  : Map {\n"
+                        + "                     CollectionTypeName :NameToReferenceMap,\n"
+                        + "                     Key :String { Encoding: BYTE },\n"
+                        + "                     Element : Reference { Referenced: KVPair }\n"
+                        + "                 }\n"
+                        + "     }\n"
+                        + "}";
+
+                logger.info("doQuery: <" + doQuery + ">");
+                statement = new Statement("DO", doQuery);
+
+                statement.execute();
+
+            } catch (ObjectivityException oe) {
+                oe.printStackTrace();
             }
-        }
+        });
 
         logger.info("createSchema() - End...");
     }
@@ -206,7 +180,7 @@ public class Lab06MapsA {
      * This method creates an instance of MyType which contains a com.objy.data.Map
      * attribute and then puts some things in the map.
      */
-    private void addEntries() {
+    private void addEntries() throws Exception {
 
         logger.info("addEntries() - Begin...");
 
@@ -217,71 +191,43 @@ public class Lab06MapsA {
             new KVData("BKey", "BValue")
         };
 
-        int transLCERetryCount = 0;
-        boolean transactionSuccessful = false;
-        while (!transactionSuccessful) {
-            // Create a new TransactionScope that is READ_UPDATE.
-            try (TransactionScope tx = new TransactionScope(TransactionMode.READ_UPDATE)) {
+        transactionRunner.run(TransactionMode.READ_UPDATE, () -> {
 
-                // Ensure that our view of the schema is up to date.
-                SchemaProvider.getDefaultPersistentProvider().refresh(true);
-
-                // Create an instance of MyType
-                com.objy.data.Class cMyType = com.objy.data.Class.lookupClass("MyType");
-                Instance iMT = Instance.createPersistent(cMyType);
-
-                // Get the Map attribute from the instance.
-                com.objy.data.Map map = iMT.getAttributeValue("MyMap").mapValue();
+            // Ensure that our view of the schema is up to date.
+            SchemaProvider.getDefaultPersistentProvider().refresh(true);
 
+            // Create an instance of MyType
+            com.objy.data.Class cMyType = com.objy.data.Class.lookupClass("MyType");
+            Instance iMT = Instance.createPersistent(cMyType);
 
-                com.objy.data.Class cKVPair = com.objy.data.Class.lookupClass("KVPair");
+            // Get the Map attribute from the instance.
+            com.objy.data.Map map = iMT.getAttributeValue("MyMap").mapValue();
 
-                for (KVData kvd : kvData) {
-                    // Create the target KVPair object.
-                    Instance iKV = Instance.createPersistent(cKVPair);
 
-                    // Set the attributes on the new KVPair object.
-                    iKV.getAttributeValue("Key").set(kvd.key);
-                    iKV.getAttributeValue("Value").set(kvd.value);
+            com.objy.data.Class cKVPair = com.objy.data.Class.lookupClass("KVPair");
 
-                    // We need a Variable to represent key String value.
-                    Variable vKey = new Variable(kvd.key);
-
-                    // We need an empty Variable that will hold the Reference
-                    // to the iKV object.
-                    Variable vValue = new Variable();
-
-                    // Wrap iKV in a Reference and put that into vValue.
-                    vValue.set(new com.objy.data.Reference(iKV));
-
-                    // Put the vKey and vValue into the map attribute.
-                    map.put(vKey, vValue);
-                }
+            for (KVData kvd : kvData) {
+                // Create the target KVPair object.
+                Instance iKV = Instance.createPersistent(cKVPair);
 
-                logger.info("Calling tx.complete()...");
+                // Set the attributes on the new KVPair object.
+                iKV.getAttributeValue("Key").set(kvd.key);
+                iKV.getAttributeValue("Value").set(kvd.value);
 
+                // We need a Variable to represent key String value.
+                Variable vKey = new Variable(kvd.key);
 
-                // Complete and close the transaction
-                tx.complete();
-                tx.close();
+                // We need an empty Variable that will hold the Reference
+                // to the iKV object.
+                Variable vValue = new Variable();
 
-                logger.info("Back from tx.close()");
+                // Wrap iKV in a Reference and put that into vValue.
+                vValue.set(new com.objy.data.Reference(iKV));
 
-                transactionSuccessful = true;
-
-            } catch (LockConflictException lce) {
-                logger.info("LockConflictException. Attempting retry...  retryCount = " + ++transLCERetryCount);
-                try {
-                    Thread.sleep(10 * transLCERetryCount);
-                } catch (InterruptedException ie) {
-                }
-
-            } catch (Exception ex) {
-                logger.error("Error: ", ex);
-                ex.printStackTrace();
-                throw ex;
+                // Put the vKey and vValue into the map attribute.
+                map.put(vKey, vValue);
             }
-        }
+        });
 
         logger.info("addEntries() - End...");
     }
@@ -292,112 +238,78 @@ public class Lab06MapsA {
 
         logger.info("readEntries() - Begin...");
 
-        int transLCERetryCount = 0;
-        boolean transactionSuccessful = false;
-        while (!transactionSuccessful) {
-            // Create a new TransactionScope that is READ_UPDATE.
-            try (TransactionScope tx = new TransactionScope(TransactionMode.READ_UPDATE)) {
+        try {
+            // Queries take no update locks.
+            transactionRunner.runQuery(() -> {
 
                 // Ensure that our view of the schema is up to date.
                 SchemaProvider.getDefaultPersistentProvider().refresh(true);
 
                 Statement statement;
 
-                try {
-                    String doQuery = "FROM MyType return *";
+                String doQuery = "FROM MyType return *";
 
-                    logger.info("doQuery: <" + doQuery + ">");
-                    statement = new Statement("DO", doQuery);
+                logger.info("doQuery: <" + doQuery + ">");
+                statement = new Statement("DO", doQuery);
 
-                    Iterator<Variable> it = statement.execute().sequenceValue().iterator();
+                Iterator<Variable> it = statement.execute().sequenceValue().iterator();
 
-                    // Loop over the MyType objects in the results.
-                    while (it.hasNext()) {
+                // Loop over the MyType objects in the results.
+                while (it.hasNext()) {
 
-                        Variable v = it.next();
+                    Variable v = it.next();
 
-                        Instance iMT = v.instanceValue();
+                    Instance iMT = v.instanceValue();
 
-                        logger.info("MyType OID = " + iMT.getIdentifier().toString());
+                    logger.info("MyType OID = " + iMT.getIdentifier().toString());
 
-                        // Get the MyMap attribute from the current MyType object.
-                        Variable vMTMyMap = iMT.getAttributeValue("MyMap");
+                    // Get the MyMap attribute from the current MyType object.
+                    Variable vMTMyMap = iMT.getAttributeValue("MyMap");
 
-                        // Convert the Variable to Map.
-                        com.objy.data.Map map = vMTMyMap.mapValue();
-                        
-                        ArrayList<String> keys = new ArrayList<>();
+                    // Convert the Variable to Map.
+                    com.objy.data.Map map = vMTMyMap.mapValue();
+                
+                    ArrayList<String> keys = new ArrayList<>();
 
 
-                        // Iteratr over the keys in the map.
-                        Iterator<Variable> itKeys = map.keys().iterator();
-                        while (itKeys.hasNext()) {
-                            Variable vKey = itKeys.next();
+                    // Iteratr over the keys in the map.
+                    Iterator<Variable> itKeys = map.keys().iterator();
+                    while (itKeys.hasNext()) {
+                        Variable vKey = itKeys.next();
 
-                            // Get the String value for the current key.
-                            String sKey = vKey.stringValue();
-                            
-                            keys.add(sKey);
+                        // Get the String value for the current key.
+                        String sKey = vKey.stringValue();
+                    
+                        keys.add(sKey);
 
-                            // Within the map, the value is a Reference.
-                            // Get the referenced object which is of type KVPair.
-                            Instance iValue = map.get(vKey).referenceValue().getReferencedObject();
+                        // Within the map, the value is a Reference.
+                        // Get the referenced object which is of type KVPair.
+                        Instance iValue = map.get(vKey).referenceValue().getReferencedObject();
 
-                            // Get the Value attribute from the KVPair object.
-                            String sValue = iValue.getAttributeValue("Value").stringValue();
+                        // Get the Value attribute from the KVPair object.
+                        String sValue = iValue.getAttributeValue("Value").stringValue();
 
-                            logger.info("MyType.MyMap: sKey <" + sKey + ">   sValue <" + sValue + ">");
-                        }
-                        
-                        logger.info("--------------------------------");
-                        int i = 1;
-                        logger.info("Key Order (Unordered):");
-                        for (String key : keys) {
-                            logger.info("   " + i + ".  " + key);
-                            i++;
-                        }
-                        logger.info("The NameToReferenceMap orders the keys by insert-order.");
-                        logger.info("--------------------------------");
-                        
-                        
+                        logger.info("MyType.MyMap: sKey <" + sKey + ">   sValue <" + sValue + ">");
                     }
-                } catch(Exception ex) {
-                    ex.printStackTrace();
-                    break;
-                }
-
-
-
-                logger.info("Calling tx.complete()...");
-
-
-                // Complete and close the transaction
-                tx.complete();
-                tx.close();
-
-                logger.info("Back from tx.close()");
-
-                transactionSuccessful = true;
-
-            } catch (LockConflictException lce) {
-                logger.info("LockConflictException. Attempting retry...  retryCount = " + ++transLCERetryCount);
-                try {
-                    Thread.sleep(10 * transLCERetryCount);
-                } catch (InterruptedException ie) {
+                
+                    logger.info("--------------------------------");
+                    int i = 1;
+                    logger.info("Key Order (Unordered):");
+                    for (String key : keys) {
+                        logger.info("   " + i + ".  " + key);
+                        i++;
+                    }
+                    logger.info("The NameToReferenceMap orders the keys by insert-order.");
+                    logger.info("--------------------------------");
+                
+                
                 }
-
-            } catch (Exception ex) {
-                logger.error("Error: ", ex);
-                ex.printStackTrace();
-                throw ex;
-            }
+            });
+        } catch (Exception ex) {
+            ex.printStackTrace();
         }
 
         logger.info("readEntries() - End...");
-
-
-
-
     }
 
 
@@ -412,11 +324,9 @@ public class Lab06MapsA {
 
         String oid = null;
 
-        int transLCERetryCount = 0;
-        boolean transactionSuccessful = false;
-        while (!transactionSuccessful) {
-            // Create a new TransactionScope that is READ_UPDATE.
-            try (TransactionScope tx = new TransactionScope(TransactionMode.READ_UPDATE)) {
+        try {
+            // Queries take no update locks.
+            transactionRunner.runQuery(() -> {
 
                 // Ensure that our view of the schema is up to date.
                 SchemaProvider.getDefaultPersistentProvider().refresh(true);
@@ -452,27 +362,9 @@ public class Lab06MapsA {
                 print("");
                 print("--------------------------------------------------------");
                 print("Result Count: " + resultCount);
-
-                // The complete writes the data out to the database.
-                tx.complete();
-
-                tx.close();
-
-                //logger.info("Person class created in federation.");
-
-                transactionSuccessful = true;
-
-            } catch (LockConflictException lce) {
-                logger.info("LockConflictException. Attempting retry...  retryCount = " + ++transLCERetryCount);
-                try {
-                    Thread.sleep(10 * transLCERetryCount);
-                } catch (InterruptedException ie) {
-                }
-
-            } catch (Exception ex) {
-                ex.printStackTrace();
-                break;
-            }
+            });
+        } catch (Exception ex) {
+            ex.printStackTrace();
         }
 
         print("========================================================");
@@ -0,0 +1,142 @@
+package com.objy.javaulb.utils;
+
+import com.objy.data.Attribute;
+import com.objy.data.Instance;
+import com.objy.data.Reference;
+import com.objy.data.Variable;
+
+/**
+ * Reads and writes one attribute of a schema class through its resolved
+ * {@link Attribute}, instead of finding the attribute by name on every
+ * call as <code>Instance.getAttributeValue("Street")</code> does.
+ * <pre>
+ *   AttributeAccessor aStreet = AttributeAccessor.of("Address", "Street");
+ *   ...
+ *   aStreet.set(iAddress, street);
+ * </pre>
+ * The attribute is resolved through {@link SchemaCache}, once per schema
+ * generation: an accessor may be kept in a field and used in later
+ * transactions, and it resolves its attribute again after the schema
+ * changes. Use it inside a transaction. An accessor may be shared by
+ * threads.
+ *
+ * @author Daniel
+ */
+public class AttributeAccessor {
+
+    private final SchemaCache schemaCache;
+    private final String className;
+    private final String attributeName;
+
+    private volatile Resolved resolved;
+
+
+    /**
+     * @param schemaCache   Resolves the attribute.
+     * @param className     The name of a schema class.
+     * @param attributeName The name of one of its attributes.
+     */
+    public AttributeAccessor(SchemaCache schemaCache, String className, String attributeName) {
+        this.schemaCache = schemaCache;
+        this.className = className;
+        this.attributeName = attributeName;
+    }
+
+
+    /**
+     * @return An accessor resolving through the default SchemaCache.
+     */
+    public static AttributeAccessor of(String className, String attributeName) {
+        return new AttributeAccessor(SchemaCache.getDefault(), className, attributeName);
+    }
+
+
+    /**
+     * @return The attribute, resolved if the schema generation changed since
+     * the last call.
+     * @throws IllegalStateException if the class has no such attribute.
+     */
+    public Attribute getAttribute() {
+
+        long current = schemaCache.getGeneration();
+        Resolved r = resolved;
+        if (r == null || r.generation != current) {
+            Attribute at = schemaCache.lookupAttribute(className, attributeName);
+            if (at == null) {
+                throw new IllegalStateException("No attribute " + attributeName + " in class " + className);
+            }
+            r = new Resolved(at, current);
+            resolved = r;
+        }
+        return r.attribute;
+    }
+
+
+    /**
+     * @return The value of the attribute in the instance; setting it sets
+     * the attribute.
+     */
+    public Variable get(Instance ix) {
+        return ix.getAttributeValue(getAttribute());
+    }
+
+
+    public String getString(Instance ix) {
+        return get(ix).stringValue();
+    }
+
+
+    public long getLong(Instance ix) {
+        return get(ix).longValue();
+    }
+
+
+    public double getDouble(Instance ix) {
+        return get(ix).doubleValue();
+    }
+
+
+    public void set(Instance ix, String value) {
+        get(ix).set(value);
+    }
+
+
+    public void set(Instance ix, long value) {
+        get(ix).set(value);
+    }
+
+
+    public void set(Instance ix, double value) {
+        get(ix).set(value);
+    }
+
+
+    /**
+     * Sets a reference attribute, e.g. one end of an edge, to the target.
+     */
+    public void setReference(Instance ix, Instance target) {
+        get(ix).set(new Reference(target));
+    }
+
+
+    @Override
+    public String toString() {
+        return className + "." + attributeName;
+    }
+
+
+
+    // An attribute and the schema generation it was resolved in, swapped
+    // as one so that threads never see one without the other.
+    private static class Resolved {
+
+        final Attribute attribute;
+        final long generation;
+
+        Resolved(Attribute attribute, long generation) {
+            this.attribute = attribute;
+            this.generation = generation;
+        }
+    }
+
+}
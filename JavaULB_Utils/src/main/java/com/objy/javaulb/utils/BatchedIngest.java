@@ -0,0 +1,277 @@
+package com.objy.javaulb.utils;
+
+import com.objy.db.TransactionMode;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates a number of objects in a series of transactions of bounded size,
+ * instead of all of them in one transaction:
+ * <pre>
+ *   new BatchedIngest(transactionRunner).ingest(count, () -&gt; {
+ *       com.objy.data.Class cPerson = SchemaCache.getDefault().lookupClass("Person");
+ *       return i -&gt; {
+ *           Instance iPerson = Instance.createPersistent(cPerson);
+ *           ...
+ *       };
+ *   });
+ * </pre>
+ * The {@link BatchSetup} runs once at the start of each batch's
+ * transaction, for what the writes of the batch share, such as schema
+ * lookups; the {@link ObjectWriter} it returns runs once per object.
+ * Each batch commits on its own, retrying on lock conflicts through the
+ * TransactionRunner; a retried batch runs its setup and writes its objects
+ * again.
+ * <p>
+ * With auto-tuning on, the size of the next batch follows the last one:
+ * when the commit took more than a tenth of the batch, the batch grows, so
+ * the commit cost is spread over more objects; when the batch ran longer
+ * than <code>maxBatchMillis</code>, it shrinks, so no transaction holds its
+ * locks for too long. Sizes stay within [minBatchSize, maxBatchSize].
+ *
+ * @author Daniel
+ */
+public class BatchedIngest {
+
+    private static Logger logger = LoggerFactory.getLogger(BatchedIngest.class);
+
+    /**
+     * The system property setting the size of the first batch, e.g.
+     * <code>-DIngestBatchSize=5000</code>.
+     */
+    public static final String BATCH_SIZE_PROPERTY = "IngestBatchSize";
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    public static final int DEFAULT_MIN_BATCH_SIZE = 100;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 100_000;
+    public static final long DEFAULT_MAX_BATCH_MILLIS = 2000;
+
+    // Grow the batch while the commit takes more than this part of it.
+    private static final double COMMIT_SHARE = 0.1;
+
+    private final TransactionRunner runner;
+    private final int initialBatchSize;
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final long maxBatchNanos;
+    private final boolean autoTune;
+
+
+    /**
+     * An auto-tuned ingest, starting at {@value #DEFAULT_BATCH_SIZE} objects
+     * per batch unless the {@value #BATCH_SIZE_PROPERTY} system property
+     * says otherwise.
+     */
+    public BatchedIngest(TransactionRunner runner) {
+        this(runner, Integer.getInteger(BATCH_SIZE_PROPERTY, DEFAULT_BATCH_SIZE), DEFAULT_MIN_BATCH_SIZE,
+                DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_BATCH_MILLIS, true);
+    }
+
+
+    /**
+     * @param runner            Runs and retries each batch.
+     * @param initialBatchSize  The objects in the first batch; in every
+     *                          batch if autoTune is off.
+     * @param minBatchSize      The fewest objects auto-tuning goes down to.
+     * @param maxBatchSize      The most objects auto-tuning goes up to.
+     * @param maxBatchMillis    The batch time above which auto-tuning
+     *                          shrinks the batch.
+     * @param autoTune          Whether to size batches from their commit
+     *                          times.
+     */
+    public BatchedIngest(TransactionRunner runner, int initialBatchSize, int minBatchSize, int maxBatchSize,
+            long maxBatchMillis, boolean autoTune) {
+
+        if (minBatchSize < 1 || maxBatchSize < minBatchSize || initialBatchSize < 1 || maxBatchMillis < 1) {
+            throw new IllegalArgumentException("initialBatchSize = " + initialBatchSize
+                    + ", minBatchSize = " + minBatchSize + ", maxBatchSize = " + maxBatchSize
+                    + ", maxBatchMillis = " + maxBatchMillis);
+        }
+        this.runner = runner;
+        this.initialBatchSize = initialBatchSize;
+        this.minBatchSize = minBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchNanos = TimeUnit.MILLISECONDS.toNanos(maxBatchMillis);
+        this.autoTune = autoTune;
+    }
+
+
+    /**
+     * Creates <code>count</code> objects, committing them in batches.
+     *
+     * @param count     The number of objects.
+     * @param writer    Creates object <code>i</code>, for i in [0, count),
+     *                  in the current transaction.
+     * @return What was written, and how fast.
+     * @throws Exception What the writer threw, or the last lock conflict of
+     * a batch that used up its retries. The batches before it stay
+     * committed.
+     */
+    public Report ingest(long count, ObjectWriter writer) throws Exception {
+        return ingest(count, () -> writer);
+    }
+
+
+    /**
+     * Creates <code>count</code> objects, committing them in batches, with
+     * a setup at the start of each batch.
+     *
+     * @param count     The number of objects.
+     * @param setup     Runs at the start of each batch's transaction, and
+     *                  returns the writer of the batch's objects.
+     * @return What was written, and how fast.
+     * @throws Exception What the setup or the writer threw, or the last lock
+     * conflict of a batch that used up its retries. The batches before it
+     * stay committed.
+     */
+    public Report ingest(long count, BatchSetup setup) throws Exception {
+
+        long start = System.nanoTime();
+        long written = 0;
+        int batches = 0;
+        long retries = 0;
+        long conflicts = 0;
+        int batchSize = initialBatchSize;
+
+        TransactionRunner.Metrics metrics = new TransactionRunner.Metrics();
+        long[] writesEnd = new long[1];
+
+        while (written < count) {
+            long from = written;
+            long to = Math.min(count, from + batchSize);
+
+            long batchStart = System.nanoTime();
+            runner.run(TransactionMode.READ_UPDATE, () -> {
+                ObjectWriter writer = setup.begin();
+                for (long i = from; i < to; i++) {
+                    writer.write(i);
+                }
+                writesEnd[0] = System.nanoTime();
+            }, metrics);
+            long batchEnd = System.nanoTime();
+
+            // The time from the last object written to the end of the
+            // transaction is the cost of its commit.
+            long batchNanos = batchEnd - batchStart;
+            long commitNanos = batchEnd - writesEnd[0];
+            batches++;
+            if (metrics.getConflicts() > 0) {
+                retries++;
+            }
+            conflicts += metrics.getConflicts();
+            written = to;
+
+            int n = (int) (to - from);
+            int next = autoTune ? nextBatchSize(n, batchNanos, commitNanos) : batchSize;
+
+            logger.info(String.format("Batch %d: %,d objects in %d ms (commit %d ms), %,.0f objects/sec; %,d of %,d written, next batch %,d",
+                    batches, n, TimeUnit.NANOSECONDS.toMillis(batchNanos), TimeUnit.NANOSECONDS.toMillis(commitNanos),
+                    perSecond(n, batchNanos), written, count, next));
+
+            batchSize = next;
+        }
+
+        Report report = new Report(written, batches, retries, conflicts, System.nanoTime() - start);
+        logger.info(report.toString());
+        return report;
+    }
+
+
+    private int nextBatchSize(int size, long batchNanos, long commitNanos) {
+
+        long next = size;
+        if (batchNanos > maxBatchNanos) {
+            next = Math.max(size / 2, size * maxBatchNanos / batchNanos);
+        } else if (commitNanos > batchNanos * COMMIT_SHARE) {
+            next = size * 2L;
+        }
+        return (int) Math.max(minBatchSize, Math.min(maxBatchSize, next));
+    }
+
+
+    private static double perSecond(long n, long nanos) {
+        return (nanos == 0) ? 0 : n * 1e9 / nanos;
+    }
+
+
+
+    /**
+     * Creates one object, inside the transaction of its batch.
+     */
+    @FunctionalInterface
+    public interface ObjectWriter {
+        void write(long index) throws Exception;
+    }
+
+
+    /**
+     * Prepares one batch, inside its transaction, and returns the writer of
+     * its objects.
+     */
+    @FunctionalInterface
+    public interface BatchSetup {
+        ObjectWriter begin() throws Exception;
+    }
+
+
+
+    /**
+     * The totals of one {@link #ingest(long, ObjectWriter)}.
+     */
+    public static class Report {
+
+        private final long objects;
+        private final int batches;
+        private final long retries;
+        private final long conflicts;
+        private final long elapsedNanos;
+
+
+        Report(long objects, int batches, long retries, long conflicts, long elapsedNanos) {
+            this.objects = objects;
+            this.batches = batches;
+            this.retries = retries;
+            this.conflicts = conflicts;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getObjects() {
+            return objects;
+        }
+
+        public int getBatches() {
+            return batches;
+        }
+
+        /**
+         * @return The batches retried after a lock conflict.
+         */
+        public long getRetries() {
+            return retries;
+        }
+
+        /**
+         * @return The lock conflicts over all batches; a batch may conflict
+         * more than once.
+         */
+        public long getConflicts() {
+            return conflicts;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getObjectsPerSecond() {
+            return perSecond(objects, elapsedNanos);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Ingested %,d objects in %,d batches (%,d retried, %,d conflicts) in %,d ms: %,.0f objects/sec",
+                    objects, batches, retries, conflicts, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), getObjectsPerSecond());
+        }
+    }
+
+}
@@ -0,0 +1,366 @@
+package com.objy.javaulb.utils;
+
+import com.objy.db.Connection;
+import com.objy.db.TransactionMode;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Owns the one federation {@link Connection} of the process and hands out
+ * a bounded number of sessions to the threads that work in it.
+ * <pre>
+ *   try (ConnectionManager.Session session = manager.acquire()) {
+ *       session.run(TransactionMode.READ_UPDATE, () -&gt; { ... });
+ *   }
+ * </pre>
+ * Objectivity binds a transaction to the thread that opened it, so a
+ * session belongs to the thread that acquired it until it is closed, and
+ * runs its transactions through a shared {@link TransactionRunner}. The
+ * pool bounds how many threads run transactions at once; threads beyond
+ * that wait in {@link #acquire()}.
+ * <p>
+ * All sessions are created when the manager opens, and a read-only
+ * transaction loads the schema then, so the first checkout does not pay
+ * for it. The manager counts checkouts, the time threads waited for a
+ * session, and how often the pool was saturated.
+ *
+ * @author Daniel
+ */
+public class ConnectionManager implements AutoCloseable {
+
+    private static Logger logger = LoggerFactory.getLogger(ConnectionManager.class);
+
+    public static final int DEFAULT_SESSIONS = Runtime.getRuntime().availableProcessors();
+
+    private final String bootFile;
+    private final Connection connection;
+    private final TransactionRunner runner;
+
+    private final int size;
+    private final ArrayBlockingQueue<Session> idle;
+
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final LongAccumulator peakInUse = new LongAccumulator(Math::max, 0);
+    private final LongAdder checkouts = new LongAdder();
+    private final LongAdder saturatedCheckouts = new LongAdder();
+    private final LongAdder checkoutWaitNanos = new LongAdder();
+    private final LongAccumulator maxCheckoutWaitNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder timeouts = new LongAdder();
+
+    private volatile boolean closed;
+
+    // Put in the pool by close() to wake the threads waiting in acquire();
+    // each of them passes it on to the next.
+    private final Session closedMarker = new Session(-1);
+
+
+    /**
+     * Connects to the federation and creates the sessions.
+     *
+     * @param bootFile  The boot file of the federation.
+     * @param sessions  The most threads that may work at once.
+     * @param runner    Runs the transactions of all sessions.
+     */
+    public ConnectionManager(String bootFile, int sessions, TransactionRunner runner) throws Exception {
+
+        if (sessions < 1) {
+            throw new IllegalArgumentException("sessions = " + sessions);
+        }
+        this.bootFile = bootFile;
+        this.runner = runner;
+        this.size = sessions;
+        // One more slot, for the marker close() puts in.
+        this.idle = new ArrayBlockingQueue<>(sessions + 1);
+
+        connection = new Connection(bootFile);
+        logger.info("Connected to ThingSpan federation: " + bootFile);
+
+        for (int i = 0; i < sessions; i++) {
+            idle.add(new Session(i));
+        }
+
+        try {
+            prewarm();
+        } catch (Exception ex) {
+            connection.dispose();
+            throw ex;
+        }
+    }
+
+
+    public ConnectionManager(String bootFile, int sessions) throws Exception {
+        this(bootFile, sessions, new TransactionRunner());
+    }
+
+
+    // Load the schema once, before any session is checked out.
+    private void prewarm() throws Exception {
+
+        long start = System.nanoTime();
+        runner.run(TransactionMode.READ_ONLY, () -> SchemaCache.getDefault().refresh());
+        logger.info("Pre-warmed " + size + " sessions in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+    }
+
+
+    /**
+     * Checks out a session for the calling thread, waiting as long as it
+     * takes for one to be free.
+     *
+     * @throws IllegalStateException if the manager is closed, also while
+     * waiting.
+     */
+    public Session acquire() throws InterruptedException {
+
+        checkOpen();
+        long start = System.nanoTime();
+        Session session = idle.poll();
+        if (session == null) {
+            saturatedCheckouts.increment();
+            session = idle.take();
+        }
+        return checkedOut(session, start);
+    }
+
+
+    /**
+     * Checks out a session for the calling thread, waiting at most the
+     * timeout for one to be free.
+     *
+     * @throws TimeoutException if no session was free in time.
+     * @throws IllegalStateException if the manager is closed, also while
+     * waiting.
+     */
+    public Session acquire(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+
+        checkOpen();
+        long start = System.nanoTime();
+        Session session = idle.poll();
+        if (session == null) {
+            saturatedCheckouts.increment();
+            session = idle.poll(timeout, unit);
+            if (session == null) {
+                timeouts.increment();
+                throw new TimeoutException("No session free after " + unit.toMillis(timeout)
+                        + " ms; all " + size + " are in use.");
+            }
+        }
+        return checkedOut(session, start);
+    }
+
+
+    private Session checkedOut(Session session, long start) {
+
+        if (session == closedMarker) {
+            idle.offer(closedMarker);
+            checkOpen();
+        }
+
+        long waited = System.nanoTime() - start;
+        checkouts.increment();
+        checkoutWaitNanos.add(waited);
+        maxCheckoutWaitNanos.accumulate(waited);
+        peakInUse.accumulate(inUse.incrementAndGet());
+
+        session.owner = Thread.currentThread();
+        return session;
+    }
+
+
+    private void release(Session session) {
+        session.owner = null;
+        inUse.decrementAndGet();
+        idle.add(session);
+    }
+
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("ConnectionManager is closed: " + bootFile);
+        }
+    }
+
+
+    /**
+     * Disconnects from the federation. Threads waiting in acquire() fail
+     * with an IllegalStateException. Sessions still checked out must not be
+     * used afterwards.
+     */
+    @Override
+    public void close() {
+
+        if (closed) {
+            return;
+        }
+        closed = true;
+        idle.offer(closedMarker);
+
+        if (inUse.get() > 0) {
+            logger.warn(inUse.get() + " sessions are still checked out.");
+        }
+        logger.info(toString());
+
+        connection.dispose();
+        logger.info("Disconnected from ThingSpan federation: " + bootFile);
+    }
+
+
+    public Connection getConnection() {
+        return connection;
+    }
+
+
+    public TransactionRunner getTransactionRunner() {
+        return runner;
+    }
+
+
+    public int getSize() {
+        return size;
+    }
+
+
+    public int getInUse() {
+        return inUse.get();
+    }
+
+
+    public long getPeakInUse() {
+        return peakInUse.get();
+    }
+
+
+    public long getCheckouts() {
+        return checkouts.sum();
+    }
+
+
+    /**
+     * @return The checkouts that found no session free and had to wait.
+     */
+    public long getSaturatedCheckouts() {
+        return saturatedCheckouts.sum();
+    }
+
+
+    /**
+     * @return The total time threads waited in acquire().
+     */
+    public long getCheckoutWaitNanos() {
+        return checkoutWaitNanos.sum();
+    }
+
+
+    public long getMaxCheckoutWaitNanos() {
+        return maxCheckoutWaitNanos.get();
+    }
+
+
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+
+    @Override
+    public String toString() {
+        long n = checkouts.sum();
+        return "ConnectionManager[" + size + " sessions, in use " + inUse.get()
+                + ", peak " + peakInUse.get() + ", checkouts " + n
+                + ", saturated " + saturatedCheckouts.sum() + ", timeouts " + timeouts.sum()
+                + ", mean wait " + (n == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(checkoutWaitNanos.sum() / n)) + " us"
+                + ", max wait " + TimeUnit.NANOSECONDS.toMicros(maxCheckoutWaitNanos.get()) + " us]";
+    }
+
+
+
+    /**
+     * A checked-out session. It may only be used by the thread that
+     * acquired it; closing it returns it to the pool.
+     */
+    public class Session implements AutoCloseable {
+
+        private final int id;
+        private volatile Thread owner;
+
+
+        private Session(int id) {
+            this.id = id;
+        }
+
+
+        public int getId() {
+            return id;
+        }
+
+
+        /**
+         * @see TransactionRunner#call(TransactionMode, TransactionRunner.Work)
+         */
+        public <T> T call(TransactionMode mode, TransactionRunner.Work<T> work) throws Exception {
+            checkOwner();
+            return runner.call(mode, work);
+        }
+
+
+        public void run(TransactionMode mode, TransactionRunner.Task task) throws Exception {
+            checkOwner();
+            runner.run(mode, task);
+        }
+
+
+        /**
+         * @see TransactionRunner#run(TransactionMode, TransactionRunner.Task, TransactionRunner.Metrics)
+         */
+        public void run(TransactionMode mode, TransactionRunner.Task task, TransactionRunner.Metrics metrics)
+                throws Exception {
+            checkOwner();
+            runner.run(mode, task, metrics);
+        }
+
+
+        /**
+         * Runs a query in a transaction of {@link TransactionRunner#queryMode()}.
+         */
+        public <T> T callQuery(TransactionRunner.Work<T> work) throws Exception {
+            checkOwner();
+            return runner.callQuery(work);
+        }
+
+
+        public void runQuery(TransactionRunner.Task task) throws Exception {
+            checkOwner();
+            runner.runQuery(task);
+        }
+
+
+        private void checkOwner() {
+            if (owner != Thread.currentThread()) {
+                throw new IllegalStateException("Session " + id + " is not checked out by "
+                        + Thread.currentThread().getName());
+            }
+        }
+
+
+        /**
+         * Returns the session to the pool.
+         */
+        @Override
+        public void close() {
+            checkOwner();
+            release(this);
+        }
+
+
+        @Override
+        public String toString() {
+            return "Session " + id;
+        }
+    }
+
+}
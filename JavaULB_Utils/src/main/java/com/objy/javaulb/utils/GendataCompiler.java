@@ -0,0 +1,91 @@
+package com.objy.javaulb.utils;
+
+import com.objy.javaulb.utils.addresses.AddressFactory;
+import com.objy.javaulb.utils.names.NameDictionary;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compiles the gendata text files named in AppConfig into binary snapshots
+ * (see {@link GendataSnapshot}). Run by the 'gendataSnapshot' Gradle task of
+ * JavaULB_Utils:
+ * <pre>
+ *   GendataCompiler &lt;AppConfig.properties&gt; &lt;data dir&gt;
+ * </pre>
+ * Files that are missing are skipped, and snapshots that are already up to
+ * date are left alone.
+ *
+ * @author Daniel
+ */
+public class GendataCompiler {
+
+    private static Logger logger = LoggerFactory.getLogger(GendataCompiler.class);
+
+    private static final String[] NAME_PROPERTIES = {
+        "data.names.last",
+        "data.names.first.female",
+        "data.names.first.male"
+    };
+
+    private static final String ADDRESS_PROPERTY = "data.addresses";
+
+
+    public static void main(String[] args) throws Exception {
+
+        if (args.length != 2) {
+            System.err.println("Usage: GendataCompiler <AppConfig.properties> <data dir>");
+            System.exit(1);
+        }
+
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(args[0])) {
+            properties.load(in);
+        }
+        File dataDir = new File(args[1]);
+
+        for (String key : NAME_PROPERTIES) {
+            File source = sourceFile(dataDir, properties, key);
+            if (source != null && needsCompile(source)) {
+                NameDictionary.readText(source, false).writeSnapshot(source);
+            }
+        }
+
+        File addresses = sourceFile(dataDir, properties, ADDRESS_PROPERTY);
+        if (addresses != null && needsCompile(addresses)) {
+            AddressFactory.writeSnapshot(addresses);
+        }
+    }
+
+
+    private static File sourceFile(File dataDir, Properties properties, String key) {
+
+        String name = properties.getProperty(key);
+        if (name == null) {
+            logger.warn("AppConfig has no '" + key + "'; skipping.");
+            return null;
+        }
+
+        File source = new File(dataDir, name.trim());
+        if (!source.exists()) {
+            logger.warn("Not found, skipping: " + source);
+            return null;
+        }
+        return source;
+    }
+
+
+    private static boolean needsCompile(File source) throws IOException {
+
+        if (GendataSnapshot.open(source) != null) {
+            logger.info("Up to date: " + GendataSnapshot.snapshotFileFor(source));
+            return false;
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,290 @@
+package com.objy.javaulb.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A pre-compiled, binary copy of one gendata text file. Snapshots are written
+ * by {@link GendataCompiler} (the 'gendataSnapshot' Gradle task) next to the
+ * source file as "&lt;file&gt;.snap", and opened here by memory mapping, which
+ * takes milliseconds instead of re-parsing the text on every JVM launch.
+ *
+ * A snapshot is a table of rows with some string columns and some double
+ * columns. The layout, all big-endian, is:
+ * <pre>
+ *   int     magic ('JULB')
+ *   int     format version
+ *   long    source file size
+ *   long    source file last-modified time
+ *   int     row count
+ *   int     string column count
+ *   int     double column count
+ *   int     string table size in bytes
+ *   int[]   row count + 1 offsets into the string table, per string column
+ *   double[] row count values, per double column
+ *   byte[]  string table (UTF-8)
+ * </pre>
+ *
+ * {@link #open(File)} returns null when there is no snapshot, or when it was
+ * written by another format version or from a different copy of the source
+ * file. Callers then fall back to parsing the text.
+ *
+ * @author Daniel
+ */
+public class GendataSnapshot {
+
+    private static Logger logger = LoggerFactory.getLogger(GendataSnapshot.class);
+
+    public static final int MAGIC = 0x4A554C42;
+    public static final int VERSION = 1;
+
+    public static final String SUFFIX = ".snap";
+
+    private static final int HEADER_SIZE = 40;
+
+    private final int rows;
+    private final int[][] offsets;
+    private final double[][] doubles;
+    private final ByteBuffer strings;
+
+
+    private GendataSnapshot(int rows, int[][] offsets, double[][] doubles, ByteBuffer strings) {
+        this.rows = rows;
+        this.offsets = offsets;
+        this.doubles = doubles;
+        this.strings = strings;
+    }
+
+
+    /**
+     * @param source    A gendata text file.
+     * @return The file its snapshot is kept in.
+     */
+    public static File snapshotFileFor(File source) {
+        return new File(source.getPath() + SUFFIX);
+    }
+
+
+    /**
+     * Maps the snapshot of a source file.
+     *
+     * @param source    The gendata text file the snapshot was compiled from.
+     * @return The snapshot, or null if it is missing or stale.
+     * @throws IOException If the snapshot exists but cannot be read.
+     */
+    public static GendataSnapshot open(File source) throws IOException {
+
+        File snapshotFile = snapshotFileFor(source);
+        if (!snapshotFile.exists()) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(snapshotFile.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                logger.warn("Ignoring snapshot with bad size: " + snapshotFile);
+                return null;
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            int magic = buffer.getInt();
+            int version = buffer.getInt();
+            long sourceSize = buffer.getLong();
+            long sourceModified = buffer.getLong();
+            if (magic != MAGIC || version != VERSION) {
+                logger.info("Ignoring snapshot from another format version: " + snapshotFile);
+                return null;
+            }
+            if (sourceSize != source.length() || sourceModified != source.lastModified()) {
+                logger.info("Ignoring stale snapshot: " + snapshotFile);
+                return null;
+            }
+
+            int rows = buffer.getInt();
+            int stringColumns = buffer.getInt();
+            int doubleColumns = buffer.getInt();
+            int stringTableSize = buffer.getInt();
+
+            long expected = HEADER_SIZE
+                    + 4L * (rows + 1) * stringColumns
+                    + 8L * rows * doubleColumns
+                    + stringTableSize;
+            if (rows < 0 || stringColumns < 0 || doubleColumns < 0 || expected != size) {
+                logger.warn("Ignoring truncated or corrupt snapshot: " + snapshotFile);
+                return null;
+            }
+
+            int[][] offsets = new int[stringColumns][rows + 1];
+            for (int c = 0; c < stringColumns; c++) {
+                buffer.asIntBuffer().get(offsets[c]);
+                buffer.position(buffer.position() + 4 * (rows + 1));
+            }
+
+            double[][] doubles = new double[doubleColumns][rows];
+            for (int c = 0; c < doubleColumns; c++) {
+                buffer.asDoubleBuffer().get(doubles[c]);
+                buffer.position(buffer.position() + 8 * rows);
+            }
+
+            // The string table stays in the mapping; nothing is copied.
+            ByteBuffer strings = buffer.slice();
+            strings.limit(stringTableSize);
+
+            logger.info("Opened snapshot: " + snapshotFile + " (" + rows + " rows)");
+
+            return new GendataSnapshot(rows, offsets, doubles, strings.asReadOnlyBuffer());
+        }
+    }
+
+
+    /**
+     * Writes the snapshot of a source file. The file is written under a
+     * temporary name and then moved into place, so readers never see a
+     * partial snapshot.
+     *
+     * @param source        The gendata text file the data was read from.
+     * @param rows          The number of rows.
+     * @param offsets       Per string column, the rows + 1 offsets into
+     *                      <code>strings</code>. Each column's cells must be
+     *                      contiguous in the table, apart from the others'.
+     * @param doubles       Per double column, the row values.
+     * @param strings       The string table, from position 0 to its limit.
+     * @throws IOException If the snapshot cannot be written.
+     * @throws IllegalArgumentException If the offsets do not lay the
+     * columns out that way.
+     */
+    public static void write(File source, int rows, int[][] offsets, double[][] doubles, ByteBuffer strings)
+            throws IOException {
+
+        ByteBuffer table = strings.duplicate();
+        table.position(0);
+        checkOffsets(rows, offsets, table.limit());
+
+        long size = HEADER_SIZE
+                + 4L * (rows + 1) * offsets.length
+                + 8L * rows * doubles.length
+                + table.limit();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Snapshot would be too large: " + size + " bytes for " + source);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(source.length());
+        buffer.putLong(source.lastModified());
+        buffer.putInt(rows);
+        buffer.putInt(offsets.length);
+        buffer.putInt(doubles.length);
+        buffer.putInt(table.limit());
+
+        for (int[] column : offsets) {
+            buffer.asIntBuffer().put(column, 0, rows + 1);
+            buffer.position(buffer.position() + 4 * (rows + 1));
+        }
+        for (double[] column : doubles) {
+            buffer.asDoubleBuffer().put(column, 0, rows);
+            buffer.position(buffer.position() + 8 * rows);
+        }
+        buffer.put(table);
+        buffer.flip();
+
+        File snapshotFile = snapshotFileFor(source);
+        File tempFile = new File(snapshotFile.getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        logger.info("Wrote snapshot: " + snapshotFile + " (" + rows + " rows, " + size + " bytes)");
+    }
+
+
+    // Each column must be non-decreasing, inside the table, and must not
+    // overlap another: a row-by-row layout would decode a cell as the
+    // fields of several columns.
+    private static void checkOffsets(int rows, int[][] offsets, int tableSize) {
+
+        for (int c = 0; c < offsets.length; c++) {
+            int[] column = offsets[c];
+            if (column.length < rows + 1 || column[0] < 0 || column[rows] > tableSize) {
+                throw new IllegalArgumentException("Column " + c + " is outside the string table");
+            }
+            for (int row = 0; row < rows; row++) {
+                if (column[row] > column[row + 1]) {
+                    throw new IllegalArgumentException("Column " + c + " decreases at row " + row);
+                }
+            }
+            for (int other = 0; other < c; other++) {
+                if (column[0] < offsets[other][rows] && offsets[other][0] < column[rows]) {
+                    throw new IllegalArgumentException("Columns " + other + " and " + c + " overlap");
+                }
+            }
+        }
+    }
+
+
+    public int rows() {
+        return rows;
+    }
+
+
+    public int stringColumns() {
+        return offsets.length;
+    }
+
+
+    public int doubleColumns() {
+        return doubles.length;
+    }
+
+
+    /**
+     * @return The rows + 1 offsets of a string column into {@link #strings()}.
+     */
+    public int[] offsets(int column) {
+        return offsets[column];
+    }
+
+
+    public double[] doubles(int column) {
+        return doubles[column];
+    }
+
+
+    /**
+     * @return The string table, a read-only view of the mapped file.
+     */
+    public ByteBuffer strings() {
+        return strings.duplicate();
+    }
+
+
+    /**
+     * Decodes one string cell. Convenient for building row objects; code on a
+     * hot path should work from {@link #offsets(int)} and {@link #strings()}.
+     */
+    public String string(int column, int row) {
+
+        int start = offsets[column][row];
+        int length = offsets[column][row + 1] - start;
+
+        byte[] utf8 = new byte[length];
+        ByteBuffer view = strings.duplicate();
+        view.position(start);
+        view.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+}
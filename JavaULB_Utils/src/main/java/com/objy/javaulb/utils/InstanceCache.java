@@ -0,0 +1,91 @@
+package com.objy.javaulb.utils;
+
+import com.objy.data.Instance;
+import com.objy.db.LockConflictException;
+import com.objy.db.ObjectId;
+import com.objy.db.ObjectivityException;
+
+/**
+ * Keeps the Instances looked up by ObjectId in the current transaction, so
+ * that looking the same object up again does not parse its OID and call
+ * Instance.lookup again:
+ * <pre>
+ *   InstanceCache cache = new InstanceCache(10_000);
+ *   ...
+ *   Instance iPerson = cache.lookup(personOID);
+ * </pre>
+ * An Instance belongs to the transaction that looked it up, so a cache is
+ * good for one transaction: create one in the transaction, or call
+ * {@link #clear()} when a transaction starts. It holds at most
+ * <code>capacity</code> Instances and evicts the least recently used.
+ * <p>
+ * With {@link #setPrefetchSlots(int)}, a miss also looks up the objects in
+ * the next slots of the same page, which were read with the page; see
+ * {@link OidCache}.
+ * <p>
+ * It pays when a transaction looks up many objects, some of them more than
+ * once, as EdgeBulkLoader does; a transaction that looks up each object
+ * once gains nothing from it.
+ * <p>
+ * Like the Instances it holds, a cache belongs to one thread.
+ *
+ * @author Daniel
+ */
+public class InstanceCache extends OidCache<Instance> {
+
+    public static final int DEFAULT_CAPACITY = 10_000;
+
+
+    public InstanceCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+
+    /**
+     * @param capacity  The most Instances kept that were looked up;
+     *                  prefetch keeps up to a quarter as many more.
+     */
+    public InstanceCache(int capacity) {
+        this(capacity, oid -> Instance.lookup(new ObjectId(oid)));
+    }
+
+
+    /**
+     * For tests, and for callers that look Instances up some other way.
+     *
+     * @param capacity  The most Instances kept that were looked up.
+     * @param lookup    Looks up the Instances not cached.
+     */
+    public InstanceCache(int capacity, Lookup<Instance> lookup) {
+        super(capacity, lookup);
+    }
+
+
+    /**
+     * @param oid   An OID such as "3-3-1-40".
+     */
+    public Instance lookup(String oid) {
+        return lookup(Oid.parse(oid));
+    }
+
+
+    public Instance lookup(ObjectId oid) {
+        return lookup(oid.asLong());
+    }
+
+
+    // A slot that may hold no object. A lock conflict, or any other failure,
+    // is the caller's.
+    @Override
+    protected Instance lookupIfAny(long oid) {
+        try {
+            return super.lookupIfAny(oid);
+        } catch (LockConflictException ex) {
+            throw ex;
+        } catch (ObjectivityException ex) {
+            // No object in the slot.
+            return null;
+        }
+    }
+
+}
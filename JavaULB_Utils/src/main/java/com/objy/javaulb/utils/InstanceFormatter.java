@@ -12,13 +12,37 @@ import com.objy.data.LogicalType;
 import com.objy.data.Variable;
 import com.objy.data.Walk;
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * Formats Instances as text, one "name : value" line per attribute.
+ * <p>
+ * The lines are built by padded appends instead of String.format, which
+ * parses its pattern on every call. The fixed text of each class, its
+ * padded attribute names and its Classname line, is worked out once per
+ * class and schema generation in a {@link Layout}. Use
+ * {@link #append(Instance, StringBuilder)} with a reused StringBuilder to
+ * format many Instances without a String per Instance.
  *
  * @author Daniel
  */
 public class InstanceFormatter {
 
+    // The width the names and values are padded to.
+    private static final int WIDTH = 15;
+
+    private static final String INDENT = "        ";
+    private static final String SEPARATOR = ":    ";
+    private static final String LIST_ENTRY_INDENT = "                               ";
+    private static final String SPACES = "                                ";
+
+    private static final String OID_PREFIX = INDENT + pad("OID") + SEPARATOR;
+    private static final String HEADER_RULE = "        - - - - - - - - - - - - - - - - - - - - - - - - - - -\n";
+
+    // The layouts of the classes formatted so far, by class name.
+    private static final ConcurrentHashMap<String, Layout> layouts = new ConcurrentHashMap<>();
+
+
     private InstanceFormatter() {
 
     }
@@ -51,44 +75,59 @@ public class InstanceFormatter {
      */
     public static String format(Instance ix, StringBuilder sb) {
 
+        return append(ix, sb).toString();
+    }
+
+
+    /**
+     * Appends the formatted representation of the Instance to the
+     * StringBuilder, without making a String of it.
+     *
+     * @param ix    The instance to be formatted.
+     * @param sb    The StringBuilder to which the formatted output is appended.
+     * @return <code>sb</code>.
+     */
+    public static StringBuilder append(Instance ix, StringBuilder sb) {
+
         if (ix == null) System.err.println(" ix is null");
         if (sb == null) System.err.println(" sb is null");
 
         com.objy.data.Class cx = ix.getClass(true);
         if (cx == null) System.err.println(" cx is null");
 
+        Layout layout = layoutOf(cx);
+
         if (ix.getIdentifier() != null) {
-            sb.append(String.format("        %-15s:    %-15s\n", "OID", ix.getIdentifier().toString()));
-            sb.append(String.format("        %-15s:    %-15s\n", "Classname", ix.getClass(true).getName()));
-            sb.append("        - - - - - - - - - - - - - - - - - - - - - - - - - - -\n");
+            layout.appendHeader(sb, Oid.of(ix.getIdentifier()));
         }
-        for (int i = 0; i < cx.getNumberOfAttributes(); i++) {
-            Attribute at = cx.getAttribute(i);
-            Variable v = ix.getAttributeValue(at.getName());
+        for (int i = 0; i < layout.size(); i++) {
+            Attribute at = layout.attributes[i];
+            Variable v = ix.getAttributeValue(at);
 
             // Process the attribute based on its logical type.
-            LogicalType lt = at.getAttributeValueSpecification().getLogicalType();
-
-            switch (lt) {
+            switch (layout.types[i]) {
                 case DATE:
                     com.objy.data.Date date = v.dateValue();
-                    String sDate = String.format("%d/%d/%d", date.getDay(), date.getMonth(), date.getYear());
-                    sb.append(String.format("        %-15s:    %-15s    \n", at.getName(), sDate));
-                    break;                    
+                    sb.append(layout.prefixes[i]);
+                    int start = sb.length();
+                    sb.append(date.getDay()).append('/').append(date.getMonth()).append('/').append(date.getYear());
+                    padFrom(sb, start);
+                    sb.append("    \n");
+                    break;
                 case STRING:
-                    sb.append(String.format("        %-15s:    %-15s    \n", at.getName(), v.stringValue()));
+                    layout.appendAttribute(sb, i, v.stringValue());
                     break;
                 case REFERENCE:
-                    sb.append(String.format("        %-15s:    %-15s    \n",  at.getName(), v.referenceValue().getIdentifier().toString()));
+                    layout.appendAttribute(sb, i, Oid.of(v.referenceValue().getIdentifier()));
                     break;
                 case INSTANCE:
-                    sb.append(String.format("        %-15s:    %-15s    \n",  at.getName(), v.instanceValue().getIdentifier().toString()));
+                    layout.appendAttribute(sb, i, Oid.of(v.instanceValue().getIdentifier()));
                     break;
                 case LIST:
                     LogicalType ltOfListAttr = at.getAttributeValueSpecification().collectionFacet().getElementSpecification().getLogicalType();
-//                    sb.append("LIST of " + atListOfLT + "\n");
 
-                    sb.append(String.format("        %-15s:    [LIST of %s] \n                            {\n", at.getName(), ltOfListAttr));
+                    sb.append(layout.prefixes[i])
+                        .append("[LIST of ").append(ltOfListAttr).append("] \n                            {\n");
                     switch(ltOfListAttr) {
                         case REFERENCE:
                             processListOfRefs(at, v, sb);
@@ -97,8 +136,6 @@ public class InstanceFormatter {
                             sb.append("                               Entries not shown.");
                     }
                     sb.append("\n                            }\n");
-
-//                    processWalk(v, sb);
                     break;
 
                 case WALK:
@@ -107,14 +144,105 @@ public class InstanceFormatter {
                     processWalk(v, sb);
                     break;
                 default:
-                    sb.append(String.format("%s : Type is %s      : %-15s    ",
-                            at.getName(),
-                            at.getAttributeValueSpecification().getLogicalType().toString(),
-                            "Not Handled"));
+                    sb.append(layout.names[i]).append(" : Type is ").append(layout.types[i]).append("      : ");
+                    appendPadded(sb, "Not Handled").append("    ");
             }
         }
 
-        return sb.toString();
+        return sb;
+    }
+
+
+    /**
+     * @return The layout of the class, worked out again if the schema
+     * generation changed since it was last used.
+     */
+    public static Layout layoutOf(com.objy.data.Class cx) {
+
+        long generation = SchemaCache.getDefault().getGeneration();
+        String className = cx.getName();
+
+        Layout layout = layouts.get(className);
+        if (layout == null || layout.generation != generation) {
+            layout = new Layout(cx, generation);
+            layouts.put(className, layout);
+        }
+        return layout;
+    }
+
+
+    /**
+     * Appends the OID and class name lines that head each formatted Instance.
+     *
+     * @param sb        The StringBuilder to which the text is appended.
+     * @param oid       The OID of the Instance, as a String.
+     * @param className The name of the Instance's class.
+     * @return <code>sb</code>.
+     */
+    public static StringBuilder appendHeader(StringBuilder sb, String oid, String className) {
+
+        appendPadded(sb.append(OID_PREFIX), oid).append('\n');
+        appendPadded(sb.append(INDENT).append(pad("Classname")).append(SEPARATOR), className).append('\n');
+        sb.append(HEADER_RULE);
+        return sb;
+    }
+
+
+    /**
+     * Appends one "name : value" line. Every scalar attribute of every
+     * formatted Instance goes through here.
+     *
+     * @param sb        The StringBuilder to which the text is appended.
+     * @param name      The attribute name.
+     * @param value     The attribute value, as a String.
+     * @return <code>sb</code>.
+     */
+    public static StringBuilder appendAttribute(StringBuilder sb, String name, String value) {
+
+        appendPadded(sb.append(INDENT), name).append(SEPARATOR);
+        appendPadded(sb, value).append("    \n");
+        return sb;
+    }
+
+
+    /**
+     * Appends one entry of a formatted list attribute, without the trailing
+     * separator.
+     */
+    public static StringBuilder appendListEntry(StringBuilder sb, String value) {
+
+        sb.append(LIST_ENTRY_INDENT).append(value);
+        return sb;
+    }
+
+
+    /**
+     * Appends the value, padded with spaces to 15 characters, as
+     * <code>String.format("%-15s", value)</code> does.
+     *
+     * @return <code>sb</code>.
+     */
+    public static StringBuilder appendPadded(StringBuilder sb, String value) {
+
+        int start = sb.length();
+        sb.append(value);
+        return padFrom(sb, start);
+    }
+
+
+    // Pads what was appended since start to the width.
+    private static StringBuilder padFrom(StringBuilder sb, int start) {
+
+        int n = WIDTH - (sb.length() - start);
+        if (n > 0) {
+            sb.append(SPACES, 0, n);
+        }
+        return sb;
+    }
+
+
+    private static String pad(String s) {
+        return appendPadded(new StringBuilder(WIDTH), s).toString();
     }
 
 
@@ -123,8 +251,9 @@ public class InstanceFormatter {
         com.objy.data.List list = v.listValue();
 
         for (int i = 0; i < list.size(); i++) {
-            sb.append(String.format("                               %s",
-                    list.get(i).referenceValue().getIdentifier().toString()));
+            // Append the OID straight from its long, without a String.
+            sb.append(LIST_ENTRY_INDENT);
+            Oid.append(sb, Oid.of(list.get(i).referenceValue().getIdentifier()));
             if (i != list.size()-1) {
                 sb.append(",\n");
             }
@@ -140,7 +269,7 @@ public class InstanceFormatter {
 
     /**
      * Walks the Walk... Sorry. This method process the nodes and edges in a walk,
-     * calling format on each node and each edge.
+     * appending each node and each edge.
      *
      * @param vWalk The Walk to be processed.
      * @param sb    The StringBuilder to which the formatted text representation
@@ -163,7 +292,7 @@ public class InstanceFormatter {
             if (edgeCount++ == 0 && iFrom == null) {
                 iFrom = edge.from();
                 sb.append(NODE_BREAK_LABEL);
-                format(iFrom, sb);
+                append(iFrom, sb);
             }
 
             sb.append(EDGE_BREAK_LABEL)
@@ -171,12 +300,132 @@ public class InstanceFormatter {
                 .append(edge.edgeData().getClass(true).getName())
                 .append("\n");
 
-            format(iEdge, sb);
+            append(iEdge, sb);
 
 
             iTo = edge.to();
             sb.append(NODE_BREAK_LABEL);
-            format(iTo, sb);
+            append(iTo, sb);
+        }
+    }
+
+
+
+    /**
+     * The fixed text of the lines of one class: each attribute's name,
+     * padded and indented, and the Classname line of the header. It is
+     * worked out once, so formatting an Instance only appends its values.
+     */
+    public static final class Layout {
+
+        private final long generation;
+        private final String classnameLine;
+        private final String[] names;
+        private final String[] prefixes;
+
+        // Null in a layout made from names only.
+        private final Attribute[] attributes;
+        private final LogicalType[] types;
+
+
+        Layout(com.objy.data.Class cx, long generation) {
+
+            this(cx.getName(), attributeNames(cx), generation);
+            for (int i = 0; i < names.length; i++) {
+                attributes[i] = cx.getAttribute(i);
+                types[i] = attributes[i].getAttributeValueSpecification().getLogicalType();
+            }
+        }
+
+
+        private Layout(String className, String[] names, long generation) {
+
+            this.generation = generation;
+            this.names = names;
+            this.prefixes = new String[names.length];
+            this.attributes = new Attribute[names.length];
+            this.types = new LogicalType[names.length];
+
+            StringBuilder sb = new StringBuilder(64);
+            for (int i = 0; i < names.length; i++) {
+                sb.setLength(0);
+                appendPadded(sb.append(INDENT), names[i]).append(SEPARATOR);
+                prefixes[i] = sb.toString();
+            }
+            sb.setLength(0);
+            appendPadded(sb.append(INDENT).append(pad("Classname")).append(SEPARATOR), className).append('\n');
+            sb.append(HEADER_RULE);
+            classnameLine = sb.toString();
+        }
+
+
+        /**
+         * @return A layout of the named attributes, for formatting values
+         * that are already Strings.
+         */
+        public static Layout of(String className, String... attributeNames) {
+            return new Layout(className, attributeNames.clone(), 0);
+        }
+
+
+        private static String[] attributeNames(com.objy.data.Class cx) {
+            String[] names = new String[cx.getNumberOfAttributes()];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = cx.getAttribute(i).getName();
+            }
+            return names;
+        }
+
+
+        /**
+         * @return The number of attributes.
+         */
+        public int size() {
+            return names.length;
+        }
+
+
+        /**
+         * Appends the OID and class name lines, as
+         * {@link InstanceFormatter#appendHeader(StringBuilder, String, String)}
+         * does.
+         */
+        public StringBuilder appendHeader(StringBuilder sb, String oid) {
+            appendPadded(sb.append(OID_PREFIX), oid).append('\n');
+            return sb.append(classnameLine);
+        }
+
+
+        /**
+         * Appends the header of the Instance whose {@link Oid} is given.
+         */
+        public StringBuilder appendHeader(StringBuilder sb, long oid) {
+            sb.append(OID_PREFIX);
+            int start = sb.length();
+            Oid.append(sb, oid);
+            return padFrom(sb, start).append('\n').append(classnameLine);
+        }
+
+
+        /**
+         * Appends the line of the i'th attribute, as
+         * {@link InstanceFormatter#appendAttribute(StringBuilder, String, String)}
+         * does.
+         */
+        public StringBuilder appendAttribute(StringBuilder sb, int i, String value) {
+            return appendPadded(sb.append(prefixes[i]), value).append("    \n");
+        }
+
+
+        /**
+         * Appends the line of the i'th attribute, whose value is an
+         * {@link Oid}, without making a String of the OID.
+         */
+        public StringBuilder appendAttribute(StringBuilder sb, int i, long oid) {
+            sb.append(prefixes[i]);
+            int start = sb.length();
+            Oid.append(sb, oid);
+            return padFrom(sb, start).append("    \n");
         }
     }
 
@@ -5,7 +5,6 @@
  */
 package com.objy.javaulb.utils;
 
-import com.objy.db.Connection;
 import java.io.File;
 import java.util.Properties;
 import org.slf4j.Logger;
@@ -18,7 +17,7 @@ import org.slf4j.LoggerFactory;
 public class LabUtils {
     private static Logger logger = LoggerFactory.getLogger(LabUtils.class);
     
-    private static Connection connection;
+    private static ConnectionManager connectionManager;
     
     
     private static String bootFile;
@@ -52,17 +51,39 @@ public class LabUtils {
 
     public static void openConnection(String bootFile) throws Exception {
 
-        connection = new Connection(bootFile);
+        openConnection(bootFile, ConnectionManager.DEFAULT_SESSIONS);
 
-        logger.info("Connected to ThingSpan federation: " + bootFile);
+    }
+
+    /**
+     * Connects to the federation, with a pool of sessions for the threads
+     * that will work in it.
+     *
+     * @param sessions  The most threads that may run transactions at once.
+     */
+    public static ConnectionManager openConnection(String bootFile, int sessions) throws Exception {
 
+        connectionManager = new ConnectionManager(bootFile, sessions);
+
+        return connectionManager;
     }
 
-    public static void closeConnection() throws Exception {
+    /**
+     * @return The manager of the open connection, from which threads check
+     * out their sessions.
+     */
+    public static ConnectionManager getConnectionManager() {
 
-        connection.dispose();
+        if (connectionManager == null) {
+            throw new IllegalStateException("No connection is open.");
+        }
+        return connectionManager;
+    }
+
+    public static void closeConnection() throws Exception {
 
-        logger.info("Disconnected from ThingSpan federation: " + bootFile);
+        connectionManager.close();
+        connectionManager = null;
 
     }
     
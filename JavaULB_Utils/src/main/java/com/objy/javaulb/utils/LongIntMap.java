@@ -0,0 +1,225 @@
+package com.objy.javaulb.utils;
+
+import java.util.Arrays;
+
+/**
+ * A map from long keys, such as {@link Oid}s, to int values, kept in two
+ * primitive arrays: no boxed Long or Integer per entry, and a lookup is a
+ * hash and a probe of a long[].
+ * <p>
+ * It uses open addressing with linear probing and keeps at most 3/4 of
+ * its slots full. Removal shifts the following entries back, so there are
+ * no tombstones. Not thread safe.
+ *
+ * @author Daniel
+ */
+public class LongIntMap {
+
+    // Marks a free slot. The key 0 is kept apart, in zeroValue.
+    private static final long FREE = 0L;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    private boolean hasZero;
+    private int zeroValue;
+
+
+    public LongIntMap() {
+        this(16);
+    }
+
+
+    /**
+     * @param expectedSize  The number of entries to make room for.
+     */
+    public LongIntMap(int expectedSize) {
+        allocate(tableSize(expectedSize));
+    }
+
+
+    /**
+     * @return The value of the key, or <code>missing</code> if there is none.
+     */
+    public int get(long key, int missing) {
+
+        if (key == FREE) {
+            return hasZero ? zeroValue : missing;
+        }
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) {
+                return values[i];
+            }
+            if (k == FREE) {
+                return missing;
+            }
+        }
+    }
+
+
+    public boolean containsKey(long key) {
+
+        if (key == FREE) {
+            return hasZero;
+        }
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) {
+                return true;
+            }
+            if (k == FREE) {
+                return false;
+            }
+        }
+    }
+
+
+    /**
+     * Sets the value of the key.
+     */
+    public void put(long key, int value) {
+
+        if (key == FREE) {
+            if (!hasZero) {
+                hasZero = true;
+                size++;
+            }
+            zeroValue = value;
+            return;
+        }
+        int i = slot(key);
+        for (; ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) {
+                values[i] = value;
+                return;
+            }
+            if (k == FREE) {
+                break;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > resizeAt) {
+            rehash(keys.length * 2);
+        }
+    }
+
+
+    /**
+     * Sets the value of the key, unless it has one.
+     *
+     * @return true if the key had no value.
+     */
+    public boolean putIfAbsent(long key, int value) {
+        if (containsKey(key)) {
+            return false;
+        }
+        put(key, value);
+        return true;
+    }
+
+
+    /**
+     * @return true if the key had a value.
+     */
+    public boolean remove(long key) {
+
+        if (key == FREE) {
+            if (hasZero) {
+                hasZero = false;
+                size--;
+                return true;
+            }
+            return false;
+        }
+
+        int i = slot(key);
+        for (; ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) {
+                break;
+            }
+            if (k == FREE) {
+                return false;
+            }
+        }
+
+        // Shift back the entries after i whose home slot is at or before i.
+        int gap = i;
+        for (int j = (gap + 1) & mask; keys[j] != FREE; j = (j + 1) & mask) {
+            int home = slot(keys[j]);
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        keys[gap] = FREE;
+        size--;
+        return true;
+    }
+
+
+    public int size() {
+        return size;
+    }
+
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        hasZero = false;
+        size = 0;
+    }
+
+
+    private int slot(long key) {
+        // Spread the bits: the OIDs of one page differ in the low bits only.
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+
+    private void rehash(int capacity) {
+
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            long k = oldKeys[i];
+            if (k != FREE) {
+                int j = slot(k);
+                while (keys[j] != FREE) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = k;
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        resizeAt = capacity / 4 * 3;
+    }
+
+
+    private static int tableSize(int expectedSize) {
+        int needed = (int) Math.min(1 << 30, Math.max(16L, (long) expectedSize * 4 / 3 + 1));
+        return Integer.highestOneBit(needed - 1) << 1;
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.objy.javaulb.utils;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of longs, such as {@link Oid}s, in one long[]: no boxed
+ * Long per entry. Not thread safe.
+ *
+ * @author Daniel
+ */
+public class LongList {
+
+    private long[] values;
+    private int size;
+
+
+    public LongList() {
+        this(16);
+    }
+
+
+    public LongList(int capacity) {
+        values = new long[Math.max(1, capacity)];
+    }
+
+
+    public void add(long value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+
+    public long get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("index = " + index + ", size = " + size);
+        }
+        return values[index];
+    }
+
+
+    public int size() {
+        return size;
+    }
+
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+
+    /**
+     * Drops the entries from <code>size</code> on.
+     */
+    public void truncate(int size) {
+        if (size < 0 || size > this.size) {
+            throw new IndexOutOfBoundsException("size = " + size + ", was " + this.size);
+        }
+        this.size = size;
+    }
+
+
+    public void clear() {
+        size = 0;
+    }
+
+
+    /**
+     * @return A copy of the entries.
+     */
+    public long[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+}
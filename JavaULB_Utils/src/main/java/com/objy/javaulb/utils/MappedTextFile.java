@@ -0,0 +1,264 @@
+package com.objy.javaulb.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A read-only, memory-mapped view of a text data file such as the files in
+ * data/gendata. Lines and fields are located by scanning the mapped bytes
+ * directly, so reading a file does not create a String per line or a
+ * String[] per split. Callers work with byte positions and only copy out
+ * the fields they keep.
+ *
+ * The file is assumed to be ASCII or UTF-8, with '\n' or "\r\n" line endings.
+ * Instances are not thread safe.
+ *
+ * @author Daniel
+ */
+public class MappedTextFile {
+
+    private final String name;
+
+    private final ByteBuffer buffer;
+    private final int limit;
+
+    // Bounds of the current line, excluding the line terminator.
+    private int lineStart;
+    private int lineEnd;
+
+    // Start of the next line to be returned by nextLine().
+    private int next;
+    private int lineNumber;
+
+    // Reused when copying a field out as a String.
+    private byte[] scratch = new byte[64];
+
+
+    private MappedTextFile(String name, ByteBuffer buffer) {
+        this.name = name;
+        this.buffer = buffer;
+        this.limit = buffer.limit();
+    }
+
+
+    /**
+     * Maps a file into memory. The channel is closed straight away; the
+     * mapping stays valid until the buffer is garbage collected.
+     *
+     * @param file  The file to map.
+     * @return The mapped file, positioned before the first line.
+     * @throws IOException If the file cannot be mapped.
+     */
+    public static MappedTextFile open(File file) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File is too large to map: " + file + " (" + size + " bytes)");
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return new MappedTextFile(file.getName(), buffer);
+        }
+    }
+
+
+    /**
+     * Advances to the next line.
+     *
+     * @return False when there are no more lines.
+     */
+    public boolean nextLine() {
+
+        if (next >= limit) {
+            return false;
+        }
+
+        int pos = next;
+        while (pos < limit && buffer.get(pos) != '\n') {
+            pos++;
+        }
+
+        lineStart = next;
+        lineEnd = (pos > lineStart && buffer.get(pos - 1) == '\r') ? pos - 1 : pos;
+        next = pos + 1;
+        lineNumber++;
+        return true;
+    }
+
+
+    public int lineStart() {
+        return lineStart;
+    }
+
+
+    public int lineEnd() {
+        return lineEnd;
+    }
+
+
+    /**
+     * @return The one-based number of the current line.
+     */
+    public int lineNumber() {
+        return lineNumber;
+    }
+
+
+    /**
+     * @return The position of the first non-blank byte at or after
+     * <code>pos</code>, or <code>end</code> if there is none.
+     */
+    public int skipSpaces(int pos, int end) {
+
+        while (pos < end && isSpace(buffer.get(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+
+    /**
+     * @return The position of the first blank byte at or after
+     * <code>pos</code>, or <code>end</code> if there is none.
+     */
+    public int tokenEnd(int pos, int end) {
+
+        while (pos < end && !isSpace(buffer.get(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+
+    /**
+     * Splits the current line on a separator byte. The start and end of field
+     * i are written to <code>bounds[2*i]</code> and <code>bounds[2*i+1]</code>.
+     * Fields beyond the capacity of <code>bounds</code> are not recorded but
+     * are still counted.
+     *
+     * @param separator The field separator, e.g. ','.
+     * @param bounds    Receives the field bounds.
+     * @return The number of fields on the line.
+     */
+    public int splitLine(byte separator, int[] bounds) {
+
+        int fields = 0;
+        int start = lineStart;
+        for (int pos = lineStart; pos <= lineEnd; pos++) {
+            if (pos == lineEnd || buffer.get(pos) == separator) {
+                if (2 * fields + 1 < bounds.length) {
+                    bounds[2 * fields] = start;
+                    bounds[2 * fields + 1] = pos;
+                }
+                fields++;
+                start = pos + 1;
+            }
+        }
+        return fields;
+    }
+
+
+    /**
+     * Parses a decimal number such as "-122.4194" or "1.006" straight from the
+     * mapped bytes. Anything with an exponent, or too many digits to be exact,
+     * is handed to Double.parseDouble.
+     */
+    public double parseDouble(int from, int to) {
+
+        from = skipSpaces(from, to);
+        while (to > from && isSpace(buffer.get(to - 1))) {
+            to--;
+        }
+        if (from == to) {
+            throw new NumberFormatException("Empty number on line " + lineNumber + " of " + name);
+        }
+
+        int pos = from;
+        boolean negative = false;
+        byte b = buffer.get(pos);
+        if (b == '-' || b == '+') {
+            negative = (b == '-');
+            pos++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean seenPoint = false;
+        for (; pos < to; pos++) {
+            b = buffer.get(pos);
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (seenPoint) {
+                    fractionDigits++;
+                }
+            } else if (b == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                return Double.parseDouble(string(from, to));
+            }
+        }
+
+        if (digits == 0 || digits > 15 || fractionDigits >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(string(from, to));
+        }
+
+        // Both values are exact doubles, so the division is correctly rounded.
+        double value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+
+    /**
+     * Copies the bytes in [from, to) into <code>dst</code>.
+     */
+    public void copy(int from, int to, byte[] dst, int dstOffset) {
+
+        ByteBuffer view = buffer.duplicate();
+        view.position(from);
+        view.get(dst, dstOffset, to - from);
+    }
+
+
+    /**
+     * @return The bytes in [from, to) decoded as UTF-8.
+     */
+    public String string(int from, int to) {
+
+        int length = to - from;
+        if (length > scratch.length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        copy(from, to, scratch, 0);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * @return The size of the file in bytes.
+     */
+    public int size() {
+        return limit;
+    }
+
+
+    public String getName() {
+        return name;
+    }
+
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+}
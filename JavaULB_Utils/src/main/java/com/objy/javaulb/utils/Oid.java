@@ -0,0 +1,191 @@
+package com.objy.javaulb.utils;
+
+import com.objy.db.ObjectId;
+
+/**
+ * An ObjectId as a 64-bit value: database, container, page and slot, 16
+ * bits each, the database highest, as ObjectId.asLong() gives it. The
+ * static methods work on the long itself, so OID-heavy code can keep,
+ * compare, parse and print OIDs without an ObjectId or a String per OID:
+ * <pre>
+ *   long oid = Oid.of(iPerson.getIdentifier());
+ *   ...
+ *   Oid.append(sb, oid);                    // "3-3-1-40"
+ *   long same = Oid.parse("3-3-1-40");      // no String split, no ObjectId
+ * </pre>
+ * An Oid object wraps the long, for use as a key or in collections of
+ * objects; {@link LongIntMap} keeps OIDs without wrapping them at all.
+ *
+ * @author Daniel
+ */
+public final class Oid implements Comparable<Oid> {
+
+    private static final int BITS = 16;
+    private static final long MASK = 0xFFFFL;
+
+    private final long value;
+
+
+    private Oid(long value) {
+        this.value = value;
+    }
+
+
+    public static Oid valueOf(long value) {
+        return new Oid(value);
+    }
+
+
+    public static Oid valueOf(ObjectId id) {
+        return new Oid(id.asLong());
+    }
+
+
+    /**
+     * @return The OID as a long.
+     */
+    public long longValue() {
+        return value;
+    }
+
+
+    public ObjectId toObjectId() {
+        return new ObjectId(value);
+    }
+
+
+    /**
+     * @return The ObjectId as a long.
+     */
+    public static long of(ObjectId id) {
+        return id.asLong();
+    }
+
+
+    /**
+     * @return The OID made of the four parts, each in [0, 65535].
+     */
+    public static long pack(int database, int container, int page, int slot) {
+        return ((long) check(database) << 48) | ((long) check(container) << 32)
+                | ((long) check(page) << 16) | check(slot);
+    }
+
+
+    public static int database(long oid) {
+        return (int) ((oid >>> 48) & MASK);
+    }
+
+
+    public static int container(long oid) {
+        return (int) ((oid >>> 32) & MASK);
+    }
+
+
+    public static int page(long oid) {
+        return (int) ((oid >>> 16) & MASK);
+    }
+
+
+    public static int slot(long oid) {
+        return (int) (oid & MASK);
+    }
+
+
+    /**
+     * @return The OID of the given slot on the same page.
+     */
+    public static long withSlot(long oid, int slot) {
+        return (oid & ~MASK) | check(slot);
+    }
+
+
+    /**
+     * Parses an OID such as "3-3-1-40", without allocating.
+     *
+     * @throws IllegalArgumentException if it is not four numbers in
+     * [0, 65535] separated by '-'.
+     */
+    public static long parse(CharSequence s) {
+
+        long oid = 0;
+        int parts = 0;
+        int i = 0;
+        int length = s.length();
+        while (i < length) {
+            int start = i;
+            int part = 0;
+            while (i < length && s.charAt(i) != '-') {
+                char c = s.charAt(i);
+                if (c < '0' || c > '9' || part > (int) MASK) {
+                    throw new IllegalArgumentException("Not an OID: " + s);
+                }
+                part = part * 10 + (c - '0');
+                i++;
+            }
+            if (i == start || part > (int) MASK || ++parts > 4) {
+                throw new IllegalArgumentException("Not an OID: " + s);
+            }
+            oid = (oid << BITS) | part;
+            if (i < length) {
+                i++;
+                if (i == length) {
+                    throw new IllegalArgumentException("Not an OID: " + s);
+                }
+            }
+        }
+        if (parts != 4) {
+            throw new IllegalArgumentException("Not an OID: " + s);
+        }
+        return oid;
+    }
+
+
+    /**
+     * Appends the OID as "database-container-page-slot", as
+     * ObjectId.toString() gives it, without an intermediate String.
+     *
+     * @return <code>sb</code>.
+     */
+    public static StringBuilder append(StringBuilder sb, long oid) {
+        return sb.append(database(oid)).append('-').append(container(oid))
+                .append('-').append(page(oid)).append('-').append(slot(oid));
+    }
+
+
+    public static String toString(long oid) {
+        return append(new StringBuilder(24), oid).toString();
+    }
+
+
+    private static int check(int part) {
+        if (part < 0 || part > MASK) {
+            throw new IllegalArgumentException("OID part out of range: " + part);
+        }
+        return part;
+    }
+
+
+    @Override
+    public int compareTo(Oid other) {
+        return Long.compareUnsigned(value, other.value);
+    }
+
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Oid && ((Oid) o).value == value;
+    }
+
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(value);
+    }
+
+
+    @Override
+    public String toString() {
+        return toString(value);
+    }
+
+}
@@ -0,0 +1,267 @@
+package com.objy.javaulb.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the values looked up by ObjectId, as a long, and evicts the least
+ * recently used once it holds <code>capacity</code> of them.
+ * <p>
+ * With {@link #setPrefetchSlots(int)}, a miss also looks up the objects in
+ * the next slots of the same page, so that a scan of neighbouring objects
+ * hits the cache. Slots that hold no object are skipped. The prefetched
+ * values are kept apart, in an LRU area of a quarter of the capacity, until
+ * they are asked for, so prefetching never evicts a value that was looked
+ * up.
+ * <p>
+ * The lookup is given, as a {@link Lookup}; {@link InstanceCache} looks up
+ * Instances with it. Not thread safe.
+ *
+ * @param <V>   The value of an object.
+ *
+ * @author Daniel
+ */
+public class OidCache<V> {
+
+    private static final int MAX_SLOT = 0xFFFF;
+
+    private final int capacity;
+    private final Lookup<V> lookup;
+    private final LinkedHashMap<Long, V> values;
+
+    // Prefetched, and not asked for yet.
+    private final int prefetchCapacity;
+    private final LinkedHashMap<Long, V> prefetchedValues;
+
+    private int prefetchSlots;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long prefetched;
+    private long prefetchHits;
+    private long prefetchEvictions;
+
+
+    /**
+     * @param capacity  The most values kept that were looked up; prefetch
+     *                  keeps up to a quarter as many more.
+     * @param lookup    Looks up the objects not cached.
+     */
+    public OidCache(int capacity, Lookup<V> lookup) {
+
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity = " + capacity);
+        }
+        this.capacity = capacity;
+        this.lookup = lookup;
+        this.values = new LinkedHashMap<Long, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, V> eldest) {
+                if (size() > OidCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        this.prefetchCapacity = Math.max(1, capacity / 4);
+        this.prefetchedValues = new LinkedHashMap<Long, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, V> eldest) {
+                if (size() > prefetchCapacity) {
+                    prefetchEvictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+
+    /**
+     * @param slots How many of the following slots of the page a miss also
+     *              looks up; 0, the default, for none.
+     */
+    public void setPrefetchSlots(int slots) {
+        if (slots < 0) {
+            throw new IllegalArgumentException("slots = " + slots);
+        }
+        this.prefetchSlots = slots;
+    }
+
+
+    public int getPrefetchSlots() {
+        return prefetchSlots;
+    }
+
+
+    /**
+     * Looks up an object, given its ObjectId as a long.
+     *
+     * @return The value; null if there is no such object.
+     */
+    public V lookup(long oid) {
+
+        V v = values.get(oid);
+        if (v != null) {
+            hits++;
+            return v;
+        }
+
+        // Asked for at last: it joins the values looked up.
+        v = prefetchedValues.remove(oid);
+        if (v != null) {
+            hits++;
+            prefetchHits++;
+            values.put(oid, v);
+            return v;
+        }
+
+        misses++;
+        v = lookup.lookup(oid);
+        if (v != null) {
+            values.put(oid, v);
+            if (prefetchSlots > 0) {
+                prefetch(oid);
+            }
+        }
+        return v;
+    }
+
+
+    // Looks up the objects in the slots after key, on the same page.
+    private void prefetch(long key) {
+
+        int slot = Oid.slot(key);
+        int last = Math.min(MAX_SLOT, slot + prefetchSlots);
+        for (int s = slot + 1; s <= last; s++) {
+            long next = Oid.withSlot(key, s);
+            if (values.containsKey(next) || prefetchedValues.containsKey(next)) {
+                continue;
+            }
+            V v = lookupIfAny(next);
+            if (v != null) {
+                prefetchedValues.put(next, v);
+                prefetched++;
+            }
+        }
+    }
+
+
+    /**
+     * Looks up a slot that prefetch guessed, and that may hold no object.
+     *
+     * @return The value; null if the slot holds no object.
+     */
+    protected V lookupIfAny(long oid) {
+        return lookup.lookup(oid);
+    }
+
+
+    /**
+     * Drops every value. The metrics are kept.
+     */
+    public void clear() {
+        values.clear();
+        prefetchedValues.clear();
+    }
+
+
+    /**
+     * @return The values held, the prefetched ones included.
+     */
+    public int size() {
+        return values.size() + prefetchedValues.size();
+    }
+
+
+    /**
+     * @return Whether the value of the object is held, looked up or
+     * prefetched. Does not count as a use.
+     */
+    public boolean contains(long oid) {
+        return values.containsKey(oid) || prefetchedValues.containsKey(oid);
+    }
+
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+
+    /**
+     * @return The most prefetched values kept until they are asked for.
+     */
+    public int getPrefetchCapacity() {
+        return prefetchCapacity;
+    }
+
+
+    public long getHits() {
+        return hits;
+    }
+
+
+    public long getMisses() {
+        return misses;
+    }
+
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+
+    /**
+     * @return The values looked up by prefetch.
+     */
+    public long getPrefetched() {
+        return prefetched;
+    }
+
+
+    /**
+     * @return The hits on values that prefetch looked up.
+     */
+    public long getPrefetchHits() {
+        return prefetchHits;
+    }
+
+
+    /**
+     * @return The prefetched values evicted before they were asked for.
+     */
+    public long getPrefetchEvictions() {
+        return prefetchEvictions;
+    }
+
+
+    public double getHitRate() {
+        return (hits + misses == 0) ? 0 : (double) hits / (hits + misses);
+    }
+
+
+    @Override
+    public String toString() {
+        return String.format("%s[%d of %d, hits %d, misses %d (%.1f%% hits), evictions %d, prefetched %d (%d hit, %d evicted unused)]",
+                getClass().getSimpleName(), values.size(), capacity, hits, misses, 100.0 * getHitRate(),
+                evictions, prefetched, prefetchHits, prefetchEvictions);
+    }
+
+
+
+    /**
+     * Looks an object up by its ObjectId, as a long.
+     */
+    @FunctionalInterface
+    public interface Lookup<V> {
+
+        /**
+         * @return The value of the object; null if there is none.
+         */
+        V lookup(long oid);
+    }
+
+}
@@ -0,0 +1,151 @@
+package com.objy.javaulb.utils;
+
+import com.objy.data.Variable;
+import com.objy.statement.Statement;
+import java.util.Iterator;
+
+/**
+ * Reads the results of a DO query one row at a time, so that a query over
+ * millions of objects needs memory for the current row only:
+ * <pre>
+ *   try (QueryCursor cursor = new QueryCursor(statement, 100)) {
+ *       cursor.forEach((vResult, index) -&gt; {
+ *           ...
+ *           return true;     // false stops the query
+ *       });
+ *   }
+ * </pre>
+ * Each row is taken from the query's result sequence when it is asked for
+ * and handed straight to the caller; the cursor keeps no reference to it.
+ * Reading stops at the limit, or when the caller stops, without pulling
+ * the remaining results from the query.
+ * <p>
+ * Use the cursor inside the transaction that executed the query.
+ *
+ * @author Daniel
+ */
+public class QueryCursor implements AutoCloseable {
+
+    public static final long NO_LIMIT = Long.MAX_VALUE;
+
+    /**
+     * The system property giving the most rows a lab query reads, e.g.
+     * <code>-DQueryLimit=100</code>. No limit if it is not set.
+     */
+    public static final String LIMIT_PROPERTY = "QueryLimit";
+
+    private final long limit;
+
+    private Iterator<Variable> results;
+
+    private long rowCount;
+    private boolean truncated;
+
+
+    /**
+     * Executes the statement, and reads its results.
+     */
+    public QueryCursor(Statement statement, long limit) {
+        this(statement.execute(), limit);
+    }
+
+
+    /**
+     * @param result    What a Statement's execute() returned: a sequence.
+     * @param limit     The most rows to read; NO_LIMIT for all.
+     */
+    public QueryCursor(Variable result, long limit) {
+
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit = " + limit);
+        }
+        this.limit = limit;
+        this.results = result.sequenceValue().iterator();
+    }
+
+
+    /**
+     * @return The limit set by the {@value #LIMIT_PROPERTY} system property,
+     * or NO_LIMIT.
+     */
+    public static long defaultLimit() {
+        return Long.getLong(LIMIT_PROPERTY, NO_LIMIT);
+    }
+
+
+    /**
+     * @return The next row, or null once the results or the limit are
+     * reached.
+     */
+    public Variable next() {
+
+        if (results == null) {
+            return null;
+        }
+        if (rowCount == limit || !results.hasNext()) {
+            truncated = (rowCount == limit) && results.hasNext();
+            close();
+            return null;
+        }
+        rowCount++;
+        return results.next();
+    }
+
+
+    /**
+     * Hands each row to the handler until the results or the limit run out
+     * or the handler returns false.
+     *
+     * @return The number of rows handled.
+     */
+    public long forEach(RowHandler handler) throws Exception {
+
+        long handled = 0;
+        for (Variable row = next(); row != null; row = next()) {
+            if (!handler.row(row, handled++)) {
+                close();
+                break;
+            }
+        }
+        return handled;
+    }
+
+
+    /**
+     * @return The rows read from the query so far.
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+
+    /**
+     * @return Whether reading stopped at the limit with results left.
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+
+    /**
+     * Stops reading; the remaining results are not pulled from the query.
+     */
+    @Override
+    public void close() {
+        results = null;
+    }
+
+
+
+    @FunctionalInterface
+    public interface RowHandler {
+
+        /**
+         * @param row   One result of the query.
+         * @param index The 0-based number of the row.
+         * @return true to go on, false to stop.
+         */
+        boolean row(Variable row, long index) throws Exception;
+    }
+
+}
@@ -0,0 +1,116 @@
+package com.objy.javaulb.utils;
+
+import java.util.Properties;
+import java.util.SplittableRandom;
+
+/**
+ * Hands out independent SplittableRandom streams so that data generators can
+ * be driven from many threads without sharing a single, CAS-contended
+ * java.util.Random seed.
+ *
+ * There are two ways to get a stream:
+ * <ul>
+ *   <li>{@link #current()} returns a stream owned by the calling thread. It
+ *       is the easy path for code that just wants thread safety.</li>
+ *   <li>{@link #forWorker(int)} returns a fresh stream derived only from the
+ *       base seed and a worker index. Loaders that partition work by index
+ *       get the same dataset on every run for the same seed, regardless of
+ *       how the threads are scheduled.</li>
+ * </ul>
+ *
+ * @author Daniel
+ */
+public class RandomStreams {
+
+    /** AppConfig property holding the optional base seed. */
+    public static final String SEED_PROPERTY = "data.random.seed";
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private final long seed;
+
+    // Threads split their stream off this root the first time they ask.
+    private final SplittableRandom root;
+
+    private final ThreadLocal<SplittableRandom> local;
+
+
+    public RandomStreams(long seed) {
+        this.seed = seed;
+        this.root = new SplittableRandom(seed);
+        this.local = ThreadLocal.withInitial(this::splitRoot);
+    }
+
+
+    /**
+     * Creates the streams from the 'data.random.seed' AppConfig property, or
+     * from a random seed when the property is not set.
+     *
+     * @param properties    The loaded AppConfig properties.
+     * @return The streams.
+     */
+    public static RandomStreams fromProperties(Properties properties) {
+
+        String value = (properties == null) ? null : properties.getProperty(SEED_PROPERTY);
+        if (value == null || value.trim().isEmpty()) {
+            return new RandomStreams(new SplittableRandom().nextLong());
+        }
+        return new RandomStreams(Long.parseLong(value.trim()));
+    }
+
+
+    private SplittableRandom splitRoot() {
+        synchronized (root) {
+            return root.split();
+        }
+    }
+
+
+    /**
+     * @return The stream owned by the calling thread. Never share the
+     * returned object with another thread.
+     */
+    public SplittableRandom current() {
+        return local.get();
+    }
+
+
+    /**
+     * Creates the stream for one worker of a partitioned load. The result
+     * depends only on the base seed and <code>workerIndex</code>.
+     *
+     * @param workerIndex   The zero-based index of the worker.
+     * @return A new stream, to be confined to that worker.
+     */
+    public SplittableRandom forWorker(int workerIndex) {
+        return forIndex(workerIndex);
+    }
+
+
+    /**
+     * Creates the stream for one item of a large, partitionable sequence,
+     * such as one vertex of a generated graph. The result depends only on
+     * the base seed and <code>index</code>, so any range of items can be
+     * regenerated independently of the others.
+     *
+     * @param index     The zero-based index of the item.
+     * @return A new stream.
+     */
+    public SplittableRandom forIndex(long index) {
+        return new SplittableRandom(mix64(seed + GOLDEN_GAMMA * (index + 1L)));
+    }
+
+
+    public long getSeed() {
+        return seed;
+    }
+
+
+    // Stafford variant 13 of the MurmurHash3 finalizer, as used by SplittableRandom.
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+}
@@ -0,0 +1,264 @@
+package com.objy.javaulb.utils;
+
+import com.objy.data.Attribute;
+import com.objy.data.schemaProvider.SchemaProvider;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolves schema classes and attributes once, instead of calling
+ * <code>SchemaProvider.getDefaultPersistentProvider().refresh(true)</code>
+ * and <code>Class.lookupClass(...)</code> at the start of every
+ * transaction.
+ * <p>
+ * The cache keeps a schema generation number. Schema edits made through
+ * {@link #activateEdits()} start a new generation, which drops every cached
+ * handle; each thread then refreshes its view of the schema once, the next
+ * time it calls {@link #refresh()} or looks something up. Schema changes
+ * made by other processes cannot be seen from here: call
+ * {@link #invalidate()} when you know of one, or create the cache with a
+ * maximum age so that it starts a new generation on its own.
+ * <p>
+ * A lookup that races an invalidation does not publish what it resolved
+ * under the old generation: it checks the generation again after storing
+ * the handle, and takes it back out if the generation moved.
+ * <p>
+ * Call the methods inside a transaction, as with the SchemaProvider calls
+ * they replace.
+ *
+ * @author Daniel
+ */
+public class SchemaCache {
+
+    private static Logger logger = LoggerFactory.getLogger(SchemaCache.class);
+
+    private static final SchemaCache DEFAULT = new SchemaCache(0L);
+
+    private final long maxAgeNanos;
+
+    // The number and start of the current generation, replaced as one, so
+    // that an expiry is a single compareAndSet.
+    private final AtomicReference<Generation> generation =
+            new AtomicReference<>(new Generation(0L, System.nanoTime()));
+
+    // The generation each thread last refreshed its schema view for.
+    private final ThreadLocal<long[]> refreshedGeneration = ThreadLocal.withInitial(() -> new long[] {-1L});
+
+    private final ConcurrentHashMap<String, com.objy.data.Class> classes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Attribute> attributes = new ConcurrentHashMap<>();
+
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+
+    /**
+     * @param maxAgeMillis  How long a generation may live before the cache
+     *                      refreshes on its own; 0 for never.
+     */
+    public SchemaCache(long maxAgeMillis) {
+        this.maxAgeNanos = maxAgeMillis * 1_000_000L;
+    }
+
+
+    /**
+     * @return The cache shared by the labs. Its generations do not expire.
+     */
+    public static SchemaCache getDefault() {
+        return DEFAULT;
+    }
+
+
+    /**
+     * Brings the calling thread's view of the schema up to date, if the
+     * schema generation changed since it last did.
+     */
+    public void refresh() {
+        refreshView();
+    }
+
+
+    // As refresh(), returning the generation the view is now up to date for.
+    private long refreshView() {
+
+        long current = currentGeneration();
+        long[] refreshed = refreshedGeneration.get();
+        if (refreshed[0] != current) {
+            SchemaProvider.getDefaultPersistentProvider().refresh(true);
+            refreshed[0] = current;
+            refreshes.increment();
+        }
+        return current;
+    }
+
+
+    /**
+     * @param className The name of a schema class.
+     * @return The class, or null if there is no such class.
+     */
+    public com.objy.data.Class lookupClass(String className) {
+
+        long g = refreshView();
+
+        com.objy.data.Class cx = classes.get(className);
+        if (cx != null) {
+            hits.increment();
+            return cx;
+        }
+
+        misses.increment();
+        cx = com.objy.data.Class.lookupClass(className);
+        if (cx != null) {
+            publish(classes, className, cx, g);
+        }
+        return cx;
+    }
+
+
+    /**
+     * @param className     The name of a schema class.
+     * @param attributeName The name of one of its attributes.
+     * @return The attribute, or null if the class or attribute does not
+     * exist.
+     */
+    public Attribute lookupAttribute(String className, String attributeName) {
+
+        String key = className + '.' + attributeName;
+
+        Attribute at = attributes.get(key);
+        if (at != null) {
+            refresh();
+            hits.increment();
+            return at;
+        }
+
+        long g = refreshView();
+        com.objy.data.Class cx = lookupClass(className);
+        if (cx == null) {
+            return null;
+        }
+
+        misses.increment();
+        for (int i = 0; i < cx.getNumberOfAttributes(); i++) {
+            Attribute candidate = cx.getAttribute(i);
+            if (candidate.getName().equals(attributeName)) {
+                publish(attributes, key, candidate, g);
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+
+    // Stores a handle resolved in generation g, unless an invalidation got
+    // in since. An invalidation moves the generation before it clears the
+    // maps, so a handle stored before the clear is cleared, and one stored
+    // after it is taken out here.
+    private <T> void publish(ConcurrentHashMap<String, T> map, String key, T value, long g) {
+
+        map.put(key, value);
+        if (generation.get().number != g) {
+            map.remove(key, value);
+        }
+    }
+
+
+    /**
+     * Activates pending schema edits and starts a new generation. Use this
+     * in place of
+     * <code>SchemaProvider.getDefaultPersistentProvider().activateEdits()</code>.
+     */
+    public void activateEdits() {
+        SchemaProvider.getDefaultPersistentProvider().activateEdits();
+        invalidate();
+    }
+
+
+    /**
+     * Drops every cached handle and starts a new generation, so that each
+     * thread refreshes its schema view again.
+     */
+    public void invalidate() {
+
+        boolean advanced;
+        do {
+            advanced = advance(generation.get());
+        } while (!advanced);
+    }
+
+
+    // Starts the generation after <code>from</code>, if <code>from</code> is
+    // still current, then drops the cached handles.
+    private boolean advance(Generation from) {
+
+        Generation next = new Generation(from.number + 1, System.nanoTime());
+        if (!generation.compareAndSet(from, next)) {
+            return false;
+        }
+        classes.clear();
+        attributes.clear();
+        logger.info("Schema generation is now " + next.number);
+        return true;
+    }
+
+
+    private long currentGeneration() {
+
+        Generation g = generation.get();
+        if (maxAgeNanos > 0 && System.nanoTime() - g.start > maxAgeNanos) {
+            // Only one of the threads that see it expire starts the next.
+            advance(g);
+            return generation.get().number;
+        }
+        return g.number;
+    }
+
+
+    public long getGeneration() {
+        return generation.get().number;
+    }
+
+
+    /**
+     * @return How often a thread actually called SchemaProvider.refresh().
+     */
+    public long getRefreshes() {
+        return refreshes.sum();
+    }
+
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+
+    @Override
+    public String toString() {
+        return "SchemaCache[generation " + generation.get().number + ", " + classes.size() + " classes, "
+                + attributes.size() + " attributes, refreshes " + refreshes.sum()
+                + ", hits " + hits.sum() + ", misses " + misses.sum() + "]";
+    }
+
+
+
+    private static final class Generation {
+
+        final long number;
+        final long start;
+
+
+        Generation(long number, long start) {
+            this.number = number;
+            this.start = start;
+        }
+    }
+
+}
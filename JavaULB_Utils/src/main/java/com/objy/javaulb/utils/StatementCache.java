@@ -0,0 +1,328 @@
+package com.objy.javaulb.utils;
+
+import com.objy.statement.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the parsed DO {@link Statement}s of recent queries, so that running
+ * a query again reuses its parse and plan instead of building a new
+ * <code>new Statement("DO", doQuery)</code> each time.
+ * <p>
+ * A query is given as a template with positional parameters,
+ * <code>$1</code>, <code>$2</code>, ..., and the values to bind to them:
+ * <pre>
+ *   cache.prepare("MATCH p = (:Person {LastName =~ '^$1.*'})-->(:Address) RETURN *",
+ *           StatementCache.regexLiteral(prefix))
+ * </pre>
+ * The template is split once; binding a value escapes the quote and
+ * backslash characters, so a value cannot end the string literal it sits
+ * in. A value inside a regular expression, as above, is wrapped in
+ * {@link #regexLiteral(String)}, which also escapes the characters that
+ * mean something in a regular expression, so that it matches only itself.
+ * <p>
+ * The DO language has no bind variables, so a Statement is parsed from, and
+ * cached under, the fully bound query text, not the template. Each
+ * distinct value is a separate entry: the cache only helps when the same
+ * values come back, and a template bound to many different values fills
+ * the cache and evicts the other queries.
+ * <p>
+ * The cache holds at most <code>capacity</code> Statements and evicts the
+ * least recently used. It is emptied when the schema generation of
+ * {@link SchemaCache} changes, since a plan depends on the schema. A
+ * Statement handed out may be handed out again, so run one query at a time
+ * per Statement.
+ *
+ * @author Daniel
+ */
+public class StatementCache {
+
+    private static Logger logger = LoggerFactory.getLogger(StatementCache.class);
+
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private static final String REGEX_METACHARACTERS = "\\^$.|?*+()[]{}";
+
+    private static final StatementCache DEFAULT = new StatementCache(DEFAULT_CAPACITY, SchemaCache.getDefault());
+
+    private final int capacity;
+    private final SchemaCache schemaCache;
+
+    // Both guarded by "this".
+    private final LinkedHashMap<String, Statement> statements;
+    private final LinkedHashMap<String, Template> templates;
+    private long generation;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+
+    /**
+     * @param capacity      The most Statements, and templates, kept.
+     * @param schemaCache   Whose generation invalidates the Statements.
+     */
+    public StatementCache(int capacity, SchemaCache schemaCache) {
+
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity = " + capacity);
+        }
+        this.capacity = capacity;
+        this.schemaCache = schemaCache;
+        this.generation = schemaCache.getGeneration();
+
+        statements = new LinkedHashMap<String, Statement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Statement> eldest) {
+                if (size() > StatementCache.this.capacity) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+        templates = new LinkedHashMap<String, Template>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Template> eldest) {
+                return size() > StatementCache.this.capacity;
+            }
+        };
+    }
+
+
+    /**
+     * @return The cache shared by the labs.
+     */
+    public static StatementCache getDefault() {
+        return DEFAULT;
+    }
+
+
+    /**
+     * @param template  A DO query, with $1, $2, ... where the parameters go.
+     * @param params    The values of the parameters, in order.
+     * @return The Statement of the bound query; a cached one if the same
+     * query was prepared before.
+     * @throws IllegalArgumentException if the template refers to a
+     * parameter that was not given.
+     */
+    public Statement prepare(String template, Object... params) {
+        return lookup(bind(template, params));
+    }
+
+
+    /**
+     * @return The query text <code>prepare(template, params)</code> runs,
+     * and caches its Statement under.
+     * @throws IllegalArgumentException if the template refers to a
+     * parameter that was not given.
+     */
+    public String bind(String template, Object... params) {
+
+        return (params.length == 0 && template.indexOf('$') < 0)
+                ? template : template(template).bind(params);
+    }
+
+
+    /**
+     * @param value A value to bind inside a regular expression.
+     * @return The parameter that binds <code>value</code> as a literal
+     * part of the expression.
+     */
+    public static Object regexLiteral(String value) {
+        return new RegexLiteral(value);
+    }
+
+
+    private synchronized Statement lookup(String doQuery) {
+
+        long current = schemaCache.getGeneration();
+        if (current != generation) {
+            logger.info("Schema generation changed; dropping " + statements.size() + " statements.");
+            statements.clear();
+            generation = current;
+        }
+
+        Statement statement = statements.get(doQuery);
+        if (statement != null) {
+            hits.increment();
+            return statement;
+        }
+
+        misses.increment();
+        statement = new Statement("DO", doQuery);
+        statements.put(doQuery, statement);
+        return statement;
+    }
+
+
+    private synchronized Template template(String template) {
+
+        Template t = templates.get(template);
+        if (t == null) {
+            t = new Template(template);
+            templates.put(template, t);
+        }
+        return t;
+    }
+
+
+    /**
+     * Drops every Statement.
+     */
+    public synchronized void clear() {
+        statements.clear();
+    }
+
+
+    public synchronized int size() {
+        return statements.size();
+    }
+
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+
+    @Override
+    public String toString() {
+        long h = hits.sum();
+        long m = misses.sum();
+        return String.format("StatementCache[%d of %d statements, hits %d, misses %d (%.1f%% hits), evictions %d]",
+                size(), capacity, h, m, (h + m == 0) ? 0.0 : 100.0 * h / (h + m), evictions.sum());
+    }
+
+
+
+    // A query template, split around its parameters.
+    private static class Template {
+
+        // The text before each parameter, then the text after the last.
+        private final String[] parts;
+
+        // The parameter, 0-based, after each part but the last.
+        private final int[] params;
+
+
+        Template(String template) {
+
+            ArrayList<String> partList = new ArrayList<>();
+            ArrayList<Integer> paramList = new ArrayList<>();
+
+            int start = 0;
+            int i = 0;
+            while (i < template.length()) {
+                if (template.charAt(i) == '$' && i + 1 < template.length()
+                        && Character.isDigit(template.charAt(i + 1))) {
+                    int end = i + 1;
+                    while (end < template.length() && Character.isDigit(template.charAt(end))) {
+                        end++;
+                    }
+                    partList.add(template.substring(start, i));
+                    paramList.add(Integer.parseInt(template.substring(i + 1, end)) - 1);
+                    start = end;
+                    i = end;
+                } else {
+                    i++;
+                }
+            }
+            partList.add(template.substring(start));
+
+            parts = partList.toArray(new String[0]);
+            params = new int[paramList.size()];
+            for (int p = 0; p < params.length; p++) {
+                params[p] = paramList.get(p);
+            }
+        }
+
+
+        String bind(Object[] values) {
+
+            StringBuilder sb = new StringBuilder(parts[0].length() * 2);
+            for (int p = 0; p < params.length; p++) {
+                sb.append(parts[p]);
+                int index = params[p];
+                if (index < 0 || index >= values.length) {
+                    throw new IllegalArgumentException("Parameter $" + (index + 1) + " not given; "
+                            + values.length + " parameters.");
+                }
+                Object value = values[index];
+                if (value instanceof RegexLiteral) {
+                    appendRegexQuoted(sb, ((RegexLiteral) value).value);
+                } else {
+                    appendEscaped(sb, String.valueOf(value));
+                }
+            }
+            sb.append(parts[parts.length - 1]);
+            return sb.toString();
+        }
+
+
+        private static void appendEscaped(StringBuilder sb, String value) {
+            for (int i = 0; i < value.length(); i++) {
+                appendEscaped(sb, value.charAt(i));
+            }
+        }
+
+
+        private static void appendEscaped(StringBuilder sb, char c) {
+            if (c == '\'' || c == '\\') {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+
+
+        // As Pattern.quote(), one character at a time: a backslash in the
+        // regular expression before each metacharacter, itself escaped in
+        // the string literal.
+        private static void appendRegexQuoted(StringBuilder sb, String value) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (REGEX_METACHARACTERS.indexOf(c) >= 0) {
+                    sb.append("\\\\");
+                }
+                appendEscaped(sb, c);
+            }
+        }
+    }
+
+
+
+    // A value bound as a literal part of a regular expression.
+    private static final class RegexLiteral {
+
+        final String value;
+
+
+        RegexLiteral(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public String toString() {
+            return value;
+        }
+    }
+
+}
@@ -0,0 +1,144 @@
+package com.objy.javaulb.utils;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Collects output lines in one reused buffer and writes them out in large
+ * chunks, instead of one System.out.println per line:
+ * <pre>
+ *   StringBuilder line = out.line();
+ *   line.append(...);
+ *   out.endLine();
+ * </pre>
+ * The buffer is written when it reaches its size, so memory stays bounded
+ * however much is written.
+ * <p>
+ * Output that a retried transaction writes again can be taken back:
+ * {@link #mark()} before the first attempt, and {@link #reset()} at the
+ * start of each one, drops what an earlier attempt wrote. The lines after
+ * the mark are held until {@link #flush()}, up to {@link #HOLD_FACTOR}
+ * times the buffer size; past that they are written and can no longer be
+ * taken back. Not thread safe.
+ *
+ * @author Daniel
+ */
+public class TextSink implements Flushable, AutoCloseable {
+
+    public static final int DEFAULT_BUFFER_CHARS = 64 * 1024;
+
+    // The most held after a mark, in buffer sizes.
+    public static final int HOLD_FACTOR = 16;
+
+    private static final String NEWLINE = System.lineSeparator();
+
+    private final Writer out;
+    private final int bufferChars;
+    private final StringBuilder buffer;
+
+    // Whether the buffer holds only lines written since a mark.
+    private boolean marked;
+
+
+    /**
+     * @param out           Where the lines go.
+     * @param bufferChars   The buffer size at which the lines are written.
+     */
+    public TextSink(Writer out, int bufferChars) {
+        this.out = out;
+        this.bufferChars = bufferChars;
+        this.buffer = new StringBuilder(bufferChars + 256);
+    }
+
+
+    /**
+     * @return A sink writing to System.out.
+     */
+    public static TextSink stdout() {
+        return new TextSink(new OutputStreamWriter(System.out), DEFAULT_BUFFER_CHARS);
+    }
+
+
+    /**
+     * @return The buffer, to append the text of the current line to. Call
+     * {@link #endLine()} when the line is done.
+     */
+    public StringBuilder line() {
+        return buffer;
+    }
+
+
+    /**
+     * Ends the current line, and writes the buffer if it is full.
+     */
+    public void endLine() {
+        buffer.append(NEWLINE);
+        if (buffer.length() >= (marked ? HOLD_FACTOR * bufferChars : bufferChars)) {
+            flush();
+        }
+    }
+
+
+    public void println(CharSequence s) {
+        buffer.append(s);
+        endLine();
+    }
+
+
+    /**
+     * Writes the buffered lines, and holds the next ones until flush(), so
+     * that {@link #reset()} can drop them.
+     */
+    public void mark() {
+        flush();
+        marked = true;
+    }
+
+
+    /**
+     * Drops the lines written since the mark, e.g. at the start of a
+     * retried attempt, and marks again.
+     *
+     * @return false if some of them were already written out: there were
+     * too many to hold, or there was no mark.
+     */
+    public boolean reset() {
+        if (!marked) {
+            mark();
+            return false;
+        }
+        buffer.setLength(0);
+        return true;
+    }
+
+
+    /**
+     * Writes the buffered lines, and drops the mark.
+     *
+     * @throws UncheckedIOException if the writer fails.
+     */
+    @Override
+    public void flush() {
+        marked = false;
+        try {
+            out.append(buffer);
+            out.flush();
+            buffer.setLength(0);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+
+    /**
+     * Writes the buffered lines. The writer is left open.
+     */
+    @Override
+    public void close() {
+        flush();
+    }
+
+}
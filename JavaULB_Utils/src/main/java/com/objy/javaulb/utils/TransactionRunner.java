@@ -0,0 +1,397 @@
+package com.objy.javaulb.utils;
+
+import com.objy.db.LockConflictException;
+import com.objy.db.TransactionMode;
+import com.objy.db.TransactionScope;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs a unit of work in a transaction, retrying it on lock conflicts. This
+ * replaces the
+ * <pre>
+ *   while (!transactionSuccessful) {
+ *       try (TransactionScope tx = ...) { ... }
+ *       catch (LockConflictException lce) { Thread.sleep(10 * retryCount); }
+ *   }
+ * </pre>
+ * loop of the labs with:
+ * <pre>
+ *   runner.run(TransactionMode.READ_UPDATE, () -&gt; { ... });
+ * </pre>
+ * The work runs in a new scope on each attempt, and the scope is completed
+ * only when the work returns normally.
+ * <p>
+ * Retries wait with capped exponential backoff and decorrelated jitter:
+ * each wait is drawn uniformly from [base, 3 x previous wait], capped at
+ * <code>maxDelay</code>. Threads that conflicted together therefore retry
+ * at different times instead of colliding again in lock step. A call gives
+ * up, rethrowing the last conflict, once it has used its retry budget:
+ * <code>maxRetries</code> retries or <code>maxWait</code> of total waiting,
+ * whichever comes first.
+ * <p>
+ * Queries should run in {@link #queryMode()} rather than READ_UPDATE: an
+ * update transaction takes update locks even on what it only reads, and so
+ * blocks, and conflicts with, any loader running at the same time.
+ *
+ * @author Daniel
+ */
+public class TransactionRunner {
+
+    private static Logger logger = LoggerFactory.getLogger(TransactionRunner.class);
+
+    public static final long DEFAULT_BASE_DELAY_MILLIS = 10;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 1000;
+    public static final int DEFAULT_MAX_RETRIES = 20;
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 30_000;
+
+    /**
+     * The system property naming the TransactionMode of queries, e.g.
+     * <code>-DQueryTransactionMode=READ_UPDATE</code> to opt in to update
+     * transactions, or the name of a multiple-readers-one-writer mode where
+     * the installed Objectivity release has one.
+     */
+    public static final String QUERY_MODE_PROPERTY = "QueryTransactionMode";
+
+    private static final TransactionMode QUERY_MODE = resolveQueryMode();
+
+    private final long baseDelayNanos;
+    private final long maxDelayNanos;
+    private final int maxRetries;
+    private final long maxWaitNanos;
+
+    private final ScopeFactory scopeFactory;
+    private final Predicate<Throwable> isConflict;
+
+    private final LongAdder totalCalls = new LongAdder();
+    private final LongAdder totalAttempts = new LongAdder();
+    private final LongAdder totalConflicts = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final LongAdder totalGiveUps = new LongAdder();
+
+
+    public TransactionRunner() {
+        this(DEFAULT_BASE_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS, DEFAULT_MAX_RETRIES, DEFAULT_MAX_WAIT_MILLIS);
+    }
+
+
+    /**
+     * @param baseDelayMillis   The shortest wait before a retry.
+     * @param maxDelayMillis    The longest wait before a retry.
+     * @param maxRetries        The most retries of one call.
+     * @param maxWaitMillis     The most total waiting of one call.
+     */
+    public TransactionRunner(long baseDelayMillis, long maxDelayMillis, int maxRetries, long maxWaitMillis) {
+        this(baseDelayMillis, maxDelayMillis, maxRetries, maxWaitMillis,
+                TransactionRunner::openScope, LockConflictException.class::isInstance);
+    }
+
+
+    /**
+     * Creates a runner over other scopes, for example a fake scope that
+     * throws conflicts on demand, to exercise code without a federation.
+     *
+     * @param scopeFactory  Opens the scope of each attempt.
+     * @param isConflict    Tells which failures are worth a retry.
+     */
+    public TransactionRunner(long baseDelayMillis, long maxDelayMillis, int maxRetries, long maxWaitMillis,
+            ScopeFactory scopeFactory, Predicate<Throwable> isConflict) {
+
+        if (baseDelayMillis < 0 || maxDelayMillis < baseDelayMillis || maxRetries < 0 || maxWaitMillis < 0) {
+            throw new IllegalArgumentException("baseDelayMillis = " + baseDelayMillis
+                    + ", maxDelayMillis = " + maxDelayMillis + ", maxRetries = " + maxRetries
+                    + ", maxWaitMillis = " + maxWaitMillis);
+        }
+        this.baseDelayNanos = TimeUnit.MILLISECONDS.toNanos(baseDelayMillis);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.maxRetries = maxRetries;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.scopeFactory = scopeFactory;
+        this.isConflict = isConflict;
+    }
+
+
+    private static TransactionMode resolveQueryMode() {
+
+        String name = System.getProperty(QUERY_MODE_PROPERTY);
+        if (name == null || name.trim().isEmpty()) {
+            return TransactionMode.READ_ONLY;
+        }
+        try {
+            TransactionMode mode = TransactionMode.valueOf(name.trim());
+            logger.info("Queries run in " + mode + " transactions.");
+            return mode;
+        } catch (IllegalArgumentException iae) {
+            logger.warn("Unknown " + QUERY_MODE_PROPERTY + " <" + name + ">; queries run in READ_ONLY transactions.");
+            return TransactionMode.READ_ONLY;
+        }
+    }
+
+
+    /**
+     * @return The mode that query paths open their transactions in:
+     * READ_ONLY unless the {@value #QUERY_MODE_PROPERTY} system property
+     * names another.
+     */
+    public static TransactionMode queryMode() {
+        return QUERY_MODE;
+    }
+
+
+    private static Scope openScope(TransactionMode mode) {
+
+        TransactionScope tx = new TransactionScope(mode);
+        return new Scope() {
+            public void complete() {
+                tx.complete();
+            }
+
+            public void close() {
+                tx.close();
+            }
+        };
+    }
+
+
+    /**
+     * Runs the work in a transaction of the given mode and returns its
+     * result.
+     *
+     * @param mode  The transaction mode.
+     * @param work  The work; it may run several times.
+     * @return What the work returned on the attempt that committed.
+     * @throws Exception What the work threw, other than a conflict; or the
+     * last conflict once the retry budget is spent.
+     */
+    public <T> T call(TransactionMode mode, Work<T> work) throws Exception {
+        return call(mode, work, null);
+    }
+
+
+    /**
+     * As {@link #call(TransactionMode, Work)}, also filling in the metrics of
+     * this call.
+     *
+     * @param metrics   Receives the attempts, conflicts and time of this
+     *                  call, even when it fails. May be null.
+     */
+    public <T> T call(TransactionMode mode, Work<T> work, Metrics metrics) throws Exception {
+
+        long start = System.nanoTime();
+        int attempts = 0;
+        int conflicts = 0;
+        long waitNanos = 0;
+        long delayNanos = baseDelayNanos;
+
+        totalCalls.increment();
+        try {
+            while (true) {
+                attempts++;
+                try (Scope tx = scopeFactory.open(mode)) {
+                    T result = work.run();
+                    tx.complete();
+                    return result;
+
+                } catch (Exception ex) {
+                    if (!isConflict.test(ex)) {
+                        throw ex;
+                    }
+                    conflicts++;
+
+                    if (conflicts > maxRetries || waitNanos >= maxWaitNanos) {
+                        totalGiveUps.increment();
+                        logger.warn("Giving up after " + attempts + " attempts and "
+                                + TimeUnit.NANOSECONDS.toMillis(waitNanos) + " ms of backoff: " + ex);
+                        throw ex;
+                    }
+
+                    delayNanos = nextDelay(delayNanos);
+                    delayNanos = Math.min(delayNanos, maxWaitNanos - waitNanos);
+
+                    logger.info("LockConflictException. Attempting retry...  retryCount = " + conflicts
+                            + ", backoff = " + TimeUnit.NANOSECONDS.toMillis(delayNanos) + " ms");
+
+                    long sleepStart = System.nanoTime();
+                    TimeUnit.NANOSECONDS.sleep(delayNanos);
+                    waitNanos += System.nanoTime() - sleepStart;
+                }
+            }
+        } finally {
+            totalAttempts.add(attempts);
+            totalConflicts.add(conflicts);
+            totalWaitNanos.add(waitNanos);
+            if (metrics != null) {
+                metrics.set(attempts, conflicts, waitNanos, System.nanoTime() - start);
+            }
+        }
+    }
+
+
+    /**
+     * Runs work that returns nothing.
+     *
+     * @see #call(TransactionMode, Work)
+     */
+    public void run(TransactionMode mode, Task task) throws Exception {
+        run(mode, task, null);
+    }
+
+
+    public void run(TransactionMode mode, Task task, Metrics metrics) throws Exception {
+        call(mode, () -> {
+            task.run();
+            return null;
+        }, metrics);
+    }
+
+
+    /**
+     * Runs a query, in a transaction of {@link #queryMode()}.
+     *
+     * @see #call(TransactionMode, Work)
+     */
+    public <T> T callQuery(Work<T> work) throws Exception {
+        return call(QUERY_MODE, work, null);
+    }
+
+
+    /**
+     * Runs a query that returns nothing, in a transaction of
+     * {@link #queryMode()}.
+     */
+    public void runQuery(Task task) throws Exception {
+        run(QUERY_MODE, task, null);
+    }
+
+
+    // Decorrelated jitter: uniform in [base, 3 * previous], capped.
+    // Package-private for the tests.
+    long nextDelay(long previousNanos) {
+
+        long upper = Math.min(maxDelayNanos, Math.max(baseDelayNanos, previousNanos) * 3);
+        if (upper <= baseDelayNanos) {
+            return baseDelayNanos;
+        }
+        return ThreadLocalRandom.current().nextLong(baseDelayNanos, upper + 1);
+    }
+
+
+    /**
+     * @return The sums over all calls made through this runner so far.
+     */
+    public Metrics getTotals() {
+        Metrics totals = new Metrics();
+        totals.set(totalAttempts.sum(), totalConflicts.sum(), totalWaitNanos.sum(), 0L);
+        totals.calls = totalCalls.sum();
+        totals.giveUps = totalGiveUps.sum();
+        return totals;
+    }
+
+
+
+    /**
+     * The work of one transaction. It may run more than once, so it must not
+     * have side effects outside the transaction that a retry would repeat.
+     */
+    @FunctionalInterface
+    public interface Work<T> {
+        T run() throws Exception;
+    }
+
+
+    @FunctionalInterface
+    public interface Task {
+        void run() throws Exception;
+    }
+
+
+    /**
+     * One transaction attempt. The default wraps a
+     * {@link com.objy.db.TransactionScope}.
+     */
+    public interface Scope extends AutoCloseable {
+
+        void complete();
+
+        /**
+         * Ends the attempt, aborting it unless {@link #complete()} was called.
+         */
+        @Override
+        void close();
+    }
+
+
+    @FunctionalInterface
+    public interface ScopeFactory {
+        Scope open(TransactionMode mode);
+    }
+
+
+    /**
+     * The cost of one call, or the totals of a runner.
+     */
+    public static class Metrics {
+
+        private long calls = 1;
+        private long attempts;
+        private long conflicts;
+        private long waitNanos;
+        private long elapsedNanos;
+        private long giveUps;
+
+
+        void set(long attempts, long conflicts, long waitNanos, long elapsedNanos) {
+            this.attempts = attempts;
+            this.conflicts = conflicts;
+            this.waitNanos = waitNanos;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        public long getAttempts() {
+            return attempts;
+        }
+
+        public long getConflicts() {
+            return conflicts;
+        }
+
+        /**
+         * @return The time spent in backoff sleeps.
+         */
+        public long getWaitNanos() {
+            return waitNanos;
+        }
+
+        /**
+         * @return The time of the whole call, including the attempts and the
+         * waits; 0 for totals.
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * @return For totals, the calls that spent their retry budget.
+         */
+        public long getGiveUps() {
+            return giveUps;
+        }
+
+        @Override
+        public String toString() {
+            return "calls = " + calls + ", attempts = " + attempts + ", conflicts = " + conflicts
+                    + ", wait = " + TimeUnit.NANOSECONDS.toMillis(waitNanos) + " ms"
+                    + ", elapsed = " + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + " ms"
+                    + ", giveUps = " + giveUps;
+        }
+    }
+
+}
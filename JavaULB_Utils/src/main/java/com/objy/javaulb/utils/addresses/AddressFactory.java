@@ -5,15 +5,15 @@
  */
 package com.objy.javaulb.utils.addresses;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Properties;
-import java.util.Random;
+import java.util.SplittableRandom;
+import com.objy.javaulb.utils.GendataSnapshot;
+import com.objy.javaulb.utils.MappedTextFile;
+import com.objy.javaulb.utils.RandomStreams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -27,15 +27,36 @@ public class AddressFactory {
 
     private final String addressFilename;
 
-    private ArrayList<Address> addressList = new ArrayList<>();
+    private AddressStore addressStore;
     private int addressListSize;
 
+    // Each thread reads through its own flyweight view of the store.
+    private final ThreadLocal<AddressView> views = ThreadLocal.withInitial(() -> addressStore.view());
 
-    private Random random = new Random();
+
+    // Per-thread random streams; see NameFactory.
+    private RandomStreams randomStreams;
     private Properties properties;
 
 
 
+    /**
+     * Creates a factory over an existing store instead of the address file
+     * named in AppConfig; used by benchmarks and synthetic loads.
+     *
+     * @param addressStore  The addresses to draw from.
+     * @param randomStreams The random streams to draw with.
+     */
+    public AddressFactory(AddressStore addressStore, RandomStreams randomStreams) {
+
+        this.addressFilename = null;
+        this.addressStore = addressStore;
+        this.addressListSize = addressStore.size();
+        this.randomStreams = randomStreams;
+    }
+
+
+
     public AddressFactory() throws FileNotFoundException, IOException, Exception {
         
         String appConfig = System.getProperty("AppConfig");
@@ -65,6 +86,9 @@ public class AddressFactory {
         properties = new Properties();
         properties.load(inStream);
                
+        randomStreams = RandomStreams.fromProperties(properties);
+        logger.info("Address random seed: " + randomStreams.getSeed());
+
         this.addressFilename = dataDir + File.separator + (String)properties.get("data.addresses");;
 
         File addressFile = new File(this.addressFilename);
@@ -74,42 +98,162 @@ public class AddressFactory {
             logger.info("Found: " + addressFile.getAbsolutePath());
         }
 
-        loadAddressesFromFile(addressFile, addressList);
-        addressListSize = addressList.size();
+        // A snapshot of an older layout is ignored, as a stale one is.
+        GendataSnapshot snapshot = GendataSnapshot.open(addressFile);
+        addressStore = (snapshot == null) ? null : AddressStore.fromSnapshot(snapshot);
+        if (addressStore == null) {
+            addressStore = loadAddressesFromFile(addressFile);
+        }
+        addressListSize = addressStore.size();
+        logger.info("Address store: " + addressStore.describe());
     }
 
 
-    private void loadAddressesFromFile(File file, ArrayList<Address> addressList) throws FileNotFoundException, IOException {
+    /**
+     * Reads the comma-separated address file. Fields 1 through 5 are the
+     * number, street, city, state and ZIP; fields 6 and 7 are the
+     * coordinates. The file is memory mapped and split in place, and the
+     * fields go straight into a columnar AddressStore.
+     */
+    private static AddressStore loadAddressesFromFile(File file) throws FileNotFoundException, IOException {
 
-        BufferedReader reader = new BufferedReader(new FileReader(file));
+        MappedTextFile text = MappedTextFile.open(file);
+        AddressStore.Builder builder = new AddressStore.Builder();
+        int[] bounds = new int[2 * ADDRESS_FIELDS];
 
-        String line;
         int count = 0;
-        while ((line = reader.readLine()) != null) {
-            String[] parts = line.split(",");
-            
-            double longitude = Double.parseDouble(parts[6]);
-            double latitude = Double.parseDouble(parts[7]);
-            
-            Address address = new Address(parts[1],parts[2],parts[3],parts[4],parts[5],longitude,latitude);
+        while (text.nextLine()) {
+            if (text.lineStart() == text.lineEnd()) {
+                continue;
+            }
+
+            int fields = text.splitLine((byte) ',', bounds);
+            if (fields < ADDRESS_FIELDS) {
+                throw new IOException("Expected " + ADDRESS_FIELDS + " fields but found " + fields
+                        + " on line " + text.lineNumber() + " of " + file.getName());
+            }
+
+            double longitude = text.parseDouble(bounds[12], bounds[13]);
+            double latitude = text.parseDouble(bounds[14], bounds[15]);
+
+            builder.add(
+                    text.string(bounds[2], bounds[3]),
+                    text.string(bounds[4], bounds[5]),
+                    text.string(bounds[6], bounds[7]),
+                    text.string(bounds[8], bounds[9]),
+                    text.string(bounds[10], bounds[11]),
+                    longitude,
+                    latitude);
             
-            addressList.add(address);
             count++;
             if ((count % 1000) == 0) {
                 logger.info(file.getName() + " Loaded: " + count);
             }
         }
         logger.info(file.getName() + " Loaded: " + count);
-        reader.close();
+
+        return builder.build();
     }
 
+    private static final int ADDRESS_FIELDS = 8;
+
+
+    /**
+     * Parses an address file and writes it as a pre-compiled snapshot.
+     * Coordinates are kept at the store's 32-bit precision.
+     *
+     * @param source    The comma-separated address file.
+     * @throws IOException If the file cannot be read or the snapshot written.
+     */
+    public static void writeSnapshot(File source) throws IOException {
+
+        loadAddressesFromFile(source).writeSnapshot(source);
+    }
 
 
+
+    public RandomStreams getRandomStreams() {
+        return randomStreams;
+    }
+
+
+    /**
+     * Picks an Address using the calling thread's random stream. Safe to
+     * call from any number of threads concurrently.
+     */
     public Address getAddress() {
 
-        return addressList.get((int)(random.nextDouble() * addressListSize));
+        return getAddress(randomStreams.current());
         
     }
 
 
+    /**
+     * Picks an Address using the caller's random stream, for loaders that
+     * need a reproducible dataset per worker.
+     *
+     * @param random    A stream confined to the calling thread.
+     * @return The Address.
+     */
+    public Address getAddress(SplittableRandom random) {
+
+        return addressStore.toAddress(random.nextInt(addressListSize));
+
+    }
+
+
+    /**
+     * Moves the calling thread's flyweight view to a random address. Nothing
+     * is allocated. The view is reused by the next call on the same thread,
+     * so read what you need from it first.
+     *
+     * @return The calling thread's view.
+     */
+    public AddressView getAddressView() {
+
+        return getAddressView(randomStreams.current());
+
+    }
+
+
+    /**
+     * As {@link #getAddressView()}, drawing from the caller's random stream.
+     */
+    public AddressView getAddressView(SplittableRandom random) {
+
+        return views.get().moveTo(random.nextInt(addressListSize));
+
+    }
+
+
+    /**
+     * Overwrites a reusable holder with a random address, without
+     * allocating.
+     *
+     * @param address   The holder to overwrite.
+     * @return <code>address</code>.
+     */
+    public MutableAddress fillAddress(MutableAddress address) {
+
+        return fillAddress(address, randomStreams.current());
+
+    }
+
+
+    /**
+     * As {@link #fillAddress(MutableAddress)}, drawing from the caller's
+     * random stream.
+     */
+    public MutableAddress fillAddress(MutableAddress address, SplittableRandom random) {
+
+        return address.copyFrom(getAddressView(random));
+
+    }
+
+
+    public AddressStore getAddressStore() {
+        return addressStore;
+    }
+
+
 }
@@ -0,0 +1,419 @@
+package com.objy.javaulb.utils.addresses;
+
+import com.objy.javaulb.utils.GendataSnapshot;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * An immutable, column-oriented table of addresses. Instead of one Address
+ * object (and five Strings) per row, each field is kept in its own column:
+ * <ul>
+ *   <li>number and street as UTF-8 in one byte arena, located by an
+ *       int[] offset table;</li>
+ *   <li>city, state and ZIP as int codes into small per-column
+ *       dictionaries, since they repeat heavily;</li>
+ *   <li>latitude and longitude as float[], matching the
+ *       <code>REAL {STORAGE: B32}</code> attributes of the Address class
+ *       in schema05b.do.</li>
+ * </ul>
+ * Rows are read through an {@link AddressView}, which can be repositioned
+ * without allocating.
+ *
+ * @author Daniel
+ */
+public class AddressStore {
+
+    // The columns of a snapshot; see writeSnapshot().
+    private static final int STRING_COLUMNS = 5;
+    private static final int DOUBLE_COLUMNS = 5;
+
+    private final int size;
+
+    // The number of row i spans [offsets[2i], offsets[2i+1]) and its street
+    // spans [offsets[2i+1], offsets[2i+2]).
+    private final byte[] arena;
+    private final int[] offsets;
+
+    private final int[] cityCodes;
+    private final int[] stateCodes;
+    private final int[] zipCodes;
+
+    private final String[] cities;
+    private final String[] states;
+    private final String[] zips;
+
+    private final float[] latitudes;
+    private final float[] longitudes;
+
+
+    private AddressStore(Builder b) {
+        this.size = b.size;
+        this.arena = Arrays.copyOf(b.arena, b.arenaSize);
+        this.offsets = Arrays.copyOf(b.offsets, 2 * b.size + 1);
+        this.cityCodes = Arrays.copyOf(b.cityCodes, b.size);
+        this.stateCodes = Arrays.copyOf(b.stateCodes, b.size);
+        this.zipCodes = Arrays.copyOf(b.zipCodes, b.size);
+        this.cities = b.cities.values.toArray(new String[0]);
+        this.states = b.states.values.toArray(new String[0]);
+        this.zips = b.zips.values.toArray(new String[0]);
+        this.latitudes = Arrays.copyOf(b.latitudes, b.size);
+        this.longitudes = Arrays.copyOf(b.longitudes, b.size);
+    }
+
+
+    private AddressStore(int size, byte[] arena, int[] offsets,
+            int[] cityCodes, int[] stateCodes, int[] zipCodes,
+            String[] cities, String[] states, String[] zips,
+            float[] latitudes, float[] longitudes) {
+        this.size = size;
+        this.arena = arena;
+        this.offsets = offsets;
+        this.cityCodes = cityCodes;
+        this.stateCodes = stateCodes;
+        this.zipCodes = zipCodes;
+        this.cities = cities;
+        this.states = states;
+        this.zips = zips;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+    }
+
+
+    /**
+     * Builds a store straight from the columns of a snapshot written by
+     * {@link #writeSnapshot(File)}: the number and street bytes are copied
+     * from the mapped table without being decoded, the codes are taken as
+     * they are, and only the distinct cities, states and ZIPs are decoded.
+     *
+     * @return The store, or null if the snapshot has another layout.
+     */
+    public static AddressStore fromSnapshot(GendataSnapshot snapshot) {
+
+        if (snapshot.stringColumns() != STRING_COLUMNS || snapshot.doubleColumns() != DOUBLE_COLUMNS) {
+            return null;
+        }
+        int size = snapshot.rows();
+
+        // Number and street, interleaved per row as the store keeps them.
+        int[] numbers = snapshot.offsets(0);
+        int[] streets = snapshot.offsets(1);
+        ByteBuffer table = snapshot.strings();
+        byte[] arena = new byte[numbers[size] - numbers[0] + streets[size] - streets[0]];
+        int[] offsets = new int[2 * size + 1];
+        int at = 0;
+        for (int row = 0; row < size; row++) {
+            offsets[2 * row] = at;
+            at = copy(table, numbers[row], numbers[row + 1], arena, at);
+            offsets[2 * row + 1] = at;
+            at = copy(table, streets[row], streets[row + 1], arena, at);
+        }
+        offsets[2 * size] = at;
+
+        int[] cityCodes = codes(snapshot.doubles(2));
+        int[] stateCodes = codes(snapshot.doubles(3));
+        int[] zipCodes = codes(snapshot.doubles(4));
+
+        float[] latitudes = new float[size];
+        float[] longitudes = new float[size];
+        double[] lat = snapshot.doubles(0);
+        double[] lon = snapshot.doubles(1);
+        for (int row = 0; row < size; row++) {
+            latitudes[row] = (float) lat[row];
+            longitudes[row] = (float) lon[row];
+        }
+
+        return new AddressStore(size, arena, offsets, cityCodes, stateCodes, zipCodes,
+                dictionary(snapshot, 2, cityCodes), dictionary(snapshot, 3, stateCodes),
+                dictionary(snapshot, 4, zipCodes), latitudes, longitudes);
+    }
+
+
+    private static int copy(ByteBuffer table, int from, int to, byte[] arena, int at) {
+        table.position(from);
+        table.get(arena, at, to - from);
+        return at + to - from;
+    }
+
+
+    private static int[] codes(double[] column) {
+        int[] codes = new int[column.length];
+        for (int row = 0; row < codes.length; row++) {
+            codes[row] = (int) column[row];
+        }
+        return codes;
+    }
+
+
+    // The first max(code) + 1 cells of a dictionary column.
+    private static String[] dictionary(GendataSnapshot snapshot, int column, int[] codes) {
+        int max = -1;
+        for (int code : codes) {
+            max = Math.max(max, code);
+        }
+        String[] values = new String[max + 1];
+        for (int d = 0; d < values.length; d++) {
+            values[d] = snapshot.string(column, d);
+        }
+        return values;
+    }
+
+
+    /**
+     * @return A new view positioned on row 0. Views are cheap but not thread
+     * safe; give each thread its own.
+     */
+    public AddressView view() {
+        return new AddressView(this);
+    }
+
+
+    /**
+     * Materializes one row as an Address object.
+     */
+    public Address toAddress(int row) {
+        return new Address(number(row), street(row),
+                cities[cityCodes[row]], states[stateCodes[row]], zips[zipCodes[row]],
+                latitudes[row], longitudes[row]);
+    }
+
+
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * @return The number of distinct cities, states and ZIP codes, for logging.
+     */
+    public String describe() {
+        return size + " addresses, " + arena.length + " bytes of street data, "
+                + cities.length + " cities, " + states.length + " states, " + zips.length + " ZIPs";
+    }
+
+
+    String number(int row) {
+        return decode(offsets[2 * row], offsets[2 * row + 1]);
+    }
+
+    String street(int row) {
+        return decode(offsets[2 * row + 1], offsets[2 * row + 2]);
+    }
+
+    String city(int row) {
+        return cities[cityCodes[row]];
+    }
+
+    String state(int row) {
+        return states[stateCodes[row]];
+    }
+
+    String zip(int row) {
+        return zips[zipCodes[row]];
+    }
+
+    int cityCode(int row) {
+        return cityCodes[row];
+    }
+
+    int stateCode(int row) {
+        return stateCodes[row];
+    }
+
+    int zipCode(int row) {
+        return zipCodes[row];
+    }
+
+    float latitude(int row) {
+        return latitudes[row];
+    }
+
+    float longitude(int row) {
+        return longitudes[row];
+    }
+
+    StringBuilder appendNumber(int row, StringBuilder sb) {
+        return append(offsets[2 * row], offsets[2 * row + 1], sb);
+    }
+
+    StringBuilder appendStreet(int row, StringBuilder sb) {
+        return append(offsets[2 * row + 1], offsets[2 * row + 2], sb);
+    }
+
+
+    private String decode(int from, int to) {
+        return new String(arena, from, to - from, StandardCharsets.UTF_8);
+    }
+
+
+    // ASCII is appended byte by byte; anything else is decoded properly.
+    private StringBuilder append(int from, int to, StringBuilder sb) {
+
+        for (int i = from; i < to; i++) {
+            if (arena[i] < 0) {
+                return sb.append(decode(i, to));
+            }
+            sb.append((char) arena[i]);
+        }
+        return sb;
+    }
+
+
+    /**
+     * Writes this store as the pre-compiled snapshot of its source file, in
+     * the store's own layout so that {@link #fromSnapshot(GendataSnapshot)}
+     * has nothing to parse or look up. String columns: number, street, and
+     * the city, state and ZIP dictionaries, each padded with empty cells to
+     * the row count. Double columns: latitude, longitude, and the city,
+     * state and ZIP code of each row.
+     *
+     * @param source    The address file the store was read from.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    void writeSnapshot(File source) throws IOException {
+
+        ByteArrayOutputStream table = new ByteArrayOutputStream(arena.length * 2);
+        int[][] columns = new int[STRING_COLUMNS][size + 1];
+
+        for (int row = 0; row < size; row++) {
+            columns[0][row] = table.size();
+            table.write(arena, offsets[2 * row], offsets[2 * row + 1] - offsets[2 * row]);
+        }
+        columns[0][size] = table.size();
+
+        for (int row = 0; row < size; row++) {
+            columns[1][row] = table.size();
+            table.write(arena, offsets[2 * row + 1], offsets[2 * row + 2] - offsets[2 * row + 1]);
+        }
+        columns[1][size] = table.size();
+
+        writeDictionaryColumn(table, columns[2], cities);
+        writeDictionaryColumn(table, columns[3], states);
+        writeDictionaryColumn(table, columns[4], zips);
+
+        double[][] doubles = new double[DOUBLE_COLUMNS][size];
+        for (int row = 0; row < size; row++) {
+            doubles[0][row] = latitudes[row];
+            doubles[1][row] = longitudes[row];
+            doubles[2][row] = cityCodes[row];
+            doubles[3][row] = stateCodes[row];
+            doubles[4][row] = zipCodes[row];
+        }
+
+        GendataSnapshot.write(source, size, columns, doubles, ByteBuffer.wrap(table.toByteArray()));
+    }
+
+
+    // Each row of a store adds at most one value, so a dictionary fits in
+    // the rows; the cells past its end are empty.
+    private void writeDictionaryColumn(ByteArrayOutputStream table, int[] column, String[] dictionary) {
+
+        for (int d = 0; d < size; d++) {
+            column[d] = table.size();
+            if (d < dictionary.length) {
+                byte[] value = dictionary[d].getBytes(StandardCharsets.UTF_8);
+                table.write(value, 0, value.length);
+            }
+        }
+        column[size] = table.size();
+    }
+
+
+    /**
+     * Accumulates rows for an AddressStore. Not thread safe.
+     */
+    public static class Builder {
+
+        private int size;
+
+        private byte[] arena = new byte[64 * 1024];
+        private int arenaSize;
+        private int[] offsets = new int[2 * 1024 + 1];
+
+        private int[] cityCodes = new int[1024];
+        private int[] stateCodes = new int[1024];
+        private int[] zipCodes = new int[1024];
+
+        private final Dictionary cities = new Dictionary();
+        private final Dictionary states = new Dictionary();
+        private final Dictionary zips = new Dictionary();
+
+        private float[] latitudes = new float[1024];
+        private float[] longitudes = new float[1024];
+
+
+        public Builder add(String number, String street, String city, String state, String zip,
+                double latitude, double longitude) {
+
+            if (size == cityCodes.length) {
+                int capacity = size * 2;
+                offsets = Arrays.copyOf(offsets, 2 * capacity + 1);
+                cityCodes = Arrays.copyOf(cityCodes, capacity);
+                stateCodes = Arrays.copyOf(stateCodes, capacity);
+                zipCodes = Arrays.copyOf(zipCodes, capacity);
+                latitudes = Arrays.copyOf(latitudes, capacity);
+                longitudes = Arrays.copyOf(longitudes, capacity);
+            }
+
+            offsets[2 * size] = arenaSize;
+            appendToArena(number);
+            offsets[2 * size + 1] = arenaSize;
+            appendToArena(street);
+            offsets[2 * size + 2] = arenaSize;
+
+            cityCodes[size] = cities.code(city);
+            stateCodes[size] = states.code(state);
+            zipCodes[size] = zips.code(zip);
+
+            latitudes[size] = (float) latitude;
+            longitudes[size] = (float) longitude;
+
+            size++;
+            return this;
+        }
+
+
+        private void appendToArena(String value) {
+
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            if (arenaSize + utf8.length > arena.length) {
+                arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + utf8.length));
+            }
+            System.arraycopy(utf8, 0, arena, arenaSize, utf8.length);
+            arenaSize += utf8.length;
+        }
+
+
+        public int size() {
+            return size;
+        }
+
+
+        public AddressStore build() {
+            return new AddressStore(this);
+        }
+    }
+
+
+    private static class Dictionary {
+
+        private final HashMap<String, Integer> codes = new HashMap<>();
+        private final ArrayList<String> values = new ArrayList<>();
+
+        int code(String value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                codes.put(value, code);
+                values.add(value);
+            }
+            return code;
+        }
+    }
+
+}
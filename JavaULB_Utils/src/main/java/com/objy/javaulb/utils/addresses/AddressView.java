@@ -0,0 +1,115 @@
+package com.objy.javaulb.utils.addresses;
+
+/**
+ * A movable window onto one row of an {@link AddressStore}. Moving the view
+ * and reading the city, state, ZIP or coordinates does not allocate; the
+ * append methods copy the number and street into a caller's StringBuilder
+ * without creating Strings. A view belongs to one thread at a time.
+ *
+ * @author Daniel
+ */
+public class AddressView {
+
+    private final AddressStore store;
+    private int row;
+
+
+    AddressView(AddressStore store) {
+        this.store = store;
+    }
+
+
+    /**
+     * @param row   The row to show, in [0, store.size()).
+     * @return This view.
+     */
+    public AddressView moveTo(int row) {
+        if (row < 0 || row >= store.size()) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + store.size());
+        }
+        this.row = row;
+        return this;
+    }
+
+
+    public int getRow() {
+        return row;
+    }
+
+
+    /**
+     * @return The house number. Decoded on each call; prefer
+     * {@link #appendNumber(StringBuilder)} on hot paths.
+     */
+    public String getNumber() {
+        return store.number(row);
+    }
+
+
+    /**
+     * @return The street. Decoded on each call; prefer
+     * {@link #appendStreet(StringBuilder)} on hot paths.
+     */
+    public String getStreet() {
+        return store.street(row);
+    }
+
+
+    public StringBuilder appendNumber(StringBuilder sb) {
+        return store.appendNumber(row, sb);
+    }
+
+
+    public StringBuilder appendStreet(StringBuilder sb) {
+        return store.appendStreet(row, sb);
+    }
+
+
+    public String getCity() {
+        return store.city(row);
+    }
+
+
+    public String getState() {
+        return store.state(row);
+    }
+
+
+    public String getZip() {
+        return store.zip(row);
+    }
+
+
+    public int getCityCode() {
+        return store.cityCode(row);
+    }
+
+
+    public int getStateCode() {
+        return store.stateCode(row);
+    }
+
+
+    public int getZipCode() {
+        return store.zipCode(row);
+    }
+
+
+    public float getLatitude() {
+        return store.latitude(row);
+    }
+
+
+    public float getLongitude() {
+        return store.longitude(row);
+    }
+
+
+    /**
+     * @return A new Address holding a copy of the current row.
+     */
+    public Address toAddress() {
+        return store.toAddress(row);
+    }
+
+}
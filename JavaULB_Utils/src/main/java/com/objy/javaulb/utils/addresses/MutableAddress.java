@@ -0,0 +1,62 @@
+package com.objy.javaulb.utils.addresses;
+
+/**
+ * A reusable holder for one address, filled by
+ * {@link AddressFactory#fillAddress(MutableAddress)}. The number and street
+ * are copied into StringBuilders owned by the holder, and the city, state and
+ * ZIP are the store's shared dictionary Strings, so refilling a holder does
+ * not allocate. Not thread safe; keep one per thread.
+ *
+ * @author Daniel
+ */
+public class MutableAddress {
+
+    public final StringBuilder number = new StringBuilder(16);
+    public final StringBuilder street = new StringBuilder(48);
+    public String city;
+    public String state;
+    public String zip;
+    public float latitude;
+    public float longitude;
+
+
+    /**
+     * Copies the row a view is positioned on into this holder.
+     *
+     * @param view  The view to copy from.
+     * @return This holder.
+     */
+    public MutableAddress copyFrom(AddressView view) {
+
+        number.setLength(0);
+        view.appendNumber(number);
+
+        street.setLength(0);
+        view.appendStreet(street);
+
+        city = view.getCity();
+        state = view.getState();
+        zip = view.getZip();
+        latitude = view.getLatitude();
+        longitude = view.getLongitude();
+
+        return this;
+    }
+
+
+    /**
+     * @return A new Address holding a copy of this holder's values.
+     */
+    public Address toAddress() {
+        return new Address(number.toString(), street.toString(), city, state, zip, latitude, longitude);
+    }
+
+
+    @Override
+    public String toString() {
+        return number + " " + street + "\n"
+                + city + ", " + state + " " + zip + "\n"
+                + latitude + " / " + longitude + "\n";
+    }
+
+}
@@ -0,0 +1,97 @@
+package com.objy.javaulb.utils.graph;
+
+import com.objy.javaulb.utils.LongIntMap;
+
+/**
+ * The positions of the entries of one vertex's to-many reference list, by
+ * the ObjectId (as a long) of the vertex each entry refers to. With it,
+ * finding an entry takes one lookup instead of a scan of the list. The
+ * positions are kept in a {@link LongIntMap}, without a boxed key or value
+ * per entry.
+ * <p>
+ * The index keeps the positions right as long as the list is only changed
+ * as it is told: entries are appended at the end, and an entry is removed
+ * by moving the last entry into its place and dropping the last slot, so
+ * no other entry moves. The order of the list is therefore not kept.
+ * <p>
+ * Not thread safe.
+ *
+ * @author Daniel
+ */
+public class AdjacencyIndex {
+
+    private final LongIntMap positions;
+
+    // The number of entries in the list; more than positions.size() if the
+    // list holds duplicates.
+    private int size;
+
+
+    public AdjacencyIndex(int expectedSize) {
+        positions = new LongIntMap(expectedSize);
+    }
+
+
+    /**
+     * @return The position of the entry referring to oid, or -1.
+     */
+    public int positionOf(long oid) {
+        return positions.get(oid, -1);
+    }
+
+
+    public boolean contains(long oid) {
+        return positions.containsKey(oid);
+    }
+
+
+    /**
+     * Records an entry referring to oid appended at the end of the list.
+     *
+     * @return false if oid was already in the index; the list then holds a
+     * duplicate, and the index only knows the first one.
+     */
+    public boolean add(long oid) {
+        return positions.putIfAbsent(oid, size++);
+    }
+
+
+    /**
+     * Records the removal of the entry at position: the last entry, which
+     * refers to lastOid, was moved into it and the last slot dropped.
+     *
+     * @param oid       What the removed entry referred to.
+     * @param position  Where it was.
+     * @param lastOid   What the last entry refers to.
+     */
+    public void remove(long oid, int position, long lastOid) {
+        positions.remove(oid);
+        if (lastOid != oid) {
+            positions.put(lastOid, position);
+        }
+        size--;
+    }
+
+
+    /**
+     * @return The number of entries.
+     */
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * @return Whether some entries refer to the same vertex.
+     */
+    public boolean hasDuplicates() {
+        return positions.size() != size;
+    }
+
+
+    public void clear() {
+        positions.clear();
+        size = 0;
+    }
+
+}
@@ -0,0 +1,139 @@
+package com.objy.javaulb.utils.graph;
+
+import com.objy.javaulb.utils.names.AliasSampler;
+import java.util.SplittableRandom;
+
+/**
+ * The distribution of a vertex degree in a generated graph, such as the
+ * number of Persons living at each Address. Instances are immutable and may
+ * be shared between threads; the random stream is supplied on each draw.
+ *
+ * @author Daniel
+ */
+public abstract class DegreeDistribution {
+
+    /**
+     * @param random    A stream confined to the calling thread.
+     * @return A degree, zero or more.
+     */
+    public abstract int sample(SplittableRandom random);
+
+    /**
+     * @return The expected degree.
+     */
+    public abstract double mean();
+
+
+    /**
+     * Every vertex has the same degree.
+     */
+    public static DegreeDistribution fixed(final int degree) {
+
+        if (degree < 0) {
+            throw new IllegalArgumentException("Degree must not be negative: " + degree);
+        }
+        return new DegreeDistribution() {
+            public int sample(SplittableRandom random) {
+                return degree;
+            }
+
+            public double mean() {
+                return degree;
+            }
+
+            public String toString() {
+                return "fixed(" + degree + ")";
+            }
+        };
+    }
+
+
+    /**
+     * Degrees in [min, max], all equally likely. uniform(0, 4) matches the
+     * original Lab05 DataFactory.
+     */
+    public static DegreeDistribution uniform(final int min, final int max) {
+
+        if (min < 0 || max < min) {
+            throw new IllegalArgumentException("Bad degree range: [" + min + ", " + max + "]");
+        }
+        final int span = max - min + 1;
+        return new DegreeDistribution() {
+            public int sample(SplittableRandom random) {
+                return min + random.nextInt(span);
+            }
+
+            public double mean() {
+                return (min + max) / 2.0;
+            }
+
+            public String toString() {
+                return "uniform(" + min + ", " + max + ")";
+            }
+        };
+    }
+
+
+    /**
+     * Degree k is drawn with probability proportional to
+     * <code>weights[k]</code>.
+     */
+    public static DegreeDistribution weighted(double[] weights) {
+
+        final AliasSampler sampler = new AliasSampler(weights);
+
+        double sum = 0.0;
+        double weightedSum = 0.0;
+        for (int k = 0; k < weights.length; k++) {
+            sum += weights[k];
+            weightedSum += k * weights[k];
+        }
+        final double mean = weightedSum / sum;
+
+        return new DegreeDistribution() {
+            public int sample(SplittableRandom random) {
+                return sampler.sample(random.nextDouble());
+            }
+
+            public double mean() {
+                return mean;
+            }
+
+            public String toString() {
+                return "weighted(" + sampler.size() + " degrees, mean " + mean + ")";
+            }
+        };
+    }
+
+
+    /**
+     * A Poisson distribution with the given mean, truncated at
+     * <code>max</code>.
+     */
+    public static DegreeDistribution poisson(double mean, int max) {
+
+        double[] weights = new double[max + 1];
+        double p = Math.exp(-mean);
+        for (int k = 0; k <= max; k++) {
+            weights[k] = p;
+            p = p * mean / (k + 1);
+        }
+        return weighted(weights);
+    }
+
+
+    /**
+     * A power law over degrees 1 to <code>max</code>: degree k has weight
+     * 1 / k^exponent. Gives a few very high-degree vertices, as in real
+     * social graphs.
+     */
+    public static DegreeDistribution zipf(double exponent, int max) {
+
+        double[] weights = new double[max + 1];
+        for (int k = 1; k <= max; k++) {
+            weights[k] = 1.0 / Math.pow(k, exponent);
+        }
+        return weighted(weights);
+    }
+
+}
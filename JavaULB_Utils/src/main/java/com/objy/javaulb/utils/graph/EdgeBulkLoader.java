@@ -0,0 +1,396 @@
+package com.objy.javaulb.utils.graph;
+
+import com.objy.data.Instance;
+import com.objy.data.Reference;
+import com.objy.data.Variable;
+import com.objy.db.ObjectId;
+import com.objy.db.TransactionMode;
+import com.objy.javaulb.utils.AttributeAccessor;
+import com.objy.javaulb.utils.InstanceCache;
+import com.objy.javaulb.utils.Oid;
+import com.objy.javaulb.utils.TransactionRunner;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates many edges of a to-many reference list attribute, such as
+ * Person.Knows, in a few transactions, instead of a transaction, and two
+ * lookups, per edge:
+ * <pre>
+ *   EdgeBulkLoader knows = new EdgeBulkLoader("Person", "Knows", runner);
+ *   knows.add(fromOID, toOID);
+ *   ...
+ *   knows.load();
+ * </pre>
+ * The (from, to) pairs are collected in memory, then sorted by the
+ * ObjectId of the source. An ObjectId, as a long, puts the database and
+ * container in its high bits, so the sort groups the sources by container
+ * and the loader visits each container's pages in order. Each transaction
+ * takes the edges of up to <code>sourcesPerTransaction</code> sources: it
+ * looks each source up once and appends all of its entries to the list
+ * together. It also looks up each target once.
+ * <p>
+ * A pair added more than once is created once. Not thread safe.
+ *
+ * @author Daniel
+ */
+public class EdgeBulkLoader {
+
+    private static Logger logger = LoggerFactory.getLogger(EdgeBulkLoader.class);
+
+    public static final int DEFAULT_SOURCES_PER_TRANSACTION = 1000;
+
+    private static final int TARGET_CACHE_CAPACITY = 100_000;
+
+    // Below this, a range is sorted by insertion.
+    private static final int INSERTION_SORT_SIZE = 16;
+
+    private final AttributeAccessor attribute;
+    private final EdgeWriter writer;
+    private final int sourcesPerTransaction;
+    private final TransactionRunner runner;
+
+    // The pairs added, as ObjectId longs.
+    private long[] froms = new long[1024];
+    private long[] tos = new long[1024];
+    private int size;
+
+
+    public EdgeBulkLoader(String className, String attributeName, TransactionRunner runner) {
+        this(AttributeAccessor.of(className, attributeName), DEFAULT_SOURCES_PER_TRANSACTION, runner);
+    }
+
+
+    /**
+     * @param attribute             The to-many reference list attribute.
+     * @param sourcesPerTransaction The most sources whose edges are written
+     *                              in one transaction.
+     * @param runner                Runs and retries each transaction.
+     */
+    public EdgeBulkLoader(AttributeAccessor attribute, int sourcesPerTransaction, TransactionRunner runner) {
+
+        if (sourcesPerTransaction < 1) {
+            throw new IllegalArgumentException("sourcesPerTransaction = " + sourcesPerTransaction);
+        }
+        this.attribute = attribute;
+        this.writer = this::write;
+        this.sourcesPerTransaction = sourcesPerTransaction;
+        this.runner = runner;
+    }
+
+
+    // Writes each transaction's edges with the given writer instead of to
+    // the federation, for the tests.
+    EdgeBulkLoader(EdgeWriter writer, int sourcesPerTransaction, TransactionRunner runner) {
+
+        if (sourcesPerTransaction < 1) {
+            throw new IllegalArgumentException("sourcesPerTransaction = " + sourcesPerTransaction);
+        }
+        this.attribute = null;
+        this.writer = writer;
+        this.sourcesPerTransaction = sourcesPerTransaction;
+        this.runner = runner;
+    }
+
+
+    /**
+     * Adds an edge to be created by {@link #load()}.
+     */
+    public void add(String fromOID, String toOID) {
+        add(Oid.parse(fromOID), Oid.parse(toOID));
+    }
+
+
+    /**
+     * Adds an edge, given the ObjectIds as longs.
+     */
+    public void add(long fromOid, long toOid) {
+
+        if (size == froms.length) {
+            froms = Arrays.copyOf(froms, size * 2);
+            tos = Arrays.copyOf(tos, size * 2);
+        }
+        froms[size] = fromOid;
+        tos[size] = toOid;
+        size++;
+    }
+
+
+    /**
+     * @return The number of edges added and not loaded yet.
+     */
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * Creates the edges added, and forgets them.
+     *
+     * @return What was created, and how fast.
+     * @throws Exception A failure of a transaction, or an ObjectId that
+     * names no object. The transactions before it stay committed; the edges
+     * of the failed transaction and after it are kept, so load may be
+     * called again.
+     */
+    public Report load() throws Exception {
+
+        long start = System.nanoTime();
+
+        sort(froms, tos, 0, size - 1);
+        int n = dedupe();
+        int duplicates = size - n;
+        size = n;
+
+        long sources = 0;
+        int transactions = 0;
+        long retries = 0;
+        long conflicts = 0;
+        TransactionRunner.Metrics metrics = new TransactionRunner.Metrics();
+
+        int i = 0;
+        while (i < n) {
+
+            // Take the edges of the next sources, up to sourcesPerTransaction.
+            int first = i;
+            int count = 0;
+            while (i < n && count < sourcesPerTransaction) {
+                long from = froms[i];
+                do {
+                    i++;
+                } while (i < n && froms[i] == from);
+                count++;
+            }
+
+            int last = i;
+            try {
+                runner.run(TransactionMode.READ_UPDATE, () -> writer.write(froms, tos, first, last), metrics);
+            } catch (Exception ex) {
+                // Keep the edges not written, for another load.
+                System.arraycopy(froms, first, froms, 0, n - first);
+                System.arraycopy(tos, first, tos, 0, n - first);
+                size = n - first;
+                throw ex;
+            }
+
+            sources += count;
+            transactions++;
+            if (metrics.getConflicts() > 0) {
+                retries++;
+            }
+            conflicts += metrics.getConflicts();
+        }
+
+        Report report = new Report(n, duplicates, sources, transactions, retries, conflicts,
+                System.nanoTime() - start);
+        logger.info(report.toString());
+
+        size = 0;
+        return report;
+    }
+
+
+    // Writes the edges in [first, last), in the current transaction.
+    private void write(long[] froms, long[] tos, int first, int last) {
+
+        // The targets looked up in this transaction; a target shared by
+        // many sources is looked up once. No prefetch: the edges are sorted
+        // by source, so the targets come in no page order, and the next
+        // slots of a target's page are seldom targets of the same batch.
+        InstanceCache targets = new InstanceCache(TARGET_CACHE_CAPACITY);
+
+        int i = first;
+        while (i < last) {
+            long from = froms[i];
+
+            Instance source = checkFound(Instance.lookup(new ObjectId(from)), from);
+            com.objy.data.List list = attribute.get(source).listValue();
+
+            do {
+                Instance target = checkFound(targets.lookup(tos[i]), tos[i]);
+                list.add(new Variable(new Reference(target)));
+                i++;
+            } while (i < last && froms[i] == from);
+        }
+
+        logger.debug(targets.toString());
+    }
+
+
+    private static Instance checkFound(Instance ix, long oid) {
+
+        if (ix == null) {
+            throw new IllegalArgumentException("No object " + Oid.toString(oid));
+        }
+        return ix;
+    }
+
+
+    /**
+     * Writes the edges of one transaction: the sorted pairs in
+     * [first, last), which hold all the edges of their sources.
+     */
+    @FunctionalInterface
+    interface EdgeWriter {
+        void write(long[] froms, long[] tos, int first, int last) throws Exception;
+    }
+
+
+    // Drops repeated pairs from the sorted pairs; returns how many are left.
+    private int dedupe() {
+
+        if (size == 0) {
+            return 0;
+        }
+        int n = 1;
+        for (int i = 1; i < size; i++) {
+            if (froms[i] != froms[n - 1] || tos[i] != tos[n - 1]) {
+                froms[n] = froms[i];
+                tos[n] = tos[i];
+                n++;
+            }
+        }
+        return n;
+    }
+
+
+    // Sorts the pairs in [lo, hi] by from, then to.
+    private static void sort(long[] a, long[] b, int lo, int hi) {
+
+        while (hi - lo >= INSERTION_SORT_SIZE) {
+
+            int mid = (lo + hi) >>> 1;
+            if (less(a, b, mid, lo)) swap(a, b, mid, lo);
+            if (less(a, b, hi, lo)) swap(a, b, hi, lo);
+            if (less(a, b, hi, mid)) swap(a, b, hi, mid);
+
+            long pa = a[mid];
+            long pb = b[mid];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (a[i] < pa || (a[i] == pa && b[i] < pb)) i++;
+                while (a[j] > pa || (a[j] == pa && b[j] > pb)) j--;
+                if (i <= j) {
+                    swap(a, b, i++, j--);
+                }
+            }
+
+            // Recurse into the smaller part, loop on the larger.
+            if (j - lo < hi - i) {
+                sort(a, b, lo, j);
+                lo = i;
+            } else {
+                sort(a, b, i, hi);
+                hi = j;
+            }
+        }
+
+        for (int i = lo + 1; i <= hi; i++) {
+            for (int j = i; j > lo && less(a, b, j, j - 1); j--) {
+                swap(a, b, j, j - 1);
+            }
+        }
+    }
+
+
+    private static boolean less(long[] a, long[] b, int i, int j) {
+        return a[i] < a[j] || (a[i] == a[j] && b[i] < b[j]);
+    }
+
+
+    private static void swap(long[] a, long[] b, int i, int j) {
+        long t = a[i];
+        a[i] = a[j];
+        a[j] = t;
+        t = b[i];
+        b[i] = b[j];
+        b[j] = t;
+    }
+
+
+
+    /**
+     * The result of one load.
+     */
+    public static class Report {
+
+        private final long edges;
+        private final long duplicates;
+        private final long sources;
+        private final int transactions;
+        private final long retries;
+        private final long conflicts;
+        private final long elapsedNanos;
+
+
+        Report(long edges, long duplicates, long sources, int transactions, long retries, long conflicts,
+                long elapsedNanos) {
+            this.edges = edges;
+            this.duplicates = duplicates;
+            this.sources = sources;
+            this.transactions = transactions;
+            this.retries = retries;
+            this.conflicts = conflicts;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return The edges created.
+         */
+        public long getEdges() {
+            return edges;
+        }
+
+        /**
+         * @return The pairs skipped because they had been added before.
+         */
+        public long getDuplicates() {
+            return duplicates;
+        }
+
+        /**
+         * @return The distinct source vertices.
+         */
+        public long getSources() {
+            return sources;
+        }
+
+        public int getTransactions() {
+            return transactions;
+        }
+
+        /**
+         * @return The transactions retried after a lock conflict.
+         */
+        public long getRetries() {
+            return retries;
+        }
+
+        /**
+         * @return The lock conflicts over all transactions; a transaction
+         * may conflict more than once.
+         */
+        public long getConflicts() {
+            return conflicts;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getEdgesPerSecond() {
+            return (elapsedNanos == 0) ? 0 : edges * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Loaded %,d edges (%,d duplicates skipped) from %,d sources in %,d transactions (%,d retried, %,d conflicts) in %,d ms: %,.0f edges/sec",
+                    edges, duplicates, sources, transactions, retries, conflicts,
+                    TimeUnit.NANOSECONDS.toMillis(elapsedNanos), getEdgesPerSecond());
+        }
+    }
+
+}
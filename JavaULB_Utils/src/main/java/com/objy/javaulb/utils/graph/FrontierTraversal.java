@@ -0,0 +1,308 @@
+package com.objy.javaulb.utils.graph;
+
+import com.objy.javaulb.utils.LongIntMap;
+import com.objy.javaulb.utils.LongList;
+import com.objy.javaulb.utils.Oid;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Walks a graph breadth first from one vertex, a level at a time, expanding
+ * each level's vertices in parallel on a {@link ForkJoinPool}:
+ * <pre>
+ *   FrontierTraversal.Result r = new FrontierTraversal().traverse(johnDoe, 2, neighbours, null);
+ *   long[] housemates = r.getLevel(2);
+ * </pre>
+ * Vertices are {@link Oid}s. The frontier, the vertices first reached at
+ * the last level, is cut into chunks; a task per chunk asks the
+ * {@link Neighbours} for the vertices adjacent to its chunk. The calling
+ * thread merges the chunks as they finish: a {@link LongIntMap} of the
+ * visited vertices, with the depth each was reached at, drops those seen
+ * before, and the rest make the next frontier.
+ * <p>
+ * The walk stops at <code>maxDepth</code>, when the frontier is empty, or
+ * at the first vertex the {@link Stop} predicate accepts: the chunks not
+ * started yet are then skipped. Whether it returns or throws, traverse
+ * waits first for every task it submitted, so none is still running, and
+ * using a session, afterwards.
+ * <p>
+ * Objectivity binds a transaction to one thread, so a Neighbours working
+ * on a federation opens its own transaction in each task, e.g. through a
+ * session of a ConnectionManager; the pool should not have more threads
+ * than there are sessions.
+ *
+ * @author Daniel
+ */
+public class FrontierTraversal {
+
+    private static Logger logger = LoggerFactory.getLogger(FrontierTraversal.class);
+
+    public static final int DEFAULT_CHUNK_SIZE = 256;
+
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+
+
+    public FrontierTraversal() {
+        this(ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+
+    /**
+     * @param pool      Runs the expansion of the chunks.
+     * @param chunkSize The most frontier vertices expanded by one task.
+     */
+    public FrontierTraversal(ForkJoinPool pool, int chunkSize) {
+
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize = " + chunkSize);
+        }
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+
+    /**
+     * @param start         The vertex to start from, at depth 0.
+     * @param maxDepth      The most levels to expand.
+     * @param neighbours    Gives the vertices adjacent to a chunk.
+     * @param stop          Ends the walk at the first vertex it accepts;
+     *                      null to walk to maxDepth.
+     * @return The vertices reached, by level.
+     * @throws Exception What a Neighbours task threw.
+     */
+    public Result traverse(long start, int maxDepth, Neighbours neighbours, Stop stop) throws Exception {
+
+        long t0 = System.nanoTime();
+
+        LongIntMap visited = new LongIntMap();
+        ArrayList<long[]> levels = new ArrayList<>();
+        AtomicBoolean stopped = new AtomicBoolean();
+
+        visited.put(start, 0);
+        levels.add(new long[] {start});
+
+        long found = 0;
+        if (stop != null && stop.test(start, 0)) {
+            stopped.set(true);
+            found = start;
+        }
+
+        for (int depth = 1; depth <= maxDepth && !stopped.get(); depth++) {
+
+            long[] frontier = levels.get(depth - 1);
+            if (frontier.length == 0) {
+                break;
+            }
+
+            ExecutorCompletionService<Chunk> completion = new ExecutorCompletionService<>(pool);
+            List<Future<Chunk>> tasks = new ArrayList<>();
+            LongList next = new LongList();
+            int merged = 0;
+            try {
+                for (int from = 0; from < frontier.length; from += chunkSize) {
+                    int first = from;
+                    int last = Math.min(frontier.length, from + chunkSize);
+                    tasks.add(completion.submit(() -> {
+                        Chunk chunk = new Chunk(last - first);
+                        if (!stopped.get()) {
+                            try {
+                                neighbours.expand(frontier, first, last, chunk.out);
+                            } catch (Exception ex) {
+                                chunk.failure = ex;
+                            }
+                        }
+                        return chunk;
+                    }));
+                }
+
+                // Merge the chunks as they finish.
+                for (; merged < tasks.size() && !stopped.get(); merged++) {
+                    Chunk chunk = completion.take().get();
+                    if (chunk.failure != null) {
+                        stopped.set(true);
+                        throw chunk.failure;
+                    }
+                    LongList out = chunk.out;
+                    for (int j = 0; j < out.size(); j++) {
+                        long v = out.get(j);
+                        if (!visited.putIfAbsent(v, depth)) {
+                            continue;
+                        }
+                        next.add(v);
+                        if (stop != null && stop.test(v, depth)) {
+                            stopped.set(true);
+                            found = v;
+                            break;
+                        }
+                    }
+                }
+            } finally {
+                // The chunks not started yet skip their work once stopped is
+                // set; wait for all of them rather than cancel them, since a
+                // cancelled task may still be running.
+                if (merged < tasks.size()) {
+                    stopped.set(true);
+                }
+                awaitAll(tasks);
+            }
+
+            levels.add(next.toArray());
+            logger.debug("Depth " + depth + ": " + next.size() + " new vertices from "
+                    + frontier.length + " in " + tasks.size() + " chunks");
+        }
+
+        Result result = new Result(visited, levels, stopped.get(), found, System.nanoTime() - t0);
+        logger.debug(result.toString());
+        return result;
+    }
+
+
+
+    // Waits until every task finished, even if interrupted meanwhile; the
+    // interrupt is kept for the caller.
+    private static void awaitAll(List<Future<Chunk>> tasks) {
+
+        boolean interrupted = false;
+        for (Future<Chunk> f : tasks) {
+            while (true) {
+                try {
+                    f.get();
+                    break;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                } catch (ExecutionException ex) {
+                    // A task keeps what it throws in its Chunk.
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+
+    // The vertices one task found, or what it threw: the pool would wrap
+    // the exception.
+    private static class Chunk {
+
+        final LongList out;
+        Exception failure;
+
+
+        Chunk(int vertices) {
+            out = new LongList(2 * vertices);
+        }
+    }
+
+
+
+    /**
+     * Gives the vertices adjacent to some vertices. It is called on the
+     * pool's threads, for several chunks at once.
+     */
+    @FunctionalInterface
+    public interface Neighbours {
+
+        /**
+         * Adds to <code>out</code> the vertices adjacent to
+         * <code>frontier[from, to)</code>. Duplicates, and vertices already
+         * visited, may be added; the traversal drops them.
+         */
+        void expand(long[] frontier, int from, int to, LongList out) throws Exception;
+    }
+
+
+    /**
+     * An early-exit test, run on the calling thread for each new vertex.
+     */
+    @FunctionalInterface
+    public interface Stop {
+        boolean test(long vertex, int depth);
+    }
+
+
+
+    /**
+     * The vertices one traversal reached.
+     */
+    public static class Result {
+
+        private final LongIntMap visited;
+        private final List<long[]> levels;
+        private final boolean stopped;
+        private final long found;
+        private final long elapsedNanos;
+
+
+        Result(LongIntMap visited, List<long[]> levels, boolean stopped, long found, long elapsedNanos) {
+            this.visited = visited;
+            this.levels = levels;
+            this.stopped = stopped;
+            this.found = found;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return The vertices first reached at the depth; empty beyond the
+         * last level.
+         */
+        public long[] getLevel(int depth) {
+            return (depth < levels.size()) ? levels.get(depth).clone() : new long[0];
+        }
+
+        /**
+         * @return The number of levels, the start included.
+         */
+        public int getLevels() {
+            return levels.size();
+        }
+
+        /**
+         * @return The depth the vertex was reached at, or -1.
+         */
+        public int depthOf(long vertex) {
+            return visited.get(vertex, -1);
+        }
+
+        public int getVisited() {
+            return visited.size();
+        }
+
+        /**
+         * @return Whether the Stop predicate ended the walk.
+         */
+        public boolean isStopped() {
+            return stopped;
+        }
+
+        /**
+         * @return The vertex the Stop predicate accepted, if isStopped().
+         */
+        public long getFound() {
+            return found;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Traversal visited %,d vertices in %d levels in %,d ms%s",
+                    visited.size(), levels.size(), TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                    stopped ? "; stopped at " + Oid.toString(found) : "");
+        }
+    }
+
+}
@@ -0,0 +1,271 @@
+package com.objy.javaulb.utils.graph;
+
+import com.objy.db.TransactionMode;
+import com.objy.javaulb.utils.ConnectionManager;
+import com.objy.javaulb.utils.TransactionRunner;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads a generated graph into a {@link GraphSink} with a pool of worker
+ * threads.
+ * <p>
+ * The address range is cut into batches of <code>addressesPerBatch</code>
+ * addresses. Each worker repeatedly claims the next batch, generates it
+ * (with its occupants and edges) and hands it to the sink inside its own
+ * READ_UPDATE transaction, run by a {@link TransactionRunner}. A lock
+ * conflict replays only that batch, and since batch contents depend only on
+ * the seed and the address range, the replay writes exactly the same
+ * records.
+ * <p>
+ * Given a {@link ConnectionManager}, each batch runs in a session checked
+ * out of it, so the load takes no more of the federation than the
+ * manager allows; workers beyond its sessions wait for one.
+ *
+ * @author Daniel
+ */
+public class GraphBulkLoader {
+
+    private static Logger logger = LoggerFactory.getLogger(GraphBulkLoader.class);
+
+    public static final int DEFAULT_ADDRESSES_PER_BATCH = 1000;
+
+    private final int workers;
+    private final int addressesPerBatch;
+    private final TransactionRunner runner;
+    private final ConnectionManager connectionManager;
+
+
+    public GraphBulkLoader(int workers) {
+        this(workers, DEFAULT_ADDRESSES_PER_BATCH, new TransactionRunner());
+    }
+
+
+    /**
+     * @param workers           The number of threads writing batches.
+     * @param addressesPerBatch The number of addresses per transaction.
+     * @param runner            Runs the transaction of each batch, and
+     *                          decides how long a batch may keep retrying
+     *                          before the load is abandoned.
+     */
+    public GraphBulkLoader(int workers, int addressesPerBatch, TransactionRunner runner) {
+
+        if (workers < 1 || addressesPerBatch < 1) {
+            throw new IllegalArgumentException("workers = " + workers
+                    + ", addressesPerBatch = " + addressesPerBatch);
+        }
+        this.workers = workers;
+        this.addressesPerBatch = addressesPerBatch;
+        this.runner = runner;
+        this.connectionManager = null;
+    }
+
+
+    /**
+     * Loads with one worker per session of the manager, each batch in a
+     * session checked out of it.
+     *
+     * @param connectionManager Hands out the sessions, and runs their
+     *                          transactions.
+     * @param addressesPerBatch The number of addresses per transaction.
+     */
+    public GraphBulkLoader(ConnectionManager connectionManager, int addressesPerBatch) {
+
+        if (addressesPerBatch < 1) {
+            throw new IllegalArgumentException("addressesPerBatch = " + addressesPerBatch);
+        }
+        this.workers = connectionManager.getSize();
+        this.addressesPerBatch = addressesPerBatch;
+        this.runner = connectionManager.getTransactionRunner();
+        this.connectionManager = connectionManager;
+    }
+
+
+    /**
+     * Generates the whole graph and writes it to the sink.
+     *
+     * @param generator The graph to load.
+     * @param sink      Where to write it.
+     * @return The counts and rates of the load.
+     * @throws Exception The first failure of any worker. The other workers
+     * stop after their current batch, and the load waits for them before it
+     * throws, so nothing is still writing to the sink afterwards.
+     */
+    public LoadReport load(GraphGenerator generator, GraphSink sink) throws Exception {
+
+        Run run = new Run(generator, sink);
+
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        long start = System.nanoTime();
+        Exception failure = null;
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int w = 0; w < workers; w++) {
+                futures.add(pool.submit(() -> {
+                    run.work();
+                    return null;
+                }));
+            }
+
+            // Waits for every worker, even after a failure or an interrupt;
+            // the first failure is thrown once they all stopped.
+            for (Future<?> future : futures) {
+                while (true) {
+                    try {
+                        future.get();
+                        break;
+                    } catch (InterruptedException ex) {
+                        run.failed = true;
+                        if (failure == null) {
+                            failure = ex;
+                        }
+                    } catch (ExecutionException ee) {
+                        run.failed = true;
+                        if (failure == null) {
+                            Throwable cause = ee.getCause();
+                            failure = (cause instanceof Exception) ? (Exception) cause : ee;
+                        }
+                        break;
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        if (failure instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+
+        LoadReport report = new LoadReport(run.addresses.sum(), run.persons.sum(), run.edges.sum(),
+                run.batches.sum(), run.retries.sum(), run.conflicts.sum(), System.nanoTime() - start);
+        logger.info("Loaded " + report);
+        return report;
+    }
+
+
+    public int getWorkers() {
+        return workers;
+    }
+
+
+    public int getAddressesPerBatch() {
+        return addressesPerBatch;
+    }
+
+
+    public TransactionRunner getRunner() {
+        return runner;
+    }
+
+
+
+    /**
+     * The state shared by the workers of one load.
+     */
+    private class Run {
+
+        private final GraphGenerator generator;
+        private final GraphSink sink;
+
+        private final AtomicLong nextAddress = new AtomicLong();
+        private volatile boolean failed;
+
+        private final LongAdder addresses = new LongAdder();
+        private final LongAdder persons = new LongAdder();
+        private final LongAdder edges = new LongAdder();
+        private final LongAdder batches = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private final LongAdder conflicts = new LongAdder();
+
+        private final long logEvery;
+
+
+        Run(GraphGenerator generator, GraphSink sink) {
+            this.generator = generator;
+            this.sink = sink;
+
+            long totalBatches = (generator.getAddressCount() + addressesPerBatch - 1) / addressesPerBatch;
+            this.logEvery = Math.max(1, totalBatches / 20);
+        }
+
+
+        void work() throws Exception {
+
+            long count = generator.getAddressCount();
+            List<GraphRecord> batch = new ArrayList<>();
+            TransactionRunner.Metrics metrics = new TransactionRunner.Metrics();
+
+            while (!failed) {
+                long from = nextAddress.getAndAdd(addressesPerBatch);
+                if (from >= count) {
+                    return;
+                }
+                long to = Math.min(count, from + addressesPerBatch);
+
+                batch.clear();
+                generator.spliterator(from, to).forEachRemaining(batch::add);
+
+                try {
+                    if (connectionManager == null) {
+                        runner.run(TransactionMode.READ_UPDATE, () -> sink.write(batch), metrics);
+                    } else {
+                        try (ConnectionManager.Session session = connectionManager.acquire()) {
+                            session.run(TransactionMode.READ_UPDATE, () -> sink.write(batch), metrics);
+                        }
+                    }
+                } catch (Exception ex) {
+                    failed = true;
+                    throw ex;
+                } finally {
+                    // The metrics are those of this batch only.
+                    if (metrics.getConflicts() > 0) {
+                        retries.increment();
+                    }
+                    conflicts.add(metrics.getConflicts());
+                }
+                tally(batch);
+            }
+        }
+
+
+        private void tally(List<GraphRecord> batch) {
+
+            long p = 0;
+            long e = 0;
+            long a = 0;
+            for (GraphRecord record : batch) {
+                switch (record.getKind()) {
+                    case ADDRESS:
+                        a++;
+                        break;
+                    case PERSON:
+                        p++;
+                        break;
+                    default:
+                        e++;
+                }
+            }
+            addresses.add(a);
+            persons.add(p);
+            edges.add(e);
+            batches.increment();
+
+            if (batches.sum() % logEvery == 0) {
+                logger.info("Batches written: " + batches.sum() + ", addresses: " + addresses.sum());
+            }
+        }
+    }
+
+}
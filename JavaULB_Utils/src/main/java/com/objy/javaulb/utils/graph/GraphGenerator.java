@@ -0,0 +1,227 @@
+package com.objy.javaulb.utils.graph;
+
+import com.objy.javaulb.utils.RandomStreams;
+import com.objy.javaulb.utils.addresses.AddressStore;
+import com.objy.javaulb.utils.names.Name;
+import com.objy.javaulb.utils.names.NameFactory;
+import java.util.SplittableRandom;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Generates the Person / Address / LivesAtEdge graph of schema05b.do as a
+ * lazy stream of {@link GraphRecord}s.
+ * <p>
+ * For each address index the generator emits the ADDRESS record, then for
+ * each occupant a PERSON record immediately followed by its LIVES_AT record.
+ * A sink therefore only ever needs to remember the current Address and the
+ * current Person to build the edges.
+ * <p>
+ * Nothing is held in memory beyond the shared name and address data: every
+ * record is derived from the base seed and its address index alone, through
+ * {@link RandomStreams#forIndex(long)}. The same seed gives the same graph,
+ * whether the stream is consumed sequentially, in parallel, or as separate
+ * ranges on separate machines.
+ *
+ * @author Daniel
+ */
+public class GraphGenerator {
+
+    private final NameFactory nameFactory;
+    private final AddressStore addressStore;
+    private final long addressCount;
+    private final DegreeDistribution occupants;
+    private final RandomStreams randomStreams;
+
+
+    /**
+     * @param nameFactory   The source of Person names.
+     * @param addressStore  The source of Address data.
+     * @param addressCount  The number of Address vertices to generate.
+     * @param occupants     The number of Persons living at each Address.
+     * @param randomStreams The seed of the graph.
+     */
+    public GraphGenerator(NameFactory nameFactory, AddressStore addressStore, long addressCount,
+            DegreeDistribution occupants, RandomStreams randomStreams) {
+
+        if (addressStore.size() == 0) {
+            throw new IllegalArgumentException("No address data to generate from.");
+        }
+        this.nameFactory = nameFactory;
+        this.addressStore = addressStore;
+        this.addressCount = addressCount;
+        this.occupants = occupants;
+        this.randomStreams = randomStreams;
+    }
+
+
+    /**
+     * @return The whole graph as a sequential stream. Call parallel() on it
+     * to spread the generation over the common fork-join pool.
+     */
+    public Stream<GraphRecord> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+
+    /**
+     * @return A spliterator over the whole graph.
+     */
+    public Spliterator<GraphRecord> spliterator() {
+        return spliterator(0L, addressCount);
+    }
+
+
+    /**
+     * Generates only the addresses with index in [fromAddress, toAddress),
+     * with their occupants. The records are identical to the ones the whole
+     * graph holds for that range.
+     */
+    public Spliterator<GraphRecord> spliterator(long fromAddress, long toAddress) {
+
+        if (fromAddress < 0 || toAddress > addressCount || fromAddress > toAddress) {
+            throw new IllegalArgumentException("Bad address range [" + fromAddress + ", " + toAddress
+                    + ") of " + addressCount);
+        }
+        return new AddressRangeSpliterator(fromAddress, toAddress);
+    }
+
+
+    /**
+     * @return The expected number of records in the whole graph.
+     */
+    public long estimateRecords() {
+        return estimateRecords(addressCount);
+    }
+
+
+    private long estimateRecords(long addresses) {
+        return (long) (addresses * (1.0 + 2.0 * occupants.mean()));
+    }
+
+
+    public long getAddressCount() {
+        return addressCount;
+    }
+
+
+    public AddressStore getAddressStore() {
+        return addressStore;
+    }
+
+
+    public DegreeDistribution getOccupants() {
+        return occupants;
+    }
+
+
+    public RandomStreams getRandomStreams() {
+        return randomStreams;
+    }
+
+
+
+    /**
+     * Walks a range of address indexes. Between addresses it holds no state
+     * other than the range; within one address it holds the address's random
+     * stream and the occupant being generated.
+     */
+    private class AddressRangeSpliterator implements Spliterator<GraphRecord> {
+
+        private long next;
+        private final long end;
+
+        // State of the address at index 'next', once its record is out.
+        private boolean inAddress;
+        private SplittableRandom random;
+        private int occupantCount;
+        private int occupant;
+        private long personId = -1L;
+
+
+        AddressRangeSpliterator(long from, long end) {
+            this.next = from;
+            this.end = end;
+        }
+
+
+        @Override
+        public boolean tryAdvance(Consumer<? super GraphRecord> action) {
+
+            while (true) {
+                if (!inAddress) {
+                    if (next >= end) {
+                        return false;
+                    }
+                    // Draw order: occupant count, address row, then one name
+                    // per occupant. Changing it changes every generated graph.
+                    random = randomStreams.forIndex(next);
+                    occupantCount = occupants.sample(random);
+                    if (occupantCount >= GraphRecord.MAX_OCCUPANTS) {
+                        throw new IllegalStateException("Too many occupants for address "
+                                + next + ": " + occupantCount);
+                    }
+                    int row = random.nextInt(addressStore.size());
+                    occupant = 0;
+                    inAddress = true;
+                    action.accept(GraphRecord.address(next, addressStore, row));
+                    return true;
+                }
+
+                if (personId >= 0) {
+                    // The edge for the person just emitted.
+                    long id = personId;
+                    personId = -1L;
+                    occupant++;
+                    action.accept(GraphRecord.livesAt(next, id));
+                    return true;
+                }
+
+                if (occupant < occupantCount) {
+                    personId = next * GraphRecord.MAX_OCCUPANTS + occupant;
+                    Name name = nameFactory.fillName(new Name(), random);
+                    action.accept(GraphRecord.person(next, personId, name));
+                    return true;
+                }
+
+                // Done with this address.
+                inAddress = false;
+                random = null;
+                next++;
+            }
+        }
+
+
+        /**
+         * Hands off the first half of the remaining addresses. Only splits on
+         * an address boundary, so an address and its occupants always stay in
+         * one spliterator.
+         */
+        @Override
+        public Spliterator<GraphRecord> trySplit() {
+
+            if (inAddress || end - next < 2) {
+                return null;
+            }
+            long mid = next + (end - next) / 2;
+            Spliterator<GraphRecord> prefix = new AddressRangeSpliterator(next, mid);
+            next = mid;
+            return prefix;
+        }
+
+
+        @Override
+        public long estimateSize() {
+            return estimateRecords(end - next);
+        }
+
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL | IMMUTABLE;
+        }
+    }
+
+}
@@ -0,0 +1,148 @@
+package com.objy.javaulb.utils.graph;
+
+import com.objy.javaulb.utils.addresses.Address;
+import com.objy.javaulb.utils.addresses.AddressStore;
+import com.objy.javaulb.utils.addresses.AddressView;
+import com.objy.javaulb.utils.names.Name;
+
+/**
+ * One record emitted by a {@link GraphGenerator}: an Address vertex, a
+ * Person vertex, or a LivesAtEdge between them, as declared in
+ * schema05b.do.
+ * <p>
+ * Vertices are identified by generator ids, not ObjectIds, so that a sink
+ * can map them to whatever its store assigns. Address ids are the address
+ * index, 0 to addressCount - 1. A Person id is
+ * <code>addressId * MAX_OCCUPANTS + occupant</code>, so it is unique and
+ * also tells which address the person was generated for.
+ *
+ * @author Daniel
+ */
+public class GraphRecord {
+
+    /** The most Persons that can be generated for one Address. */
+    public static final int MAX_OCCUPANTS = 1 << 16;
+
+    public enum Kind {
+        ADDRESS,
+        PERSON,
+        LIVES_AT
+    }
+
+    private final Kind kind;
+    private final long addressId;
+    private final long personId;
+
+    // Set on ADDRESS records only.
+    private final AddressStore addressStore;
+    private final int addressRow;
+
+    // Set on PERSON records only.
+    private final Name name;
+
+
+    private GraphRecord(Kind kind, long addressId, long personId,
+            AddressStore addressStore, int addressRow, Name name) {
+        this.kind = kind;
+        this.addressId = addressId;
+        this.personId = personId;
+        this.addressStore = addressStore;
+        this.addressRow = addressRow;
+        this.name = name;
+    }
+
+
+    static GraphRecord address(long addressId, AddressStore addressStore, int addressRow) {
+        return new GraphRecord(Kind.ADDRESS, addressId, -1L, addressStore, addressRow, null);
+    }
+
+    static GraphRecord person(long addressId, long personId, Name name) {
+        return new GraphRecord(Kind.PERSON, addressId, personId, null, -1, name);
+    }
+
+    static GraphRecord livesAt(long addressId, long personId) {
+        return new GraphRecord(Kind.LIVES_AT, addressId, personId, null, -1, null);
+    }
+
+
+    public Kind getKind() {
+        return kind;
+    }
+
+
+    /**
+     * @return For an ADDRESS, its id; for a PERSON, the id of the Address
+     * generated with it; for a LIVES_AT, the ToAddress end.
+     */
+    public long getAddressId() {
+        return addressId;
+    }
+
+
+    /**
+     * @return For a PERSON, its id; for a LIVES_AT, the ToPerson end; -1 for
+     * an ADDRESS.
+     */
+    public long getPersonId() {
+        return personId;
+    }
+
+
+    /**
+     * @return The name of a PERSON record, or null.
+     */
+    public Name getName() {
+        return name;
+    }
+
+
+    /**
+     * @return The row of the address data behind an ADDRESS record, or -1.
+     */
+    public int getAddressRow() {
+        return addressRow;
+    }
+
+
+    /**
+     * Positions a caller-owned view on the address data of an ADDRESS
+     * record, without allocating.
+     *
+     * @param view  A view of the generator's AddressStore.
+     * @return The view.
+     */
+    public AddressView moveView(AddressView view) {
+        checkKind(Kind.ADDRESS);
+        return view.moveTo(addressRow);
+    }
+
+
+    /**
+     * @return A new Address holding the data of an ADDRESS record.
+     */
+    public Address toAddress() {
+        checkKind(Kind.ADDRESS);
+        return addressStore.toAddress(addressRow);
+    }
+
+
+    private void checkKind(Kind expected) {
+        if (kind != expected) {
+            throw new IllegalStateException("Not an " + expected + " record: " + this);
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        switch (kind) {
+            case ADDRESS:
+                return "Address[" + addressId + ", row " + addressRow + "]";
+            case PERSON:
+                return "Person[" + personId + ", " + name.getFirstName() + " " + name.getLastName() + "]";
+            default:
+                return "LivesAtEdge[" + personId + " -> " + addressId + "]";
+        }
+    }
+
+}
@@ -0,0 +1,27 @@
+package com.objy.javaulb.utils.graph;
+
+import java.util.List;
+
+/**
+ * Where a {@link GraphBulkLoader} puts the generated records: a federation,
+ * a file, or an in-memory stand-in such as {@link InMemoryGraphSink}.
+ *
+ * @author Daniel
+ */
+public interface GraphSink {
+
+    /**
+     * Writes one batch, inside the transaction the loader opened for it. A
+     * batch holds whole addresses: every LIVES_AT record follows the PERSON
+     * it starts from, and both follow the ADDRESS they end at.
+     * <p>
+     * Called concurrently by the loader's workers, and called again with the
+     * same batch after a lock conflict, so an implementation must not keep
+     * anything from a batch that did not commit.
+     *
+     * @param batch     The records, in generation order.
+     * @throws Exception If the batch could not be written.
+     */
+    void write(List<GraphRecord> batch) throws Exception;
+
+}
@@ -0,0 +1,136 @@
+package com.objy.javaulb.utils.graph;
+
+import com.objy.javaulb.utils.TransactionRunner;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A stand-in for the federation, for running and timing a
+ * {@link GraphBulkLoader} where no federation is available. It checks that
+ * every batch is self-contained, as the federation sink relies on, and
+ * counts what it was given; it keeps none of the records.
+ *
+ * @author Daniel
+ */
+public class InMemoryGraphSink implements GraphSink {
+
+    private final long commitNanos;
+
+    private final LongAdder addresses = new LongAdder();
+    private final LongAdder persons = new LongAdder();
+    private final LongAdder edges = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder checksum = new LongAdder();
+
+
+    public InMemoryGraphSink() {
+        this(0L);
+    }
+
+
+    /**
+     * @param commitNanos   A pause per batch, to stand in for the cost of a
+     *                      commit.
+     */
+    public InMemoryGraphSink(long commitNanos) {
+        this.commitNanos = commitNanos;
+    }
+
+
+    /**
+     * @return A runner whose transactions do nothing, to pair with this sink
+     * in a GraphBulkLoader.
+     */
+    public static TransactionRunner runner() {
+        return new TransactionRunner(TransactionRunner.DEFAULT_BASE_DELAY_MILLIS,
+                TransactionRunner.DEFAULT_MAX_DELAY_MILLIS, TransactionRunner.DEFAULT_MAX_RETRIES,
+                TransactionRunner.DEFAULT_MAX_WAIT_MILLIS,
+                mode -> new TransactionRunner.Scope() {
+                    public void complete() {
+                    }
+
+                    public void close() {
+                    }
+                },
+                ex -> false);
+    }
+
+
+    @Override
+    public void write(List<GraphRecord> batch) throws Exception {
+
+        long a = 0;
+        long p = 0;
+        long e = 0;
+        long sum = 0;
+
+        long currentAddress = -1L;
+        long currentPerson = -1L;
+
+        for (GraphRecord record : batch) {
+            switch (record.getKind()) {
+                case ADDRESS:
+                    currentAddress = record.getAddressId();
+                    currentPerson = -1L;
+                    a++;
+                    sum += record.getAddressRow();
+                    break;
+                case PERSON:
+                    check(record.getAddressId() == currentAddress, record);
+                    currentPerson = record.getPersonId();
+                    p++;
+                    sum += record.getName().last.hashCode();
+                    break;
+                default:
+                    check(record.getAddressId() == currentAddress
+                            && record.getPersonId() == currentPerson, record);
+                    currentPerson = -1L;
+                    e++;
+            }
+        }
+
+        if (commitNanos > 0) {
+            LockSupport.parkNanos(commitNanos);
+        }
+
+        addresses.add(a);
+        persons.add(p);
+        edges.add(e);
+        batches.increment();
+        checksum.add(sum);
+    }
+
+
+    private static void check(boolean ok, GraphRecord record) {
+        if (!ok) {
+            throw new IllegalStateException("Out-of-order record in batch: " + record);
+        }
+    }
+
+
+    public long getAddresses() {
+        return addresses.sum();
+    }
+
+    public long getPersons() {
+        return persons.sum();
+    }
+
+    public long getEdges() {
+        return edges.sum();
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    /**
+     * @return An order-independent digest of the records written, for
+     * checking that two loads of the same seed wrote the same graph.
+     */
+    public long getChecksum() {
+        return checksum.sum();
+    }
+
+}
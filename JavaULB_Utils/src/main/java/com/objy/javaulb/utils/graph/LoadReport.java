@@ -0,0 +1,93 @@
+package com.objy.javaulb.utils.graph;
+
+/**
+ * The outcome of a {@link GraphBulkLoader} run.
+ *
+ * @author Daniel
+ */
+public class LoadReport {
+
+    private final long addresses;
+    private final long persons;
+    private final long edges;
+    private final long batches;
+    private final long retries;
+    private final long conflicts;
+    private final long elapsedNanos;
+
+
+    public LoadReport(long addresses, long persons, long edges, long batches, long retries, long conflicts,
+            long elapsedNanos) {
+        this.addresses = addresses;
+        this.persons = persons;
+        this.edges = edges;
+        this.batches = batches;
+        this.retries = retries;
+        this.conflicts = conflicts;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+
+    public long getAddresses() {
+        return addresses;
+    }
+
+    public long getPersons() {
+        return persons;
+    }
+
+    public long getVertices() {
+        return addresses + persons;
+    }
+
+    public long getEdges() {
+        return edges;
+    }
+
+    public long getBatches() {
+        return batches;
+    }
+
+    /**
+     * @return The number of batches that were written again after a lock
+     * conflict.
+     */
+    public long getRetries() {
+        return retries;
+    }
+
+    /**
+     * @return The lock conflicts over all batches; a batch may conflict
+     * more than once.
+     */
+    public long getConflicts() {
+        return conflicts;
+    }
+
+    public double getElapsedSeconds() {
+        return elapsedNanos / 1e9;
+    }
+
+    public double getVerticesPerSecond() {
+        return perSecond(getVertices());
+    }
+
+    public double getEdgesPerSecond() {
+        return perSecond(edges);
+    }
+
+
+    private double perSecond(long n) {
+        return (elapsedNanos == 0) ? 0.0 : n * 1e9 / elapsedNanos;
+    }
+
+
+    @Override
+    public String toString() {
+        return String.format("%d vertices (%d addresses, %d persons), %d edges in %.3f s: "
+                + "%.0f vertices/s, %.0f edges/s, %d batches (%d retried, %d conflicts)",
+                getVertices(), addresses, persons, edges, getElapsedSeconds(),
+                getVerticesPerSecond(), getEdgesPerSecond(), batches, retries, conflicts);
+    }
+
+}
@@ -0,0 +1,216 @@
+package com.objy.javaulb.utils.graph;
+
+import com.objy.data.Instance;
+import com.objy.data.Reference;
+import com.objy.data.Variable;
+import com.objy.javaulb.utils.AttributeAccessor;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Adds, finds and removes the entries of a to-many reference list
+ * attribute, such as Person.Knows, through an {@link AdjacencyIndex} per
+ * vertex, instead of scanning the list for each removal:
+ * <pre>
+ *   ReferenceListIndex knows = new ReferenceListIndex("Person", "Knows");
+ *   ...
+ *   knows.remove(iPersonFrom, iPersonTo);
+ * </pre>
+ * The index of a vertex is built by one scan of its list the first time
+ * the vertex is edited, and kept up to date by the edits made through this
+ * object, so later edits of that vertex take a lookup each. Removal moves
+ * the last entry into the removed one's place, so the order of the list is
+ * not kept.
+ * <p>
+ * Before it is used, an index is checked against the list: its size, and
+ * the entry it points at. An index that does not match, e.g. because the
+ * list was changed by other code, is built again. A change the checks
+ * cannot see, such as another process replacing one entry with another,
+ * needs {@link #invalidate(Instance)} or {@link #clear()}.
+ * <p>
+ * At most <code>capacity</code> vertices are indexed; the least recently
+ * edited is dropped. Use it inside a transaction. Its methods are
+ * synchronized.
+ *
+ * @author Daniel
+ */
+public class ReferenceListIndex {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final AttributeAccessor attribute;
+    private final int capacity;
+
+    private final LinkedHashMap<Long, AdjacencyIndex> indexes;
+
+    private long builds;
+
+
+    public ReferenceListIndex(String className, String attributeName) {
+        this(AttributeAccessor.of(className, attributeName), DEFAULT_CAPACITY);
+    }
+
+
+    /**
+     * @param attribute The to-many reference list attribute.
+     * @param capacity  The most vertices indexed.
+     */
+    public ReferenceListIndex(AttributeAccessor attribute, int capacity) {
+
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity = " + capacity);
+        }
+        this.attribute = attribute;
+        this.capacity = capacity;
+        this.indexes = new LinkedHashMap<Long, AdjacencyIndex>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, AdjacencyIndex> eldest) {
+                return size() > ReferenceListIndex.this.capacity;
+            }
+        };
+    }
+
+
+    /**
+     * @return Whether the list of the vertex refers to the target.
+     */
+    public synchronized boolean contains(Instance vertex, Instance target) {
+
+        com.objy.data.List list = attribute.get(vertex).listValue();
+        long oid = target.getIdentifier().asLong();
+        return checkedIndexOf(vertex, list, oid).contains(oid);
+    }
+
+
+    /**
+     * Appends a reference to the target to the list of the vertex.
+     */
+    public synchronized void add(Instance vertex, Instance target) {
+
+        com.objy.data.List list = attribute.get(vertex).listValue();
+        AdjacencyIndex index = indexOf(vertex, list);
+
+        list.add(new Variable(new Reference(target)));
+        if (!index.add(target.getIdentifier().asLong())) {
+            // The list now holds the target twice; build it again on next use.
+            indexes.remove(vertex.getIdentifier().asLong());
+        }
+    }
+
+
+    /**
+     * Removes the reference to the target from the list of the vertex.
+     *
+     * @return false if the list did not refer to the target.
+     */
+    public synchronized boolean remove(Instance vertex, Instance target) {
+
+        com.objy.data.List list = attribute.get(vertex).listValue();
+        long oid = target.getIdentifier().asLong();
+
+        AdjacencyIndex index = checkedIndexOf(vertex, list, oid);
+        int position = index.positionOf(oid);
+        if (position < 0) {
+            return false;
+        }
+
+        int last = (int) list.size() - 1;
+        if (position == last) {
+            list.remove(last);
+            index.remove(oid, position, oid);
+            return true;
+        }
+
+        // Take the Reference out of the last slot before dropping it: the
+        // Variable read from the list may not outlive its slot. Then put it,
+        // in a new Variable, in place of the removed one; the inverse
+        // references are right after each step.
+        Reference rLast = list.get(last).referenceValue();
+        long lastOid = rLast.getIdentifier().asLong();
+        try {
+            list.remove(last);
+            list.set(position, new Variable(rLast));
+        } catch (RuntimeException ex) {
+            // The list may be half changed; build the index again on next use.
+            indexes.remove(vertex.getIdentifier().asLong());
+            throw ex;
+        }
+
+        // Only now that the list holds lastOid at position.
+        index.remove(oid, position, lastOid);
+        return true;
+    }
+
+
+    /**
+     * Drops the index of the vertex.
+     */
+    public synchronized void invalidate(Instance vertex) {
+        indexes.remove(vertex.getIdentifier().asLong());
+    }
+
+
+    /**
+     * Drops every index.
+     */
+    public synchronized void clear() {
+        indexes.clear();
+    }
+
+
+    /**
+     * @return How many times an index was built by scanning a list.
+     */
+    public synchronized long getBuilds() {
+        return builds;
+    }
+
+
+    // The index of the vertex, with the entry for oid, if any, checked
+    // against the list.
+    private AdjacencyIndex checkedIndexOf(Instance vertex, com.objy.data.List list, long oid) {
+
+        AdjacencyIndex index = indexOf(vertex, list);
+        int position = index.positionOf(oid);
+        if (position >= 0 && !refersTo(list, position, oid)) {
+            index = build(vertex, list);
+        }
+        return index;
+    }
+
+
+    // The index of the vertex, built if there is none or it does not match
+    // the size of the list.
+    private AdjacencyIndex indexOf(Instance vertex, com.objy.data.List list) {
+
+        AdjacencyIndex index = indexes.get(vertex.getIdentifier().asLong());
+        if (index == null || index.size() != list.size()) {
+            index = build(vertex, list);
+        }
+        return index;
+    }
+
+
+    private AdjacencyIndex build(Instance vertex, com.objy.data.List list) {
+
+        builds++;
+        int size = (int) list.size();
+        AdjacencyIndex index = new AdjacencyIndex(size);
+        for (int i = 0; i < size; i++) {
+            index.add(list.get(i).referenceValue().getIdentifier().asLong());
+        }
+        // A list holding duplicates cannot be indexed by position; leave it
+        // unindexed, so it is checked, and built, again on each use.
+        if (!index.hasDuplicates()) {
+            indexes.put(vertex.getIdentifier().asLong(), index);
+        }
+        return index;
+    }
+
+
+    private static boolean refersTo(com.objy.data.List list, int position, long oid) {
+        return position < list.size()
+                && list.get(position).referenceValue().getIdentifier().asLong() == oid;
+    }
+
+}
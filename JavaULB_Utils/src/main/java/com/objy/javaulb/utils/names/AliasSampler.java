@@ -0,0 +1,158 @@
+package com.objy.javaulb.utils.names;
+
+/**
+ * Draws indexes in proportion to a set of weights using Vose's alias method.
+ * Building the table is O(n); each draw is O(1) and does not allocate.
+ *
+ * The sampler does not own a random source. Callers pass in a uniform value
+ * in [0, 1) so the same table can be shared by any number of generators.
+ *
+ * @author Daniel
+ */
+public class AliasSampler {
+
+    private final double[] probability;
+    private final int[] alias;
+    private final int size;
+
+
+    /**
+     * Creates a sampler from a cumulative distribution, such as the
+     * cumulative-frequency column of the Census name files. Entries whose
+     * frequency rounds to zero share whatever mass the cumulative column
+     * leaves unaccounted for below <code>total</code>, so that the long tail
+     * of rare names is still reachable.
+     *
+     * @param cumulative    The cumulative frequencies, in file order.
+     * @param count         The number of valid entries in <code>cumulative</code>.
+     * @param total         The total mass of the distribution (100 for percentages).
+     * @return The sampler.
+     */
+    public static AliasSampler fromCumulative(double[] cumulative, int count, double total) {
+
+        double[] weights = new double[count];
+        int zeroCount = 0;
+        double previous = 0.0;
+        for (int i = 0; i < count; i++) {
+            double w = cumulative[i] - previous;
+            previous = cumulative[i];
+            if (w <= 0.0) {
+                zeroCount++;
+                w = 0.0;
+            }
+            weights[i] = w;
+        }
+
+        if (zeroCount > 0) {
+            double residual = (total - previous) / zeroCount;
+            if (residual <= 0.0) {
+                // Smallest non-zero value in the files is 0.001; stay below it.
+                residual = 0.0005;
+            }
+            for (int i = 0; i < count; i++) {
+                if (weights[i] == 0.0) {
+                    weights[i] = residual;
+                }
+            }
+        }
+
+        return new AliasSampler(weights);
+    }
+
+
+    /**
+     * Creates a sampler from a set of non-negative weights. The weights need
+     * not sum to one.
+     *
+     * @param weights   The relative weight of each index.
+     */
+    public AliasSampler(double[] weights) {
+
+        size = weights.length;
+        if (size == 0) {
+            throw new IllegalArgumentException("AliasSampler requires at least one weight.");
+        }
+
+        probability = new double[size];
+        alias = new int[size];
+
+        double sum = 0.0;
+        for (double w : weights) {
+            if (w < 0.0 || Double.isNaN(w)) {
+                throw new IllegalArgumentException("Weights must be non-negative: " + w);
+            }
+            sum += w;
+        }
+        if (sum <= 0.0) {
+            throw new IllegalArgumentException("Weights must not all be zero.");
+        }
+
+        // Scale so that the average weight is 1.0, then split the indexes
+        // into those below and those at or above the average. The two work
+        // stacks share one int[] growing from opposite ends.
+        double[] scaled = new double[size];
+        int[] work = new int[size];
+        int small = 0;
+        int large = size;
+        for (int i = 0; i < size; i++) {
+            scaled[i] = weights[i] * size / sum;
+            if (scaled[i] < 1.0) {
+                work[small++] = i;
+            } else {
+                work[--large] = i;
+            }
+        }
+
+        while (small > 0 && large < size) {
+            int s = work[--small];
+            int l = work[large++];
+
+            probability[s] = scaled[s];
+            alias[s] = l;
+
+            scaled[l] = (scaled[l] + scaled[s]) - 1.0;
+            if (scaled[l] < 1.0) {
+                work[small++] = l;
+            } else {
+                work[--large] = l;
+            }
+        }
+
+        // Whatever is left is 1.0 within rounding error.
+        while (large < size) {
+            int l = work[large++];
+            probability[l] = 1.0;
+            alias[l] = l;
+        }
+        while (small > 0) {
+            int s = work[--small];
+            probability[s] = 1.0;
+            alias[s] = s;
+        }
+    }
+
+
+    /**
+     * Maps a single uniform value onto an index. The integer part of
+     * <code>u * size</code> selects the column and the fractional part decides
+     * between the column and its alias.
+     *
+     * @param u     A uniform value in [0, 1).
+     * @return An index in [0, size).
+     */
+    public int sample(double u) {
+
+        double scaled = u * size;
+        int column = (int) scaled;
+        if (column >= size) {
+            column = size - 1;
+        }
+        return (scaled - column) < probability[column] ? column : alias[column];
+    }
+
+
+    public int size() {
+        return size;
+    }
+
+}
@@ -13,6 +13,14 @@ public class Name {
     public String last;
     
     
+    /**
+     * Creates an empty Name, to be filled and refilled by
+     * {@link NameFactory#fillName(Name)}.
+     */
+    public Name() {
+    }
+    
+    
     public Name(String gender, String fn, String mn, String ln) {
         this.gender = gender;
         this.first = fn;
@@ -20,6 +28,20 @@ public class Name {
         this.last = ln;
     }
 
+
+    /**
+     * Copies another Name into this one.
+     *
+     * @return This Name.
+     */
+    public Name copyFrom(Name other) {
+        setGender(other.getGender());
+        setFirstName(other.getFirstName());
+        setMiddleName(other.getMiddleName());
+        setLastName(other.getLastName());
+        return this;
+    }
+
     public String getGender() {
         return gender;
     }
@@ -0,0 +1,261 @@
+package com.objy.javaulb.utils.names;
+
+import com.objy.javaulb.utils.GendataSnapshot;
+import com.objy.javaulb.utils.MappedTextFile;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An immutable list of names read from one Census name distribution file.
+ *
+ * All of the names are kept as UTF-8 in a single ByteBuffer, with an int[]
+ * of start offsets, rather than as one String per line. A String is only
+ * created the first time a given name is asked for, and is then remembered.
+ * The buffer is a heap buffer by default, or a direct (off-heap) buffer when
+ * requested.
+ *
+ * Dictionaries are loaded once per JVM and per file; every NameFactory in the
+ * process shares the same instance through {@link #load(File, boolean)}.
+ *
+ * @author Daniel
+ */
+public class NameDictionary {
+
+    private static Logger logger = LoggerFactory.getLogger(NameDictionary.class);
+
+    // Keyed by canonical file path.
+    private static final ConcurrentHashMap<String, NameDictionary> loaded = new ConcurrentHashMap<>();
+
+    private final String sourceName;
+
+    private final ByteBuffer bytes;
+
+    // offsets[i] is the start of name i; offsets[size] is the end of the last.
+    private final int[] offsets;
+
+    private final double[] cumulative;
+
+    private final int size;
+
+    // Lazily materialized names. Racing threads may both build the same
+    // String, which is harmless since Strings are immutable.
+    private final String[] names;
+
+    private volatile AliasSampler sampler;
+
+
+    NameDictionary(String sourceName, ByteBuffer bytes, int[] offsets, double[] cumulative, int size) {
+        this.sourceName = sourceName;
+        this.bytes = bytes;
+        this.offsets = offsets;
+        this.cumulative = cumulative;
+        this.size = size;
+        this.names = new String[size];
+    }
+
+
+    /**
+     * Returns the shared dictionary for a name file, reading the file the
+     * first time it is asked for. The storage choice of the first caller
+     * wins for the lifetime of the JVM.
+     *
+     * @param file      The Census name distribution file.
+     * @param direct    True to keep the name bytes in a direct ByteBuffer.
+     * @return The dictionary.
+     * @throws IOException If the file cannot be read.
+     */
+    public static NameDictionary load(File file, boolean direct) throws IOException {
+
+        String key = file.getCanonicalPath();
+        try {
+            return loaded.computeIfAbsent(key, k -> {
+                try {
+                    return read(file, direct);
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            });
+        } catch (UncheckedIOException uioe) {
+            throw uioe.getCause();
+        }
+    }
+
+
+    /**
+     * Reads a name file without consulting the shared dictionaries. The
+     * pre-compiled snapshot is used when it is present and up to date;
+     * otherwise the text is parsed.
+     *
+     * @param file      The Census name distribution file.
+     * @param direct    True to keep the name bytes in a direct ByteBuffer
+     *                  when parsing text. Snapshot bytes always stay in the
+     *                  memory mapping.
+     * @return A new, unshared dictionary.
+     * @throws IOException If the file cannot be read.
+     */
+    public static NameDictionary read(File file, boolean direct) throws IOException {
+
+        GendataSnapshot snapshot = GendataSnapshot.open(file);
+        if (snapshot != null && snapshot.stringColumns() == 1 && snapshot.doubleColumns() == 1) {
+            return new NameDictionary(file.getName(), snapshot.strings(),
+                    snapshot.offsets(0), snapshot.doubles(0), snapshot.rows());
+        }
+
+        return readText(file, direct);
+    }
+
+
+    /**
+     * Parses a Census name distribution file. Each line holds the name, its frequency, the cumulative
+     * frequency and its rank, separated by spaces. The file is memory mapped
+     * and the name bytes are copied straight from the mapping into the
+     * dictionary, so no per-line Strings are created.
+     *
+     * @param file      The Census name distribution file.
+     * @param direct    True to keep the name bytes in a direct ByteBuffer.
+     * @return A new, unshared dictionary.
+     * @throws IOException If the file cannot be read.
+     */
+    public static NameDictionary readText(File file, boolean direct) throws IOException {
+
+        MappedTextFile text = MappedTextFile.open(file);
+
+        // The names are a subset of the file, so the file size is an upper bound.
+        byte[] blob = new byte[text.size()];
+        int blobSize = 0;
+
+        int[] offsets = new int[1024];
+        double[] cumulative = new double[1024];
+
+        int count = 0;
+        while (text.nextLine()) {
+            int end = text.lineEnd();
+
+            int nameStart = text.skipSpaces(text.lineStart(), end);
+            if (nameStart == end) {
+                continue;
+            }
+            int nameEnd = text.tokenEnd(nameStart, end);
+
+            if (count + 1 >= offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                cumulative = Arrays.copyOf(cumulative, cumulative.length * 2);
+            }
+
+            offsets[count] = blobSize;
+            text.copy(nameStart, nameEnd, blob, blobSize);
+            blobSize += nameEnd - nameStart;
+
+            // Skip the frequency column; the cumulative column follows it.
+            int pos = text.tokenEnd(text.skipSpaces(nameEnd, end), end);
+            int cumStart = text.skipSpaces(pos, end);
+            int cumEnd = text.tokenEnd(cumStart, end);
+            cumulative[count] = (cumStart < cumEnd) ? text.parseDouble(cumStart, cumEnd) : 0.0;
+            count++;
+        }
+        offsets[count] = blobSize;
+
+        ByteBuffer buffer;
+        if (direct) {
+            buffer = ByteBuffer.allocateDirect(blobSize);
+            buffer.put(blob, 0, blobSize);
+            buffer.flip();
+        } else {
+            buffer = ByteBuffer.wrap(Arrays.copyOf(blob, blobSize));
+        }
+
+        logger.info(file.getName() + " Loaded: " + count + " names, " + blobSize + " bytes"
+                + (direct ? " (direct)" : ""));
+
+        return new NameDictionary(file.getName(), buffer.asReadOnlyBuffer(),
+                Arrays.copyOf(offsets, count + 1), Arrays.copyOf(cumulative, count), count);
+    }
+
+
+    /**
+     * @param index     A value in [0, size).
+     * @return The name at <code>index</code>.
+     */
+    public String get(int index) {
+
+        String name = names[index];
+        if (name == null) {
+            name = decode(index);
+            names[index] = name;
+        }
+        return name;
+    }
+
+
+    private String decode(int index) {
+
+        int start = offsets[index];
+        int length = offsets[index + 1] - start;
+
+        byte[] utf8 = new byte[length];
+        // Absolute bulk get on a duplicate keeps the shared buffer's position untouched.
+        ByteBuffer view = bytes.duplicate();
+        view.position(start);
+        view.get(utf8, 0, length);
+
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * @return The alias table for frequency-weighted draws, built on first use.
+     */
+    public AliasSampler getSampler() {
+
+        AliasSampler s = sampler;
+        if (s == null) {
+            synchronized (this) {
+                s = sampler;
+                if (s == null) {
+                    s = AliasSampler.fromCumulative(cumulative, size, 100.0);
+                    sampler = s;
+                }
+            }
+        }
+        return s;
+    }
+
+
+    /**
+     * Writes this dictionary as the pre-compiled snapshot of its source file.
+     *
+     * @param source    The file this dictionary was read from.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    public void writeSnapshot(File source) throws IOException {
+        GendataSnapshot.write(source, size, new int[][] {offsets}, new double[][] {cumulative}, bytes);
+    }
+
+
+    public double getCumulative(int index) {
+        return cumulative[index];
+    }
+
+
+    public int size() {
+        return size;
+    }
+
+
+    public int byteSize() {
+        return offsets[size];
+    }
+
+
+    public String getSourceName() {
+        return sourceName;
+    }
+
+}
@@ -5,15 +5,14 @@
  */
 package com.objy.javaulb.utils.names;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.Locale;
 import java.util.Properties;
-import java.util.Random;
+import java.util.SplittableRandom;
+import com.objy.javaulb.utils.RandomStreams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,16 +28,27 @@ public class NameFactory {
     private final String maleNameFilename;
     private final String lastNameFilename;
     
-    private ArrayList<String> femaleNamesList = new ArrayList<>();
-    private int femaleListSize;
+    // The dictionaries are shared by every NameFactory in the JVM.
+    private final NameDictionary femaleNames;
+    private final int femaleListSize;
     
-    private ArrayList<String> maleNamesList = new ArrayList<>();
-    private int maleListSize;
+    private final NameDictionary maleNames;
+    private final int maleListSize;
     
-    private ArrayList<String> lastNamesList = new ArrayList<>();
-    private int lastListSize;
+    private final NameDictionary lastNames;
+    private final int lastListSize;
     
-    private Random random = new Random();
+    // The alias tables used when weighted sampling is selected; null for
+    // uniform sampling.
+    private AliasSampler femaleSampler;
+    private AliasSampler maleSampler;
+    private AliasSampler lastSampler;
+    
+    private final SamplingMode samplingMode;
+    
+    // Per-thread random streams; the factory itself holds no mutable state
+    // once loaded, so any number of threads may generate names at once.
+    private RandomStreams randomStreams;
     private Properties properties;
     
     
@@ -99,57 +109,125 @@ public class NameFactory {
             logger.info("Found: " + lastNameFile.getAbsolutePath());
         }
         
-        loadNamesFromFile(femaleNameFile, femaleNamesList);
-        femaleListSize = femaleNamesList.size();
+        randomStreams = RandomStreams.fromProperties(properties);
+        logger.info("Name random seed: " + randomStreams.getSeed());
         
-        loadNamesFromFile(maleNameFile, maleNamesList);
-        maleListSize = maleNamesList.size();
+        samplingMode = SamplingMode.fromProperty(properties.getProperty("data.names.sampling"));
+        logger.info("Name sampling mode: " + samplingMode);
         
-        loadNamesFromFile(lastNameFile, lastNamesList);
-        lastListSize = lastNamesList.size();
+        boolean direct = Boolean.parseBoolean(properties.getProperty("data.names.offheap", "false").trim());
         
+        femaleNames = NameDictionary.load(femaleNameFile, direct);
+        femaleListSize = femaleNames.size();
         
-    }
-    
-    
-    private void loadNamesFromFile(File file, ArrayList<String> namesList) throws FileNotFoundException, IOException {
+        maleNames = NameDictionary.load(maleNameFile, direct);
+        maleListSize = maleNames.size();
         
-        BufferedReader reader = new BufferedReader(new FileReader(file));
+        lastNames = NameDictionary.load(lastNameFile, direct);
+        lastListSize = lastNames.size();
         
-        String line;
-        int count = 0;
-        while ((line = reader.readLine()) != null) {
-            String name = line.substring(0, line.indexOf(" "));
-            namesList.add(name);
-            count++;
+        if (samplingMode == SamplingMode.WEIGHTED) {
+            femaleSampler = femaleNames.getSampler();
+            maleSampler   = maleNames.getSampler();
+            lastSampler   = lastNames.getSampler();
         }
-        logger.info(file.getName() + " Loaded: " + count);
-        reader.close();
+        
+    }
+    
+    
+    public SamplingMode getSamplingMode() {
+        return samplingMode;
     }
     
     
     
+    public RandomStreams getRandomStreams() {
+        return randomStreams;
+    }
+    
+    
+    /**
+     * Creates a Name using the calling thread's random stream. Safe to call
+     * from any number of threads concurrently.
+     */
     public Name createName() {
-        
-        String gender;
-        String lastName;
-        String firstName;
-        String middleName;
-        
+        return createName(randomStreams.current());
+    }
+    
+    
+    /**
+     * Creates a Name using the caller's random stream. Parallel loaders that
+     * need a reproducible dataset pass in the stream from
+     * {@link RandomStreams#forWorker(int)} for their worker index.
+     *
+     * @param random    A stream confined to the calling thread.
+     * @return The new Name.
+     */
+    public Name createName(SplittableRandom random) {
+        
+        return fillName(new Name(), random);
+    }
+    
+    
+    /**
+     * Overwrites a Name in place, so bulk loaders can reuse one holder per
+     * thread. The Strings are shared with the name dictionaries, so once the
+     * common names have been seen this allocates nothing.
+     *
+     * @param name  The holder to overwrite.
+     * @return <code>name</code>.
+     */
+    public Name fillName(Name name) {
+        return fillName(name, randomStreams.current());
+    }
+    
+    
+    /**
+     * As {@link #fillName(Name)}, drawing from the caller's random stream.
+     */
+    public Name fillName(Name name, SplittableRandom random) {
         
         if (random.nextDouble() < 0.5) {
-            gender = "Female";
-            firstName = femaleNamesList.get((int)(random.nextDouble() * femaleListSize));
-            middleName = femaleNamesList.get((int)(random.nextDouble() * femaleListSize));
+            name.setGender("Female");
+            name.setFirstName(femaleNames.get(pick(random, femaleSampler, femaleListSize)));
+            name.setMiddleName(femaleNames.get(pick(random, femaleSampler, femaleListSize)));
         } else {
-            gender = "Male";
-            firstName = maleNamesList.get((int)(random.nextDouble() * maleListSize));
-            middleName = maleNamesList.get((int)(random.nextDouble() * maleListSize));
+            name.setGender("Male");
+            name.setFirstName(maleNames.get(pick(random, maleSampler, maleListSize)));
+            name.setMiddleName(maleNames.get(pick(random, maleSampler, maleListSize)));
         }
         
-        lastName = lastNamesList.get((int)(random.nextDouble() * lastListSize));
+        name.setLastName(lastNames.get(pick(random, lastSampler, lastListSize)));
+        
+        return name;
+    }
+    
+    
+    private static int pick(SplittableRandom random, AliasSampler sampler, int listSize) {
         
-        return new Name(gender, firstName, middleName, lastName);
+        if (sampler == null) {
+            return random.nextInt(listSize);
+        }
+        return sampler.sample(random.nextDouble());
+    }
+    
+    
+    /**
+     * How names are drawn from the distribution files. UNIFORM gives every
+     * name the same chance; WEIGHTED follows the frequency columns so common
+     * names such as "Smith" and "James" show up as often as they do in the
+     * Census data. Selected with the 'data.names.sampling' AppConfig property.
+     */
+    public enum SamplingMode {
+        UNIFORM,
+        WEIGHTED;
+        
+        static SamplingMode fromProperty(String value) {
+            if (value == null || value.trim().isEmpty()) {
+                return UNIFORM;
+            }
+            return SamplingMode.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
     }
     
     
@@ -0,0 +1,419 @@
+package com.objy.javaulb.utils.pipeline;
+
+import com.objy.db.TransactionMode;
+import com.objy.javaulb.utils.TransactionRunner;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads data in three stages on three threads, so that generating and
+ * building the next batches overlaps the commit of the current one:
+ * <pre>
+ *   generate  --queue--&gt;  build  --queue--&gt;  commit
+ * </pre>
+ * <ul>
+ * <li><b>generate</b> draws the random data of a batch;</li>
+ * <li><b>build</b> turns it into the attribute values to write;</li>
+ * <li><b>commit</b> writes them in a READ_UPDATE transaction, through a
+ * TransactionRunner, and commits.</li>
+ * </ul>
+ * The commit stage runs on the thread that calls
+ * {@link #run(BatchSource, BatchBuilder, BatchWriter)}: Objectivity binds
+ * a transaction, and the Instances created in it, to one thread, so only
+ * the commit stage may touch the federation.
+ * <p>
+ * The stages are connected by bounded {@link SpscQueue}s. A stage that
+ * finds its output queue full waits until the next stage takes a batch;
+ * this backpressure keeps at most <code>queueCapacity</code> batches in
+ * flight between two stages. A waiting stage parks for a time that doubles
+ * from 1 &micro;s up to 1 ms, so a stage that waits for long does not keep
+ * a core busy. The report gives each stage's throughput, its
+ * busy and waiting time, and the mean and largest depth of its output
+ * queue, which tell which stage limits the load.
+ *
+ * @param <G>   A generated batch.
+ * @param <B>   A built batch.
+ *
+ * @author Daniel
+ */
+public class IngestPipeline<G, B> {
+
+    private static Logger logger = LoggerFactory.getLogger(IngestPipeline.class);
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 4;
+
+    // The shortest and the longest a stage parks between checks of a full
+    // or empty queue.
+    private static final long MIN_WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
+    private static final long MAX_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    // Marks the end of the batches in a queue.
+    private static final Object END = new Object();
+
+    private final TransactionRunner runner;
+    private final int queueCapacity;
+
+
+    public IngestPipeline(TransactionRunner runner) {
+        this(runner, DEFAULT_QUEUE_CAPACITY);
+    }
+
+
+    /**
+     * @param runner        Runs and retries the commit of each batch.
+     * @param queueCapacity The most batches waiting between two stages.
+     */
+    public IngestPipeline(TransactionRunner runner, int queueCapacity) {
+        this.runner = runner;
+        this.queueCapacity = queueCapacity;
+    }
+
+
+    /**
+     * Runs the pipeline until the source is exhausted.
+     *
+     * @return The metrics of the stages.
+     * @throws Exception The first failure of any stage. The other stages
+     * stop, and the batches committed before it stay committed.
+     */
+    public Report run(BatchSource<G> source, BatchBuilder<G, B> builder, BatchWriter<B> writer) throws Exception {
+        return run(source, builder, writer, null);
+    }
+
+
+    /**
+     * As {@link #run(BatchSource, BatchBuilder, BatchWriter)}, handing each
+     * batch to <code>recycler</code> once its transaction committed, e.g.
+     * for the source to reuse its buffers.
+     *
+     * @param recycler  Takes back the committed batches; null for none.
+     */
+    public Report run(BatchSource<G> source, BatchBuilder<G, B> builder, BatchWriter<B> writer,
+            BatchRecycler<B> recycler) throws Exception {
+
+        long start = System.nanoTime();
+
+        SpscQueue<Object> generated = new SpscQueue<>(queueCapacity);
+        SpscQueue<Object> built = new SpscQueue<>(queueCapacity);
+
+        Stage generate = new Stage("generate", generated);
+        Stage build = new Stage("build", built);
+        Stage commit = new Stage("commit", null);
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Thread generator = new Thread(() -> {
+            try {
+                while (true) {
+                    long t0 = System.nanoTime();
+                    G g = source.next();
+                    if (g == null) {
+                        break;
+                    }
+                    generate.busy(t0);
+                    put(generated, g, generate, failure);
+                }
+                put(generated, END, generate, failure);
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            }
+        }, "ingest-generate");
+
+        Thread buildThread = new Thread(() -> {
+            try {
+                while (true) {
+                    Object o = take(generated, build, failure);
+                    if (o == END) {
+                        break;
+                    }
+                    long t0 = System.nanoTime();
+                    @SuppressWarnings("unchecked")
+                    B b = builder.build((G) o);
+                    build.busy(t0);
+                    put(built, b, build, failure);
+                }
+                put(built, END, build, failure);
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            }
+        }, "ingest-build");
+
+        generator.setDaemon(true);
+        buildThread.setDaemon(true);
+        generator.start();
+        buildThread.start();
+
+        try {
+            while (true) {
+                Object o = take(built, commit, failure);
+                if (o == END) {
+                    break;
+                }
+                @SuppressWarnings("unchecked")
+                B b = (B) o;
+                long t0 = System.nanoTime();
+                runner.run(TransactionMode.READ_UPDATE, () -> writer.write(b));
+                commit.busy(t0);
+                if (recycler != null) {
+                    recycler.recycle(b);
+                }
+            }
+        } catch (Throwable t) {
+            failure.compareAndSet(null, t);
+        } finally {
+            generator.join();
+            buildThread.join();
+        }
+
+        Throwable t = failure.get();
+        if (t instanceof Exception) {
+            throw (Exception) t;
+        } else if (t != null) {
+            throw (Error) t;
+        }
+
+        Report report = new Report(System.nanoTime() - start, generate, build, commit);
+        logger.info(report.toString());
+        return report;
+    }
+
+
+    private static void put(SpscQueue<Object> queue, Object o, Stage stage, AtomicReference<Throwable> failure) {
+
+        if (queue.offer(o)) {
+            stage.depth(queue.size());
+            return;
+        }
+        long t0 = System.nanoTime();
+        long wait = MIN_WAIT_NANOS;
+        do {
+            checkFailure(failure);
+            wait = park(wait);
+        } while (!queue.offer(o));
+        stage.waited(t0, true);
+        stage.depth(queue.size());
+    }
+
+
+    private static Object take(SpscQueue<Object> queue, Stage stage, AtomicReference<Throwable> failure) {
+
+        Object o = queue.poll();
+        if (o != null) {
+            return o;
+        }
+        long t0 = System.nanoTime();
+        long wait = MIN_WAIT_NANOS;
+        while ((o = queue.poll()) == null) {
+            checkFailure(failure);
+            wait = park(wait);
+        }
+        stage.waited(t0, false);
+        return o;
+    }
+
+
+    // Parks for <code>wait</code> ns; returns how long to park next time.
+    private static long park(long wait) {
+        LockSupport.parkNanos(wait);
+        return Math.min(MAX_WAIT_NANOS, 2 * wait);
+    }
+
+
+    // Stops a stage once another one failed.
+    private static void checkFailure(AtomicReference<Throwable> failure) {
+        if (failure.get() != null) {
+            throw new IllegalStateException("Another pipeline stage failed.", failure.get());
+        }
+    }
+
+
+
+    /**
+     * Produces the generated batches, one call at a time, on the generate
+     * thread.
+     */
+    @FunctionalInterface
+    public interface BatchSource<G> {
+
+        /**
+         * @return The next batch, or null when there are no more.
+         */
+        G next() throws Exception;
+    }
+
+
+    /**
+     * Builds a generated batch, on the build thread. It must not touch the
+     * federation.
+     */
+    @FunctionalInterface
+    public interface BatchBuilder<G, B> {
+        B build(G generated) throws Exception;
+    }
+
+
+    /**
+     * Writes a built batch inside the commit transaction. It runs again if
+     * the transaction is retried.
+     */
+    @FunctionalInterface
+    public interface BatchWriter<B> {
+        void write(B batch) throws Exception;
+    }
+
+
+    /**
+     * Takes back a batch once it committed, on the commit thread.
+     */
+    @FunctionalInterface
+    public interface BatchRecycler<B> {
+        void recycle(B batch);
+    }
+
+
+
+    /**
+     * The metrics of one stage. Each is updated by its stage's thread only,
+     * and read after the threads have been joined.
+     */
+    public static class Stage {
+
+        private final String name;
+        private final SpscQueue<Object> output;
+
+        private long batches;
+        private long busyNanos;
+        private long fullWaitNanos;
+        private long emptyWaitNanos;
+        private long depthSum;
+        private long depthSamples;
+        private int maxDepth;
+
+
+        Stage(String name, SpscQueue<Object> output) {
+            this.name = name;
+            this.output = output;
+        }
+
+        void busy(long startNanos) {
+            busyNanos += System.nanoTime() - startNanos;
+            batches++;
+        }
+
+        void waited(long startNanos, boolean full) {
+            if (full) {
+                fullWaitNanos += System.nanoTime() - startNanos;
+            } else {
+                emptyWaitNanos += System.nanoTime() - startNanos;
+            }
+        }
+
+        void depth(int depth) {
+            depthSum += depth;
+            depthSamples++;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return The batches the stage handled.
+         */
+        public long getBatches() {
+            return batches;
+        }
+
+        public long getBusyNanos() {
+            return busyNanos;
+        }
+
+        /**
+         * @return The time spent waiting for room in the output queue: the
+         * backpressure from the next stage.
+         */
+        public long getFullWaitNanos() {
+            return fullWaitNanos;
+        }
+
+        /**
+         * @return The time spent waiting for the previous stage.
+         */
+        public long getEmptyWaitNanos() {
+            return emptyWaitNanos;
+        }
+
+        /**
+         * @return The mean depth of the output queue after each put.
+         */
+        public double getMeanDepth() {
+            return (depthSamples == 0) ? 0 : (double) depthSum / depthSamples;
+        }
+
+        public int getMaxDepth() {
+            return maxDepth;
+        }
+
+        @Override
+        public String toString() {
+            String s = String.format("%-8s %,6d batches, busy %,6d ms (%,.0f batches/sec busy), waited %,d ms for input, %,d ms for output",
+                    name, batches, TimeUnit.NANOSECONDS.toMillis(busyNanos),
+                    (busyNanos == 0) ? 0.0 : batches * 1e9 / busyNanos,
+                    TimeUnit.NANOSECONDS.toMillis(emptyWaitNanos), TimeUnit.NANOSECONDS.toMillis(fullWaitNanos));
+            if (output != null) {
+                s += String.format(", queue depth mean %.1f max %d of %d", getMeanDepth(), maxDepth, output.capacity());
+            }
+            return s;
+        }
+    }
+
+
+
+    /**
+     * The metrics of one run.
+     */
+    public static class Report {
+
+        private final long elapsedNanos;
+        private final Stage generate;
+        private final Stage build;
+        private final Stage commit;
+
+
+        Report(long elapsedNanos, Stage generate, Stage build, Stage commit) {
+            this.elapsedNanos = elapsedNanos;
+            this.generate = generate;
+            this.build = build;
+            this.commit = commit;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public Stage getGenerate() {
+            return generate;
+        }
+
+        public Stage getBuild() {
+            return build;
+        }
+
+        public Stage getCommit() {
+            return commit;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Pipeline committed %,d batches in %,d ms (%,.0f batches/sec)%n  %s%n  %s%n  %s",
+                    commit.batches, TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                    (elapsedNanos == 0) ? 0.0 : commit.batches * 1e9 / elapsedNanos,
+                    generate, build, commit);
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+package com.objy.javaulb.utils.pipeline;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded queue for exactly one producer thread and one consumer thread,
+ * without locks: each side only advances its own counter, and publishes it
+ * with an ordered write that the other side reads.
+ * <p>
+ * {@link #offer(Object)} returns false when the queue is full and
+ * {@link #poll()} returns null when it is empty; the caller decides how to
+ * wait. That is where {@link IngestPipeline} applies backpressure.
+ *
+ * @author Daniel
+ */
+public class SpscQueue<E> {
+
+    private final AtomicReferenceArray<E> slots;
+    private final int mask;
+
+    // The next slot to write; only the producer advances it.
+    private final AtomicLong tail = new AtomicLong();
+
+    // The next slot to read; only the consumer advances it.
+    private final AtomicLong head = new AtomicLong();
+
+
+    /**
+     * @param capacity  The most elements the queue holds; rounded up to a
+     *                  power of two.
+     */
+    public SpscQueue(int capacity) {
+
+        if (capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("capacity = " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        slots = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+
+    /**
+     * Producer side.
+     *
+     * @return false if the queue is full.
+     */
+    public boolean offer(E e) {
+
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        long t = tail.get();
+        if (t - head.get() > mask) {
+            return false;
+        }
+        slots.lazySet((int) t & mask, e);
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+
+    /**
+     * Consumer side.
+     *
+     * @return The oldest element, or null if the queue is empty.
+     */
+    public E poll() {
+
+        long h = head.get();
+        if (h == tail.get()) {
+            return null;
+        }
+        int i = (int) h & mask;
+        E e = slots.get(i);
+        slots.lazySet(i, null);
+        head.lazySet(h + 1);
+        return e;
+    }
+
+
+    /**
+     * @return The elements in the queue, as seen at some instant during the
+     * call.
+     */
+    public int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+}
@@ -0,0 +1,65 @@
+package com.objy.javaulb.utils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs BatchedIngest over a runner whose transactions do nothing and
+ * whose conflicts are thrown by the writer.
+ *
+ * @author Daniel
+ */
+public class BatchedIngestTest {
+
+    private static TransactionRunner runner() {
+        return new TransactionRunner(0, 0, 10, 1000,
+                mode -> new TransactionRunner.Scope() {
+                    @Override
+                    public void complete() {
+                    }
+
+                    @Override
+                    public void close() {
+                    }
+                },
+                FakeConflict.class::isInstance);
+    }
+
+
+    @Test
+    public void setupRunsOncePerBatchAttempt() throws Exception {
+
+        AtomicInteger setups = new AtomicInteger();
+        AtomicInteger writes = new AtomicInteger();
+        AtomicInteger conflictsLeft = new AtomicInteger(2);
+
+        BatchedIngest ingest = new BatchedIngest(runner(), 10, 10, 10, 60_000, false);
+        BatchedIngest.Report report = ingest.ingest(35, () -> {
+            setups.incrementAndGet();
+            return i -> {
+                writes.incrementAndGet();
+                // The batch holding object 15 conflicts twice.
+                if (i == 15 && conflictsLeft.getAndDecrement() > 0) {
+                    throw new FakeConflict();
+                }
+            };
+        });
+
+        assertEquals(35, report.getObjects());
+        assertEquals(4, report.getBatches());
+        assertEquals(1, report.getRetries());
+        assertEquals(2, report.getConflicts());
+
+        // 4 batches, one of them run 3 times.
+        assertEquals(6, setups.get());
+        assertEquals(35 + 2 * 6, writes.get());
+    }
+
+
+
+    private static class FakeConflict extends RuntimeException {
+    }
+
+}
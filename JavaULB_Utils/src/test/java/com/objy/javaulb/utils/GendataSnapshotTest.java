@@ -0,0 +1,153 @@
+package com.objy.javaulb.utils;
+
+import com.objy.javaulb.utils.addresses.Address;
+import com.objy.javaulb.utils.addresses.AddressFactory;
+import com.objy.javaulb.utils.addresses.AddressStore;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Writes snapshots and reads them back, cell by cell.
+ *
+ * @author Daniel
+ */
+public class GendataSnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // number, street, city, state, ZIP, longitude, latitude: the order of
+    // the fields in the address file.
+    private static final String[][] ADDRESSES = {
+        {"12", "Main St", "Springfield", "IL", "62701", "-89.65", "39.78"},
+        {"7", "Rue de l'\u00c9glise", "Springfield", "IL", "62702", "-89.61", "39.80"},
+        {"", "Elm", "Boulder", "CO", "80301", "-105.25", "40.01"},
+        {"400", "Broadway", "Boulder", "CO", "80301", "-105.28", "40.02"},
+    };
+
+
+    @Test
+    public void stringAndDoubleColumnsRoundTrip() throws IOException {
+
+        File source = folder.newFile("table.txt");
+        String[][] cells = {{"a", "bb", ""}, {"cccc", "", "\u00e9"}};
+        double[][] doubles = {{1.5, -2.25, 3}};
+
+        // Each column is written contiguously, its offsets into one table.
+        StringBuilder table = new StringBuilder();
+        int[][] offsets = new int[cells.length][];
+        for (int c = 0; c < cells.length; c++) {
+            offsets[c] = new int[cells[c].length + 1];
+            for (int row = 0; row < cells[c].length; row++) {
+                offsets[c][row] = table.toString().getBytes(StandardCharsets.UTF_8).length;
+                table.append(cells[c][row]);
+            }
+            offsets[c][cells[c].length] = table.toString().getBytes(StandardCharsets.UTF_8).length;
+        }
+
+        GendataSnapshot.write(source, 3, offsets, doubles,
+                ByteBuffer.wrap(table.toString().getBytes(StandardCharsets.UTF_8)));
+
+        GendataSnapshot snapshot = GendataSnapshot.open(source);
+        assertNotNull(snapshot);
+        assertEquals(3, snapshot.rows());
+        assertEquals(2, snapshot.stringColumns());
+        assertEquals(1, snapshot.doubleColumns());
+        for (int c = 0; c < cells.length; c++) {
+            assertArrayEquals(offsets[c], snapshot.offsets(c));
+            for (int row = 0; row < 3; row++) {
+                assertEquals(cells[c][row], snapshot.string(c, row));
+            }
+        }
+        assertArrayEquals(doubles[0], snapshot.doubles(0), 0);
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void interleavedColumnsAreRejected() throws IOException {
+
+        // Rows "ab", "cd" written row by row: column 0 is "a" then "c",
+        // column 1 is "b" then "d", so the columns overlap.
+        int[][] offsets = {{0, 2, 3}, {1, 3, 4}};
+        GendataSnapshot.write(folder.newFile("interleaved.txt"), 2, offsets, new double[0][],
+                ByteBuffer.wrap("abcd".getBytes(StandardCharsets.UTF_8)));
+    }
+
+
+    @Test
+    public void addressSnapshotRoundTrips() throws IOException {
+
+        File source = writeAddressFile();
+        AddressFactory.writeSnapshot(source);
+
+        GendataSnapshot snapshot = GendataSnapshot.open(source);
+        assertNotNull(snapshot);
+        assertEquals(ADDRESSES.length, snapshot.rows());
+
+        AddressStore store = AddressStore.fromSnapshot(snapshot);
+        assertNotNull(store);
+        assertEquals(ADDRESSES.length, store.size());
+
+        for (int row = 0; row < ADDRESSES.length; row++) {
+            Address address = store.toAddress(row);
+            String[] fields = {address.getNumber(), address.getStreet(), address.getCity(),
+                address.getState(), address.getZip()};
+            for (int c = 0; c < 5; c++) {
+                assertEquals("row " + row + ", column " + c, ADDRESSES[row][c], fields[c]);
+            }
+            // Kept at the store's float precision, in the file's order.
+            assertEquals((float) Double.parseDouble(ADDRESSES[row][5]), address.getLatitude(), 0);
+            assertEquals((float) Double.parseDouble(ADDRESSES[row][6]), address.getLongitude(), 0);
+        }
+    }
+
+
+    @Test
+    public void otherLayoutIsNotAnAddressStore() throws IOException {
+
+        File source = folder.newFile("table.txt");
+        GendataSnapshot.write(source, 1, new int[][] {{0, 1}}, new double[0][],
+                ByteBuffer.wrap("a".getBytes(StandardCharsets.UTF_8)));
+        assertNull(AddressStore.fromSnapshot(GendataSnapshot.open(source)));
+    }
+
+
+    @Test
+    public void changedSourceIgnoresSnapshot() throws IOException {
+
+        File source = writeAddressFile();
+        AddressFactory.writeSnapshot(source);
+
+        Files.write(source.toPath(), Arrays.asList("0,1,Oak,Austin,TX,73301,-97.74,30.27"), StandardCharsets.UTF_8);
+        assertNull(GendataSnapshot.open(source));
+    }
+
+
+    private File writeAddressFile() throws IOException {
+
+        File source = folder.newFile("addresses.txt");
+        StringBuilder text = new StringBuilder();
+        for (int row = 0; row < ADDRESSES.length; row++) {
+            text.append(row);
+            for (String field : ADDRESSES[row]) {
+                text.append(',').append(field);
+            }
+            text.append('\n');
+        }
+        Files.write(source.toPath(), text.toString().getBytes(StandardCharsets.UTF_8));
+        return source;
+    }
+
+}
@@ -0,0 +1,169 @@
+package com.objy.javaulb.utils;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the cache InstanceCache is built on over a fake lookup, since an
+ * Instance cannot be made without a federation. The fake page holds an
+ * object in each slot but the empty ones, and records the slots looked up.
+ *
+ * @author Daniel
+ */
+public class InstanceCacheTest {
+
+    private final Set<Integer> emptySlots = new HashSet<>();
+    private final List<Integer> lookedUp = new ArrayList<>();
+
+
+    private OidCache<String> cache(int capacity) {
+        return new OidCache<>(capacity, oid -> {
+            lookedUp.add(Oid.slot(oid));
+            return emptySlots.contains(Oid.slot(oid)) ? null : Oid.toString(oid);
+        });
+    }
+
+
+    private static long oid(int slot) {
+        return Oid.pack(3, 3, 1, slot);
+    }
+
+
+    @Test
+    public void evictsTheLeastRecentlyUsed() {
+
+        OidCache<String> cache = cache(2);
+
+        assertEquals("3-3-1-1", cache.lookup(oid(1)));
+        cache.lookup(oid(2));
+        cache.lookup(oid(1));
+        cache.lookup(oid(3));
+
+        // 2 was used least recently.
+        assertEquals(1, cache.getEvictions());
+        assertEquals(2, cache.size());
+        assertTrue(cache.contains(oid(1)));
+        assertFalse(cache.contains(oid(2)));
+        assertTrue(cache.contains(oid(3)));
+
+        cache.lookup(oid(2));
+        assertEquals(1, cache.getHits());
+        assertEquals(4, cache.getMisses());
+        assertEquals("[1, 2, 3, 2]", lookedUp.toString());
+    }
+
+
+    @Test
+    public void missOnNothingIsNotCached() {
+
+        emptySlots.add(5);
+        OidCache<String> cache = cache(4);
+
+        assertNull(cache.lookup(oid(5)));
+        assertNull(cache.lookup(oid(5)));
+        assertEquals(0, cache.size());
+        assertEquals(2, cache.getMisses());
+    }
+
+
+    @Test
+    public void prefetchedAreHitsAndJoinTheLookedUp() {
+
+        OidCache<String> cache = cache(8);
+        cache.setPrefetchSlots(2);
+
+        cache.lookup(oid(10));
+        assertEquals("[10, 11, 12]", lookedUp.toString());
+        assertEquals(2, cache.getPrefetched());
+        assertEquals(3, cache.size());
+
+        assertEquals("3-3-1-11", cache.lookup(oid(11)));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getPrefetchHits());
+        assertEquals(1, cache.getMisses());
+
+        // Promoted: a hit now, no longer counted as a prefetch hit.
+        cache.lookup(oid(11));
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getPrefetchHits());
+        assertEquals("[10, 11, 12]", lookedUp.toString());
+    }
+
+
+    @Test
+    public void prefetchKeepsAQuarterOfTheCapacity() {
+
+        OidCache<String> cache = cache(8);
+        cache.setPrefetchSlots(5);
+        assertEquals(2, cache.getPrefetchCapacity());
+
+        // Prefetches 21 to 25; the last two are kept.
+        cache.lookup(oid(20));
+        assertEquals(5, cache.getPrefetched());
+        assertEquals(3, cache.getPrefetchEvictions());
+        assertEquals(3, cache.size());
+        assertFalse(cache.contains(oid(23)));
+        assertTrue(cache.contains(oid(24)));
+        assertTrue(cache.contains(oid(25)));
+
+        // Never evicts what was looked up.
+        assertTrue(cache.contains(oid(20)));
+        assertEquals(0, cache.getEvictions());
+    }
+
+
+    @Test
+    public void prefetchSkipsEmptyAndCachedSlots() {
+
+        emptySlots.add(31);
+        OidCache<String> cache = cache(8);
+        cache.setPrefetchSlots(3);
+
+        cache.lookup(oid(33));
+        lookedUp.clear();
+
+        // 31 is empty, 33 is held.
+        cache.lookup(oid(30));
+        assertEquals("[30, 31, 32]", lookedUp.toString());
+        assertFalse(cache.contains(oid(31)));
+        assertTrue(cache.contains(oid(32)));
+        assertEquals(4, cache.getPrefetched());
+    }
+
+
+    @Test
+    public void prefetchStopsAtTheLastSlot() {
+
+        OidCache<String> cache = cache(8);
+        cache.setPrefetchSlots(4);
+
+        cache.lookup(oid(0xFFFE));
+        assertEquals("[65534, 65535]", lookedUp.toString());
+        assertEquals(1, cache.getPrefetched());
+    }
+
+
+    @Test
+    public void clearKeepsTheMetrics() {
+
+        OidCache<String> cache = cache(8);
+        cache.setPrefetchSlots(1);
+        cache.lookup(oid(1));
+        cache.lookup(oid(1));
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0.5, cache.getHitRate(), 0.0);
+    }
+
+}
@@ -0,0 +1,173 @@
+package com.objy.javaulb.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Daniel
+ */
+public class LongIntMapTest {
+
+    // A map made for 8 entries has 16 slots.
+    private static final int SLOTS = 16;
+
+
+    // The home slot of a key in a map of SLOTS slots, as LongIntMap.slot()
+    // computes it.
+    private static int home(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & (SLOTS - 1);
+    }
+
+
+    // The first n keys, from 1 up, whose home slot is the given one.
+    private static List<Long> keysAt(int slot, int n) {
+        List<Long> keys = new ArrayList<>();
+        for (long key = 1; keys.size() < n; key++) {
+            if (home(key) == slot) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+
+    @Test
+    public void putGetAndRemove() {
+
+        LongIntMap map = new LongIntMap();
+        long oid = Oid.pack(3, 3, 1, 40);
+
+        assertEquals(-1, map.get(oid, -1));
+        map.put(oid, 7);
+        assertEquals(7, map.get(oid, -1));
+        map.put(oid, 8);
+        assertEquals(8, map.get(oid, -1));
+        assertEquals(1, map.size());
+
+        assertFalse(map.putIfAbsent(oid, 9));
+        assertEquals(8, map.get(oid, -1));
+
+        assertTrue(map.remove(oid));
+        assertFalse(map.remove(oid));
+        assertFalse(map.containsKey(oid));
+        assertTrue(map.isEmpty());
+    }
+
+
+    @Test
+    public void zeroIsAKey() {
+
+        LongIntMap map = new LongIntMap();
+
+        assertFalse(map.containsKey(0));
+        assertEquals(-1, map.get(0, -1));
+
+        map.put(0, 0);
+        assertTrue(map.containsKey(0));
+        assertEquals(0, map.get(0, -1));
+        assertEquals(1, map.size());
+
+        map.put(0, 5);
+        assertEquals(5, map.get(0, -1));
+        assertEquals(1, map.size());
+
+        map.put(1, 1);
+        assertTrue(map.remove(0));
+        assertFalse(map.remove(0));
+        assertFalse(map.containsKey(0));
+        assertEquals(1, map.get(1, -1));
+        assertEquals(1, map.size());
+
+        map.put(0, 6);
+        map.clear();
+        assertFalse(map.containsKey(0));
+        assertTrue(map.isEmpty());
+    }
+
+
+    @Test
+    public void removeShiftsBackAClusterThatWrapsAround() {
+
+        // Three keys whose home is the last slot take slots 15, 0 and 1;
+        // a key whose home is slot 0 is pushed to slot 2.
+        List<Long> last = keysAt(SLOTS - 1, 3);
+        long first = keysAt(0, 1).get(0);
+
+        LongIntMap map = new LongIntMap(8);
+        for (int i = 0; i < last.size(); i++) {
+            map.put(last.get(i), i);
+        }
+        map.put(first, 100);
+
+        // Remove the head of the cluster, then one in the middle.
+        assertTrue(map.remove(last.get(0)));
+        assertFalse(map.containsKey(last.get(0)));
+        assertEquals(1, map.get(last.get(1), -1));
+        assertEquals(2, map.get(last.get(2), -1));
+        assertEquals(100, map.get(first, -1));
+
+        assertTrue(map.remove(last.get(2)));
+        assertEquals(1, map.get(last.get(1), -1));
+        assertEquals(100, map.get(first, -1));
+        assertEquals(2, map.size());
+
+        assertTrue(map.remove(last.get(1)));
+        assertEquals(100, map.get(first, -1));
+        assertEquals(1, map.size());
+    }
+
+
+    @Test
+    public void rehashKeepsEveryEntry() {
+
+        LongIntMap map = new LongIntMap(4);
+        int n = 10_000;
+        for (int i = 0; i < n; i++) {
+            map.put(Oid.pack(3, 3, i / 100, i % 100), i);
+        }
+
+        assertEquals(n, map.size());
+        for (int i = 0; i < n; i++) {
+            assertEquals(i, map.get(Oid.pack(3, 3, i / 100, i % 100), -1));
+        }
+        assertFalse(map.containsKey(Oid.pack(3, 3, 100, 0)));
+    }
+
+
+    @Test
+    public void agreesWithHashMap() {
+
+        // Keys from a small range, so that clusters form, wrap and are
+        // removed from often.
+        Random random = new Random(42);
+        LongIntMap map = new LongIntMap(8);
+        Map<Long, Integer> expected = new HashMap<>();
+
+        for (int op = 0; op < 100_000; op++) {
+            long key = random.nextInt(64);
+            switch (random.nextInt(3)) {
+                case 0:
+                    map.put(key, op);
+                    expected.put(key, op);
+                    break;
+                case 1:
+                    assertEquals(expected.remove(key) != null, map.remove(key));
+                    break;
+                default:
+                    Integer value = expected.get(key);
+                    assertEquals(value == null ? -1 : value, map.get(key, -1));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+    }
+
+}
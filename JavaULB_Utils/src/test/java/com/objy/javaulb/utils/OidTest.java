@@ -0,0 +1,107 @@
+package com.objy.javaulb.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Daniel
+ */
+public class OidTest {
+
+    @Test
+    public void packsFourPartsOfSixteenBits() {
+
+        long oid = Oid.pack(3, 4, 1, 40);
+
+        assertEquals(0x0003_0004_0001_0028L, oid);
+        assertEquals(3, Oid.database(oid));
+        assertEquals(4, Oid.container(oid));
+        assertEquals(1, Oid.page(oid));
+        assertEquals(40, Oid.slot(oid));
+    }
+
+
+    @Test
+    public void parseAndToStringRoundTrip() {
+
+        long[] oids = {
+            Oid.pack(3, 3, 1, 40),
+            Oid.pack(0, 0, 0, 0),
+            Oid.pack(65535, 65535, 65535, 65535),
+            Oid.pack(65535, 0, 1, 2)
+        };
+        for (long oid : oids) {
+            String s = Oid.toString(oid);
+            assertEquals(oid, Oid.parse(s));
+        }
+        assertEquals("3-3-1-40", Oid.toString(Oid.parse("3-3-1-40")));
+        assertEquals("65535-65535-65535-65535", Oid.toString(-1L));
+    }
+
+
+    @Test
+    public void withSlotKeepsThePage() {
+
+        long oid = Oid.pack(3, 3, 7, 40);
+
+        assertEquals(Oid.pack(3, 3, 7, 41), Oid.withSlot(oid, 41));
+        assertEquals(Oid.pack(3, 3, 7, 0), Oid.withSlot(oid, 0));
+        assertEquals(Oid.pack(3, 3, 7, 65535), Oid.withSlot(oid, 65535));
+    }
+
+
+    @Test
+    public void rejectsMalformedOids() {
+
+        String[] malformed = {
+            "", "-", "3", "3-3-1", "3-3-1-40-1", "3-3-1-", "-3-3-1-40",
+            "3--1-40", "3-3-1-4a", "3-3-1- 40", "3-3-1-65536",
+            "3-3-1-99999999999", "+3-3-1-40"
+        };
+        for (String s : malformed) {
+            try {
+                Oid.parse(s);
+                fail("parsed " + s);
+            } catch (IllegalArgumentException ex) {
+                assertTrue(ex.getMessage().contains(s));
+            }
+        }
+    }
+
+
+    @Test
+    public void rejectsPartsOutOfRange() {
+
+        int[][] parts = {
+            {65536, 0, 0, 0}, {0, -1, 0, 0}, {0, 0, 70000, 0}, {0, 0, 0, -5}
+        };
+        for (int[] p : parts) {
+            try {
+                Oid.pack(p[0], p[1], p[2], p[3]);
+                fail("packed " + p[0] + "-" + p[1] + "-" + p[2] + "-" + p[3]);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+        try {
+            Oid.withSlot(0, 65536);
+            fail("slot 65536");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+
+    @Test
+    public void comparesUnsigned() {
+
+        Oid low = Oid.valueOf(Oid.pack(1, 0, 0, 0));
+        Oid high = Oid.valueOf(Oid.pack(65535, 0, 0, 0));
+
+        assertTrue(low.compareTo(high) < 0);
+        assertTrue(high.compareTo(low) > 0);
+        assertEquals(0, low.compareTo(Oid.valueOf(low.longValue())));
+    }
+
+}
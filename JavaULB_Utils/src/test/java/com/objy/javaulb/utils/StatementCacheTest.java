@@ -0,0 +1,70 @@
+package com.objy.javaulb.utils;
+
+import java.util.regex.Pattern;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Binds query templates; preparing a Statement needs a federation, so only
+ * the query text is checked.
+ *
+ * @author Daniel
+ */
+public class StatementCacheTest {
+
+    private final StatementCache cache = new StatementCache(4, new SchemaCache(0));
+
+
+    @Test
+    public void bindsEachParameterWhereItIsNamed() {
+
+        assertEquals("FROM Person WHERE LastName == 'Doe' AND FirstName == 'John' RETURN *",
+                cache.bind("FROM Person WHERE LastName == '$2' AND FirstName == '$1' RETURN *", "John", "Doe"));
+        assertEquals("FROM Person RETURN *", cache.bind("FROM Person RETURN *"));
+    }
+
+
+    @Test
+    public void valuesCannotEndTheirStringLiteral() {
+
+        assertEquals("LastName == 'O\\'Brien \\\\'",
+                cache.bind("LastName == '$1'", "O'Brien \\"));
+    }
+
+
+    @Test
+    public void regexLiteralsMatchOnlyThemselves() {
+
+        String value = "a.b*c\\d$1(e)'";
+        String bound = cache.bind("LastName =~ '^$1.*'", StatementCache.regexLiteral(value));
+
+        // Undo the string literal escaping: the rest is the expression.
+        String expression = unescapeLiteral(bound.substring("LastName =~ '".length(), bound.length() - 1));
+        assertTrue(expression, Pattern.matches(expression, value + "xyz"));
+        assertTrue(expression, !Pattern.matches(expression, "aXb*c\\d$1(e)'"));
+        assertTrue(expression, !Pattern.matches(expression, "a.bbc\\d$1(e)'"));
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missingParameterIsRejected() {
+        cache.bind("LastName == '$2'", "Doe");
+    }
+
+
+    private static String unescapeLiteral(String literal) {
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < literal.length(); i++) {
+            char c = literal.charAt(i);
+            if (c == '\\') {
+                c = literal.charAt(++i);
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+}
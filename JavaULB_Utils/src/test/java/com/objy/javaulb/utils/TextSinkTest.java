@@ -0,0 +1,71 @@
+package com.objy.javaulb.utils;
+
+import java.io.StringWriter;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Writes lines into a StringWriter, with and without a mark.
+ *
+ * @author Daniel
+ */
+public class TextSinkTest {
+
+    private static final String NL = System.lineSeparator();
+
+    private final StringWriter written = new StringWriter();
+    private final TextSink sink = new TextSink(written, 16);
+
+
+    @Test
+    public void writesWhenTheBufferIsFull() {
+
+        sink.println("0123456789");
+        assertEquals("", written.toString());
+        sink.println("abcdef");
+        assertEquals("0123456789" + NL + "abcdef" + NL, written.toString());
+    }
+
+
+    @Test
+    public void resetDropsTheFailedAttempt() {
+
+        sink.println("header");
+        sink.mark();
+
+        // The first attempt fails after a line.
+        assertTrue(sink.reset());
+        sink.println("row 1");
+
+        // The retry prints it again.
+        assertTrue(sink.reset());
+        sink.println("row 1");
+        sink.println("row 2");
+        sink.flush();
+
+        assertEquals("header" + NL + "row 1" + NL + "row 2" + NL, written.toString());
+    }
+
+
+    @Test
+    public void tooMuchOutputIsWrittenAndCannotBeDropped() {
+
+        sink.mark();
+        for (int i = 0; i < 2 * TextSink.HOLD_FACTOR; i++) {
+            sink.println("0123456789");
+        }
+        assertTrue(written.toString().length() > 0);
+
+        // The lines already written stay; later ones are held again.
+        assertFalse(sink.reset());
+        int before = written.toString().length();
+        sink.println("retried");
+        assertTrue(sink.reset());
+        sink.flush();
+        assertEquals(before, written.toString().length());
+    }
+
+}
@@ -0,0 +1,194 @@
+package com.objy.javaulb.utils;
+
+import com.objy.db.TransactionMode;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs TransactionRunner over a fake scope, with work that throws a fake
+ * conflict a given number of times, so no federation is needed.
+ *
+ * @author Daniel
+ */
+public class TransactionRunnerTest {
+
+    private static final long BASE_MILLIS = 1;
+    private static final long MAX_DELAY_MILLIS = 4;
+
+    // Counts the scopes opened, completed and closed.
+    private final AtomicInteger opened = new AtomicInteger();
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger closed = new AtomicInteger();
+
+
+    private TransactionRunner runner(int maxRetries, long maxWaitMillis) {
+        return new TransactionRunner(BASE_MILLIS, MAX_DELAY_MILLIS, maxRetries, maxWaitMillis,
+                mode -> {
+                    opened.incrementAndGet();
+                    return new TransactionRunner.Scope() {
+                        @Override
+                        public void complete() {
+                            completed.incrementAndGet();
+                        }
+
+                        @Override
+                        public void close() {
+                            closed.incrementAndGet();
+                        }
+                    };
+                },
+                FakeConflict.class::isInstance);
+    }
+
+
+    // Work that conflicts on its first <code>conflicts</code> attempts.
+    private static TransactionRunner.Work<String> conflicting(int conflicts, AtomicInteger attempts) {
+        return () -> {
+            if (attempts.incrementAndGet() <= conflicts) {
+                throw new FakeConflict();
+            }
+            return "done";
+        };
+    }
+
+
+    @Test
+    public void retriesAfterConflicts() throws Exception {
+
+        AtomicInteger attempts = new AtomicInteger();
+        TransactionRunner.Metrics metrics = new TransactionRunner.Metrics();
+
+        String result = runner(10, 10_000).call(TransactionMode.READ_UPDATE, conflicting(3, attempts), metrics);
+
+        assertEquals("done", result);
+        assertEquals(4, attempts.get());
+        assertEquals(4, opened.get());
+        assertEquals(1, completed.get());
+        assertEquals(4, closed.get());
+
+        assertEquals(4, metrics.getAttempts());
+        assertEquals(3, metrics.getConflicts());
+        assertTrue(metrics.getWaitNanos() >= TimeUnit.MILLISECONDS.toNanos(3 * BASE_MILLIS));
+        assertTrue(metrics.getElapsedNanos() >= metrics.getWaitNanos());
+    }
+
+
+    @Test
+    public void backoffStaysWithinBounds() {
+
+        TransactionRunner runner = runner(10, 10_000);
+        long base = TimeUnit.MILLISECONDS.toNanos(BASE_MILLIS);
+        long max = TimeUnit.MILLISECONDS.toNanos(MAX_DELAY_MILLIS);
+
+        boolean varied = false;
+        long previous = base;
+        for (int i = 0; i < 10_000; i++) {
+            long delay = runner.nextDelay(previous);
+            assertTrue("delay " + delay + " < base", delay >= base);
+            assertTrue("delay " + delay + " > max", delay <= max);
+            assertTrue("delay " + delay + " > 3 x " + previous, delay <= 3 * previous);
+            varied |= delay != previous;
+            previous = delay;
+        }
+        assertTrue("no jitter", varied);
+    }
+
+
+    @Test
+    public void givesUpAtMaxRetries() throws Exception {
+
+        AtomicInteger attempts = new AtomicInteger();
+        TransactionRunner runner = runner(2, 10_000);
+        TransactionRunner.Metrics metrics = new TransactionRunner.Metrics();
+
+        try {
+            runner.call(TransactionMode.READ_UPDATE, conflicting(Integer.MAX_VALUE, attempts), metrics);
+            fail("No conflict thrown");
+        } catch (FakeConflict expected) {
+        }
+
+        assertEquals(3, attempts.get());
+        assertEquals(3, metrics.getAttempts());
+        assertEquals(3, metrics.getConflicts());
+        assertEquals(0, completed.get());
+        assertEquals(opened.get(), closed.get());
+        assertEquals(1, runner.getTotals().getGiveUps());
+    }
+
+
+    @Test
+    public void givesUpAtMaxWait() throws Exception {
+
+        long maxWaitMillis = 20;
+        AtomicInteger attempts = new AtomicInteger();
+        TransactionRunner runner = runner(1_000, maxWaitMillis);
+        TransactionRunner.Metrics metrics = new TransactionRunner.Metrics();
+
+        try {
+            runner.call(TransactionMode.READ_UPDATE, conflicting(Integer.MAX_VALUE, attempts), metrics);
+            fail("No conflict thrown");
+        } catch (FakeConflict expected) {
+        }
+
+        // Each wait is at least BASE_MILLIS, so the budget runs out long
+        // before the retries do.
+        assertTrue(attempts.get() <= maxWaitMillis / BASE_MILLIS + 2);
+        assertTrue(metrics.getWaitNanos() >= TimeUnit.MILLISECONDS.toNanos(maxWaitMillis));
+        assertEquals(1, runner.getTotals().getGiveUps());
+    }
+
+
+    @Test
+    public void otherExceptionsAreNotRetried() throws Exception {
+
+        IOException failure = new IOException("not a conflict");
+        AtomicInteger attempts = new AtomicInteger();
+        TransactionRunner runner = runner(10, 10_000);
+
+        try {
+            runner.run(TransactionMode.READ_UPDATE, () -> {
+                attempts.incrementAndGet();
+                throw failure;
+            });
+            fail("No exception thrown");
+        } catch (IOException ex) {
+            assertSame(failure, ex);
+        }
+
+        assertEquals(1, attempts.get());
+        assertEquals(0, completed.get());
+        assertEquals(1, closed.get());
+        assertEquals(0, runner.getTotals().getConflicts());
+        assertEquals(0, runner.getTotals().getGiveUps());
+    }
+
+
+    @Test
+    public void totalsSumTheCalls() throws Exception {
+
+        TransactionRunner runner = runner(10, 10_000);
+        runner.call(TransactionMode.READ_UPDATE, conflicting(2, new AtomicInteger()));
+        runner.call(TransactionMode.READ_ONLY, conflicting(0, new AtomicInteger()));
+        runner.callQuery(conflicting(1, new AtomicInteger()));
+
+        TransactionRunner.Metrics totals = runner.getTotals();
+        assertEquals(3, totals.getCalls());
+        assertEquals(6, totals.getAttempts());
+        assertEquals(3, totals.getConflicts());
+        assertEquals(0, totals.getGiveUps());
+        assertTrue(totals.getWaitNanos() >= TimeUnit.MILLISECONDS.toNanos(3 * BASE_MILLIS));
+    }
+
+
+
+    private static class FakeConflict extends RuntimeException {
+    }
+
+}
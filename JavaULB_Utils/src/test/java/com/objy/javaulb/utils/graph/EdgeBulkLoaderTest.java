@@ -0,0 +1,149 @@
+package com.objy.javaulb.utils.graph;
+
+import com.objy.javaulb.utils.TransactionRunner;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs EdgeBulkLoader over a runner whose transactions do nothing, with a
+ * writer that records the edges of each transaction, or fails it.
+ *
+ * @author Daniel
+ */
+public class EdgeBulkLoaderTest {
+
+    private static TransactionRunner runner() {
+        return new TransactionRunner(0, 0, 10, 1000,
+                mode -> new TransactionRunner.Scope() {
+                    @Override
+                    public void complete() {
+                    }
+
+                    @Override
+                    public void close() {
+                    }
+                },
+                FakeConflict.class::isInstance);
+    }
+
+
+    // Adds 2 edges from each of the sources 1 to 5, in no particular order,
+    // and one duplicate.
+    private static void addEdges(EdgeBulkLoader loader) {
+        for (long from = 5; from >= 1; from--) {
+            loader.add(from, 100 + from);
+            loader.add(from, 200 + from);
+        }
+        loader.add(3, 103);
+    }
+
+
+    @Test
+    public void writesEachSourceOnceInOrder() throws Exception {
+
+        List<long[]> transactions = new ArrayList<>();
+        EdgeBulkLoader loader = new EdgeBulkLoader((froms, tos, first, last) -> {
+            long[] written = new long[last - first];
+            for (int i = first; i < last; i++) {
+                written[i - first] = froms[i];
+            }
+            transactions.add(written);
+        }, 2, runner());
+
+        addEdges(loader);
+        EdgeBulkLoader.Report report = loader.load();
+
+        assertEquals(10, report.getEdges());
+        assertEquals(1, report.getDuplicates());
+        assertEquals(5, report.getSources());
+        assertEquals(3, report.getTransactions());
+        assertEquals(0, loader.size());
+
+        // Two sources per transaction, sorted.
+        assertEquals(3, transactions.size());
+        assertEquals("[1, 1, 2, 2]", Arrays.toString(transactions.get(0)));
+        assertEquals("[3, 3, 4, 4]", Arrays.toString(transactions.get(1)));
+        assertEquals("[5, 5]", Arrays.toString(transactions.get(2)));
+    }
+
+
+    @Test
+    public void retriesCountTransactionsNotConflicts() throws Exception {
+
+        // The second transaction conflicts twice before it commits.
+        AtomicInteger calls = new AtomicInteger();
+        EdgeBulkLoader loader = new EdgeBulkLoader((froms, tos, first, last) -> {
+            int call = calls.incrementAndGet();
+            if (call == 2 || call == 3) {
+                throw new FakeConflict();
+            }
+        }, 2, runner());
+
+        addEdges(loader);
+        EdgeBulkLoader.Report report = loader.load();
+
+        assertEquals(3, report.getTransactions());
+        assertEquals(1, report.getRetries());
+        assertEquals(2, report.getConflicts());
+        assertEquals(5, calls.get());
+    }
+
+
+    @Test
+    public void failureKeepsTheEdgesNotWritten() throws Exception {
+
+        // Fails the transaction holding source 3, once.
+        Set<String> written = new HashSet<>();
+        AtomicInteger failures = new AtomicInteger(1);
+        EdgeBulkLoader loader = new EdgeBulkLoader((froms, tos, first, last) -> {
+            if (froms[first] == 3 && failures.getAndDecrement() > 0) {
+                throw new IllegalStateException("write failed");
+            }
+            for (int i = first; i < last; i++) {
+                assertTrue("written twice: " + froms[i] + " -> " + tos[i], written.add(froms[i] + "->" + tos[i]));
+            }
+        }, 2, runner());
+
+        addEdges(loader);
+        try {
+            loader.load();
+            fail("the write failure was not thrown");
+        } catch (IllegalStateException ex) {
+            assertEquals("write failed", ex.getMessage());
+        }
+
+        // The first transaction stays written; the edges of sources 3 to 5
+        // are kept.
+        assertEquals(4, written.size());
+        assertEquals(6, loader.size());
+
+        EdgeBulkLoader.Report report = loader.load();
+
+        assertEquals(6, report.getEdges());
+        assertEquals(0, report.getDuplicates());
+        assertEquals(3, report.getSources());
+        assertEquals(2, report.getTransactions());
+        assertEquals(0, loader.size());
+
+        assertEquals(10, written.size());
+        for (long from = 1; from <= 5; from++) {
+            assertTrue(written.contains(from + "->" + (100 + from)));
+            assertTrue(written.contains(from + "->" + (200 + from)));
+        }
+    }
+
+
+
+    private static class FakeConflict extends RuntimeException {
+    }
+
+}
@@ -0,0 +1,104 @@
+package com.objy.javaulb.utils.graph;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Walks a binary tree, vertex v joined to 2v + 1 and 2v + 2, in chunks of
+ * 4 vertices on 4 threads, and checks that no chunk is still running once
+ * traverse has returned or thrown.
+ *
+ * @author Daniel
+ */
+public class FrontierTraversalTest {
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    // The chunks being expanded, and the most seen at once.
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger chunks = new AtomicInteger();
+
+
+    @After
+    public void shutdown() throws InterruptedException {
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+
+    // The tree's neighbours, slowly, failing at the given vertex.
+    private FrontierTraversal.Neighbours tree(long failAt) {
+        return (frontier, from, to, out) -> {
+            running.incrementAndGet();
+            chunks.incrementAndGet();
+            try {
+                for (int i = from; i < to; i++) {
+                    if (frontier[i] == failAt) {
+                        throw new IllegalStateException("vertex " + failAt);
+                    }
+                    out.add(2 * frontier[i] + 1);
+                    out.add(2 * frontier[i] + 2);
+                }
+                Thread.sleep(2);
+            } finally {
+                running.decrementAndGet();
+            }
+        };
+    }
+
+
+    @Test
+    public void reachesEveryLevel() throws Exception {
+
+        FrontierTraversal.Result result = new FrontierTraversal(pool, 4).traverse(0, 6, tree(-1), null);
+
+        assertEquals(7, result.getLevels());
+        for (int depth = 0; depth <= 6; depth++) {
+            assertEquals(1 << depth, result.getLevel(depth).length);
+        }
+        assertEquals((1 << 7) - 1, result.getVisited());
+        assertEquals(6, result.depthOf((1 << 6) + 5));
+        assertEquals(0, running.get());
+    }
+
+
+    @Test
+    public void stopWaitsForTheRunningChunks() throws Exception {
+
+        // Vertex 70 is at depth 6; the 64 vertices of depth 5 make 16 chunks.
+        FrontierTraversal.Result result = new FrontierTraversal(pool, 4)
+                .traverse(0, 10, tree(-1), (vertex, depth) -> vertex == 70);
+
+        assertEquals(0, running.get());
+        assertTrue(result.isStopped());
+        assertEquals(70, result.getFound());
+        assertEquals(6, result.depthOf(70));
+    }
+
+
+    @Test
+    public void failureWaitsForTheRunningChunks() throws Exception {
+
+        try {
+            new FrontierTraversal(pool, 4).traverse(0, 10, tree(40), null);
+            fail("No exception thrown");
+        } catch (IllegalStateException ex) {
+            assertEquals("vertex 40", ex.getMessage());
+        }
+        assertEquals(0, running.get());
+
+        // The remaining chunks of the level skipped their work.
+        int started = chunks.get();
+        assertTrue(started < 1 + 1 + 1 + 2 + 4 + 8 + 16);
+        Thread.sleep(20);
+        assertEquals(started, chunks.get());
+    }
+
+}
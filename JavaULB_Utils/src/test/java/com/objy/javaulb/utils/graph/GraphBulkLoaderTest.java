@@ -0,0 +1,293 @@
+package com.objy.javaulb.utils.graph;
+
+import com.objy.javaulb.utils.RandomStreams;
+import com.objy.javaulb.utils.TransactionRunner;
+import com.objy.javaulb.utils.addresses.AddressStore;
+import com.objy.javaulb.utils.names.NameFactory;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Loads small generated graphs into an {@link InMemoryGraphSink} and checks
+ * what was written: the counts, the batches, and the ends of every edge.
+ *
+ * @author Daniel
+ */
+public class GraphBulkLoaderTest {
+
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    private static NameFactory nameFactory;
+    private static AddressStore addressStore;
+
+
+    // NameFactory reads its files through the AppConfig and DataDir
+    // properties; point them at a few names.
+    @BeforeClass
+    public static void setUpData() throws Exception {
+
+        File dataDir = folder.newFolder("gendata");
+        write(new File(dataDir, "last.txt"), "SMITH 1.006 1.006 1", "JOHNSON 0.810 1.816 2", "DOE 0.100 1.916 3");
+        write(new File(dataDir, "female.txt"), "MARY 2.629 2.629 1", "ANNA 0.500 3.129 2");
+        write(new File(dataDir, "male.txt"), "JAMES 3.318 3.318 1", "JOHN 3.271 6.589 2");
+
+        File appConfig = folder.newFile("AppConfig.properties");
+        write(appConfig,
+                "data.names.last : last.txt",
+                "data.names.first.female : female.txt",
+                "data.names.first.male : male.txt",
+                "data.names.sampling : UNIFORM");
+
+        System.setProperty("AppConfig", appConfig.getPath());
+        System.setProperty("DataDir", dataDir.getPath());
+        nameFactory = new NameFactory();
+
+        addressStore = new AddressStore.Builder()
+                .add("12", "Main St", "Springfield", "IL", "62701", 39.78, -89.65)
+                .add("400", "Broadway", "Boulder", "CO", "80301", 40.02, -105.28)
+                .add("7", "Elm", "Austin", "TX", "73301", 30.27, -97.74)
+                .build();
+    }
+
+
+    private static void write(File file, String... lines) throws IOException {
+        Files.write(file.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+    }
+
+
+    private static GraphGenerator generator(long addresses, DegreeDistribution occupants) {
+        return new GraphGenerator(nameFactory, addressStore, addresses, occupants, new RandomStreams(42));
+    }
+
+
+    @Test
+    public void loadsEveryVertexAndEdge() throws Exception {
+
+        InMemoryGraphSink sink = new InMemoryGraphSink();
+        GraphBulkLoader loader = new GraphBulkLoader(2, 4, InMemoryGraphSink.runner());
+
+        LoadReport report = loader.load(generator(20, DegreeDistribution.fixed(3)), sink);
+
+        assertEquals(20, report.getAddresses());
+        assertEquals(60, report.getPersons());
+        assertEquals(60, report.getEdges());
+        assertEquals(80, report.getVertices());
+        assertEquals(5, report.getBatches());
+        assertEquals(0, report.getRetries());
+        assertEquals(0, report.getConflicts());
+
+        assertEquals(20, sink.getAddresses());
+        assertEquals(60, sink.getPersons());
+        assertEquals(60, sink.getEdges());
+        assertEquals(5, sink.getBatches());
+    }
+
+
+    @Test
+    public void partialLastBatch() throws Exception {
+
+        RecordingSink sink = new RecordingSink();
+        GraphBulkLoader loader = new GraphBulkLoader(3, 3, InMemoryGraphSink.runner());
+
+        LoadReport report = loader.load(generator(10, DegreeDistribution.fixed(2)), sink);
+
+        // 10 addresses in batches of 3: three full batches and one of 1.
+        List<Integer> sizes = new ArrayList<>(sink.batchSizes);
+        Collections.sort(sizes);
+        assertEquals(Arrays.asList(1, 3, 3, 3), sizes);
+        assertEquals(4, report.getBatches());
+        assertEquals(10, report.getAddresses());
+        assertEquals(20, report.getPersons());
+        assertEquals(20, report.getEdges());
+        assertEquals(4, sink.counts.getBatches());
+    }
+
+
+    @Test
+    public void edgesJoinTheirPersonAndAddress() throws Exception {
+
+        RecordingSink sink = new RecordingSink();
+        GraphBulkLoader loader = new GraphBulkLoader(4, 5, InMemoryGraphSink.runner());
+
+        LoadReport report = loader.load(generator(23, DegreeDistribution.uniform(0, 4)), sink);
+
+        // Every address once.
+        assertEquals(23, sink.addresses.size());
+        for (long a = 0; a < 23; a++) {
+            assertTrue("address " + a, sink.addresses.contains(a));
+        }
+
+        // Every person once, generated for an address that was written.
+        assertEquals(report.getPersons(), sink.persons.size());
+        for (Map.Entry<Long, Long> person : sink.persons.entrySet()) {
+            assertEquals((long) person.getValue(), person.getKey() / GraphRecord.MAX_OCCUPANTS);
+            assertTrue(sink.addresses.contains(person.getValue()));
+        }
+
+        // One edge per person, from that person to its address.
+        assertEquals(report.getEdges(), sink.edges.size());
+        assertEquals(sink.persons.size(), sink.edges.size());
+        Set<Long> edgePersons = new HashSet<>();
+        for (long[] edge : sink.edges) {
+            Long address = sink.persons.get(edge[1]);
+            assertNotNull("edge to unknown person " + edge[1], address);
+            assertEquals((long) address, edge[0]);
+            assertTrue("second edge from person " + edge[1], edgePersons.add(edge[1]));
+        }
+    }
+
+
+    @Test
+    public void sameSeedWritesSameGraph() throws Exception {
+
+        InMemoryGraphSink one = new InMemoryGraphSink();
+        new GraphBulkLoader(1, 50, InMemoryGraphSink.runner())
+                .load(generator(200, DegreeDistribution.uniform(0, 5)), one);
+
+        InMemoryGraphSink many = new InMemoryGraphSink();
+        new GraphBulkLoader(4, 7, InMemoryGraphSink.runner())
+                .load(generator(200, DegreeDistribution.uniform(0, 5)), many);
+
+        assertEquals(one.getPersons(), many.getPersons());
+        assertEquals(one.getEdges(), many.getEdges());
+        assertEquals(one.getChecksum(), many.getChecksum());
+        assertEquals(4, one.getBatches());
+        assertEquals(29, many.getBatches());
+    }
+
+
+    @Test
+    public void retriesCountBatchesNotConflicts() throws Exception {
+
+        // The first batch conflicts twice before it commits.
+        AtomicInteger writes = new AtomicInteger();
+        InMemoryGraphSink counts = new InMemoryGraphSink();
+        GraphSink sink = batch -> {
+            if (writes.getAndIncrement() < 2) {
+                throw new FakeConflict();
+            }
+            counts.write(batch);
+        };
+        TransactionRunner runner = new TransactionRunner(0, 0, 10, 1000,
+                mode -> new TransactionRunner.Scope() {
+                    @Override
+                    public void complete() {
+                    }
+
+                    @Override
+                    public void close() {
+                    }
+                },
+                FakeConflict.class::isInstance);
+
+        LoadReport report = new GraphBulkLoader(1, 5, runner).load(generator(20, DegreeDistribution.fixed(1)), sink);
+
+        assertEquals(4, report.getBatches());
+        assertEquals(1, report.getRetries());
+        assertEquals(2, report.getConflicts());
+        assertEquals(20, counts.getAddresses());
+    }
+
+
+    @Test
+    public void failureWaitsForTheOtherWorkers() throws Exception {
+
+        // The first batch fails at once; the others are slow, and must all
+        // be done when load() throws.
+        AtomicInteger calls = new AtomicInteger();
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger finished = new AtomicInteger();
+        GraphSink sink = batch -> {
+            active.incrementAndGet();
+            try {
+                if (calls.getAndIncrement() == 0) {
+                    throw new IllegalStateException("sink failed");
+                }
+                Thread.sleep(100);
+                finished.incrementAndGet();
+            } finally {
+                active.decrementAndGet();
+            }
+        };
+
+        try {
+            new GraphBulkLoader(4, 1, InMemoryGraphSink.runner()).load(generator(100, DegreeDistribution.fixed(1)), sink);
+            fail("the sink failure was not thrown");
+        } catch (IllegalStateException ex) {
+            assertEquals("sink failed", ex.getMessage());
+        }
+
+        assertEquals(0, active.get());
+        int done = finished.get();
+        Thread.sleep(200);
+        assertEquals(done, finished.get());
+        assertTrue("the workers kept going after the failure: " + calls.get(), calls.get() < 100);
+    }
+
+
+
+    /**
+     * Passes each batch to an InMemoryGraphSink, which checks its order and
+     * counts it, and keeps the ids of what was written.
+     */
+    private static class RecordingSink implements GraphSink {
+
+        final InMemoryGraphSink counts = new InMemoryGraphSink();
+
+        final List<Integer> batchSizes = new ArrayList<>();
+        final Set<Long> addresses = new HashSet<>();
+        final Map<Long, Long> persons = new HashMap<>();
+        final List<long[]> edges = new ArrayList<>();
+
+
+        @Override
+        public synchronized void write(List<GraphRecord> batch) throws Exception {
+
+            counts.write(batch);
+
+            int batchAddresses = 0;
+            for (GraphRecord record : batch) {
+                switch (record.getKind()) {
+                    case ADDRESS:
+                        assertTrue("address written twice", addresses.add(record.getAddressId()));
+                        batchAddresses++;
+                        break;
+                    case PERSON:
+                        assertEquals(null, persons.put(record.getPersonId(), record.getAddressId()));
+                        break;
+                    default:
+                        edges.add(new long[] {record.getAddressId(), record.getPersonId()});
+                }
+            }
+            batchSizes.add(batchAddresses);
+        }
+    }
+
+
+
+
+    private static class FakeConflict extends RuntimeException {
+    }
+
+}
@@ -0,0 +1,97 @@
+package com.objy.javaulb.utils.pipeline;
+
+import com.objy.javaulb.utils.TransactionRunner;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs IngestPipeline over a runner whose transactions do nothing.
+ *
+ * @author Daniel
+ */
+public class IngestPipelineTest {
+
+    private static TransactionRunner runner() {
+        return new TransactionRunner(0, 0, 10, 1000,
+                mode -> new TransactionRunner.Scope() {
+                    @Override
+                    public void complete() {
+                    }
+
+                    @Override
+                    public void close() {
+                    }
+                },
+                t -> false);
+    }
+
+
+    @Test
+    public void commitsEveryBatchInOrderAndRecyclesIt() throws Exception {
+
+        ConcurrentLinkedQueue<int[]> free = new ConcurrentLinkedQueue<>();
+        int[] next = new int[1];
+        int[] allocated = new int[1];
+        List<Integer> written = new ArrayList<>();
+        List<int[]> recycled = new ArrayList<>();
+
+        IngestPipeline<int[], int[]> pipeline = new IngestPipeline<>(runner(), 2);
+        IngestPipeline.Report report = pipeline.run(() -> {
+                    if (next[0] == 200) {
+                        return null;
+                    }
+                    int[] batch = free.poll();
+                    if (batch == null) {
+                        batch = new int[1];
+                        allocated[0]++;
+                    }
+                    batch[0] = next[0]++;
+                    return batch;
+                },
+                batch -> batch,
+                batch -> written.add(batch[0]),
+                batch -> {
+                    recycled.add(batch);
+                    free.offer(batch);
+                });
+
+        assertEquals(200, written.size());
+        for (int i = 0; i < 200; i++) {
+            assertEquals(i, (int) written.get(i));
+        }
+        assertEquals(200, recycled.size());
+        assertEquals(200, report.getCommit().getBatches());
+
+        // Only the batches in flight at once were ever allocated: two per
+        // queue and one in each stage.
+        assertTrue("allocated " + allocated[0], allocated[0] <= 2 * 2 + 3);
+    }
+
+
+    @Test
+    public void failureStopsTheOtherStages() throws Exception {
+
+        IllegalStateException failure = new IllegalStateException("build failed");
+        IngestPipeline<Integer, Integer> pipeline = new IngestPipeline<>(runner(), 2);
+
+        try {
+            // An endless source: only the failure can end the run.
+            pipeline.run(() -> 1,
+                    g -> {
+                        throw failure;
+                    },
+                    b -> fail("Nothing was built"));
+            fail("No exception thrown");
+        } catch (IllegalStateException ex) {
+            assertSame(failure, ex);
+        }
+    }
+
+}